@@ -105,6 +105,9 @@ public class StopFilterFactory extends TokenFilterFactory implements ResourceLoa
       }
       stopWords = new CharArraySet(StopAnalyzer.ENGLISH_STOP_WORDS_SET, ignoreCase);
     }
+    if (stopWords != null) {
+      stopWords = CharArraySet.freeze(stopWords);
+    }
   }
 
   public boolean isIgnoreCase() {
@@ -48,8 +48,10 @@ import java.util.regex.Pattern;
 
 import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.store.ByteArrayDataOutput;
+import org.apache.lucene.store.DataOutput;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.BytesRef;
@@ -248,6 +250,20 @@ public class Dictionary {
     }
   }
 
+  /** Writes the words FST to {@code out}, which {@link #loadWordsOffHeap} can read it from. */
+  void saveWords(DataOutput out) throws IOException {
+    words.save(out);
+  }
+
+  /**
+   * Replaces the words FST with the one {@link #saveWords saved} to {@code in},
+   * whose bytes are then read from {@code in} instead of being held on heap.
+   * {@code in} must stay open as long as this dictionary is in use.
+   */
+  void loadWordsOffHeap(IndexInput in) throws IOException {
+    words = new FST<>(in, in, IntSequenceOutputs.getSingleton());
+  }
+
   /**
    * Looks up Hunspell word forms from the dictionary
    */
@@ -265,12 +281,26 @@ public class Dictionary {
     return lookup(suffixes, word, offset, length);
   }
   
+  /**
+   * Looks up Hunspell word forms from the dictionary, reusing the provided
+   * arc and reader of the words FST
+   */
+  IntsRef lookupWord(char word[], int offset, int length, FST.Arc<IntsRef> arc, FST.BytesReader bytesReader) {
+    return lookup(words, word, offset, length, arc, bytesReader);
+  }
+
   IntsRef lookup(FST<IntsRef> fst, char word[], int offset, int length) {
     if (fst == null) {
       return null;
     }
-    final FST.BytesReader bytesReader = fst.getBytesReader();
-    final FST.Arc<IntsRef> arc = fst.getFirstArc(new FST.Arc<IntsRef>());
+    return lookup(fst, word, offset, length, new FST.Arc<IntsRef>(), fst.getBytesReader());
+  }
+
+  private static IntsRef lookup(FST<IntsRef> fst, char word[], int offset, int length, FST.Arc<IntsRef> arc, FST.BytesReader bytesReader) {
+    if (fst == null) {
+      return null;
+    }
+    fst.getFirstArc(arc);
     // Accumulate output as we go
     final IntsRef NO_OUTPUT = fst.outputs.getNoOutput();
     IntsRef output = NO_OUTPUT;
@@ -1166,6 +1196,25 @@ public class Dictionary {
   static boolean hasFlag(char flags[], char flag) {
     return Arrays.binarySearch(flags, flag) >= 0;
   }
+
+  /** Same as {@link #hasFlag(char[], char)}, but searches flags encoded by {@link #encodeFlags} without decoding them */
+  static boolean hasFlag(BytesRef flags, char flag) {
+    int low = 0;
+    int high = (flags.length >>> 1) - 1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      final int i = flags.offset + (mid << 1);
+      final char midFlag = (char) (((flags.bytes[i] & 0xff) << 8) | (flags.bytes[i+1] & 0xff));
+      if (midFlag < flag) {
+        low = mid + 1;
+      } else if (midFlag > flag) {
+        high = mid - 1;
+      } else {
+        return true;
+      }
+    }
+    return false;
+  }
   
   CharSequence cleanInput(CharSequence input, StringBuilder reuse) {
     reuse.setLength(0);
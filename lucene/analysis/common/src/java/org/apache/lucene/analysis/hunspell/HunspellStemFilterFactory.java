@@ -17,21 +17,33 @@
 package org.apache.lucene.analysis.hunspell;
 
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.util.ResourceLoader;
 import org.apache.lucene.analysis.util.ResourceLoaderAware;
+import org.apache.lucene.analysis.util.SharedResourceCache;
 import org.apache.lucene.analysis.util.TokenFilterFactory;
+import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.util.IOUtils;
 
 /**
@@ -44,6 +56,19 @@ import org.apache.lucene.util.IOUtils;
  *         ignoreCase=&quot;false&quot;
  *         longestOnly=&quot;false&quot; /&gt;</pre>
  * Both parameters dictionary and affix are mandatory.
+ * <p>
+ * If the optional {@code shared} parameter is {@code true}, factories whose
+ * dictionary and affix files have the same content share a single
+ * {@link Dictionary} in the JVM, as long as one of them is in use, instead of
+ * each parsing and holding its own copy.
+ * If the optional {@code compiledDir} parameter is set to a directory path,
+ * the FST of the dictionary words, usually the largest part of a dictionary,
+ * is also saved once into a file of that directory, named after a digest of
+ * the dictionary and affix files and the configuration, and read from that
+ * file (memory-mapped where available) rather than held on heap, until the
+ * dictionary is released; {@code compiledDir} implies {@code shared}. The
+ * affix rules are still parsed on heap.
+ * </p>
  * Dictionaries for many languages are available through the OpenOffice project.
  * 
  * See <a href="http://wiki.apache.org/solr/Hunspell">http://wiki.apache.org/solr/Hunspell</a>
@@ -56,11 +81,15 @@ public class HunspellStemFilterFactory extends TokenFilterFactory implements Res
   private static final String PARAM_RECURSION_CAP = "recursionCap";
   private static final String PARAM_IGNORE_CASE   = "ignoreCase";
   private static final String PARAM_LONGEST_ONLY  = "longestOnly";
+  private static final String PARAM_SHARED        = "shared";
+  private static final String PARAM_COMPILED_DIR  = "compiledDir";
 
   private final String dictionaryFiles;
   private final String affixFile;
   private final boolean ignoreCase;
   private final boolean longestOnly;
+  private final boolean shared;
+  private final String compiledDir;
   private Dictionary dictionary;
   
   /** Creates a new HunspellStemFilterFactory */
@@ -70,6 +99,8 @@ public class HunspellStemFilterFactory extends TokenFilterFactory implements Res
     affixFile = get(args, PARAM_AFFIX);
     ignoreCase = getBoolean(args, PARAM_IGNORE_CASE, false);
     longestOnly = getBoolean(args, PARAM_LONGEST_ONLY, false);
+    compiledDir = get(args, PARAM_COMPILED_DIR);
+    shared = getBoolean(args, PARAM_SHARED, false) || compiledDir != null;
     // this isnt necessary: we properly load all dictionaries.
     // but recognize and ignore for back compat
     getBoolean(args, "strictAffixParsing", true);
@@ -84,6 +115,15 @@ public class HunspellStemFilterFactory extends TokenFilterFactory implements Res
 
   @Override
   public void inform(ResourceLoader loader) throws IOException {
+    dictionary = shared ? loadSharedDictionary(loader) : loadDictionary(loader);
+  }
+
+  /** Returns the dictionary this factory was informed with; for testing. */
+  Dictionary getDictionary() {
+    return dictionary;
+  }
+
+  private Dictionary loadDictionary(ResourceLoader loader) throws IOException {
     String dicts[] = dictionaryFiles.split(",");
 
     InputStream affix = null;
@@ -98,7 +138,7 @@ public class HunspellStemFilterFactory extends TokenFilterFactory implements Res
 
       Path tempPath = Files.createTempDirectory(Dictionary.getDefaultTempDir(), "Hunspell");
       try (Directory tempDir = FSDirectory.open(tempPath)) {
-        this.dictionary = new Dictionary(tempDir, "hunspell", affix, dictionaries, ignoreCase);
+        return new Dictionary(tempDir, "hunspell", affix, dictionaries, ignoreCase);
       } finally {
         IOUtils.rm(tempPath); 
       }
@@ -110,6 +150,60 @@ public class HunspellStemFilterFactory extends TokenFilterFactory implements Res
     }
   }
 
+  /** Dictionaries shared across factories, by digest of their files and configuration. */
+  private static final SharedResourceCache<Dictionary> SHARED_DICTIONARIES = new SharedResourceCache<>();
+
+  private Dictionary loadSharedDictionary(ResourceLoader loader) throws IOException {
+    final List<String> files = new ArrayList<>();
+    files.add(affixFile);
+    files.addAll(Arrays.asList(dictionaryFiles.split(",")));
+    final String key = SharedResourceCache.digest(loader, files, String.valueOf(ignoreCase));
+    if (compiledDir == null) {
+      return SHARED_DICTIONARIES.get(key, closeables -> loadDictionary(loader));
+    }
+    // dictionaries with their words on heap and read from compiledDir are kept apart:
+    return SHARED_DICTIONARIES.get(compiledDir + File.pathSeparator + key, closeables -> loadCompiledDictionary(loader, key, closeables));
+  }
+
+  /** Loads the dictionary and reads its words FST from its compiled file,
+   *  saving it there first if needed; the input the FST reads from is closed
+   *  once the dictionary is released. */
+  private Dictionary loadCompiledDictionary(ResourceLoader loader, String key, List<Closeable> closeables) throws IOException {
+    final Dictionary dictionary = loadDictionary(loader);
+    if (dictionary.words == null) {
+      return dictionary; // no words: nothing to move off heap
+    }
+    final String fileName = "hunspell_" + key + ".fst";
+    // inputs stay usable after their FSDirectory is closed:
+    try (Directory dir = FSDirectory.open(Paths.get(compiledDir))) {
+      IndexInput in = openCompiledWords(dir, fileName);
+      if (in == null) {
+        final String tempFileName;
+        try (IndexOutput out = dir.createTempOutput("hunspell_" + key, "tmp", IOContext.DEFAULT)) {
+          tempFileName = out.getName();
+          dictionary.saveWords(out);
+          CodecUtil.writeFooter(out);
+        }
+        dir.sync(Collections.singleton(tempFileName));
+        dir.rename(tempFileName, fileName);
+        dir.syncMetaData();
+        in = dir.openInput(fileName, IOContext.DEFAULT);
+      }
+      closeables.add(in);
+      CodecUtil.checksumEntireFile(in);
+      dictionary.loadWordsOffHeap(in);
+      return dictionary;
+    }
+  }
+
+  private static IndexInput openCompiledWords(Directory dir, String fileName) throws IOException {
+    try {
+      return dir.openInput(fileName, IOContext.DEFAULT);
+    } catch (FileNotFoundException | NoSuchFileException e) {
+      return null;
+    }
+  }
+
   @Override
   public TokenStream create(TokenStream tokenStream) {
     return new HunspellStemFilter(tokenStream, dictionary, true, longestOnly);
@@ -39,6 +39,7 @@ import org.apache.lucene.util.fst.Outputs;
 final class Stemmer {
   private final Dictionary dictionary;
   private final BytesRef scratch = new BytesRef();
+  private final BytesRef appendScratch = new BytesRef();
   private final StringBuilder segment = new StringBuilder();
   private final ByteArrayDataInput affixReader;
   
@@ -46,6 +47,16 @@ final class Stemmer {
   private final StringBuilder scratchSegment = new StringBuilder();
   private char scratchBuffer[] = new char[32];
   
+  // state for looking up words, reused across lookups
+  private final FST.Arc<IntsRef> wordArc = new FST.Arc<>();
+  private final FST.BytesReader wordReader;
+
+  // words with their affix stripped, one per recursion level
+  private final char strippedWords[][] = new char[3][];
+
+  // used for deduplication
+  private final CharArraySet seenStems;
+
   // it's '1' if we have no stem exceptions, otherwise every other form
   // is really an ID pointing to the exception table
   private final int formStep;
@@ -68,6 +79,11 @@ final class Stemmer {
         suffixReaders[level] = dictionary.suffixes.getBytesReader();
       }
     }
+    for (int level = 0; level < strippedWords.length; level++) {
+      strippedWords[level] = new char[32];
+    }
+    wordReader = dictionary.words.getBytesReader();
+    seenStems = new CharArraySet(8, dictionary.ignoreCase);
     formStep = dictionary.hasStemExceptions ? 2 : 1;
   } 
   
@@ -104,19 +120,23 @@ final class Stemmer {
       // upper: union exact, title, lower
       caseFoldTitle(word, length);
       caseFoldLower(titleBuffer, length);
-      List<CharsRef> list = doStem(word, length, false);
-      list.addAll(doStem(titleBuffer, length, true));
-      list.addAll(doStem(lowerBuffer, length, true));
+      List<CharsRef> list = new ArrayList<>();
+      doStem(word, length, false, list);
+      doStem(titleBuffer, length, true, list);
+      doStem(lowerBuffer, length, true, list);
       return list;
     } else if (caseType == TITLE_CASE) {
       // title: union exact, lower
       caseFoldLower(word, length);
-      List<CharsRef> list = doStem(word, length, false);
-      list.addAll(doStem(lowerBuffer, length, true));
+      List<CharsRef> list = new ArrayList<>();
+      doStem(word, length, false, list);
+      doStem(lowerBuffer, length, true, list);
       return list;
     } else {
       // exact match only
-      return doStem(word, length, false);
+      List<CharsRef> list = new ArrayList<>();
+      doStem(word, length, false, list);
+      return list;
     }
   }
   
@@ -168,9 +188,8 @@ final class Stemmer {
     lowerBuffer[0] = dictionary.caseFold(lowerBuffer[0]);
   }
   
-  private List<CharsRef> doStem(char word[], int length, boolean caseVariant) {
-    List<CharsRef> stems = new ArrayList<>();
-    IntsRef forms = dictionary.lookupWord(word, 0, length);
+  private void doStem(char word[], int length, boolean caseVariant, List<CharsRef> stems) {
+    IntsRef forms = dictionary.lookupWord(word, 0, length, wordArc, wordReader);
     if (forms != null) {
       for (int i = 0; i < forms.length; i += formStep) {
         boolean checkKeepCase = caseVariant && dictionary.keepcase != -1;
@@ -178,17 +197,16 @@ final class Stemmer {
         boolean checkOnlyInCompound = dictionary.onlyincompound != -1;
         if (checkKeepCase || checkNeedAffix || checkOnlyInCompound) {
           dictionary.flagLookup.get(forms.ints[forms.offset+i], scratch);
-          char wordFlags[] = Dictionary.decodeFlags(scratch);
           // we are looking for a case variant, but this word does not allow it
-          if (checkKeepCase && Dictionary.hasFlag(wordFlags, (char)dictionary.keepcase)) {
+          if (checkKeepCase && Dictionary.hasFlag(scratch, (char)dictionary.keepcase)) {
             continue;
           }
           // we can't add this form, it's a pseudostem requiring an affix
-          if (checkNeedAffix && Dictionary.hasFlag(wordFlags, (char)dictionary.needaffix)) {
+          if (checkNeedAffix && Dictionary.hasFlag(scratch, (char)dictionary.needaffix)) {
             continue;
           }
           // we can't add this form, it only belongs inside a compound word
-          if (checkOnlyInCompound && Dictionary.hasFlag(wordFlags, (char)dictionary.onlyincompound)) {
+          if (checkOnlyInCompound && Dictionary.hasFlag(scratch, (char)dictionary.onlyincompound)) {
             continue;
           }
         }
@@ -196,11 +214,10 @@ final class Stemmer {
       }
     }
     try {
-      boolean v = stems.addAll(stem(word, length, -1, -1, -1, 0, true, true, false, false, caseVariant));
+      stem(word, length, -1, -1, -1, 0, true, true, false, false, caseVariant, stems);
     } catch (IOException bogus) {
       throw new RuntimeException(bogus);
     }
-    return stems;
   }
   
   /**
@@ -214,12 +231,12 @@ final class Stemmer {
     if (stems.size() < 2) {
       return stems;
     }
-    CharArraySet terms = new CharArraySet(8, dictionary.ignoreCase);
+    seenStems.clear();
     List<CharsRef> deduped = new ArrayList<>();
     for (CharsRef s : stems) {
-      if (!terms.contains(s)) {
+      if (!seenStems.contains(s)) {
         deduped.add(s);
-        terms.add(s);
+        seenStems.add(s);
       }
     }
     return deduped;
@@ -257,7 +274,8 @@ final class Stemmer {
       if (exception != null) {
         return new CharsRef(exception);
       } else {
-        return new CharsRef(buffer, 0, length);
+        // the buffer is reused, so the stem needs its own copy
+        return new CharsRef(Arrays.copyOf(buffer, length), 0, length);
       }
     }
   }
@@ -290,12 +308,9 @@ final class Stemmer {
    * @param circumfix true if the previous prefix removal was signed as a circumfix
    *        this means inner most suffix must also contain circumfix flag.
    * @param caseVariant true if we are searching for a case variant. if the word has KEEPCASE flag it cannot succeed.
-   * @return List of stems, or empty list if no stems are found
+   * @param stems List the stems are added to
    */
-  private List<CharsRef> stem(char word[], int length, int previous, int prevFlag, int prefixFlag, int recursionDepth, boolean doPrefix, boolean doSuffix, boolean previousWasPrefix, boolean circumfix, boolean caseVariant) throws IOException {
-    
-    // TODO: allow this stuff to be reused by tokenfilter
-    List<CharsRef> stems = new ArrayList<>();
+  private void stem(char word[], int length, int previous, int prevFlag, int prefixFlag, int recursionDepth, boolean doPrefix, boolean doSuffix, boolean previousWasPrefix, boolean circumfix, boolean caseVariant, List<CharsRef> stems) throws IOException {
     
     if (doPrefix && dictionary.prefixes != null) {
       FST<IntsRef> fst = dictionary.prefixes;
@@ -341,18 +356,16 @@ final class Stemmer {
               compatible = true;
             } else {
               // check if affix is allowed in a non-compound word
-              dictionary.flagLookup.get(append, scratch);
-              char appendFlags[] = Dictionary.decodeFlags(scratch);
-              compatible = !Dictionary.hasFlag(appendFlags, (char) dictionary.onlyincompound);
+              dictionary.flagLookup.get(append, appendScratch);
+              compatible = !Dictionary.hasFlag(appendScratch, (char) dictionary.onlyincompound);
             }
           } else if (crossProduct) {
             // cross check incoming continuation class (flag of previous affix) against list.
-            dictionary.flagLookup.get(append, scratch);
-            char appendFlags[] = Dictionary.decodeFlags(scratch);
+            dictionary.flagLookup.get(append, appendScratch);
             assert prevFlag >= 0;
             boolean allowed = dictionary.onlyincompound == -1 || 
-                              !Dictionary.hasFlag(appendFlags, (char) dictionary.onlyincompound);
-            compatible = allowed && hasCrossCheckedFlag((char)prevFlag, appendFlags, false);
+                              !Dictionary.hasFlag(appendScratch, (char) dictionary.onlyincompound);
+            compatible = allowed && hasCrossCheckedFlag((char)prevFlag, appendScratch, false);
           } else {
             compatible = false;
           }
@@ -369,13 +382,12 @@ final class Stemmer {
               continue;
             }
             
-            char strippedWord[] = new char[stripLength + deAffixedLength];
+            int strippedLength = stripLength + deAffixedLength;
+            char strippedWord[] = strippedWords[recursionDepth] = ArrayUtil.grow(strippedWords[recursionDepth], strippedLength);
             System.arraycopy(dictionary.stripData, stripStart, strippedWord, 0, stripLength);
             System.arraycopy(word, deAffixedStart, strippedWord, stripLength, deAffixedLength);
 
-            List<CharsRef> stemList = applyAffix(strippedWord, strippedWord.length, prefix, -1, recursionDepth, true, circumfix, caseVariant);
-            
-            stems.addAll(stemList);
+            applyAffix(strippedWord, strippedLength, prefix, -1, recursionDepth, true, circumfix, caseVariant, stems);
           }
         }
       }
@@ -425,18 +437,16 @@ final class Stemmer {
               compatible = true;
             } else {
               // check if affix is allowed in a non-compound word
-              dictionary.flagLookup.get(append, scratch);
-              char appendFlags[] = Dictionary.decodeFlags(scratch);
-              compatible = !Dictionary.hasFlag(appendFlags, (char) dictionary.onlyincompound);
+              dictionary.flagLookup.get(append, appendScratch);
+              compatible = !Dictionary.hasFlag(appendScratch, (char) dictionary.onlyincompound);
             }
           } else if (crossProduct) {
             // cross check incoming continuation class (flag of previous affix) against list.
-            dictionary.flagLookup.get(append, scratch);
-            char appendFlags[] = Dictionary.decodeFlags(scratch);
+            dictionary.flagLookup.get(append, appendScratch);
             assert prevFlag >= 0;
             boolean allowed = dictionary.onlyincompound == -1 || 
-                              !Dictionary.hasFlag(appendFlags, (char) dictionary.onlyincompound);
-            compatible = allowed && hasCrossCheckedFlag((char)prevFlag, appendFlags, previousWasPrefix);
+                              !Dictionary.hasFlag(appendScratch, (char) dictionary.onlyincompound);
+            compatible = allowed && hasCrossCheckedFlag((char)prevFlag, appendScratch, previousWasPrefix);
           } else {
             compatible = false;
           }
@@ -453,19 +463,16 @@ final class Stemmer {
               continue;
             }
 
-            char strippedWord[] = new char[stripLength + deAffixedLength];
+            int strippedLength = stripLength + deAffixedLength;
+            char strippedWord[] = strippedWords[recursionDepth] = ArrayUtil.grow(strippedWords[recursionDepth], strippedLength);
             System.arraycopy(word, 0, strippedWord, 0, deAffixedLength);
             System.arraycopy(dictionary.stripData, stripStart, strippedWord, deAffixedLength, stripLength);
             
-            List<CharsRef> stemList = applyAffix(strippedWord, strippedWord.length, suffix, prefixFlag, recursionDepth, false, circumfix, caseVariant);
-            
-            stems.addAll(stemList);
+            applyAffix(strippedWord, strippedLength, suffix, prefixFlag, recursionDepth, false, circumfix, caseVariant, stems);
           }
         }
       }
     }
-
-    return stems;
   }
   
   /** checks condition of the concatenation of two strings */
@@ -502,9 +509,9 @@ final class Stemmer {
    *                   so we must check dictionary form against both to add it as a stem!
    * @param recursionDepth current recursion depth
    * @param prefix true if we are removing a prefix (false if it's a suffix)
-   * @return List of stems for the word, or an empty list if none are found
+   * @param stems List the stems for the word are added to
    */
-  List<CharsRef> applyAffix(char strippedWord[], int length, int affix, int prefixFlag, int recursionDepth, boolean prefix, boolean circumfix, boolean caseVariant) throws IOException {    
+  void applyAffix(char strippedWord[], int length, int affix, int prefixFlag, int recursionDepth, boolean prefix, boolean circumfix, boolean caseVariant, List<CharsRef> stems) throws IOException {    
     // TODO: just pass this in from before, no need to decode it twice
     affixReader.setPosition(8 * affix);
     char flag = (char) (affixReader.readShort() & 0xffff);
@@ -514,22 +521,18 @@ final class Stemmer {
     condition >>>= 1;
     char append = (char) (affixReader.readShort() & 0xffff);
 
-    List<CharsRef> stems = new ArrayList<>();
-
-    IntsRef forms = dictionary.lookupWord(strippedWord, 0, length);
+    IntsRef forms = dictionary.lookupWord(strippedWord, 0, length, wordArc, wordReader);
     if (forms != null) {
       for (int i = 0; i < forms.length; i += formStep) {
         dictionary.flagLookup.get(forms.ints[forms.offset+i], scratch);
-        char wordFlags[] = Dictionary.decodeFlags(scratch);
-        if (Dictionary.hasFlag(wordFlags, flag)) {
+        if (Dictionary.hasFlag(scratch, flag)) {
           // confusing: in this one exception, we already chained the first prefix against the second,
           // so it doesnt need to be checked against the word
           boolean chainedPrefix = dictionary.complexPrefixes && recursionDepth == 1 && prefix;
-          if (chainedPrefix == false && prefixFlag >= 0 && !Dictionary.hasFlag(wordFlags, (char)prefixFlag)) {
+          if (chainedPrefix == false && prefixFlag >= 0 && !Dictionary.hasFlag(scratch, (char)prefixFlag)) {
             // see if we can chain prefix thru the suffix continuation class (only if it has any!)
-            dictionary.flagLookup.get(append, scratch);
-            char appendFlags[] = Dictionary.decodeFlags(scratch);
-            if (!hasCrossCheckedFlag((char)prefixFlag, appendFlags, false)) {
+            dictionary.flagLookup.get(append, appendScratch);
+            if (!hasCrossCheckedFlag((char)prefixFlag, appendScratch, false)) {
               continue;
             }
           }
@@ -537,20 +540,19 @@ final class Stemmer {
           // if circumfix was previously set by a prefix, we must check this suffix,
           // to ensure it has it, and vice versa
           if (dictionary.circumfix != -1) {
-            dictionary.flagLookup.get(append, scratch);
-            char appendFlags[] = Dictionary.decodeFlags(scratch);
-            boolean suffixCircumfix = Dictionary.hasFlag(appendFlags, (char)dictionary.circumfix);
+            dictionary.flagLookup.get(append, appendScratch);
+            boolean suffixCircumfix = Dictionary.hasFlag(appendScratch, (char)dictionary.circumfix);
             if (circumfix != suffixCircumfix) {
               continue;
             }
           }
           
           // we are looking for a case variant, but this word does not allow it
-          if (caseVariant && dictionary.keepcase != -1 && Dictionary.hasFlag(wordFlags, (char)dictionary.keepcase)) {
+          if (caseVariant && dictionary.keepcase != -1 && Dictionary.hasFlag(scratch, (char)dictionary.keepcase)) {
             continue;
           }
           // we aren't decompounding (yet)
-          if (dictionary.onlyincompound != -1 && Dictionary.hasFlag(wordFlags, (char)dictionary.onlyincompound)) {
+          if (dictionary.onlyincompound != -1 && Dictionary.hasFlag(scratch, (char)dictionary.onlyincompound)) {
             continue;
           }
           stems.add(newStem(strippedWord, length, forms, i));
@@ -560,9 +562,8 @@ final class Stemmer {
     
     // if a circumfix flag is defined in the dictionary, and we are a prefix, we need to check if we have that flag
     if (dictionary.circumfix != -1 && !circumfix && prefix) {
-      dictionary.flagLookup.get(append, scratch);
-      char appendFlags[] = Dictionary.decodeFlags(scratch);
-      circumfix = Dictionary.hasFlag(appendFlags, (char)dictionary.circumfix);
+      dictionary.flagLookup.get(append, appendScratch);
+      circumfix = Dictionary.hasFlag(appendScratch, (char)dictionary.circumfix);
     }
 
     if (crossProduct) {
@@ -571,35 +572,33 @@ final class Stemmer {
           // we took away the first prefix.
           // COMPLEXPREFIXES = true:  combine with a second prefix and another suffix 
           // COMPLEXPREFIXES = false: combine with a suffix
-          stems.addAll(stem(strippedWord, length, affix, flag, flag, ++recursionDepth, dictionary.complexPrefixes && dictionary.twoStageAffix, true, true, circumfix, caseVariant));
+          stem(strippedWord, length, affix, flag, flag, ++recursionDepth, dictionary.complexPrefixes && dictionary.twoStageAffix, true, true, circumfix, caseVariant, stems);
         } else if (dictionary.complexPrefixes == false && dictionary.twoStageAffix) {
           // we took away a suffix.
           // COMPLEXPREFIXES = true: we don't recurse! only one suffix allowed
           // COMPLEXPREFIXES = false: combine with another suffix
-          stems.addAll(stem(strippedWord, length, affix, flag, prefixFlag, ++recursionDepth, false, true, false, circumfix, caseVariant));
+          stem(strippedWord, length, affix, flag, prefixFlag, ++recursionDepth, false, true, false, circumfix, caseVariant, stems);
         }
       } else if (recursionDepth == 1) {
         if (prefix && dictionary.complexPrefixes) {
           // we took away the second prefix: go look for another suffix
-          stems.addAll(stem(strippedWord, length, affix, flag, flag, ++recursionDepth, false, true, true, circumfix, caseVariant));
+          stem(strippedWord, length, affix, flag, flag, ++recursionDepth, false, true, true, circumfix, caseVariant, stems);
         } else if (prefix == false && dictionary.complexPrefixes == false && dictionary.twoStageAffix) {
           // we took away a prefix, then a suffix: go look for another suffix
-          stems.addAll(stem(strippedWord, length, affix, flag, prefixFlag, ++recursionDepth, false, true, false, circumfix, caseVariant));
+          stem(strippedWord, length, affix, flag, prefixFlag, ++recursionDepth, false, true, false, circumfix, caseVariant, stems);
         }
       }
     }
-
-    return stems;
   }
 
   /**
    * Checks if the given flag cross checks with the given array of flags
    *
    * @param flag Flag to cross check with the array of flags
-   * @param flags Array of flags to cross check against.  Can be {@code null}
-   * @return {@code true} if the flag is found in the array or the array is {@code null}, {@code false} otherwise
+   * @param flags Encoded flags to cross check against
+   * @return {@code true} if the flag is found in the flags or the flags are empty and {@code matchEmpty} is set, {@code false} otherwise
    */
-  private boolean hasCrossCheckedFlag(char flag, char[] flags, boolean matchEmpty) {
-    return (flags.length == 0 && matchEmpty) || Arrays.binarySearch(flags, flag) >= 0;
+  private boolean hasCrossCheckedFlag(char flag, BytesRef flags, boolean matchEmpty) {
+    return (flags.length == 0 && matchEmpty) || Dictionary.hasFlag(flags, flag);
   }
 }
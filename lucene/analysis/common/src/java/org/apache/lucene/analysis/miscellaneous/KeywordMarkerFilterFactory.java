@@ -61,6 +61,9 @@ public class KeywordMarkerFilterFactory extends TokenFilterFactory implements Re
   public void inform(ResourceLoader loader) throws IOException {
     if (wordFiles != null) {  
       protectedWords = getWordSet(loader, wordFiles, ignoreCase);
+      if (protectedWords != null) {
+        protectedWords = CharArraySet.freeze(protectedWords);
+      }
     }
     if (stringPattern != null) {
       pattern = ignoreCase ? Pattern.compile(stringPattern, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE) : Pattern.compile(stringPattern);
@@ -17,16 +17,23 @@
 
 package org.apache.lucene.analysis.synonym;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
 import java.text.ParseException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
@@ -35,8 +42,15 @@ import org.apache.lucene.analysis.core.LowerCaseFilter;
 import org.apache.lucene.analysis.core.WhitespaceTokenizer;
 import org.apache.lucene.analysis.util.ResourceLoader;
 import org.apache.lucene.analysis.util.ResourceLoaderAware;
+import org.apache.lucene.analysis.util.SharedResourceCache;
 import org.apache.lucene.analysis.util.TokenFilterFactory;
 import org.apache.lucene.analysis.util.TokenizerFactory;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
 
 /**
  * Factory for {@link SynonymGraphFilter}.
@@ -70,6 +84,20 @@ import org.apache.lucene.analysis.util.TokenizerFactory;
  *   <li><code>boolean expand</code> - true if conflation groups should be expanded, false if they are one-directional</li>
  *   <li><code>{@link Analyzer} analyzer</code> - an analyzer used for each raw synonym</li>
  * </ul>
+ *
+ * <p>
+ * If the optional {@code shared} parameter is {@code true}, factories whose
+ * synonym files have the same content and that are configured the same way
+ * share a single {@link SynonymMap} in the JVM, as long as one of them is in use.
+ * If the optional {@code compiledDir} parameter is set to a directory path, the
+ * map is also compiled once into a file of that directory, named after a
+ * digest of the synonym files and the configuration, and loaded from that file
+ * with its FST read from disk (memory-mapped where available) rather than
+ * copied on heap, until the map is released; {@code compiledDir} implies
+ * {@code shared}. Custom parsers and
+ * analyzers are identified by class name only: change the synonym files or
+ * delete the compiled files if their behavior changes.
+ * </p>
  * @see SolrSynonymParser SolrSynonymParser: default format
  *
  * @lucene.experimental
@@ -82,6 +110,8 @@ public class SynonymGraphFilterFactory extends TokenFilterFactory implements Res
   private final boolean expand;
   private final String analyzerName;
   private final Map<String, String> tokArgs = new HashMap<>();
+  private final boolean shared;
+  private final String compiledDir;
 
   private SynonymMap map;
   
@@ -91,6 +121,8 @@ public class SynonymGraphFilterFactory extends TokenFilterFactory implements Res
     synonyms = require(args, "synonyms");
     format = get(args, "format");
     expand = getBoolean(args, "expand", true);
+    compiledDir = get(args, "compiledDir");
+    shared = getBoolean(args, "shared", false) || compiledDir != null;
 
     analyzerName = get(args, "analyzer");
     tokenizerFactory = get(args, "tokenizerFactory");
@@ -121,6 +153,15 @@ public class SynonymGraphFilterFactory extends TokenFilterFactory implements Res
 
   @Override
   public void inform(ResourceLoader loader) throws IOException {
+    map = shared ? loadSharedSynonyms(loader) : buildSynonyms(loader);
+  }
+
+  /** Returns the synonyms this factory was informed with; for testing. */
+  SynonymMap getSynonymMap() {
+    return map;
+  }
+
+  private SynonymMap buildSynonyms(ResourceLoader loader) throws IOException {
     final TokenizerFactory factory = tokenizerFactory == null ? null : loadTokenizerFactory(loader, tokenizerFactory);
     Analyzer analyzer;
     
@@ -145,12 +186,61 @@ public class SynonymGraphFilterFactory extends TokenFilterFactory implements Res
         formatClass = WordnetSynonymParser.class.getName();
       }
       // TODO: expose dedup as a parameter?
-      map = loadSynonyms(loader, formatClass, true, a);
+      return loadSynonyms(loader, formatClass, true, a);
     } catch (ParseException e) {
       throw new IOException("Error parsing synonyms file:", e);
     }
   }
 
+  /** Maps shared across factories, by digest of their synonym files and configuration. */
+  private static final SharedResourceCache<SynonymMap> SHARED_MAPS = new SharedResourceCache<>();
+
+  private SynonymMap loadSharedSynonyms(ResourceLoader loader) throws IOException {
+    final String key = SharedResourceCache.digest(loader, splitFileNames(synonyms),
+        getClass().getName(), luceneMatchVersion.toString(), String.valueOf(format), String.valueOf(expand),
+        String.valueOf(ignoreCase), String.valueOf(analyzerName), String.valueOf(tokenizerFactory),
+        new TreeMap<>(tokArgs).toString());
+    if (compiledDir == null) {
+      return SHARED_MAPS.get(key, closeables -> buildSynonyms(loader));
+    }
+    // maps built on heap and maps loaded from compiledDir are kept apart:
+    return SHARED_MAPS.get(compiledDir + File.pathSeparator + key, closeables -> loadCompiledSynonyms(loader, key, closeables));
+  }
+
+  /** Loads the map from its compiled file, compiling it first if needed; the
+   *  input the FST reads from is closed once the map is released. */
+  private SynonymMap loadCompiledSynonyms(ResourceLoader loader, String key, List<Closeable> closeables) throws IOException {
+    final String fileName = "synonyms_" + key + ".bin";
+    // inputs stay usable after their FSDirectory is closed:
+    try (Directory dir = FSDirectory.open(Paths.get(compiledDir))) {
+      IndexInput in = openCompiledSynonyms(dir, fileName);
+      if (in == null) {
+        final SynonymMap map = buildSynonyms(loader);
+        final String tempFileName;
+        try (IndexOutput out = dir.createTempOutput("synonyms_" + key, "tmp", IOContext.DEFAULT)) {
+          tempFileName = out.getName();
+          map.save(out);
+          CodecUtil.writeFooter(out);
+        }
+        dir.sync(Collections.singleton(tempFileName));
+        dir.rename(tempFileName, fileName);
+        dir.syncMetaData();
+        in = dir.openInput(fileName, IOContext.DEFAULT);
+      }
+      closeables.add(in);
+      CodecUtil.checksumEntireFile(in);
+      return SynonymMap.load(in);
+    }
+  }
+
+  private static IndexInput openCompiledSynonyms(Directory dir, String fileName) throws IOException {
+    try {
+      return dir.openInput(fileName, IOContext.DEFAULT);
+    } catch (FileNotFoundException | NoSuchFileException e) {
+      return null;
+    }
+  }
+
   /**
    * Load synonyms with the given {@link SynonymMap.Parser} class.
    */
@@ -30,7 +30,11 @@ import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.store.ByteArrayDataOutput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.BytesRefBuilder;
 import org.apache.lucene.util.BytesRefHash;
@@ -60,6 +64,63 @@ public class SynonymMap {
     this.words = words;
     this.maxHorizontalContext = maxHorizontalContext;
   }
+
+  private static final String CODEC_NAME = "SynonymMap";
+  private static final int VERSION_START = 0;
+  private static final int VERSION_CURRENT = VERSION_START;
+
+  /**
+   * Writes this map to the provided {@link DataOutput}, so that it can be
+   * loaded with {@link #load} instead of being parsed and built again.
+   */
+  public void save(DataOutput out) throws IOException {
+    CodecUtil.writeHeader(out, CODEC_NAME, VERSION_CURRENT);
+    out.writeVInt(maxHorizontalContext);
+    final int numWords = words.size();
+    out.writeVInt(numWords);
+    final BytesRef scratch = new BytesRef();
+    for (int ord = 0; ord < numWords; ord++) {
+      words.get(ord, scratch);
+      out.writeVInt(scratch.length);
+      out.writeBytes(scratch.bytes, scratch.offset, scratch.length);
+    }
+    if (fst == null) {
+      out.writeByte((byte) 0);
+    } else {
+      out.writeByte((byte) 1);
+      fst.save(out);
+    }
+  }
+
+  /**
+   * Loads a map written with {@link #save}.  The FST is not copied on heap
+   * but read directly from {@code in} (e.g. memory-mapped), which is
+   * positioned after the map on return and must stay open as long as the
+   * returned map is in use.
+   */
+  public static SynonymMap load(IndexInput in) throws IOException {
+    CodecUtil.checkHeader(in, CODEC_NAME, VERSION_START, VERSION_CURRENT);
+    final int maxHorizontalContext = in.readVInt();
+    final int numWords = in.readVInt();
+    final BytesRefHash words = new BytesRefHash();
+    final BytesRefBuilder scratch = new BytesRefBuilder();
+    for (int ord = 0; ord < numWords; ord++) {
+      final int length = in.readVInt();
+      scratch.grow(length);
+      in.readBytes(scratch.bytes(), 0, length);
+      scratch.setLength(length);
+      if (words.add(scratch.get()) != ord) {
+        throw new CorruptIndexException("duplicate word at ord " + ord, in);
+      }
+    }
+    final FST<BytesRef> fst;
+    if (in.readByte() == 1) {
+      fst = new FST<>(in, in, ByteSequenceOutputs.getSingleton());
+    } else {
+      fst = null;
+    }
+    return new SynonymMap(fst, words, maxHorizontalContext);
+  }
   
   /**
    * Builds an FSTSynonymMap.
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.analysis.util;
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.util.IOUtils;
+
+/**
+ * A cache of resources that factories load from files, such as synonym maps
+ * or Hunspell dictionaries, so that factories loading the same files share a
+ * single instance in the JVM instead of each parsing and holding its own copy.
+ * <p>
+ * Resources are keyed by a {@link #digest} of their files and configuration,
+ * and only weakly referenced: they are released once no factory uses them
+ * anymore. The {@link Closeable}s a {@link Loader} registers along with a
+ * resource, e.g. the input that a memory-mapped FST reads from, are closed the
+ * next time the cache is accessed after the resource was released.
+ *
+ * @lucene.internal
+ */
+public final class SharedResourceCache<T> {
+
+  /** Loads a resource on a cache miss. */
+  @FunctionalInterface
+  public interface Loader<T> {
+    /**
+     * Loads the resource, adding to {@code closeables} what must be closed
+     * once the resource is released. They are closed right away if this
+     * method throws an exception.
+     */
+    T load(List<Closeable> closeables) throws IOException;
+  }
+
+  private final Map<String, Slot<T>> slots = new HashMap<>();
+  private final ReferenceQueue<T> released = new ReferenceQueue<>();
+
+  /**
+   * Returns the resource for the given key, loading it with the given loader
+   * if no factory uses it. Concurrent calls with the same key wait for the
+   * first one to load the resource.
+   */
+  public T get(String key, Loader<T> loader) throws IOException {
+    final Slot<T> slot;
+    synchronized (slots) {
+      closeReleased();
+      slot = slots.computeIfAbsent(key, k -> new Slot<>());
+    }
+    synchronized (slot) {
+      T resource = slot.ref == null ? null : slot.ref.get();
+      if (resource == null) {
+        final List<Closeable> closeables = new ArrayList<>();
+        boolean success = false;
+        try {
+          resource = loader.load(closeables);
+          success = true;
+        } finally {
+          if (success == false) {
+            IOUtils.closeWhileHandlingException(closeables);
+          }
+        }
+        slot.ref = new ResourceRef<>(resource, released, key, slot, closeables);
+      }
+      return resource;
+    }
+  }
+
+  /** Returns the number of keys in this cache; for testing. */
+  int size() {
+    synchronized (slots) {
+      closeReleased();
+      return slots.size();
+    }
+  }
+
+  private void closeReleased() {
+    assert Thread.holdsLock(slots);
+    for (Reference<? extends T> reference = released.poll(); reference != null; reference = released.poll()) {
+      final ResourceRef<?> ref = (ResourceRef<?>) reference;
+      IOUtils.closeWhileHandlingException(ref.closeables);
+      // the resource may have been loaded again in the meantime:
+      if (ref.slot.ref == ref) {
+        slots.remove(ref.key, ref.slot);
+      }
+    }
+  }
+
+  private static final class Slot<T> {
+    volatile ResourceRef<T> ref;
+  }
+
+  private static final class ResourceRef<T> extends WeakReference<T> {
+    final String key;
+    final Slot<T> slot;
+    final List<Closeable> closeables;
+
+    ResourceRef(T resource, ReferenceQueue<T> queue, String key, Slot<T> slot, List<Closeable> closeables) {
+      super(resource, queue);
+      this.key = key;
+      this.slot = slot;
+      this.closeables = closeables;
+    }
+  }
+
+  /**
+   * Returns a hex-encoded SHA-256 digest of the given configuration and of
+   * the names and content of the given files, suitable as a cache key or file
+   * name.
+   */
+  public static String digest(ResourceLoader loader, List<String> files, String... config) throws IOException {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+    digest.update(String.join("\0", config).getBytes(StandardCharsets.UTF_8));
+    final byte[] buffer = new byte[8192];
+    for (String file : files) {
+      digest.update((byte) 0);
+      digest.update(file.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+      try (InputStream in = loader.openResource(file)) {
+        for (int len = in.read(buffer); len != -1; len = in.read(buffer)) {
+          digest.update(buffer, 0, len);
+        }
+      }
+    }
+    final StringBuilder hex = new StringBuilder();
+    for (byte b : digest.digest()) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+}
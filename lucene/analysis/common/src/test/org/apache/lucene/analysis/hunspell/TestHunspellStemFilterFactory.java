@@ -19,6 +19,9 @@ package org.apache.lucene.analysis.hunspell;
 
 import java.io.Reader;
 import java.io.StringReader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.util.BaseTokenStreamFactoryTestCase;
@@ -36,6 +39,65 @@ public class TestHunspellStemFilterFactory extends BaseTokenStreamFactoryTestCas
     assertTokenStreamContents(stream, new String[] { "ab" });
   }
   
+  public void testShared() throws Exception {
+    HunspellStemFilterFactory first = (HunspellStemFilterFactory) tokenFilterFactory("HunspellStem",
+        "dictionary", "simple.dic",
+        "affix", "simple.aff",
+        "shared", "true");
+    HunspellStemFilterFactory second = (HunspellStemFilterFactory) tokenFilterFactory("HunspellStem",
+        "dictionary", "simple.dic",
+        "affix", "simple.aff",
+        "shared", "true");
+    assertSame(first.getDictionary(), second.getDictionary());
+    assertTokenStreamContents(second.create(whitespaceMockTokenizer(new StringReader("abc"))), new String[] { "ab" });
+
+    // a different configuration gets its own dictionary
+    HunspellStemFilterFactory ignoreCase = (HunspellStemFilterFactory) tokenFilterFactory("HunspellStem",
+        "dictionary", "simple.dic",
+        "affix", "simple.aff",
+        "ignoreCase", "true",
+        "shared", "true");
+    assertNotSame(first.getDictionary(), ignoreCase.getDictionary());
+
+    // unshared factories always load their own dictionary
+    HunspellStemFilterFactory unshared = (HunspellStemFilterFactory) tokenFilterFactory("HunspellStem",
+        "dictionary", "simple.dic",
+        "affix", "simple.aff");
+    assertNotSame(first.getDictionary(), unshared.getDictionary());
+  }
+
+  public void testCompiledDir() throws Exception {
+    Path compiledDir = createTempDir("hunspell");
+    HunspellStemFilterFactory first = (HunspellStemFilterFactory) tokenFilterFactory("HunspellStem",
+        "dictionary", "simple.dic",
+        "affix", "simple.aff",
+        "compiledDir", compiledDir.toString());
+    assertTokenStreamContents(first.create(whitespaceMockTokenizer(new StringReader("abc"))), new String[] { "ab" });
+    int numFiles = 0;
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(compiledDir, "hunspell_*.fst")) {
+      for (Path file : stream) {
+        // the words FST is read from the file rather than held on heap
+        assertTrue(first.getDictionary().words.ramBytesUsed() < Files.size(file));
+        numFiles++;
+      }
+    }
+    assertEquals(1, numFiles);
+
+    // compiledDir implies shared
+    HunspellStemFilterFactory second = (HunspellStemFilterFactory) tokenFilterFactory("HunspellStem",
+        "dictionary", "simple.dic",
+        "affix", "simple.aff",
+        "compiledDir", compiledDir.toString());
+    assertSame(first.getDictionary(), second.getDictionary());
+
+    // dictionaries with their words on heap are kept apart
+    HunspellStemFilterFactory shared = (HunspellStemFilterFactory) tokenFilterFactory("HunspellStem",
+        "dictionary", "simple.dic",
+        "affix", "simple.aff",
+        "shared", "true");
+    assertNotSame(first.getDictionary(), shared.getDictionary());
+  }
+
   /** Test that bogus arguments result in exception */
   public void testBogusArguments() throws Exception {
     IllegalArgumentException expected = expectThrows(IllegalArgumentException.class, () -> {
@@ -43,6 +43,9 @@ import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.store.ByteArrayDataInput;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.CharsRef;
 import org.apache.lucene.util.CharsRefBuilder;
@@ -246,6 +249,49 @@ public class TestSynonymGraphFilter extends BaseTokenStreamTestCase {
     assertAnalyzesTo(analyzer, doc, expected);
   }
 
+  public void testSaveAndLoad() throws Exception {
+    String testFile =
+        "i-pod, ipod, ipoooood\n" +
+            "foo => foo bar\n" +
+            "foo => baz\n" +
+            "this test, that testing";
+    Analyzer mockAnalyzer = new MockAnalyzer(random());
+    SolrSynonymParser parser = new SolrSynonymParser(true, true, mockAnalyzer);
+    parser.parse(new StringReader(testFile));
+    mockAnalyzer.close();
+    SynonymMap original = parser.build();
+
+    Directory dir = newDirectory();
+    try (IndexOutput out = dir.createOutput("synonyms", IOContext.DEFAULT)) {
+      original.save(out);
+    }
+    try (IndexInput in = dir.openInput("synonyms", IOContext.DEFAULT)) {
+      SynonymMap loaded = SynonymMap.load(in);
+      assertEquals(original.maxHorizontalContext, loaded.maxHorizontalContext);
+      assertEquals(original.words.size(), loaded.words.size());
+      BytesRef scratch = new BytesRef();
+      for (int ord = 0; ord < original.words.size(); ord++) {
+        assertEquals(original.words.get(ord, new BytesRef()), loaded.words.get(ord, scratch));
+      }
+
+      Analyzer analyzer = new Analyzer() {
+        @Override
+        protected TokenStreamComponents createComponents(String fieldName) {
+          Tokenizer tokenizer = new MockTokenizer(MockTokenizer.WHITESPACE, true);
+          return new TokenStreamComponents(tokenizer, new FlattenGraphFilter(new SynonymGraphFilter(tokenizer, loaded, true)));
+        }
+      };
+      assertAnalyzesTo(analyzer, "i-pod",
+                       new String[]{"ipod", "ipoooood", "i-pod"},
+                       new int[]{1, 0, 0});
+      assertAnalyzesTo(analyzer, "foo",
+                       new String[]{"foo", "baz", "bar"},
+                       new int[]{1, 0, 1});
+      analyzer.close();
+    }
+    dir.close();
+  }
+
   private Analyzer solrSynsToAnalyzer(String syns) throws IOException, ParseException {
     Analyzer analyzer = new MockAnalyzer(random());
     SolrSynonymParser parser = new SolrSynonymParser(true, true, analyzer);
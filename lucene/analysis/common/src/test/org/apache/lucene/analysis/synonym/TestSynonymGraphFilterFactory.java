@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.analysis.synonym;
+
+
+import java.io.StringReader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.util.BaseTokenStreamFactoryTestCase;
+import org.apache.lucene.analysis.util.StringMockResourceLoader;
+import org.apache.lucene.analysis.util.TokenFilterFactory;
+import org.apache.lucene.util.Version;
+
+public class TestSynonymGraphFilterFactory extends BaseTokenStreamFactoryTestCase {
+
+  /** checks for synonyms of "GB" in synonyms.txt */
+  private void checkSolrSynonyms(TokenFilterFactory factory) throws Exception {
+    TokenStream stream = whitespaceMockTokenizer(new StringReader("GB"));
+    stream = factory.create(stream);
+    assertTrue(stream instanceof SynonymGraphFilter);
+    assertTokenStreamContents(stream,
+        new String[] { "GB", "gib", "gigabyte", "gigabytes" },
+        new int[] { 1, 0, 0, 0 });
+  }
+
+  public void testSynonyms() throws Exception {
+    checkSolrSynonyms(tokenFilterFactory("SynonymGraph", "synonyms", "synonyms.txt"));
+  }
+
+  public void testShared() throws Exception {
+    SynonymGraphFilterFactory first = (SynonymGraphFilterFactory) tokenFilterFactory("SynonymGraph",
+        "synonyms", "synonyms.txt", "shared", "true");
+    SynonymGraphFilterFactory second = (SynonymGraphFilterFactory) tokenFilterFactory("SynonymGraph",
+        "synonyms", "synonyms.txt", "shared", "true");
+    checkSolrSynonyms(first);
+    checkSolrSynonyms(second);
+    assertSame(first.getSynonymMap(), second.getSynonymMap());
+
+    // a different configuration gets its own map
+    SynonymGraphFilterFactory ignoreCase = (SynonymGraphFilterFactory) tokenFilterFactory("SynonymGraph",
+        "synonyms", "synonyms.txt", "shared", "true", "ignoreCase", "true");
+    assertNotSame(first.getSynonymMap(), ignoreCase.getSynonymMap());
+
+    // unshared factories always build their own map
+    SynonymGraphFilterFactory unshared = (SynonymGraphFilterFactory) tokenFilterFactory("SynonymGraph",
+        "synonyms", "synonyms.txt");
+    assertNotSame(first.getSynonymMap(), unshared.getSynonymMap());
+  }
+
+  public void testSharedDifferentContent() throws Exception {
+    SynonymGraphFilterFactory first = (SynonymGraphFilterFactory) tokenFilterFactory("SynonymGraph", Version.LATEST,
+        new StringMockResourceLoader("a => b"), "synonyms", "synonyms.txt", "shared", "true");
+    SynonymGraphFilterFactory second = (SynonymGraphFilterFactory) tokenFilterFactory("SynonymGraph", Version.LATEST,
+        new StringMockResourceLoader("a => c"), "synonyms", "synonyms.txt", "shared", "true");
+    assertNotSame(first.getSynonymMap(), second.getSynonymMap());
+    assertTokenStreamContents(first.create(whitespaceMockTokenizer(new StringReader("a"))), new String[] { "b" });
+    assertTokenStreamContents(second.create(whitespaceMockTokenizer(new StringReader("a"))), new String[] { "c" });
+  }
+
+  public void testCompiledDir() throws Exception {
+    Path compiledDir = createTempDir("synonyms");
+    checkSolrSynonyms(tokenFilterFactory("SynonymGraph",
+        "synonyms", "synonyms.txt", "compiledDir", compiledDir.toString()));
+    int numFiles = 0;
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(compiledDir, "synonyms_*.bin")) {
+      for (Path file : stream) {
+        assertTrue(Files.size(file) > 0);
+        numFiles++;
+      }
+    }
+    assertEquals(1, numFiles);
+
+    // another factory with the same configuration gets the same synonyms
+    checkSolrSynonyms(tokenFilterFactory("SynonymGraph",
+        "synonyms", "synonyms.txt", "compiledDir", compiledDir.toString()));
+  }
+
+  public void testCompiledEmptySynonyms() throws Exception {
+    Path compiledDir = createTempDir("synonyms");
+    TokenStream stream = whitespaceMockTokenizer(new StringReader("GB"));
+    stream = tokenFilterFactory("SynonymGraph", Version.LATEST,
+        new StringMockResourceLoader(""), // empty file!
+        "synonyms", "synonyms.txt", "compiledDir", compiledDir.toString()).create(stream);
+    assertTokenStreamContents(stream, new String[] { "GB" });
+  }
+}
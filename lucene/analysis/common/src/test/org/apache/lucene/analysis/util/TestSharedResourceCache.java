@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.analysis.util;
+
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestSharedResourceCache extends LuceneTestCase {
+
+  public void testShared() throws Exception {
+    SharedResourceCache<Object> cache = new SharedResourceCache<>();
+    AtomicInteger loads = new AtomicInteger();
+    Object a = cache.get("a", closeables -> { loads.incrementAndGet(); return new Object(); });
+    assertSame(a, cache.get("a", closeables -> { loads.incrementAndGet(); return new Object(); }));
+    assertNotSame(a, cache.get("b", closeables -> { loads.incrementAndGet(); return new Object(); }));
+    assertEquals(2, loads.get());
+  }
+
+  public void testReleasedResourcesAreClosed() throws Exception {
+    SharedResourceCache<Object> cache = new SharedResourceCache<>();
+    AtomicInteger closed = new AtomicInteger();
+    cache.get("a", closeables -> {
+      closeables.add(closed::incrementAndGet);
+      return new Object();
+    });
+    int size = cache.size();
+    assertEquals(1, size);
+    // the resource is only weakly referenced:
+    for (int i = 0; size > 0 && i < 10; i++) {
+      System.runFinalization();
+      System.gc();
+      Thread.sleep(100L);
+      size = cache.size();
+    }
+    // the GC may not have cleared the resource yet, but if it did, it was closed:
+    assertEquals(size == 0 ? 1 : 0, closed.get());
+  }
+
+  public void testFailedLoadIsClosed() throws Exception {
+    SharedResourceCache<Object> cache = new SharedResourceCache<>();
+    AtomicInteger closed = new AtomicInteger();
+    expectThrows(IOException.class, () -> {
+      cache.get("a", closeables -> {
+        closeables.add(closed::incrementAndGet);
+        throw new IOException("boom");
+      });
+    });
+    assertEquals(1, closed.get());
+    Object a = new Object();
+    assertSame(a, cache.get("a", closeables -> a));
+  }
+
+  public void testDigest() throws Exception {
+    ResourceLoader loader = new StringMockResourceLoader("foo => bar");
+    String digest = SharedResourceCache.digest(loader, Collections.singletonList("a.txt"), "x", "y");
+    assertEquals(64, digest.length());
+    assertEquals(digest, SharedResourceCache.digest(loader, Collections.singletonList("a.txt"), "x", "y"));
+    assertFalse(digest.equals(SharedResourceCache.digest(loader, Collections.singletonList("a.txt"), "x", "z")));
+    assertFalse(digest.equals(SharedResourceCache.digest(loader, Arrays.asList("a.txt", "b.txt"), "x", "y")));
+    assertFalse(digest.equals(SharedResourceCache.digest(new StringMockResourceLoader("foo => baz"),
+        Collections.singletonList("a.txt"), "x", "y")));
+  }
+}
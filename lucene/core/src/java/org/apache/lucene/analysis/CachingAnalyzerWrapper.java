@@ -0,0 +1,352 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.analysis;
+
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.util.AttributeSource;
+import org.apache.lucene.util.IOUtils;
+
+/**
+ * An {@link AnalyzerWrapper} that caches the analysis of short values, so that
+ * values that are analyzed repeatedly, such as categories or tags that many
+ * documents share, only go through the wrapped analyzer once.
+ * <p>
+ * Values of at most {@code maxValueLength} chars are looked up by field name
+ * and value in a least-recently-used cache of {@code maxEntries} entries. On a
+ * hit, the states of all token attributes (terms, positions, offsets, payloads,
+ * ...) are replayed from the cache, as {@link CachingTokenFilter} does, without
+ * running the wrapped analyzer's {@link CharFilter}s, {@link Tokenizer} and
+ * {@link TokenFilter}s. On a miss, the value is analyzed by the wrapped
+ * analyzer and its tokens are added to the cache once they have all been
+ * consumed. Longer values are always analyzed by the wrapped analyzer.
+ * <p>
+ * This is only correct if the wrapped analyzer always produces the same tokens
+ * for the same field and value, which is the case of most analyzers. The cache
+ * is keyed by value before char filtering, so offsets are replayed as the
+ * wrapped analyzer corrected them.
+ * <p>
+ * Values passed as a {@link CharFilter} are not cached, since their offsets
+ * need to be corrected by the filter.
+ * <p>
+ * <b>Please note:</b> this wrapper hands values over to its reused
+ * {@link Analyzer.TokenStreamComponents}, so it should not be wrapped in
+ * another {@link AnalyzerWrapper}, or it will not cache anything. The first
+ * value analyzed for a field by a thread is never cached.
+ *
+ * @lucene.experimental
+ */
+public final class CachingAnalyzerWrapper extends AnalyzerWrapper {
+
+  private final Analyzer delegate;
+  private final int maxValueLength;
+  private final Map<CacheKey, CachedTokens> cache;
+  private volatile long hitCount;
+  private volatile long missCount;
+
+  /**
+   * Creates a new CachingAnalyzerWrapper.
+   *
+   * @param delegate the analyzer to wrap
+   * @param maxValueLength the maximum length in chars of the values to cache
+   * @param maxEntries the maximum number of values to cache
+   */
+  public CachingAnalyzerWrapper(Analyzer delegate, int maxValueLength, int maxEntries) {
+    super(delegate.getReuseStrategy());
+    if (maxValueLength < 0) {
+      throw new IllegalArgumentException("maxValueLength must be >= 0, got " + maxValueLength);
+    }
+    if (maxEntries < 0) {
+      throw new IllegalArgumentException("maxEntries must be >= 0, got " + maxEntries);
+    }
+    this.delegate = delegate;
+    this.maxValueLength = maxValueLength;
+    this.cache = new LinkedHashMap<CacheKey, CachedTokens>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<CacheKey, CachedTokens> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  @Override
+  protected Analyzer getWrappedAnalyzer(String fieldName) {
+    return delegate;
+  }
+
+  @Override
+  protected TokenStreamComponents wrapComponents(String fieldName, TokenStreamComponents components) {
+    return new CachingComponents(components);
+  }
+
+  @Override
+  protected Reader wrapReader(String fieldName, Reader reader) {
+    final TokenStreamComponents components = getReuseStrategy().getReusableComponents(this, fieldName);
+    if (components instanceof CachingComponents == false || reader instanceof CharFilter) {
+      // not analyzing, first use of the components, or offsets that the tokenizer
+      // needs to correct through the given reader: don't cache
+      return reader;
+    }
+    final CachingComponents cachingComponents = (CachingComponents) components;
+
+    final char[] buffer = cachingComponents.buffer;
+    int length = 0;
+    try {
+      for (int read = 0; read != -1 && length < buffer.length; read = reader.read(buffer, length, buffer.length - length)) {
+        length += read;
+      }
+    } catch (IOException e) {
+      IOUtils.closeWhileHandlingException(reader);
+      throw new RuntimeException(e);
+    }
+    if (length > maxValueLength) {
+      // too long to be cached: analyze everything we read and the rest of the value
+      return new PrefixReader(buffer, length, reader);
+    }
+    // the whole value was read: the tokenizer will close the StringReader, not the caller's reader
+    try {
+      reader.close();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+
+    final CacheKey key = new CacheKey(fieldName, new String(buffer, 0, length));
+    final CachedTokens cached;
+    synchronized (cache) {
+      cached = cache.get(key);
+      if (cached == null) {
+        missCount++;
+      } else {
+        hitCount++;
+      }
+    }
+    cachingComponents.stream.setPending(key, cached);
+    return new StringReader(key.value);
+  }
+
+  /** Returns the number of times a value was found in the cache. */
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of times a short enough value was not found in the cache. */
+  public long getMissCount() {
+    return missCount;
+  }
+
+  /** Returns the number of cached values. */
+  public int getCacheSize() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "CachingAnalyzerWrapper(" + delegate + ", maxValueLength=" + maxValueLength + ")";
+  }
+
+  private static final class CacheKey {
+    final String field;
+    final String value;
+
+    CacheKey(String field, String value) {
+      this.field = field;
+      this.value = value;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj instanceof CacheKey == false) {
+        return false;
+      }
+      final CacheKey other = (CacheKey) obj;
+      return field.equals(other.field) && value.equals(other.value);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * field.hashCode() + value.hashCode();
+    }
+  }
+
+  /** Immutable attribute states of all tokens of a value, and of the end of its stream. */
+  private static final class CachedTokens {
+    final AttributeSource.State[] states;
+    final AttributeSource.State finalState;
+
+    CachedTokens(AttributeSource.State[] states, AttributeSource.State finalState) {
+      this.states = states;
+      this.finalState = finalState;
+    }
+  }
+
+  private final class CachingComponents extends TokenStreamComponents {
+    final TokenStreamComponents delegate;
+    final CachingTokenStream stream;
+    final char[] buffer = new char[maxValueLength + 1];
+
+    CachingComponents(TokenStreamComponents delegate) {
+      this(delegate, new CachingTokenStream(delegate.getTokenStream()));
+    }
+
+    private CachingComponents(TokenStreamComponents delegate, CachingTokenStream stream) {
+      super(delegate.getTokenizer(), stream);
+      this.delegate = delegate;
+      this.stream = stream;
+    }
+
+    @Override
+    protected void setReader(Reader reader) {
+      if (stream.startValue() == false) {
+        delegate.setReader(reader);
+      }
+    }
+  }
+
+  /** Replays cached tokens, or records the tokens of its input so that they can be cached. */
+  private final class CachingTokenStream extends TokenFilter {
+    private CacheKey pendingKey;
+    private CachedTokens pendingTokens;
+
+    // key to cache the tokens under once consumed, or null if they should not be cached
+    private CacheKey key;
+    private List<AttributeSource.State> recorded;
+    private boolean exhausted;
+    // tokens to replay instead of consuming the input, or null
+    private CachedTokens replayed;
+    private int upto;
+
+    CachingTokenStream(TokenStream input) {
+      super(input);
+    }
+
+    void setPending(CacheKey key, CachedTokens tokens) {
+      pendingKey = key;
+      pendingTokens = tokens;
+    }
+
+    /** Starts a new value, and returns whether its tokens are replayed from the cache. */
+    boolean startValue() {
+      key = pendingTokens == null ? pendingKey : null;
+      replayed = pendingTokens;
+      pendingKey = null;
+      pendingTokens = null;
+      recorded = null;
+      exhausted = false;
+      upto = 0;
+      return replayed != null;
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+      if (replayed != null) {
+        if (upto == replayed.states.length) {
+          return false;
+        }
+        restoreState(replayed.states[upto++]);
+        return true;
+      }
+      if (input.incrementToken()) {
+        if (key != null) {
+          recorded.add(captureState());
+        }
+        return true;
+      }
+      exhausted = true;
+      return false;
+    }
+
+    @Override
+    public void end() throws IOException {
+      if (replayed != null) {
+        restoreState(replayed.finalState);
+        return;
+      }
+      super.end();
+      if (key != null && exhausted) {
+        final CachedTokens tokens = new CachedTokens(recorded.toArray(new AttributeSource.State[recorded.size()]), captureState());
+        synchronized (cache) {
+          cache.put(key, tokens);
+        }
+      }
+      key = null;
+      recorded = null;
+    }
+
+    @Override
+    public void reset() throws IOException {
+      if (replayed != null) {
+        upto = 0;
+        return;
+      }
+      super.reset();
+      if (key != null) {
+        recorded = new ArrayList<>();
+        exhausted = false;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (replayed != null) {
+        replayed = null;
+        return;
+      }
+      key = null;
+      recorded = null;
+      super.close();
+    }
+  }
+
+  /** Reads the given chars, then the rest of the given reader. */
+  private static final class PrefixReader extends Reader {
+    private final char[] prefix;
+    private final int prefixLength;
+    private final Reader in;
+    private int upto;
+
+    PrefixReader(char[] prefix, int prefixLength, Reader in) {
+      this.prefix = prefix;
+      this.prefixLength = prefixLength;
+      this.in = in;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+      if (upto < prefixLength) {
+        final int n = Math.min(len, prefixLength - upto);
+        System.arraycopy(prefix, upto, cbuf, off, n);
+        upto += n;
+        return n;
+      }
+      return in.read(cbuf, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+}
@@ -228,7 +228,8 @@ public class CharArrayMap<V> extends AbstractMap<Object,V> {
     }
   }
   
-  private boolean equals(char[] text1, int off, int len, char[] text2) {
+  // package private because used in FrozenCharArrayMap
+  boolean equals(char[] text1, int off, int len, char[] text2) {
     if (len != text2.length)
       return false;
     final int limit = off+len;
@@ -248,7 +249,7 @@ public class CharArrayMap<V> extends AbstractMap<Object,V> {
     return true;
   }
 
-  private boolean equals(CharSequence text1, char[] text2) {
+  boolean equals(CharSequence text1, char[] text2) {
     int len = text1.length();
     if (len != text2.length)
       return false;
@@ -565,6 +566,37 @@ public class CharArrayMap<V> extends AbstractMap<Object,V> {
     return new CharArrayMap<>(map, false);
   }
   
+  /**
+   * Returns an immutable copy of the given map that is optimized for lookups:
+   * keys are looked up with a perfect hash function built over them, so that
+   * finding a key, or finding that it is absent, takes a single hash
+   * computation and at most one key comparison. This is useful for large
+   * read-only maps that are consulted for every token.
+   * <p>
+   * Frozen maps are returned as-is, so they can be shared across analyzers
+   * without being copied again. In the very unlikely case that two keys have
+   * the same 64-bit hash code, an unmodifiable copy of the map is returned
+   * instead.
+   *
+   * @param map
+   *          a map to freeze
+   * @return an immutable copy of the given map
+   * @throws NullPointerException
+   *           if the given map is <code>null</code>.
+   */
+  public static <V> CharArrayMap<V> freeze(CharArrayMap<V> map) {
+    if (map == null)
+      throw new NullPointerException("Given map is null");
+    if (map == emptyMap() || map.isEmpty())
+      return emptyMap();
+    if (map instanceof FrozenCharArrayMap)
+      return map;
+    // snapshot the map, so that later changes to it don't affect the frozen map
+    final CharArrayMap<V> snapshot = copy(map);
+    final CharArrayMap<V> frozen = FrozenCharArrayMap.build(snapshot);
+    return frozen == null ? new UnmodifiableCharArrayMap<>(snapshot) : frozen;
+  }
+
   /** Returns an empty, unmodifiable map. */
   @SuppressWarnings("unchecked")
   public static <V> CharArrayMap<V> emptyMap() {
@@ -614,6 +646,220 @@ public class CharArrayMap<V> extends AbstractMap<Object,V> {
     }
   }
   
+  /**
+   * {@link org.apache.lucene.analysis.CharArrayMap.UnmodifiableCharArrayMap} that looks keys up with
+   * a perfect hash function (hash and displace): keys are first grouped into buckets, then each bucket
+   * gets a displacement so that all its keys land in free slots of the table. Lookups compute the hash
+   * of the text once, and compare it with the only key stored in the slot it maps to.
+   * <p>
+   * The open-addressing table of the wrapped map is kept as-is for iteration and copies.
+   */
+  // package private CharArraySet instanceof check in CharArraySet
+  static final class FrozenCharArrayMap<V> extends UnmodifiableCharArrayMap<V> {
+    // how many displacements to try for a bucket before giving up
+    private static final int MAX_DISPLACEMENT = 1 << 16;
+
+    private final boolean ignoreCase;
+    private final int[] displacements;
+    private final char[][] slotKeys;
+    private final V[] slotValues;
+
+    private FrozenCharArrayMap(CharArrayMap<V> map, int[] displacements, char[][] slotKeys, V[] slotValues) {
+      super(map);
+      this.ignoreCase = map.ignoreCase;
+      this.displacements = displacements;
+      this.slotKeys = slotKeys;
+      this.slotValues = slotValues;
+    }
+
+    /** Builds a frozen map over the given map, or returns null if two of its keys have the same hash code. */
+    @SuppressWarnings("unchecked")
+    static <V> FrozenCharArrayMap<V> build(CharArrayMap<V> map) {
+      final int size = map.size();
+      final char[][] keys = new char[size][];
+      final V[] values = (V[]) new Object[size];
+      final long[] hashes = new long[size];
+      int upto = 0;
+      for (int i = 0; i < map.keys.length; i++) {
+        if (map.keys[i] != null) {
+          keys[upto] = map.keys[i];
+          values[upto] = map.values[i];
+          hashes[upto] = hash(keys[upto], 0, keys[upto].length, map.ignoreCase);
+          upto++;
+        }
+      }
+      assert upto == size;
+
+      // keys with the same hash code can never be told apart by their displacement
+      final long[] sortedHashes = hashes.clone();
+      Arrays.sort(sortedHashes);
+      for (int i = 1; i < size; i++) {
+        if (sortedHashes[i] == sortedHashes[i - 1]) {
+          return null;
+        }
+      }
+
+      // same load factor as the mutable map, about 4 keys per bucket
+      int tableSize = INIT_SIZE;
+      while (size + (size >> 2) > tableSize)
+        tableSize <<= 1;
+      int numBuckets = 1;
+      while ((numBuckets << 2) < size)
+        numBuckets <<= 1;
+
+      // group keys by bucket
+      final int[] bucketStarts = new int[numBuckets + 1];
+      for (long hash : hashes) {
+        bucketStarts[bucket(hash, numBuckets) + 1]++;
+      }
+      for (int b = 0; b < numBuckets; b++) {
+        bucketStarts[b + 1] += bucketStarts[b];
+      }
+      final int[] bucketKeys = new int[size];
+      final int[] bucketUpto = Arrays.copyOf(bucketStarts, numBuckets);
+      for (int i = 0; i < size; i++) {
+        bucketKeys[bucketUpto[bucket(hashes[i], numBuckets)]++] = i;
+      }
+
+      // place the largest buckets first, while the table is still mostly free
+      final Integer[] bucketOrder = new Integer[numBuckets];
+      for (int b = 0; b < numBuckets; b++) {
+        bucketOrder[b] = b;
+      }
+      Arrays.sort(bucketOrder, (b1, b2) -> Integer.compare(bucketStarts[b2 + 1] - bucketStarts[b2], bucketStarts[b1 + 1] - bucketStarts[b1]));
+
+      final int[] displacements = new int[numBuckets];
+      final char[][] slotKeys = new char[tableSize][];
+      final V[] slotValues = (V[]) new Object[tableSize];
+      for (int b : bucketOrder) {
+        final int start = bucketStarts[b], end = bucketStarts[b + 1];
+        if (start == end) {
+          break;
+        }
+        boolean placed = false;
+        for (int displacement = 1; placed == false; displacement++) {
+          if (displacement > MAX_DISPLACEMENT) {
+            return null;
+          }
+          placed = true;
+          int i = start;
+          for (; i < end; i++) {
+            final int slot = slot(hashes[bucketKeys[i]], displacement, tableSize);
+            if (slotKeys[slot] != null) {
+              placed = false;
+              break;
+            }
+            slotKeys[slot] = keys[bucketKeys[i]];
+            slotValues[slot] = values[bucketKeys[i]];
+          }
+          if (placed) {
+            displacements[b] = displacement;
+          } else {
+            // undo this attempt
+            for (int j = start; j < i; j++) {
+              final int slot = slot(hashes[bucketKeys[j]], displacement, tableSize);
+              slotKeys[slot] = null;
+              slotValues[slot] = null;
+            }
+          }
+        }
+      }
+      return new FrozenCharArrayMap<>(map, displacements, slotKeys, slotValues);
+    }
+
+    // 64 bits, so that large maps are very unlikely to have keys with the same hash code
+    private static long hash(char[] text, int offset, int len, boolean ignoreCase) {
+      if (text == null)
+        throw new NullPointerException();
+      long hash = 0;
+      final int stop = offset + len;
+      if (ignoreCase) {
+        for (int i = offset; i < stop;) {
+          final int codePointAt = Character.codePointAt(text, i, stop);
+          hash = (hash + Character.toLowerCase(codePointAt) + 1) * 0x9e3779b97f4a7c15L;
+          i += Character.charCount(codePointAt);
+        }
+      } else {
+        for (int i = offset; i < stop; i++) {
+          hash = (hash + text[i] + 1) * 0x9e3779b97f4a7c15L;
+        }
+      }
+      return hash;
+    }
+
+    private static long hash(CharSequence text, boolean ignoreCase) {
+      if (text == null)
+        throw new NullPointerException();
+      long hash = 0;
+      final int len = text.length();
+      if (ignoreCase) {
+        for (int i = 0; i < len;) {
+          final int codePointAt = Character.codePointAt(text, i);
+          hash = (hash + Character.toLowerCase(codePointAt) + 1) * 0x9e3779b97f4a7c15L;
+          i += Character.charCount(codePointAt);
+        }
+      } else {
+        for (int i = 0; i < len; i++) {
+          hash = (hash + text.charAt(i) + 1) * 0x9e3779b97f4a7c15L;
+        }
+      }
+      return hash;
+    }
+
+    private static int mix(long hash) {
+      hash ^= hash >>> 33;
+      hash *= 0xff51afd7ed558ccdL;
+      hash ^= hash >>> 33;
+      return (int) hash;
+    }
+
+    private static int bucket(long hash, int numBuckets) {
+      return mix(hash) & (numBuckets - 1);
+    }
+
+    private static int slot(long hash, int displacement, int tableSize) {
+      return mix(hash ^ (displacement * 0xc2b2ae3d27d4eb4fL)) & (tableSize - 1);
+    }
+
+    private int getSlot(long hash) {
+      return slot(hash, displacements[bucket(hash, displacements.length)], slotKeys.length);
+    }
+
+    private int getSlot(char[] text, int off, int len) {
+      final int slot = getSlot(hash(text, off, len, ignoreCase));
+      final char[] key = slotKeys[slot];
+      return key != null && equals(text, off, len, key) ? slot : -1;
+    }
+
+    private int getSlot(CharSequence text) {
+      final int slot = getSlot(hash(text, ignoreCase));
+      final char[] key = slotKeys[slot];
+      return key != null && equals(text, key) ? slot : -1;
+    }
+
+    @Override
+    public boolean containsKey(char[] text, int off, int len) {
+      return getSlot(text, off, len) != -1;
+    }
+
+    @Override
+    public boolean containsKey(CharSequence cs) {
+      return getSlot(cs) != -1;
+    }
+
+    @Override
+    public V get(char[] text, int off, int len) {
+      final int slot = getSlot(text, off, len);
+      return slot == -1 ? null : slotValues[slot];
+    }
+
+    @Override
+    public V get(CharSequence cs) {
+      final int slot = getSlot(cs);
+      return slot == -1 ? null : slotValues[slot];
+    }
+  }
+
   /**
    * Empty {@link org.apache.lucene.analysis.CharArrayMap.UnmodifiableCharArrayMap} optimized for speed.
    * Contains checks will always return <code>false</code> or throw
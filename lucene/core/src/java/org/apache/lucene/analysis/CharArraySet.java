@@ -151,6 +151,28 @@ public class CharArraySet extends AbstractSet<Object> {
     return new CharArraySet(CharArrayMap.unmodifiableMap(set.map));
   }
 
+  /**
+   * Returns an immutable copy of the given set that is optimized for lookups.
+   * Frozen sets are returned as-is, so they can be shared across analyzers
+   * without being copied again.
+   * 
+   * @param set
+   *          a set to freeze
+   * @return an immutable copy of the given set
+   * @throws NullPointerException
+   *           if the given set is <code>null</code>.
+   * @see CharArrayMap#freeze(CharArrayMap)
+   */
+  public static CharArraySet freeze(CharArraySet set) {
+    if (set == null)
+      throw new NullPointerException("Given set is null");
+    if (set == EMPTY_SET)
+      return EMPTY_SET;
+    if (set.map instanceof CharArrayMap.FrozenCharArrayMap)
+      return set;
+    return new CharArraySet(CharArrayMap.freeze(set.map));
+  }
+
   /**
    * Returns a copy of the given set as a {@link CharArraySet}. If the given set
    * is a {@link CharArraySet} the ignoreCase property will be preserved.
@@ -55,8 +55,8 @@ public abstract class StopwordAnalyzerBase extends Analyzer {
    */
   protected StopwordAnalyzerBase(final CharArraySet stopwords) {
     // analyzers should use char array set for stopwords!
-    this.stopwords = stopwords == null ? CharArraySet.EMPTY_SET : CharArraySet
-        .unmodifiableSet(CharArraySet.copy(stopwords));
+    // frozen sets are shared as-is instead of being copied for every analyzer
+    this.stopwords = stopwords == null ? CharArraySet.EMPTY_SET : CharArraySet.freeze(stopwords);
   }
 
   /**
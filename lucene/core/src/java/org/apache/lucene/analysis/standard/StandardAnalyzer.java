@@ -49,7 +49,7 @@ public final class StandardAnalyzer extends StopwordAnalyzerBase {
       "they", "this", "to", "was", "will", "with"
     );
     final CharArraySet stopSet = new CharArraySet(stopWords, false);
-    ENGLISH_STOP_WORDS_SET = CharArraySet.unmodifiableSet(stopSet); 
+    ENGLISH_STOP_WORDS_SET = CharArraySet.freeze(stopSet);
   }
   
   /** Default maximum allowed token length */
@@ -138,7 +138,7 @@ public final class CompressingTermVectorsReader extends TermVectorsReader implem
     try {
       // Open the data file and read metadata
       final String vectorsStreamFN = IndexFileNames.segmentFileName(segment, segmentSuffix, VECTORS_EXTENSION);
-      vectorsStream = d.openInput(vectorsStreamFN, context);
+      vectorsStream = d.openInput(vectorsStreamFN, context.withReadAdvice(IOContext.ReadAdvice.RANDOM));
       final String codecNameDat = formatName + CODEC_SFX_DAT;
       int version2 = CodecUtil.checkIndexHeader(vectorsStream, codecNameDat, VERSION_START, VERSION_CURRENT, si.getId(), segmentSuffix);
       if (version != version2) {
@@ -33,6 +33,7 @@ import org.apache.lucene.index.IndexFileNames;
 import org.apache.lucene.index.PointValues;
 import org.apache.lucene.index.SegmentReadState;
 import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.util.Accountable;
 import org.apache.lucene.util.Accountables;
@@ -83,7 +84,7 @@ public class Lucene60PointsReader extends PointsReader implements Closeable {
                                                          readState.segmentSuffix,
                                                          Lucene60PointsFormat.DATA_EXTENSION);
     boolean success = false;
-    dataIn = readState.directory.openInput(dataFileName, readState.context);
+    dataIn = readState.directory.openInput(dataFileName, readState.context.withReadAdvice(IOContext.ReadAdvice.RANDOM));
     try {
 
       CodecUtil.checkIndexHeader(dataIn,
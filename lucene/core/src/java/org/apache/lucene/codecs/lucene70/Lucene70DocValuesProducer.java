@@ -38,6 +38,7 @@ import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.index.TermsEnum.SeekStatus;
 import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.RandomAccessInput;
 import org.apache.lucene.util.BytesRef;
@@ -84,7 +85,7 @@ final class Lucene70DocValuesProducer extends DocValuesProducer implements Close
     }
 
     String dataName = IndexFileNames.segmentFileName(state.segmentInfo.name, state.segmentSuffix, dataExtension);
-    this.data = state.directory.openInput(dataName, state.context);
+    this.data = state.directory.openInput(dataName, state.context.withReadAdvice(IOContext.ReadAdvice.RANDOM));
     boolean success = false;
     try {
       final int version2 = CodecUtil.checkIndexHeader(data, dataCodec,
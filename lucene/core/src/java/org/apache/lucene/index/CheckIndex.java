@@ -17,9 +17,12 @@
 package org.apache.lucene.index;
 
 
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.NumberFormat;
@@ -31,6 +34,13 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.lucene.codecs.Codec;
 import org.apache.lucene.codecs.DocValuesProducer;
@@ -62,8 +72,10 @@ import org.apache.lucene.util.CommandLineUtil;
 import org.apache.lucene.util.FixedBitSet;
 import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.LongBitSet;
+import org.apache.lucene.util.NamedThreadFactory;
 import org.apache.lucene.util.StringHelper;
 import org.apache.lucene.util.SuppressForbidden;
+import org.apache.lucene.util.ThreadInterruptedException;
 import org.apache.lucene.util.Version;
 import org.apache.lucene.util.automaton.Automata;
 import org.apache.lucene.util.automaton.CompiledAutomaton;
@@ -457,6 +469,24 @@ public final class CheckIndex implements Closeable {
   }
 
   private boolean verbose;
+
+  private int threadCount = 1;
+
+  /** Set the number of threads used to check the index. Segments, and
+   *  independent parts of segments such as postings, stored fields or doc
+   *  values, are checked concurrently when more than one thread is used.
+   *  Default is {@code 1}. */
+  public void setThreadCount(int threadCount) {
+    if (threadCount <= 0) {
+      throw new IllegalArgumentException("threadCount must be at least 1, got " + threadCount);
+    }
+    this.threadCount = threadCount;
+  }
+
+  /** See {@link #setThreadCount}. */
+  public int getThreadCount() {
+    return threadCount;
+  }
   
   /** See {@link #getChecksumsOnly}. */
   public boolean getChecksumsOnly() {
@@ -512,9 +542,33 @@ public final class CheckIndex implements Closeable {
    *  segments, on a large index it can take quite a long
    *  time to run. */
   public Status checkIndex(List<String> onlySegments) throws IOException {
+    if (threadCount <= 1) {
+      return checkIndex(onlySegments, null);
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount, new NamedThreadFactory("CheckIndex"));
+    try {
+      return checkIndex(onlySegments, executor);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /** Returns a {@link Status} instance detailing
+   *  the state of the index, checking segments and their
+   *  parts (postings, stored fields, doc values, ...)
+   *  concurrently on the provided executor.
+   *
+   *  <p>Messages are buffered per segment and per part, and
+   *  written to the info stream in the order in which
+   *  they would be written by a sequential check.
+   *
+   *  @param onlySegments list of specific segment names to check
+   *  @param executor the executor to check segments with, or
+   *         {@code null} to check everything on the calling thread
+   *  @lucene.experimental */
+  public Status checkIndex(List<String> onlySegments, Executor executor) throws IOException {
     ensureOpen();
     long startNS = System.nanoTime();
-    NumberFormat nf = NumberFormat.getInstance(Locale.ROOT);
     SegmentInfos sis = null;
     Status result = new Status();
     result.dir = dir;
@@ -631,6 +685,7 @@ public final class CheckIndex implements Closeable {
     result.newSegments.clear();
     result.maxSegmentName = -1;
 
+    final List<Integer> toCheck = new ArrayList<>();
     for(int i=0;i<numSegments;i++) {
       final SegmentCommitInfo info = sis.info(i);
       int segmentName = Integer.parseInt(info.info.name.substring(1), Character.MAX_RADIX);
@@ -640,174 +695,39 @@ public final class CheckIndex implements Closeable {
       if (onlySegments != null && !onlySegments.contains(info.info.name)) {
         continue;
       }
-      Status.SegmentInfoStatus segInfoStat = new Status.SegmentInfoStatus();
-      result.segmentInfos.add(segInfoStat);
-      msg(infoStream, "  " + (1+i) + " of " + numSegments + ": name=" + info.info.name + " maxDoc=" + info.info.maxDoc());
-      segInfoStat.name = info.info.name;
-      segInfoStat.maxDoc = info.info.maxDoc();
-      
-      final Version version = info.info.getVersion();
-      if (info.info.maxDoc() <= 0) {
-        throw new RuntimeException("illegal number of documents: maxDoc=" + info.info.maxDoc());
-      }
-
-      int toLoseDocCount = info.info.maxDoc();
-
-      SegmentReader reader = null;
-      Sort previousIndexSort = null;
+      toCheck.add(i);
+    }
 
+    if (executor == null) {
+      for (int i : toCheck) {
+        addSegmentCheck(result, sis.info(i), checkSegment(sis.info(i), i, numSegments, infoStream, null));
+      }
+    } else {
+      // segments are checked concurrently, but their (buffered) output and
+      // status are consumed in order so that reports stay readable
+      final SegmentInfos segmentInfos = sis;
+      final List<CheckTask<SegmentCheck>> tasks = new ArrayList<>();
       try {
-        msg(infoStream, "    version=" + (version == null ? "3.0" : version));
-        msg(infoStream, "    id=" + StringHelper.idToString(info.info.getId()));
-        final Codec codec = info.info.getCodec();
-        msg(infoStream, "    codec=" + codec);
-        segInfoStat.codec = codec;
-        msg(infoStream, "    compound=" + info.info.getUseCompoundFile());
-        segInfoStat.compound = info.info.getUseCompoundFile();
-        msg(infoStream, "    numFiles=" + info.files().size());
-        Sort indexSort = info.info.getIndexSort();
-        if (indexSort != null) {
-          msg(infoStream, "    sort=" + indexSort);
-          if (previousIndexSort != null) {
-            if (previousIndexSort.equals(indexSort) == false) {
-              throw new RuntimeException("index sort changed from " + previousIndexSort + " to " + indexSort);
-            }
-          } else {
-            previousIndexSort = indexSort;
-          }
-        }
-        segInfoStat.numFiles = info.files().size();
-        segInfoStat.sizeMB = info.sizeInBytes()/(1024.*1024.);
-        msg(infoStream, "    size (MB)=" + nf.format(segInfoStat.sizeMB));
-        Map<String,String> diagnostics = info.info.getDiagnostics();
-        segInfoStat.diagnostics = diagnostics;
-        if (diagnostics.size() > 0) {
-          msg(infoStream, "    diagnostics = " + diagnostics);
-        }
-
-        if (!info.hasDeletions()) {
-          msg(infoStream, "    no deletions");
-          segInfoStat.hasDeletions = false;
-        } else {
-          msg(infoStream, "    has deletions [delGen=" + info.getDelGen() + "]");
-          segInfoStat.hasDeletions = true;
-          segInfoStat.deletionsGen = info.getDelGen();
-        }
-        
-        long startOpenReaderNS = System.nanoTime();
-        if (infoStream != null)
-          infoStream.print("    test: open reader.........");
-        reader = new SegmentReader(info, IOContext.DEFAULT);
-        msg(infoStream, String.format(Locale.ROOT, "OK [took %.3f sec]", nsToSec(System.nanoTime()-startOpenReaderNS)));
-
-        segInfoStat.openReaderPassed = true;
-        
-        long startIntegrityNS = System.nanoTime();
-        if (infoStream != null)
-          infoStream.print("    test: check integrity.....");
-        reader.checkIntegrity();
-        msg(infoStream, String.format(Locale.ROOT, "OK [took %.3f sec]", nsToSec(System.nanoTime()-startIntegrityNS)));
-
-        if (reader.maxDoc() != info.info.maxDoc()) {
-          throw new RuntimeException("SegmentReader.maxDoc() " + reader.maxDoc() + " != SegmentInfo.maxDoc " + info.info.maxDoc());
-        }
-        
-        final int numDocs = reader.numDocs();
-        toLoseDocCount = numDocs;
-        
-        if (reader.hasDeletions()) {
-          if (reader.numDocs() != info.info.maxDoc() - info.getDelCount()) {
-            throw new RuntimeException("delete count mismatch: info=" + (info.info.maxDoc() - info.getDelCount()) + " vs reader=" + reader.numDocs());
-          }
-          if ((info.info.maxDoc() - reader.numDocs()) > reader.maxDoc()) {
-            throw new RuntimeException("too many deleted docs: maxDoc()=" + reader.maxDoc() + " vs del count=" + (info.info.maxDoc() - reader.numDocs()));
-          }
-          if (info.info.maxDoc() - reader.numDocs() != info.getDelCount()) {
-            throw new RuntimeException("delete count mismatch: info=" + info.getDelCount() + " vs reader=" + (info.info.maxDoc() - reader.numDocs()));
-          }
-        } else {
-          if (info.getDelCount() != 0) {
-            throw new RuntimeException("delete count mismatch: info=" + info.getDelCount() + " vs reader=" + (info.info.maxDoc() - reader.numDocs()));
-          }
-        }
-        
-        if (checksumsOnly == false) {
-          // Test Livedocs
-          segInfoStat.liveDocStatus = testLiveDocs(reader, infoStream, failFast);
-
-          // Test Fieldinfos
-          segInfoStat.fieldInfoStatus = testFieldInfos(reader, infoStream, failFast);
-        
-          // Test Field Norms
-          segInfoStat.fieldNormStatus = testFieldNorms(reader, infoStream, failFast);
-
-          // Test the Term Index
-          segInfoStat.termIndexStatus = testPostings(reader, infoStream, verbose, failFast, version);
-
-          // Test Stored Fields
-          segInfoStat.storedFieldStatus = testStoredFields(reader, infoStream, failFast);
-
-          // Test Term Vectors
-          segInfoStat.termVectorStatus = testTermVectors(reader, infoStream, verbose, crossCheckTermVectors, failFast, version);
-
-          // Test Docvalues
-          segInfoStat.docValuesStatus = testDocValues(reader, infoStream, failFast);
-
-          // Test PointValues
-          segInfoStat.pointsStatus = testPoints(reader, infoStream, failFast);
-
-          // Test index sort
-          segInfoStat.indexSortStatus = testSort(reader, indexSort, infoStream, failFast);
-
-          // Rethrow the first exception we encountered
-          //  This will cause stats for failed segments to be incremented properly
-          if (segInfoStat.liveDocStatus.error != null) {
-            throw new RuntimeException("Live docs test failed");
-          } else if (segInfoStat.fieldInfoStatus.error != null) {
-            throw new RuntimeException("Field Info test failed");
-          } else if (segInfoStat.fieldNormStatus.error != null) {
-            throw new RuntimeException("Field Norm test failed");
-          } else if (segInfoStat.termIndexStatus.error != null) {
-            throw new RuntimeException("Term Index test failed");
-          } else if (segInfoStat.storedFieldStatus.error != null) {
-            throw new RuntimeException("Stored Field test failed");
-          } else if (segInfoStat.termVectorStatus.error != null) {
-            throw new RuntimeException("Term Vector test failed");
-          } else if (segInfoStat.docValuesStatus.error != null) {
-            throw new RuntimeException("DocValues test failed");
-          } else if (segInfoStat.pointsStatus.error != null) {
-            throw new RuntimeException("Points test failed");
+        for (int i : toCheck) {
+          final int segment = i;
+          CheckTask<SegmentCheck> task = newCheckTask(infoStream,
+              out -> checkSegment(segmentInfos.info(segment), segment, numSegments, out, executor));
+          tasks.add(task);
+          try {
+            executor.execute(task);
+          } catch (RejectedExecutionException e) {
+            // the segment will be checked on this thread
           }
         }
-
-        msg(infoStream, "");
-        
-        if (verbose) {
-          msg(infoStream, "detailed segment RAM usage: ");
-          msg(infoStream, Accountables.toString(reader));
+        for (int i = 0; i < tasks.size(); ++i) {
+          final int segment = toCheck.get(i);
+          addSegmentCheck(result, sis.info(segment), tasks.get(i).get(infoStream));
         }
-
-      } catch (Throwable t) {
-        if (failFast) {
-          IOUtils.reThrow(t);
-        }
-        msg(infoStream, "FAILED");
-        String comment;
-        comment = "exorciseIndex() would remove reference to this segment";
-        msg(infoStream, "    WARNING: " + comment + "; full exception:");
-        if (infoStream != null)
-          t.printStackTrace(infoStream);
-        msg(infoStream, "");
-        result.totLoseDocCount += toLoseDocCount;
-        result.numBadSegments++;
-        continue;
       } finally {
-        if (reader != null)
-          reader.close();
+        for (CheckTask<SegmentCheck> task : tasks) {
+          task.awaitQuietly();
+        }
       }
-
-      // Keeper
-      result.newSegments.add(info.clone());
     }
 
     if (0 == result.numBadSegments) {
@@ -830,6 +750,339 @@ public final class CheckIndex implements Closeable {
     return result;
   }
 
+  /** Result of the check of a single segment. */
+  private static final class SegmentCheck {
+    final Status.SegmentInfoStatus status;
+    final int toLoseDocCount;
+    final boolean failed;
+
+    SegmentCheck(Status.SegmentInfoStatus status, int toLoseDocCount, boolean failed) {
+      this.status = status;
+      this.toLoseDocCount = toLoseDocCount;
+      this.failed = failed;
+    }
+  }
+
+  private static void addSegmentCheck(Status result, SegmentCommitInfo info, SegmentCheck check) {
+    result.segmentInfos.add(check.status);
+    if (check.failed) {
+      result.totLoseDocCount += check.toLoseDocCount;
+      result.numBadSegments++;
+    } else {
+      // Keeper
+      result.newSegments.add(info.clone());
+    }
+  }
+
+  /** Checks a single segment, running the checks of its parts on the
+   *  given executor if it is not null. */
+  private SegmentCheck checkSegment(SegmentCommitInfo info, int i, int numSegments, PrintStream infoStream, Executor executor) throws IOException {
+    NumberFormat nf = NumberFormat.getInstance(Locale.ROOT);
+    Status.SegmentInfoStatus segInfoStat = new Status.SegmentInfoStatus();
+    msg(infoStream, "  " + (1+i) + " of " + numSegments + ": name=" + info.info.name + " maxDoc=" + info.info.maxDoc());
+    segInfoStat.name = info.info.name;
+    segInfoStat.maxDoc = info.info.maxDoc();
+    
+    final Version version = info.info.getVersion();
+    if (info.info.maxDoc() <= 0) {
+      throw new RuntimeException("illegal number of documents: maxDoc=" + info.info.maxDoc());
+    }
+
+    int toLoseDocCount = info.info.maxDoc();
+
+    SegmentReader reader = null;
+    Sort previousIndexSort = null;
+
+    try {
+      msg(infoStream, "    version=" + (version == null ? "3.0" : version));
+      msg(infoStream, "    id=" + StringHelper.idToString(info.info.getId()));
+      final Codec codec = info.info.getCodec();
+      msg(infoStream, "    codec=" + codec);
+      segInfoStat.codec = codec;
+      msg(infoStream, "    compound=" + info.info.getUseCompoundFile());
+      segInfoStat.compound = info.info.getUseCompoundFile();
+      msg(infoStream, "    numFiles=" + info.files().size());
+      Sort indexSort = info.info.getIndexSort();
+      if (indexSort != null) {
+        msg(infoStream, "    sort=" + indexSort);
+        if (previousIndexSort != null) {
+          if (previousIndexSort.equals(indexSort) == false) {
+            throw new RuntimeException("index sort changed from " + previousIndexSort + " to " + indexSort);
+          }
+        } else {
+          previousIndexSort = indexSort;
+        }
+      }
+      segInfoStat.numFiles = info.files().size();
+      segInfoStat.sizeMB = info.sizeInBytes()/(1024.*1024.);
+      msg(infoStream, "    size (MB)=" + nf.format(segInfoStat.sizeMB));
+      Map<String,String> diagnostics = info.info.getDiagnostics();
+      segInfoStat.diagnostics = diagnostics;
+      if (diagnostics.size() > 0) {
+        msg(infoStream, "    diagnostics = " + diagnostics);
+      }
+
+      if (!info.hasDeletions()) {
+        msg(infoStream, "    no deletions");
+        segInfoStat.hasDeletions = false;
+      } else {
+        msg(infoStream, "    has deletions [delGen=" + info.getDelGen() + "]");
+        segInfoStat.hasDeletions = true;
+        segInfoStat.deletionsGen = info.getDelGen();
+      }
+      
+      long startOpenReaderNS = System.nanoTime();
+      if (infoStream != null)
+        infoStream.print("    test: open reader.........");
+      reader = new SegmentReader(info, IOContext.DEFAULT);
+      msg(infoStream, String.format(Locale.ROOT, "OK [took %.3f sec]", nsToSec(System.nanoTime()-startOpenReaderNS)));
+
+      segInfoStat.openReaderPassed = true;
+      
+      long startIntegrityNS = System.nanoTime();
+      if (infoStream != null)
+        infoStream.print("    test: check integrity.....");
+      reader.checkIntegrity();
+      msg(infoStream, String.format(Locale.ROOT, "OK [took %.3f sec]", nsToSec(System.nanoTime()-startIntegrityNS)));
+
+      if (reader.maxDoc() != info.info.maxDoc()) {
+        throw new RuntimeException("SegmentReader.maxDoc() " + reader.maxDoc() + " != SegmentInfo.maxDoc " + info.info.maxDoc());
+      }
+      
+      final int numDocs = reader.numDocs();
+      toLoseDocCount = numDocs;
+      
+      if (reader.hasDeletions()) {
+        if (reader.numDocs() != info.info.maxDoc() - info.getDelCount()) {
+          throw new RuntimeException("delete count mismatch: info=" + (info.info.maxDoc() - info.getDelCount()) + " vs reader=" + reader.numDocs());
+        }
+        if ((info.info.maxDoc() - reader.numDocs()) > reader.maxDoc()) {
+          throw new RuntimeException("too many deleted docs: maxDoc()=" + reader.maxDoc() + " vs del count=" + (info.info.maxDoc() - reader.numDocs()));
+        }
+        if (info.info.maxDoc() - reader.numDocs() != info.getDelCount()) {
+          throw new RuntimeException("delete count mismatch: info=" + info.getDelCount() + " vs reader=" + (info.info.maxDoc() - reader.numDocs()));
+        }
+      } else {
+        if (info.getDelCount() != 0) {
+          throw new RuntimeException("delete count mismatch: info=" + info.getDelCount() + " vs reader=" + (info.info.maxDoc() - reader.numDocs()));
+        }
+      }
+      
+      if (checksumsOnly == false && executor != null) {
+        testPartsConcurrently(reader, indexSort, version, segInfoStat, infoStream, executor);
+      } else if (checksumsOnly == false) {
+        // Test Livedocs
+        segInfoStat.liveDocStatus = testLiveDocs(reader, infoStream, failFast);
+
+        // Test Fieldinfos
+        segInfoStat.fieldInfoStatus = testFieldInfos(reader, infoStream, failFast);
+      
+        // Test Field Norms
+        segInfoStat.fieldNormStatus = testFieldNorms(reader, infoStream, failFast);
+
+        // Test the Term Index
+        segInfoStat.termIndexStatus = testPostings(reader, infoStream, verbose, failFast, version);
+
+        // Test Stored Fields
+        segInfoStat.storedFieldStatus = testStoredFields(reader, infoStream, failFast);
+
+        // Test Term Vectors
+        segInfoStat.termVectorStatus = testTermVectors(reader, infoStream, verbose, crossCheckTermVectors, failFast, version);
+
+        // Test Docvalues
+        segInfoStat.docValuesStatus = testDocValues(reader, infoStream, failFast);
+
+        // Test PointValues
+        segInfoStat.pointsStatus = testPoints(reader, infoStream, failFast);
+
+        // Test index sort
+        segInfoStat.indexSortStatus = testSort(reader, indexSort, infoStream, failFast);
+      }
+
+      if (checksumsOnly == false) {
+        // Rethrow the first exception we encountered
+        //  This will cause stats for failed segments to be incremented properly
+        if (segInfoStat.liveDocStatus.error != null) {
+          throw new RuntimeException("Live docs test failed");
+        } else if (segInfoStat.fieldInfoStatus.error != null) {
+          throw new RuntimeException("Field Info test failed");
+        } else if (segInfoStat.fieldNormStatus.error != null) {
+          throw new RuntimeException("Field Norm test failed");
+        } else if (segInfoStat.termIndexStatus.error != null) {
+          throw new RuntimeException("Term Index test failed");
+        } else if (segInfoStat.storedFieldStatus.error != null) {
+          throw new RuntimeException("Stored Field test failed");
+        } else if (segInfoStat.termVectorStatus.error != null) {
+          throw new RuntimeException("Term Vector test failed");
+        } else if (segInfoStat.docValuesStatus.error != null) {
+          throw new RuntimeException("DocValues test failed");
+        } else if (segInfoStat.pointsStatus.error != null) {
+          throw new RuntimeException("Points test failed");
+        }
+      }
+
+      msg(infoStream, "");
+      
+      if (verbose) {
+        msg(infoStream, "detailed segment RAM usage: ");
+        msg(infoStream, Accountables.toString(reader));
+      }
+
+    } catch (Throwable t) {
+      if (failFast) {
+        IOUtils.reThrow(t);
+      }
+      msg(infoStream, "FAILED");
+      String comment;
+      comment = "exorciseIndex() would remove reference to this segment";
+      msg(infoStream, "    WARNING: " + comment + "; full exception:");
+      if (infoStream != null)
+        t.printStackTrace(infoStream);
+      msg(infoStream, "");
+      return new SegmentCheck(segInfoStat, toLoseDocCount, true);
+    } finally {
+      if (reader != null)
+        reader.close();
+    }
+
+    return new SegmentCheck(segInfoStat, toLoseDocCount, false);
+  }
+
+  /** Runs the checks of the independent parts of a segment concurrently,
+   *  and writes their output in the same order as a sequential check. */
+  private void testPartsConcurrently(SegmentReader reader, Sort indexSort, Version version,
+                                     Status.SegmentInfoStatus segInfoStat, PrintStream infoStream,
+                                     Executor executor) throws IOException {
+    final List<CheckTask<?>> tasks = new ArrayList<>();
+    try {
+      CheckTask<Status.LiveDocStatus> liveDocs = submit(executor, tasks, infoStream, out -> testLiveDocs(reader, out, failFast));
+      CheckTask<Status.FieldInfoStatus> fieldInfos = submit(executor, tasks, infoStream, out -> testFieldInfos(reader, out, failFast));
+      CheckTask<Status.FieldNormStatus> norms = submit(executor, tasks, infoStream, out -> testFieldNorms(reader, out, failFast));
+      CheckTask<Status.TermIndexStatus> postings = submit(executor, tasks, infoStream, out -> testPostings(reader, out, verbose, failFast, version));
+      CheckTask<Status.StoredFieldStatus> storedFields = submit(executor, tasks, infoStream, out -> testStoredFields(reader, out, failFast));
+      CheckTask<Status.TermVectorStatus> termVectors = submit(executor, tasks, infoStream,
+          out -> testTermVectors(reader, out, verbose, crossCheckTermVectors, failFast, version));
+      CheckTask<Status.DocValuesStatus> docValues = submit(executor, tasks, infoStream, out -> testDocValues(reader, out, failFast));
+      CheckTask<Status.PointsStatus> points = submit(executor, tasks, infoStream, out -> testPoints(reader, out, failFast));
+      CheckTask<Status.IndexSortStatus> sort = submit(executor, tasks, infoStream, out -> testSort(reader, indexSort, out, failFast));
+
+      segInfoStat.liveDocStatus = liveDocs.get(infoStream);
+      segInfoStat.fieldInfoStatus = fieldInfos.get(infoStream);
+      segInfoStat.fieldNormStatus = norms.get(infoStream);
+      segInfoStat.termIndexStatus = postings.get(infoStream);
+      segInfoStat.storedFieldStatus = storedFields.get(infoStream);
+      segInfoStat.termVectorStatus = termVectors.get(infoStream);
+      segInfoStat.docValuesStatus = docValues.get(infoStream);
+      segInfoStat.pointsStatus = points.get(infoStream);
+      segInfoStat.indexSortStatus = sort.get(infoStream);
+    } finally {
+      // don't let checks run against a closed reader
+      for (CheckTask<?> task : tasks) {
+        task.awaitQuietly();
+      }
+    }
+  }
+
+  private static <T> CheckTask<T> submit(Executor executor, List<CheckTask<?>> tasks, PrintStream infoStream, Check<T> check) {
+    CheckTask<T> task = newCheckTask(infoStream, check);
+    tasks.add(task);
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      // the task will run on the calling thread
+    }
+    return task;
+  }
+
+  /** A check that writes its messages to the provided stream, which may be null. */
+  private interface Check<T> {
+    T run(PrintStream infoStream) throws IOException;
+  }
+
+  private static <T> CheckTask<T> newCheckTask(PrintStream infoStream, Check<T> check) {
+    final ByteArrayOutputStream output;
+    final PrintStream out;
+    if (infoStream == null) {
+      output = null;
+      out = null;
+    } else {
+      output = new ByteArrayOutputStream();
+      try {
+        out = new PrintStream(output, true, IOUtils.UTF_8);
+      } catch (UnsupportedEncodingException e) {
+        throw new AssertionError(e);
+      }
+    }
+    return new CheckTask<>(check, output, out);
+  }
+
+  /**
+   * A check that may run on another thread and buffers its output. Callers
+   * run the check inline if no thread picked it up yet, so that waiting on
+   * a task never blocks on a full executor.
+   */
+  private static final class CheckTask<T> extends FutureTask<T> {
+    private final SkippableCheck<T> check;
+    private final ByteArrayOutputStream output;
+
+    CheckTask(Check<T> check, ByteArrayOutputStream output, PrintStream out) {
+      this(new SkippableCheck<>(check, out), output);
+    }
+
+    private CheckTask(SkippableCheck<T> check, ByteArrayOutputStream output) {
+      super(check);
+      this.check = check;
+      this.output = output;
+    }
+
+    /** Waits for the result of the check, running it on the calling thread if it
+     *  has not started yet, and copies its buffered output to the given stream. */
+    T get(PrintStream infoStream) throws IOException {
+      run(); // no-op if the check already ran or is running on another thread
+      try {
+        return get();
+      } catch (InterruptedException e) {
+        throw new ThreadInterruptedException(e);
+      } catch (ExecutionException e) {
+        IOUtils.reThrow(e.getCause());
+        throw new AssertionError("unreachable");
+      } finally {
+        if (output != null) {
+          infoStream.print(new String(output.toByteArray(), StandardCharsets.UTF_8));
+        }
+      }
+    }
+
+    /** Makes sure the check is not running anymore, skipping it if it has not started yet. */
+    void awaitQuietly() {
+      check.skip = true;
+      run();
+      try {
+        get();
+      } catch (InterruptedException e) {
+        throw new ThreadInterruptedException(e);
+      } catch (ExecutionException e) {
+        // ignore, the first failure has been rethrown already
+      }
+    }
+  }
+
+  private static final class SkippableCheck<T> implements Callable<T> {
+    private final Check<T> check;
+    private final PrintStream out;
+    volatile boolean skip;
+
+    SkippableCheck(Check<T> check, PrintStream out) {
+      this.check = check;
+      this.out = out;
+    }
+
+    @Override
+    public T call() throws IOException {
+      return skip ? null : check.run(out);
+    }
+  }
+
   /**
    * Tests index sort order.
    * @lucene.experimental
@@ -2660,6 +2913,7 @@ public final class CheckIndex implements Closeable {
     boolean doCrossCheckTermVectors = false;
     boolean verbose = false;
     boolean doChecksumsOnly = false;
+    int threadCount = 1;
     List<String> onlySegments = new ArrayList<>();
     String indexPath = null;
     String dirImpl = null;
@@ -2752,6 +3006,19 @@ public final class CheckIndex implements Closeable {
         }
         i++;
         opts.onlySegments.add(args[i]);
+      } else if ("-threadCount".equals(arg)) {
+        if (i == args.length - 1) {
+          throw new IllegalArgumentException("ERROR: missing value for -threadCount option");
+        }
+        i++;
+        try {
+          opts.threadCount = Integer.parseInt(args[i]);
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("ERROR: -threadCount expects an integer, got '" + args[i] + "'");
+        }
+        if (opts.threadCount <= 0) {
+          throw new IllegalArgumentException("ERROR: -threadCount must be at least 1, got " + opts.threadCount);
+        }
       } else if ("-dir-impl".equals(arg)) {
         if (i == args.length - 1) {
           throw new IllegalArgumentException("ERROR: missing value for -dir-impl option");
@@ -2769,7 +3036,7 @@ public final class CheckIndex implements Closeable {
 
     if (opts.indexPath == null) {
       throw new IllegalArgumentException("\nERROR: index path not specified" +
-                         "\nUsage: java org.apache.lucene.index.CheckIndex pathToIndex [-exorcise] [-crossCheckTermVectors] [-segment X] [-segment Y] [-dir-impl X]\n" +
+                         "\nUsage: java org.apache.lucene.index.CheckIndex pathToIndex [-exorcise] [-crossCheckTermVectors] [-segment X] [-segment Y] [-threadCount X] [-dir-impl X]\n" +
                          "\n" +
                          "  -exorcise: actually write a new segments_N file, removing any problematic segments\n" +
                          "  -fast: just verify file checksums, omitting logical integrity checks\n" + 
@@ -2779,6 +3046,7 @@ public final class CheckIndex implements Closeable {
                          "  -segment X: only check the specified segments.  This can be specified multiple\n" + 
                          "              times, to check more than one segment, eg '-segment _2 -segment _a'.\n" +
                          "              You can't use this with the -exorcise option\n" +
+                         "  -threadCount X: number of threads used to check segments and their parts concurrently (default: 1)\n" +
                          "  -dir-impl X: use a specific " + FSDirectory.class.getSimpleName() + " implementation. " +
                          "If no package is specified the " + FSDirectory.class.getPackage().getName() + " package will be used.\n" +
                          "\n" +
@@ -2819,6 +3087,7 @@ public final class CheckIndex implements Closeable {
     setCrossCheckTermVectors(opts.doCrossCheckTermVectors);
     setChecksumsOnly(opts.doChecksumsOnly);
     setInfoStream(opts.out, opts.verbose);
+    setThreadCount(opts.threadCount);
 
     Status result = checkIndex(opts.onlySegments);
     if (result.missingSegments) {
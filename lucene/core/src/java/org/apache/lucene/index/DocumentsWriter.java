@@ -19,10 +19,16 @@ package org.apache.lucene.index;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Locale;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lucene.analysis.Analyzer;
@@ -34,7 +40,9 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.InfoStream;
+import org.apache.lucene.util.ThreadInterruptedException;
 
 /**
  * This class accepts multiple added documents and directly
@@ -369,6 +377,7 @@ final class DocumentsWriter implements Closeable, Accountable {
   public void close() {
     closed = true;
     flushControl.setClosed();
+    flushControl.publishFlushEvents();
   }
 
   private boolean preUpdate() throws IOException, AbortingException {
@@ -400,6 +409,7 @@ final class DocumentsWriter implements Closeable, Accountable {
         hasEvents |= doFlush(nextPendingFlush);
       }
     }
+    flushControl.publishFlushEvents();
 
     return hasEvents;
   }
@@ -536,7 +546,9 @@ final class DocumentsWriter implements Closeable, Accountable {
           boolean dwptSuccess = false;
           try {
             // flush concurrently without locking
+            final long flushStartNS = System.nanoTime();
             final FlushedSegment newSegment = flushingDWPT.flush();
+            flushControl.addFlushNanos(System.nanoTime() - flushStartNS);
             ticketQueue.addSegment(ticket, newSegment);
             dwptSuccess = true;
           } finally {
@@ -598,6 +610,7 @@ final class DocumentsWriter implements Closeable, Accountable {
         putEvent(ApplyDeletesEvent.INSTANCE);
       }
     }
+    flushControl.publishFlushEvents();
 
     return hasEvents;
   }
@@ -648,6 +661,10 @@ final class DocumentsWriter implements Closeable, Accountable {
     boolean anythingFlushed = false;
     try {
       DocumentsWriterPerThread flushingDWPT;
+      final Executor flushExecutor = config.getFlushExecutor();
+      if (flushExecutor != null) {
+        anythingFlushed |= flushConcurrently(flushExecutor);
+      }
       // Help out with flushing:
       while ((flushingDWPT = flushControl.nextPendingFlush()) != null) {
         anythingFlushed |= doFlush(flushingDWPT);
@@ -672,6 +689,92 @@ final class DocumentsWriter implements Closeable, Accountable {
     }
   }
   
+  /**
+   * Hands all DWPT that are currently pending for the full flush but the first
+   * to the given executor and flushes the first one on the calling thread. Each
+   * flush tries to publish all tickets at the head of the ticket queue as soon as
+   * it is done so segments become visible without waiting for the slowest flush.
+   */
+  private boolean flushConcurrently(Executor flushExecutor) throws IOException, AbortingException {
+    final List<DocumentsWriterPerThread> pending = new ArrayList<>();
+    DocumentsWriterPerThread flushingDWPT;
+    while ((flushingDWPT = flushControl.nextPendingFlush()) != null) {
+      pending.add(flushingDWPT);
+    }
+    if (pending.isEmpty()) {
+      return false;
+    }
+    if (infoStream.isEnabled("DW")) {
+      infoStream.message("DW", Thread.currentThread().getName() + ": flush " + pending.size() + " DWPT concurrently");
+    }
+    final List<FutureTask<Boolean>> tasks = new ArrayList<>(pending.size() - 1);
+    for (int i = 1; i < pending.size(); i++) {
+      final DocumentsWriterPerThread dwpt = pending.get(i);
+      final FutureTask<Boolean> task = new FutureTask<>(() -> {
+        final boolean flushed = doFlush(dwpt);
+        ticketQueue.tryPurge(writer);
+        return flushed;
+      });
+      tasks.add(task);
+      try {
+        flushExecutor.execute(task);
+      } catch (RejectedExecutionException e) {
+        task.run();
+      }
+    }
+    final List<Throwable> failures = new ArrayList<>();
+    boolean anythingFlushed = false;
+    try {
+      anythingFlushed = doFlush(pending.get(0));
+      ticketQueue.tryPurge(writer);
+    } catch (Throwable t) {
+      failures.add(t);
+    }
+    // we must wait for all flushes even if one of them failed or we got
+    // interrupted, otherwise the full flush could release DWPTs that are
+    // still flushing
+    InterruptedException interrupted = null;
+    for (FutureTask<Boolean> task : tasks) {
+      while (true) {
+        try {
+          anythingFlushed |= task.get();
+          break;
+        } catch (ExecutionException e) {
+          failures.add(e.getCause());
+          break;
+        } catch (InterruptedException e) {
+          if (interrupted == null) {
+            interrupted = e;
+          }
+        }
+      }
+    }
+    if (interrupted != null) {
+      Thread.currentThread().interrupt();
+      failures.add(new ThreadInterruptedException(interrupted));
+    }
+    if (failures.isEmpty() == false) {
+      // an aborting exception must win so that IndexWriter sees the tragedy
+      Throwable th = failures.get(0);
+      for (Throwable t : failures) {
+        if (t instanceof AbortingException) {
+          th = t;
+          break;
+        }
+      }
+      for (Throwable t : failures) {
+        if (t != th) {
+          th.addSuppressed(t);
+        }
+      }
+      if (th instanceof AbortingException) {
+        throw (AbortingException) th;
+      }
+      IOUtils.reThrow(th);
+    }
+    return anythingFlushed;
+  }
+
   void finishFullFlush(IndexWriter indexWriter, boolean success) {
     assert indexWriter.holdsFullFlushLock();
     try {
@@ -689,6 +792,7 @@ final class DocumentsWriter implements Closeable, Accountable {
     } finally {
       pendingChangesInCurrentFullFlush = false;
     }
+    flushControl.publishFlushEvents();
   }
 
   public LiveIndexWriterConfig getIndexWriterConfig() {
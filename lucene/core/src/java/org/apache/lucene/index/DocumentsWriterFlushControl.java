@@ -24,7 +24,9 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.lucene.index.DocumentsWriterPerThreadPool.ThreadState;
 import org.apache.lucene.util.Accountable;
@@ -48,6 +50,8 @@ final class DocumentsWriterFlushControl implements Accountable {
   private final long hardMaxBytesPerDWPT;
   private long activeBytes = 0;
   private long flushBytes = 0;
+  private long bytesAdded = 0;
+  private double avgFlushNanos = 0;
   private volatile int numPending = 0;
   private int numDocsSinceStalled = 0; // only with assert
   final AtomicBoolean flushDeletes = new AtomicBoolean(false);
@@ -56,6 +60,10 @@ final class DocumentsWriterFlushControl implements Accountable {
   // only for safety reasons if a DWPT is close to the RAM limit
   private final Queue<BlockedFlush> blockedFlushes = new LinkedList<>();
   private final IdentityHashMap<DocumentsWriterPerThread, Long> flushingWriters = new IdentityHashMap<>();
+  // FlushListener notifications, recorded while this is locked and delivered
+  // by publishFlushEvents once it is released
+  private final Queue<Runnable> flushEvents = new ConcurrentLinkedQueue<>();
+  private final ReentrantLock publishLock = new ReentrantLock();
 
 
   double maxConfiguredRamBuffer = 0;
@@ -72,6 +80,7 @@ final class DocumentsWriterFlushControl implements Accountable {
   private final LiveIndexWriterConfig config;
   private final BufferedUpdatesStream bufferedUpdatesStream;
   private final InfoStream infoStream;
+  private volatile PrimaryKeyVersionMap primaryKeys; // null if there is no primary key field
 
   DocumentsWriterFlushControl(DocumentsWriter documentsWriter, LiveIndexWriterConfig config, BufferedUpdatesStream bufferedUpdatesStream) {
     this.infoStream = config.getInfoStream();
@@ -144,6 +153,9 @@ final class DocumentsWriterFlushControl implements Accountable {
   private void commitPerThreadBytes(ThreadState perThread) {
     final long delta = perThread.dwpt.bytesUsed() - perThread.bytesUsed;
     perThread.bytesUsed += delta;
+    if (delta > 0) {
+      bytesAdded += delta;
+    }
     /*
      * We need to differentiate here if we are pending since setFlushPending
      * moves the perThread memory to the flushBytes and we could be set to
@@ -226,12 +238,56 @@ final class DocumentsWriterFlushControl implements Accountable {
     } finally {
       try {
         updateStallState();
+        final IndexWriter.FlushListener listener = config.getFlushListener();
+        if (listener != null) {
+          final FlushStats stats = getFlushStats();
+          flushEvents.add(() -> listener.afterFlush(stats));
+        }
       } finally {
         notifyAll();
       }
     }
   }
 
+  /**
+   * Records the time it took to flush a single {@link DocumentsWriterPerThread}.
+   */
+  synchronized void addFlushNanos(long nanos) {
+    // exponentially weighted moving average, favoring recent flushes
+    avgFlushNanos = avgFlushNanos == 0 ? nanos : 0.8 * avgFlushNanos + 0.2 * nanos;
+  }
+
+  /**
+   * Returns the moving average of the time in nanoseconds a single
+   * {@link DocumentsWriterPerThread} took to flush or <code>0</code> if nothing
+   * has been flushed yet.
+   */
+  public synchronized long averageFlushNanos() {
+    return (long) avgFlushNanos;
+  }
+
+  /**
+   * Returns the total number of bytes ever added to the
+   * {@link DocumentsWriterPerThread}s; this never decreases on flush.
+   */
+  public synchronized long bytesAdded() {
+    return bytesAdded;
+  }
+
+  /**
+   * Returns a snapshot of the current flushing state.
+   */
+  synchronized FlushStats getFlushStats() {
+    final int limit = perThreadPool.getActiveThreadStateCount();
+    final long[] perThreadBytes = new long[limit];
+    for (int i = 0; i < limit; i++) {
+      perThreadBytes[i] = perThreadPool.getThreadState(i).bytesUsed;
+    }
+    return new FlushStats(stallControl.anyStalledThreads(), stallControl.getNumStalls(), stallControl.getStallTimeNanos(),
+        activeBytes, flushBytes, getDeleteBytesUsed(), numPending, flushQueue.size(), flushingWriters.size(),
+        blockedFlushes.size(), perThreadBytes);
+  }
+
   private long stallStartNS;
 
   private boolean updateStallState() {
@@ -249,8 +305,9 @@ final class DocumentsWriterFlushControl implements Accountable {
       activeBytes < limit &&
       !closed;
 
+    final boolean changed = stall != stallControl.anyStalledThreads();
     if (infoStream.isEnabled("DWFC")) {
-      if (stall != stallControl.anyStalledThreads()) {
+      if (changed) {
         if (stall) {
           infoStream.message("DW", String.format(Locale.ROOT, "now stalling flushes: netBytes: %.1f MB flushBytes: %.1f MB fullFlush: %b",
                                                  netBytes()/1024./1024., flushBytes()/1024./1024., fullFlush));
@@ -263,8 +320,41 @@ final class DocumentsWriterFlushControl implements Accountable {
     }
 
     stallControl.updateStalled(stall);
+    if (changed) {
+      final IndexWriter.FlushListener listener = config.getFlushListener();
+      if (listener != null) {
+        final FlushStats stats = getFlushStats();
+        if (stall) {
+          flushEvents.add(() -> listener.onStall(stats));
+        } else {
+          final long stallNanos = stallControl.getLastStallNanos();
+          flushEvents.add(() -> listener.onStallReleased(stallNanos, stats));
+        }
+      }
+    }
     return stall;
   }
+
+  /**
+   * Notifies the {@link IndexWriter.FlushListener} of the events that were
+   * recorded since the last call, in order. This must be called without holding
+   * this lock so that a slow listener can't block indexing or flushing threads.
+   * Only one thread publishes at a time, others return right away and leave
+   * their events to it.
+   */
+  void publishFlushEvents() {
+    assert Thread.holdsLock(this) == false;
+    while (flushEvents.isEmpty() == false && publishLock.tryLock()) {
+      try {
+        Runnable event;
+        while ((event = flushEvents.poll()) != null) {
+          event.run();
+        }
+      } finally {
+        publishLock.unlock();
+      }
+    }
+  }
   
   public synchronized void waitForFlush() {
     while (flushingWriters.size() != 0) {
@@ -442,10 +532,24 @@ final class DocumentsWriterFlushControl implements Accountable {
     return documentsWriter.deleteQueue.ramBytesUsed() + bufferedUpdatesStream.ramBytesUsed();
   }
 
+  void setPrimaryKeys(PrimaryKeyVersionMap primaryKeys) {
+    this.primaryKeys = primaryKeys;
+  }
+
+  /**
+   * Returns the RAM used by the recent versions of modified primary keys,
+   * which counts against the RAM buffer until they are frozen into a compact
+   * form or a near-real-time reader is opened.
+   */
+  public long getPrimaryKeyBytesUsed() {
+    final PrimaryKeyVersionMap primaryKeys = this.primaryKeys;
+    return primaryKeys == null ? 0 : primaryKeys.versionsBytesUsed();
+  }
+
   @Override
   public long ramBytesUsed() {
     // TODO: improve this to return more detailed info?
-    return getDeleteBytesUsed() + netBytes();
+    return getDeleteBytesUsed() + getPrimaryKeyBytesUsed() + netBytes();
   }
   
   synchronized int numFlushingDWPT() {
@@ -40,6 +40,10 @@ import org.apache.lucene.util.ThreadInterruptedException;
 final class DocumentsWriterStallControl {
   
   private volatile boolean stalled;
+  private int numStalls;
+  private long stallStartNS;
+  private long totalStallNS;
+  private long lastStallNS;
   private int numWaiting; // only with assert
   private boolean wasStalled; // only with assert
   private final Map<Thread, Boolean> waiting = new IdentityHashMap<>(); // only with assert
@@ -57,6 +61,11 @@ final class DocumentsWriterStallControl {
       this.stalled = stalled;
       if (stalled) {
         wasStalled = true;
+        numStalls++;
+        stallStartNS = System.nanoTime();
+      } else {
+        lastStallNS = System.nanoTime() - stallStartNS;
+        totalStallNS += lastStallNS;
       }
       notifyAll();
     }
@@ -88,6 +97,28 @@ final class DocumentsWriterStallControl {
   boolean anyStalledThreads() {
     return stalled;
   }
+
+  /**
+   * Returns the number of times indexing threads were stalled.
+   */
+  synchronized int getNumStalls() {
+    return numStalls;
+  }
+
+  /**
+   * Returns the total time in nanoseconds indexing threads were stalled,
+   * including the currently running stall if any.
+   */
+  synchronized long getStallTimeNanos() {
+    return stalled ? totalStallNS + (System.nanoTime() - stallStartNS) : totalStallNS;
+  }
+
+  /**
+   * Returns the duration in nanoseconds of the last finished stall.
+   */
+  synchronized long getLastStallNanos() {
+    return lastStallNS;
+  }
   
   private void incWaiters() {
     numWaiting++;
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.index;
+
+
+import org.apache.lucene.index.DocumentsWriterPerThreadPool.ThreadState;
+
+/**
+ * A {@link FlushByRamOrCountsPolicy} that flushes ahead of the configured RAM
+ * buffer. {@link FlushByRamOrCountsPolicy} marks the largest
+ * {@link DocumentsWriterPerThread} pending only once the buffer is exceeded;
+ * under bursty load the remaining indexing threads keep on filling RAM while
+ * that DWPT flushes and quickly run into the stall limit. This policy tracks
+ * the rate at which bytes are added to the buffer as well as the average time
+ * it takes to flush a DWPT and marks the largest DWPT pending as soon as the
+ * active RAM plus the bytes expected to be added during such a flush reach the
+ * buffer. The projected growth is capped at half the buffer so segments don't
+ * get too small under extreme bursts.
+ *
+ * @see IndexWriterConfig#setProactiveFlush(boolean)
+ */
+class FlushByRamGrowthPolicy extends FlushByRamOrCountsPolicy {
+
+  /** minimum interval between two growth rate samples */
+  private static final long SAMPLE_INTERVAL_NS = 1000000L;
+  /** weight of the most recent sample in the smoothed growth rate */
+  private static final double SAMPLE_WEIGHT = 0.2;
+
+  private long lastSampleNS = -1;
+  private long lastSampleBytes;
+  private double bytesPerNS;
+
+  @Override
+  public void onInsert(DocumentsWriterFlushControl control, ThreadState state) {
+    if (flushOnRAM()) {
+      updateGrowthRate(control);
+      final boolean flushByDocCount = flushOnDocCount()
+          && state.dwpt.getNumDocsInRAM() >= indexWriterConfig.getMaxBufferedDocs();
+      if (flushByDocCount == false) {
+        final long limit = (long) (indexWriterConfig.getRAMBufferSizeMB() * 1024.d * 1024.d);
+        final long totalRam = control.activeBytes() + control.getDeleteBytesUsed() + control.getPrimaryKeyBytesUsed();
+        final long projected = projectedGrowth(control, limit);
+        if (totalRam < limit && totalRam + projected >= limit) {
+          if (infoStream.isEnabled("FP")) {
+            infoStream.message("FP", "trigger early flush: activeBytes=" + control.activeBytes() + " deleteBytes="
+                + control.getDeleteBytesUsed() + " primaryKeyBytes=" + control.getPrimaryKeyBytesUsed()
+                + " projectedGrowth=" + projected + " vs limit=" + limit);
+          }
+          markLargestWriterPending(control, state, totalRam);
+          return;
+        }
+      }
+    }
+    super.onInsert(control, state);
+  }
+
+  /**
+   * Returns the number of bytes that are expected to be added to the RAM buffer
+   * while a single {@link DocumentsWriterPerThread} is flushing.
+   */
+  long projectedGrowth(DocumentsWriterFlushControl control, long limit) {
+    final long projected = (long) (bytesPerNS * control.averageFlushNanos());
+    return Math.min(projected, limit / 2);
+  }
+
+  private void updateGrowthRate(DocumentsWriterFlushControl control) {
+    final long now = System.nanoTime();
+    final long bytes = control.bytesAdded();
+    if (lastSampleNS == -1) {
+      lastSampleNS = now;
+      lastSampleBytes = bytes;
+    } else if (now - lastSampleNS >= SAMPLE_INTERVAL_NS) {
+      final double rate = (double) (bytes - lastSampleBytes) / (now - lastSampleNS);
+      bytesPerNS = bytesPerNS == 0 ? rate : (1 - SAMPLE_WEIGHT) * bytesPerNS + SAMPLE_WEIGHT * rate;
+      lastSampleNS = now;
+      lastSampleBytes = bytes;
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.index;
+
+
+import java.util.Arrays;
+
+/**
+ * Expert: a point-in-time snapshot of the flushing state of an
+ * {@link IndexWriter}'s in-memory buffer, returned by
+ * {@link IndexWriter#getFlushStats()} and passed to the
+ * {@link IndexWriter.FlushListener}.
+ *
+ * @lucene.experimental
+ */
+public final class FlushStats {
+
+  private final boolean stalled;
+  private final int numStalls;
+  private final long stallTimeNanos;
+  private final long activeBytes;
+  private final long flushBytes;
+  private final long deleteBytes;
+  private final int numPendingFlushes;
+  private final int numQueuedFlushes;
+  private final int numFlushingWriters;
+  private final int numBlockedFlushes;
+  private final long[] perThreadBytes;
+
+  FlushStats(boolean stalled, int numStalls, long stallTimeNanos, long activeBytes, long flushBytes, long deleteBytes,
+             int numPendingFlushes, int numQueuedFlushes, int numFlushingWriters, int numBlockedFlushes, long[] perThreadBytes) {
+    this.stalled = stalled;
+    this.numStalls = numStalls;
+    this.stallTimeNanos = stallTimeNanos;
+    this.activeBytes = activeBytes;
+    this.flushBytes = flushBytes;
+    this.deleteBytes = deleteBytes;
+    this.numPendingFlushes = numPendingFlushes;
+    this.numQueuedFlushes = numQueuedFlushes;
+    this.numFlushingWriters = numFlushingWriters;
+    this.numBlockedFlushes = numBlockedFlushes;
+    this.perThreadBytes = perThreadBytes;
+  }
+
+  /** Returns <code>true</code> iff indexing threads are currently stalled because flushing can not keep up. */
+  public boolean isStalled() {
+    return stalled;
+  }
+
+  /** Returns how many times indexing was stalled since the writer was opened. */
+  public int getNumStalls() {
+    return numStalls;
+  }
+
+  /** Returns the total time, in nanoseconds, indexing was stalled since the writer was opened, including the current stall if any. */
+  public long getStallTimeNanos() {
+    return stallTimeNanos;
+  }
+
+  /** Returns the number of bytes used by documents that are buffered and not yet selected for flushing. */
+  public long getActiveBytes() {
+    return activeBytes;
+  }
+
+  /** Returns the number of bytes used by buffered documents that are pending or currently flushing. */
+  public long getFlushBytes() {
+    return flushBytes;
+  }
+
+  /** Returns the number of bytes used by buffered deletes and updates. */
+  public long getDeleteBytes() {
+    return deleteBytes;
+  }
+
+  /** Returns the number of in-memory segments that are marked for flushing but not checked out yet. */
+  public int getNumPendingFlushes() {
+    return numPendingFlushes;
+  }
+
+  /** Returns the number of in-memory segments that are checked out for flushing but not yet flushing. */
+  public int getNumQueuedFlushes() {
+    return numQueuedFlushes;
+  }
+
+  /** Returns the number of in-memory segments that are currently checked out for flushing. */
+  public int getNumFlushingWriters() {
+    return numFlushingWriters;
+  }
+
+  /** Returns the number of in-memory segments that must wait until the running full flush finishes. */
+  public int getNumBlockedFlushes() {
+    return numBlockedFlushes;
+  }
+
+  /** Returns the RAM, in bytes, used by each active per-thread in-memory segment. */
+  public long[] getPerThreadBytes() {
+    return perThreadBytes.clone();
+  }
+
+  @Override
+  public String toString() {
+    return "FlushStats(stalled=" + stalled + " numStalls=" + numStalls + " stallTimeNanos=" + stallTimeNanos
+        + " activeBytes=" + activeBytes + " flushBytes=" + flushBytes + " deleteBytes=" + deleteBytes
+        + " numPendingFlushes=" + numPendingFlushes + " numQueuedFlushes=" + numQueuedFlushes
+        + " numFlushingWriters=" + numFlushingWriters + " numBlockedFlushes=" + numBlockedFlushes
+        + " perThreadBytes=" + Arrays.toString(perThreadBytes) + ")";
+  }
+}
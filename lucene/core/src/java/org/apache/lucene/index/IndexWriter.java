@@ -36,6 +36,7 @@ import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 import org.apache.lucene.analysis.Analyzer;
@@ -49,6 +50,7 @@ import org.apache.lucene.index.IndexWriterConfig.OpenMode;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
@@ -291,6 +293,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
   final FieldNumbers globalFieldNumberMap;
 
   private final DocumentsWriter docWriter;
+  private final PrimaryKeyVersionMap primaryKeys; // null if there is no primary key field
   private final Queue<Event> eventQueue;
   final IndexFileDeleter deleter;
 
@@ -442,6 +445,10 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
       boolean success = false;
       synchronized (fullFlushLock) {
         try {
+          if (primaryKeys != null && applyAllDeletes) {
+            // only readers that apply deletes see the operations that the versions of primary keys track
+            primaryKeys.beforeRefresh();
+          }
           // TODO: should we somehow make this available in the returned NRT reader?
           long seqNo = docWriter.flushAllThreads();
           if (seqNo < 0) {
@@ -474,6 +481,9 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
         } finally {
           // Done: finish the full flush!
           docWriter.finishFullFlush(this, success);
+          if (success && primaryKeys != null && applyAllDeletes) {
+            primaryKeys.afterRefresh();
+          }
           if (success) {
             processEvents(false, true);
             doAfterFlush();
@@ -506,7 +516,9 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
   @Override
   public final long ramBytesUsed() {
     ensureOpen();
-    return docWriter.ramBytesUsed();
+    // the recent versions of primary keys are included in the RAM buffer
+    return docWriter.ramBytesUsed()
+        + (primaryKeys == null ? 0 : primaryKeys.frozenVersionsBytesUsed() + primaryKeys.keysBytesUsed());
   }
 
   /** Holds shared SegmentReader instances. IndexWriter uses
@@ -963,6 +975,22 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
       docWriter = new DocumentsWriter(this, config, directoryOrig, directory);
       eventQueue = docWriter.eventQueue();
 
+      if (config.getPrimaryKeyField() != null) {
+        primaryKeys = new PrimaryKeyVersionMap(config.getPrimaryKeyField(), config.getMaxPrimaryKeys(), infoStream);
+        for (SegmentCommitInfo info : segmentInfos) {
+          if (primaryKeys.isTrackingAllKeys() == false) {
+            // too many existing keys
+            break;
+          }
+          try (SegmentReader sr = new SegmentReader(info, IOContext.READONCE)) {
+            primaryKeys.addExistingKeys(sr);
+          }
+        }
+        docWriter.flushControl.setPrimaryKeys(primaryKeys);
+      } else {
+        primaryKeys = null;
+      }
+
       // Default deleter (for backwards compatibility) is
       // KeepOnlyLastCommitDeleter:
 
@@ -1379,11 +1407,21 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
     try {
       boolean success = false;
       try {
-        long seqNo = docWriter.updateDocuments(docs, analyzer, delTerm);
+        long seqNo;
+        if (primaryKeys != null) {
+          final List<Iterable<? extends IndexableField>> block = new ArrayList<>();
+          for (Iterable<? extends IndexableField> doc : docs) {
+            block.add(doc);
+          }
+          seqNo = updateWithPrimaryKeys(delTerm, block, true);
+        } else {
+          seqNo = docWriter.updateDocuments(docs, analyzer, delTerm);
+        }
         if (seqNo < 0) {
           seqNo = -seqNo;
           processEvents(true, false);
         }
+        maybeFreezeVersions();
         success = true;
         return seqNo;
       } finally {
@@ -1401,6 +1439,199 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
     }
   }
 
+  /** Adds or updates documents while tracking their primary keys; see {@link IndexWriterConfig#setPrimaryKeyField(String)}. */
+  private long updateWithPrimaryKeys(Term delTerm, List<Iterable<? extends IndexableField>> docs, boolean isBlock) throws IOException, AbortingException {
+    final List<BytesRef> keys = new ArrayList<>();
+    boolean unkeyed = false;
+    for (Iterable<? extends IndexableField> doc : docs) {
+      for (IndexableField field : doc) {
+        if (primaryKeys.field.equals(field.name()) && field.fieldType().indexOptions() != IndexOptions.NONE) {
+          BytesRef key = null;
+          if (field.fieldType().tokenized() == false) {
+            key = field.binaryValue();
+            if (key == null && field.stringValue() != null) {
+              key = new BytesRef(field.stringValue());
+            }
+          }
+          if (key != null) {
+            keys.add(key);
+          } else {
+            // e.g. an analyzed value or a token stream: we can't tell which terms this document will have
+            primaryKeys.stopTrackingKeys("tokenized primary key field");
+            unkeyed = true;
+          }
+        }
+      }
+    }
+    final BytesRef delKey = primaryKeys.isPrimaryKey(delTerm) ? delTerm.bytes() : null;
+    if (delTerm != null && delKey == null) {
+      // the delete term might match documents with any key
+      unkeyed = true;
+    }
+    if (keys.isEmpty() && delKey == null) {
+      final long seqNo = isBlock ? docWriter.updateDocuments(docs, analyzer, delTerm) : docWriter.updateDocument(docs.get(0), analyzer, delTerm);
+      if (unkeyed) {
+        primaryKeys.putUnkeyedChange(Math.abs(seqNo));
+      }
+      return seqNo;
+    }
+
+    // lock in ascending stripe order so that concurrent operations on the same keys can't deadlock
+    final int[] stripes = new int[keys.size() + (delKey == null ? 0 : 1)];
+    int numStripes = 0;
+    for (BytesRef key : keys) {
+      stripes[numStripes++] = primaryKeys.stripe(key);
+    }
+    if (delKey != null) {
+      stripes[numStripes++] = primaryKeys.stripe(delKey);
+    }
+    Arrays.sort(stripes);
+    int upto = 1;
+    for (int i = 1; i < numStripes; i++) {
+      if (stripes[i] != stripes[upto - 1]) {
+        stripes[upto++] = stripes[i];
+      }
+    }
+    numStripes = upto;
+    int locked = 0;
+    try {
+      for (int i = 0; i < numStripes; i++) {
+        primaryKeys.stripeLock(stripes[i]).lock();
+        locked++;
+      }
+      Term effectiveDelTerm = delTerm;
+      if (delKey != null && primaryKeys.markIndexed(delKey)) {
+        // this key was never indexed: nothing to delete
+        effectiveDelTerm = null;
+      }
+      for (BytesRef key : keys) {
+        primaryKeys.markIndexed(key);
+      }
+      final long seqNo = isBlock ? docWriter.updateDocuments(docs, analyzer, effectiveDelTerm)
+                                 : docWriter.updateDocument(docs.get(0), analyzer, effectiveDelTerm);
+      if (delKey != null) {
+        primaryKeys.putVersion(delKey, Math.abs(seqNo), true);
+      }
+      for (BytesRef key : keys) {
+        primaryKeys.putVersion(key, Math.abs(seqNo), false);
+      }
+      if (unkeyed) {
+        primaryKeys.putUnkeyedChange(Math.abs(seqNo));
+      }
+      return seqNo;
+    } finally {
+      for (int i = locked - 1; i >= 0; i--) {
+        primaryKeys.stripeLock(stripes[i]).unlock();
+      }
+      if (primaryKeys.isTrackingAllKeys() == false) {
+        // we might have hit the maximum number of keys
+        primaryKeys.stopTrackingKeys("more than " + config.getMaxPrimaryKeys() + " keys");
+      }
+    }
+  }
+
+  /** Records the version of a delete by the given term, which might not target the primary key field. */
+  private void putDeleteVersion(Term term, long seqNo) {
+    if (primaryKeys.isPrimaryKey(term)) {
+      final ReentrantLock lock = primaryKeys.lockFor(term.bytes());
+      lock.lock();
+      try {
+        primaryKeys.putVersion(term.bytes(), seqNo, true);
+      } finally {
+        lock.unlock();
+      }
+    } else {
+      // the term might match documents with any key
+      primaryKeys.putUnkeyedChange(seqNo);
+    }
+  }
+
+  /**
+   * Freezes the recent versions of primary keys into a compact form once they
+   * use more than a quarter of the RAM buffer. Versions can only be released
+   * once a near-real-time reader sees their operations, so this bounds the
+   * memory they use when there are many updates between two refreshes.
+   */
+  private void maybeFreezeVersions() {
+    if (primaryKeys != null) {
+      double ramBufferSizeMB = config.getRAMBufferSizeMB();
+      if (ramBufferSizeMB == IndexWriterConfig.DISABLE_AUTO_FLUSH) {
+        ramBufferSizeMB = IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB;
+      }
+      // frozen keys are stored in a single array
+      primaryKeys.maybeFreezeVersions((long) Math.min(ramBufferSizeMB * 1024 * 1024 / 4, ArrayUtil.MAX_ARRAY_LENGTH / 2));
+    }
+  }
+
+  /** Returns the version of the last add, update or delete
+   *  of the document with the given primary key since the
+   *  last near-real-time reader that applies deletes was
+   *  opened from this writer, or <code>null</code> if the
+   *  key was not modified since then and the caller must
+   *  consult that reader. Commits and flushes don't release
+   *  versions.
+   *
+   *  <p>If an operation that may have changed documents
+   *  with any key happened since, like a delete by query,
+   *  the returned version is {@link PrimaryKeyVersion#isAmbiguous()
+   *  ambiguous} and only a reader opened after it can tell.
+   *
+   *  @throws IllegalStateException if no primary key field
+   *          was configured
+   *  @see IndexWriterConfig#setPrimaryKeyField(String)
+   *  @lucene.experimental */
+  public PrimaryKeyVersion getPrimaryKeyVersion(BytesRef key) {
+    ensureOpen();
+    if (primaryKeys == null) {
+      throw new IllegalStateException("no primary key field configured");
+    }
+    return primaryKeys.getVersion(key);
+  }
+
+  /** The version of the last operation on a primary key,
+   *  see {@link IndexWriter#getPrimaryKeyVersion(BytesRef)}.
+   *
+   *  @lucene.experimental */
+  public static final class PrimaryKeyVersion {
+    private final long seqNo;
+    private final boolean deleted;
+    private final boolean ambiguous;
+
+    PrimaryKeyVersion(long seqNo, boolean deleted, boolean ambiguous) {
+      assert deleted == false || ambiguous == false;
+      this.seqNo = seqNo;
+      this.deleted = deleted;
+      this.ambiguous = ambiguous;
+    }
+
+    /** Returns the <a href="#sequence_number">sequence number</a> of the last operation on the key. */
+    public long getSeqNo() {
+      return seqNo;
+    }
+
+    /** Returns <code>true</code> if the last operation deleted the document, <code>false</code> if it added or updated it. */
+    public boolean isDeleted() {
+      return deleted;
+    }
+
+    /** Returns <code>true</code> if the last operation that
+     *  may have changed the document didn't target its key,
+     *  e.g. a delete by query, by document ID or by a term
+     *  of another field, {@link IndexWriter#deleteAll()} or
+     *  {@link IndexWriter#addIndexes}. {@link #getSeqNo()}
+     *  is then the sequence number of that operation, and
+     *  only a reader opened after it knows whether the
+     *  document exists. */
+    public boolean isAmbiguous() {
+      return ambiguous;
+    }
+
+    @Override
+    public String toString() {
+      return "PrimaryKeyVersion(seqNo=" + seqNo + " deleted=" + deleted + " ambiguous=" + ambiguous + ")";
+    }
+  }
+
   /** Expert: attempts to delete by document ID, as long as
    *  the provided reader is a near-real-time reader (from {@link
    *  DirectoryReader#open(IndexWriter)}).  If the
@@ -1465,7 +1696,12 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
             changed();
           }
           //System.out.println("  yes " + info.info.name + " " + docID);
-          return docWriter.deleteQueue.getNextSequenceNumber();
+          final long seqNo = docWriter.deleteQueue.getNextSequenceNumber();
+          if (primaryKeys != null) {
+            // we don't know the key of the deleted document
+            primaryKeys.putUnkeyedChange(seqNo);
+          }
+          return seqNo;
         }
       } else {
         //System.out.println("  no rld " + info.info.name + " " + docID);
@@ -1494,10 +1730,16 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
     ensureOpen();
     try {
       long seqNo = docWriter.deleteTerms(terms);
+      if (primaryKeys != null) {
+        for (Term term : terms) {
+          putDeleteVersion(term, Math.abs(seqNo));
+        }
+      }
       if (seqNo < 0) {
         seqNo = -seqNo;
         processEvents(true, false);
       }
+      maybeFreezeVersions();
       return seqNo;
     } catch (VirtualMachineError tragedy) {
       tragicEvent(tragedy, "deleteDocuments(Term..)");
@@ -1531,10 +1773,21 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
 
     try {
       long seqNo = docWriter.deleteQueries(queries);
+      if (primaryKeys != null) {
+        for (Query query : queries) {
+          if (query instanceof TermQuery) {
+            putDeleteVersion(((TermQuery) query).getTerm(), Math.abs(seqNo));
+          } else {
+            // we don't know the keys of the deleted documents
+            primaryKeys.putUnkeyedChange(Math.abs(seqNo));
+          }
+        }
+      }
       if (seqNo < 0) {
         seqNo = -seqNo;
         processEvents(true, false);
       }
+      maybeFreezeVersions();
 
       return seqNo;
     } catch (VirtualMachineError tragedy) {
@@ -1566,11 +1819,17 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
     try {
       boolean success = false;
       try {
-        long seqNo = docWriter.updateDocument(doc, analyzer, term);
+        long seqNo;
+        if (primaryKeys != null) {
+          seqNo = updateWithPrimaryKeys(term, Collections.singletonList(doc), false);
+        } else {
+          seqNo = docWriter.updateDocument(doc, analyzer, term);
+        }
         if (seqNo < 0) {
           seqNo = - seqNo;
           processEvents(true, false);
         }
+        maybeFreezeVersions();
         success = true;
         return seqNo;
       } finally {
@@ -2213,6 +2472,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
       bufferedUpdatesStream.clear();
       docWriter.close(); // mark it as closed first to prevent subsequent indexing actions/flushes 
       docWriter.abort(this); // don't sync on IW here
+      docWriter.flushControl.publishFlushEvents();
       synchronized(this) {
 
         if (pendingCommit != null) {
@@ -2370,10 +2630,14 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
             changeCount.incrementAndGet();
             segmentInfos.changed();
             globalFieldNumberMap.clear();
-
             success = true;
             long seqNo = docWriter.deleteQueue.getNextSequenceNumber();
             docWriter.setLastSeqNo(seqNo);
+            if (primaryKeys != null) {
+              // all documents are gone, but readers still see them
+              primaryKeys.clearVersions();
+              primaryKeys.putUnkeyedChange(seqNo);
+            }
             return seqNo;
 
           } finally {
@@ -2626,6 +2890,10 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
    */
   public long addIndexes(Directory... dirs) throws IOException {
     ensureOpen();
+    if (primaryKeys != null) {
+      // we don't know the keys of the added documents
+      primaryKeys.stopTrackingKeys("addIndexes");
+    }
 
     noDupDirs(dirs);
 
@@ -2743,6 +3011,9 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
         IOUtils.closeWhileHandlingException(locks);
       }
     }
+    if (primaryKeys != null && seqNo > 0) {
+      primaryKeys.putUnkeyedChange(seqNo);
+    }
     maybeMerge();
 
     return seqNo;
@@ -2786,6 +3057,10 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
    */
   public long addIndexes(CodecReader... readers) throws IOException {
     ensureOpen();
+    if (primaryKeys != null) {
+      // we don't know the keys of the added documents
+      primaryKeys.stopTrackingKeys("addIndexes");
+    }
 
     // long so we can detect int overflow:
     long numDocs = 0;
@@ -2897,6 +3172,9 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
       // dead code but javac disagrees:
       seqNo = -1;
     }
+    if (primaryKeys != null && seqNo > 0) {
+      primaryKeys.putUnkeyedChange(seqNo);
+    }
     maybeMerge();
 
     return seqNo;
@@ -3466,6 +3744,17 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
     return docWriter;
   }
 
+  /** Expert: returns a snapshot of the RAM buffer's flushing
+   *  state, e.g. the number of bytes pending flush and the
+   *  time indexing threads have been stalled.
+   *
+   *  @see FlushListener
+   *  @lucene.experimental */
+  public FlushStats getFlushStats() {
+    ensureOpen();
+    return docWriter.flushControl.getFlushStats();
+  }
+
   /** Expert:  Return the number of documents currently
    *  buffered in RAM. */
   public final synchronized int numRamDocs() {
@@ -4770,6 +5059,43 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
     public abstract void warm(LeafReader reader) throws IOException;
   }
 
+  /** If {@link IndexWriterConfig#setFlushListener} is used, the
+   *  listener is notified whenever indexing threads start or
+   *  stop stalling and after each in-memory segment is
+   *  flushed.
+   *
+   *  <p><b>NOTE</b>: the methods are invoked by indexing or
+   *  flushing threads once they released the internal flush
+   *  bookkeeping, with a snapshot of the {@link FlushStats}
+   *  taken when the event happened. Events are delivered in
+   *  order and by one thread at a time; a slow listener only
+   *  delays the thread that delivers them.
+   *
+   *  @lucene.experimental */
+  public static abstract class FlushListener {
+
+    /** Sole constructor. (For invocation by subclass 
+     *  constructors, typically implicit.) */
+    protected FlushListener() {
+    }
+
+    /** Invoked when incoming indexing threads start to
+     *  block because flushing can not keep up with indexing. */
+    public void onStall(FlushStats stats) {
+    }
+
+    /** Invoked once blocked indexing threads are released
+     *  again; <code>stallNanos</code> is the duration of the
+     *  stall that just ended. */
+    public void onStallReleased(long stallNanos, FlushStats stats) {
+    }
+
+    /** Invoked after an in-memory segment was flushed or
+     *  aborted and its RAM was released. */
+    public void afterFlush(FlushStats stats) {
+    }
+  }
+
   void tragicEvent(Throwable tragedy, String location) throws IOException {
 
     // unbox our internal AbortingException
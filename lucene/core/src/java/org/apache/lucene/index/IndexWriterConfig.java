@@ -20,15 +20,18 @@ package org.apache.lucene.index;
 import java.io.PrintStream;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.index.IndexWriter.FlushListener;
 import org.apache.lucene.index.IndexWriter.IndexReaderWarmer;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.InfoStream;
 import org.apache.lucene.util.PrintStreamInfoStream;
 import org.apache.lucene.util.SetOnce.AlreadySetException;
@@ -104,6 +107,9 @@ public final class IndexWriterConfig extends LiveIndexWriterConfig {
   
   /** Default value for whether calls to {@link IndexWriter#close()} include a commit. */
   public final static boolean DEFAULT_COMMIT_ON_CLOSE = true;
+
+  /** Default value is {@link Integer#MAX_VALUE}: all keys are tracked. Change using {@link #setMaxPrimaryKeys(int)} */
+  public static final int DEFAULT_MAX_PRIMARY_KEYS = Integer.MAX_VALUE;
   
   // indicates whether this config instance is already attached to a writer.
   // not final so that it can be cloned properly.
@@ -319,6 +325,73 @@ public final class IndexWriterConfig extends LiveIndexWriterConfig {
     return readerPooling;
   }
 
+  /** Sets the name of a field that uniquely identifies
+   *  each document, e.g. a {@link org.apache.lucene.document.StringField}
+   *  holding an id. When set, {@link IndexWriter} tracks the
+   *  keys of indexed documents: updates via
+   *  {@link IndexWriter#updateDocument(Term, Iterable)} of keys
+   *  that were never indexed skip the delete and become plain
+   *  appends, and {@link IndexWriter#getPrimaryKeyVersion(BytesRef)}
+   *  returns the state of keys modified since the last
+   *  near-real-time reader was opened.
+   *
+   *  <p>The keys of all existing segments are loaded when the
+   *  writer is opened and documents are iterated twice when
+   *  they are indexed. Keys must be indexed as single terms,
+   *  without analysis: as soon as a document has a tokenized
+   *  primary key field, updates stop skipping deletes.
+   *
+   *  <p>Versions of modified keys are kept until a
+   *  near-real-time reader sees their operations. Recent
+   *  versions count against the RAM buffer and are frozen
+   *  into a compact form once they use more than a quarter of
+   *  it. The keys themselves take 16 to 32 bytes of heap each;
+   *  see {@link #setMaxPrimaryKeys(int)} to bound it.
+   *
+   * <p>Only takes effect when IndexWriter is first created. */
+  public IndexWriterConfig setPrimaryKeyField(String primaryKeyField) {
+    this.primaryKeyField = primaryKeyField;
+    return this;
+  }
+
+  /** Sets the maximum number of primary keys that
+   *  {@link IndexWriter} tracks to skip deletes of keys that
+   *  were never indexed, see {@link #setPrimaryKeyField(String)}.
+   *  Each key takes 16 to 32 bytes of heap. If the existing
+   *  segments or the indexed documents have more keys, the
+   *  writer stops tracking them, logs it to the
+   *  {@link InfoStream}, and updates are regular updates from
+   *  then on. Default is {@link #DEFAULT_MAX_PRIMARY_KEYS},
+   *  which tracks all keys.
+   *
+   * <p>Only takes effect when IndexWriter is first created.
+   *
+   * @throws IllegalArgumentException if maxPrimaryKeys is negative */
+  public IndexWriterConfig setMaxPrimaryKeys(int maxPrimaryKeys) {
+    if (maxPrimaryKeys < 0) {
+      throw new IllegalArgumentException("maxPrimaryKeys must be >= 0, got " + maxPrimaryKeys);
+    }
+    this.maxPrimaryKeys = maxPrimaryKeys;
+    return this;
+  }
+
+  /** Expert: Sets the {@link Executor} used to flush all
+   *  pending in-memory segments concurrently when a full flush
+   *  happens, i.e. on {@link IndexWriter#commit()},
+   *  {@link IndexWriter#flush()} or when a near-real-time reader
+   *  is opened. Flushed segments are published as soon as all
+   *  segments that were flushed before them are published. By
+   *  default (<code>null</code>) the pending segments are
+   *  flushed one after another by the thread that triggered the
+   *  full flush. If the executor rejects a flush, it is run on
+   *  the calling thread.
+   *
+   * <p>Only takes effect when IndexWriter is first created. */
+  public IndexWriterConfig setFlushExecutor(Executor flushExecutor) {
+    this.flushExecutor = flushExecutor;
+    return this;
+  }
+
   /**
    * Expert: Controls when segments are flushed to disk during indexing.
    * The {@link FlushPolicy} initialized during {@link IndexWriter} instantiation and once initialized
@@ -335,6 +408,29 @@ public final class IndexWriterConfig extends LiveIndexWriterConfig {
     return this;
   }
 
+  /**
+   * Expert: If <code>true</code>, flushing by RAM usage is done proactively: the
+   * largest {@link DocumentsWriterPerThread} is flushed as soon as the RAM that is
+   * expected to be added while a segment flushes (based on the observed indexing
+   * rate and the recent flush durations) would exceed the
+   * {@link #setRAMBufferSizeMB(double) RAM buffer}, instead of waiting until the
+   * buffer is full. This reduces the likelihood that indexing threads are stalled
+   * under bursty load. This switches between the default flush policy and the
+   * proactive one, and fails if a custom {@link FlushPolicy} was set.
+   * <p>
+   * Only takes effect when IndexWriter is first created.
+   *
+   * @throws IllegalStateException if a custom flush policy was set
+   */
+  public IndexWriterConfig setProactiveFlush(boolean proactiveFlush) {
+    final Class<?> current = flushPolicy.getClass();
+    if (current != FlushByRamOrCountsPolicy.class && current != FlushByRamGrowthPolicy.class) {
+      throw new IllegalStateException("cannot change proactive flushing: a custom flush policy is set: " + current.getName());
+    }
+    this.flushPolicy = proactiveFlush ? new FlushByRamGrowthPolicy() : new FlushByRamOrCountsPolicy();
+    return this;
+  }
+
   /**
    * Expert: Sets the maximum memory consumption per thread triggering a forced
    * flush if exceeded. A {@link DocumentsWriterPerThread} is forcefully flushed
@@ -439,6 +535,11 @@ public final class IndexWriterConfig extends LiveIndexWriterConfig {
     return (IndexWriterConfig) super.setMergedSegmentWarmer(mergeSegmentWarmer);
   }
   
+  @Override
+  public IndexWriterConfig setFlushListener(FlushListener flushListener) {
+    return (IndexWriterConfig) super.setFlushListener(flushListener);
+  }
+  
   @Override
   public IndexWriterConfig setRAMBufferSizeMB(double ramBufferSizeMB) {
     return (IndexWriterConfig) super.setRAMBufferSizeMB(ramBufferSizeMB);
@@ -19,10 +19,12 @@ package org.apache.lucene.index;
 
 import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.codecs.Codec;
 import org.apache.lucene.index.DocumentsWriterPerThread.IndexingChain;
+import org.apache.lucene.index.IndexWriter.FlushListener;
 import org.apache.lucene.index.IndexWriter.IndexReaderWarmer;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
 import org.apache.lucene.search.IndexSearcher;
@@ -44,6 +46,7 @@ public class LiveIndexWriterConfig {
   private volatile double ramBufferSizeMB;
   private volatile int maxBufferedDeleteTerms;
   private volatile IndexReaderWarmer mergedSegmentWarmer;
+  private volatile FlushListener flushListener;
 
   // modified by IndexWriterConfig
   /** {@link IndexDeletionPolicy} controlling when commit
@@ -84,6 +87,16 @@ public class LiveIndexWriterConfig {
   /** True if readers should be pooled. */
   protected volatile boolean readerPooling;
 
+  /** The primary key field, or null if the index has none. */
+  protected volatile String primaryKeyField;
+
+  /** The maximum number of primary keys to track. */
+  protected volatile int maxPrimaryKeys;
+
+  /** {@link Executor} used to flush segments concurrently
+   *  on a full flush, or null to flush on the calling thread. */
+  protected volatile Executor flushExecutor;
+
   /** {@link FlushPolicy} to control when segments are
    *  flushed. */
   protected volatile FlushPolicy flushPolicy;
@@ -111,6 +124,7 @@ public class LiveIndexWriterConfig {
     maxBufferedDocs = IndexWriterConfig.DEFAULT_MAX_BUFFERED_DOCS;
     maxBufferedDeleteTerms = IndexWriterConfig.DEFAULT_MAX_BUFFERED_DELETE_TERMS;
     mergedSegmentWarmer = null;
+    flushListener = null;
     delPolicy = new KeepOnlyLastCommitDeletionPolicy();
     commit = null;
     useCompoundFile = IndexWriterConfig.DEFAULT_USE_COMPOUND_FILE_SYSTEM;
@@ -128,6 +142,7 @@ public class LiveIndexWriterConfig {
     readerPooling = IndexWriterConfig.DEFAULT_READER_POOLING;
     indexerThreadPool = new DocumentsWriterPerThreadPool();
     perThreadHardLimitMB = IndexWriterConfig.DEFAULT_RAM_PER_THREAD_HARD_LIMIT_MB;
+    maxPrimaryKeys = IndexWriterConfig.DEFAULT_MAX_PRIMARY_KEYS;
   }
   
   /** Returns the default analyzer to use for indexing documents. */
@@ -317,6 +332,23 @@ public class LiveIndexWriterConfig {
   public IndexReaderWarmer getMergedSegmentWarmer() {
     return mergedSegmentWarmer;
   }
+
+  /**
+   * Set the listener that is notified about flushes and indexing stalls. See
+   * {@link FlushListener}.
+   *
+   * <p>
+   * Takes effect immediately.
+   */
+  public LiveIndexWriterConfig setFlushListener(FlushListener flushListener) {
+    this.flushListener = flushListener;
+    return this;
+  }
+
+  /** Returns the current flush listener or <code>null</code> if none is set. See {@link FlushListener}. */
+  public FlushListener getFlushListener() {
+    return flushListener;
+  }
   
   /** Returns the {@link OpenMode} set by {@link IndexWriterConfig#setOpenMode(OpenMode)}. */
   public OpenMode getOpenMode() {
@@ -389,6 +421,34 @@ public class LiveIndexWriterConfig {
     return readerPooling;
   }
 
+  /**
+   * Returns the name of the primary key field, or <code>null</code> if none is configured.
+   *
+   * @see IndexWriterConfig#setPrimaryKeyField(String)
+   */
+  public String getPrimaryKeyField() {
+    return primaryKeyField;
+  }
+
+  /**
+   * Returns the maximum number of primary keys the writer tracks.
+   *
+   * @see IndexWriterConfig#setMaxPrimaryKeys(int)
+   */
+  public int getMaxPrimaryKeys() {
+    return maxPrimaryKeys;
+  }
+
+  /**
+   * Returns the {@link Executor} used to flush segments concurrently on a full
+   * flush, or <code>null</code> if they are flushed by the calling thread.
+   *
+   * @see IndexWriterConfig#setFlushExecutor(Executor)
+   */
+  public Executor getFlushExecutor() {
+    return flushExecutor;
+  }
+
   /**
    * Returns the indexing chain.
    */
@@ -478,6 +538,7 @@ public class LiveIndexWriterConfig {
     sb.append("maxBufferedDocs=").append(getMaxBufferedDocs()).append("\n");
     sb.append("maxBufferedDeleteTerms=").append(getMaxBufferedDeleteTerms()).append("\n");
     sb.append("mergedSegmentWarmer=").append(getMergedSegmentWarmer()).append("\n");
+    sb.append("flushListener=").append(getFlushListener()).append("\n");
     sb.append("delPolicy=").append(getIndexDeletionPolicy().getClass().getName()).append("\n");
     IndexCommit commit = getIndexCommit();
     sb.append("commit=").append(commit == null ? "null" : commit).append("\n");
@@ -489,6 +550,9 @@ public class LiveIndexWriterConfig {
     sb.append("mergePolicy=").append(getMergePolicy()).append("\n");
     sb.append("indexerThreadPool=").append(getIndexerThreadPool()).append("\n");
     sb.append("readerPooling=").append(getReaderPooling()).append("\n");
+    sb.append("flushExecutor=").append(getFlushExecutor()).append("\n");
+    sb.append("primaryKeyField=").append(getPrimaryKeyField()).append("\n");
+    sb.append("maxPrimaryKeys=").append(getMaxPrimaryKeys()).append("\n");
     sb.append("perThreadHardLimitMB=").append(getRAMPerThreadHardLimitMB()).append("\n");
     sb.append("useCompoundFile=").append(getUseCompoundFile()).append("\n");
     sb.append("commitOnClose=").append(getCommitOnClose()).append("\n");
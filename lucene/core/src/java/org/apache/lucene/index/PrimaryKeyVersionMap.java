@@ -0,0 +1,561 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.index;
+
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.InfoStream;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.StringHelper;
+
+/**
+ * Tracks the primary keys configured via
+ * {@link IndexWriterConfig#setPrimaryKeyField(String)} for an {@link IndexWriter}.
+ * <p>
+ * It serves two purposes:
+ * <ul>
+ *  <li>A versioned map from each primary key that was added, updated or
+ *  deleted since the last near-real-time reader was opened to the sequence
+ *  number of that operation, so the state of recently modified documents can
+ *  be looked up in realtime while readers don't see them yet. Versions are
+ *  only released once a reader that sees their operations was opened, see
+ *  {@link #beforeRefresh()} and {@link #afterRefresh()}. Recent versions live
+ *  in a hash map; once it uses too much memory it is frozen into arrays sorted
+ *  by key, which take a fraction of its memory. Operations that may change
+ *  documents whose keys are unknown, like deletes by query, make the versions
+ *  of all keys ambiguous until the next refresh.</li>
+ *  <li>A compact set of 64 bit hashes of all primary keys that were ever
+ *  indexed. An update whose key is not in the set can not match any existing
+ *  document, so the delete term is dropped and the update becomes a plain
+ *  append. Hash collisions only cause a regular update. The set is seeded from
+ *  the existing segments when the writer is opened and disabled for good if
+ *  keys can not be tracked anymore, e.g. after {@link IndexWriter#addIndexes},
+ *  or once it would hold more than
+ *  {@link IndexWriterConfig#setMaxPrimaryKeys(int) maxPrimaryKeys} keys.</li>
+ * </ul>
+ * Operations on the same key are serialized through striped locks so that an
+ * update which skips its delete can not race with a concurrent add of the same
+ * key. The set of hashes is partitioned by the same stripes, and each
+ * partition is guarded by the lock of its stripe.
+ */
+final class PrimaryKeyVersionMap implements Accountable {
+
+  /* Rough logic: ConcurrentHashMap has an array[Node]
+     (say 2 * POINTER).  Node is object w/ key, val, int
+     hash, next (OBJ_HEADER + 3*POINTER + INT).  Key is a
+     BytesRef w/ byte[] (2*OBJ_HEADER + POINTER + 2*INT +
+     the bytes), value is a Long (OBJ_HEADER + LONG). */
+  static final long BYTES_PER_ENTRY = 6 * RamUsageEstimator.NUM_BYTES_OBJECT_REF
+      + 4 * RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + 3 * Integer.BYTES + Long.BYTES
+      + RamUsageEstimator.NUM_BYTES_ARRAY_HEADER;
+
+  /** Frozen versions are merged once there are more than this many. */
+  static final int MAX_FROZEN_VERSIONS = 8;
+
+  private static final int NUM_STRIPES = 256;
+  private static final int SEED1 = 0x9747b28c;
+  private static final int SEED2 = 0x3c6ef372;
+  private static final int INITIAL_HASHES_SIZE = 16;
+
+  final String field;
+  private final int maxKeys;
+  private final InfoStream infoStream;
+
+  private volatile Versions versions = new Versions(null);
+  private final AtomicBoolean freezing = new AtomicBoolean();
+
+  private final ReentrantLock[] stripes = new ReentrantLock[NUM_STRIPES];
+  // the hashes of each stripe are guarded by the stripe's lock
+  private final long[][] hashes = new long[NUM_STRIPES][];
+  private final int[] numHashes = new int[NUM_STRIPES];
+  private final AtomicInteger numKeys = new AtomicInteger();
+  private final AtomicLong hashesBytesUsed = new AtomicLong();
+  private volatile boolean trackingAllKeys = true;
+  private final AtomicBoolean keysReleased = new AtomicBoolean();
+
+  PrimaryKeyVersionMap(String field, int maxKeys, InfoStream infoStream) {
+    this.field = field;
+    this.maxKeys = maxKeys;
+    this.infoStream = infoStream;
+    for (int i = 0; i < stripes.length; i++) {
+      stripes[i] = new ReentrantLock();
+    }
+  }
+
+  /** Returns true if the given term targets the primary key field. */
+  boolean isPrimaryKey(Term term) {
+    return term != null && field.equals(term.field());
+  }
+
+  /**
+   * Seeds the set of known keys from the primary key terms of an existing
+   * segment. Stops tracking keys without reading the terms if they would not
+   * fit in the set.
+   */
+  void addExistingKeys(LeafReader reader) throws IOException {
+    final Terms terms = reader.terms(field);
+    if (terms != null && trackingAllKeys) {
+      final long size = terms.size();
+      if (size == -1 || numKeys.get() + size > maxKeys) {
+        stopTrackingKeys("segment " + reader + " has too many keys");
+        return;
+      }
+      final TermsEnum termsEnum = terms.iterator();
+      BytesRef term;
+      while ((term = termsEnum.next()) != null) {
+        final int stripe = stripe(term);
+        stripes[stripe].lock();
+        try {
+          addHash(stripe, hash(term));
+        } finally {
+          stripes[stripe].unlock();
+        }
+      }
+    }
+  }
+
+  /**
+   * Stops skipping deletes since keys might have been added that this map does
+   * not know about, and releases the set of keys. The caller must not hold any
+   * of the stripe locks.
+   */
+  void stopTrackingKeys(String reason) {
+    trackingAllKeys = false;
+    if (keysReleased.compareAndSet(false, true)) {
+      if (infoStream.isEnabled("IW")) {
+        infoStream.message("IW", "stop tracking primary keys of field \"" + field + "\": " + reason);
+      }
+      for (int i = 0; i < NUM_STRIPES; i++) {
+        stripes[i].lock();
+        try {
+          if (hashes[i] != null) {
+            hashesBytesUsed.addAndGet(-RamUsageEstimator.sizeOf(hashes[i]));
+            hashes[i] = null;
+          }
+          numHashes[i] = 0;
+        } finally {
+          stripes[i].unlock();
+        }
+      }
+    }
+  }
+
+  boolean isTrackingAllKeys() {
+    return trackingAllKeys;
+  }
+
+  /**
+   * Returns the lock that serializes operations on the given key. Operations on
+   * multiple keys must acquire the locks in ascending stripe order.
+   */
+  ReentrantLock lockFor(BytesRef key) {
+    return stripes[stripe(key)];
+  }
+
+  int stripe(BytesRef key) {
+    return (StringHelper.murmurhash3_x86_32(key, SEED1) & 0x7fffffff) % NUM_STRIPES;
+  }
+
+  ReentrantLock stripeLock(int stripe) {
+    return stripes[stripe];
+  }
+
+  /**
+   * Records that a document with the given key is going to be indexed and
+   * returns <code>true</code> iff the key was never indexed before, in which case
+   * a delete for it can be skipped. The caller must hold the key's lock. If
+   * there are too many keys, this stops tracking keys and the caller must call
+   * {@link #stopTrackingKeys(String)} once it released its locks.
+   */
+  boolean markIndexed(BytesRef key) {
+    final int stripe = stripe(key);
+    assert stripes[stripe].isHeldByCurrentThread();
+    if (trackingAllKeys == false) {
+      return false;
+    }
+    return addHash(stripe, hash(key));
+  }
+
+  /**
+   * Records the sequence number of the last operation on the given key. The
+   * caller must hold the key's lock.
+   */
+  void putVersion(BytesRef key, long seqNo, boolean deleted) {
+    assert lockFor(key).isHeldByCurrentThread();
+    final Long value = deleted ? -seqNo - 1 : seqNo;
+    final Versions versions = this.versions;
+    final Long previous = versions.recent.merge(BytesRef.deepCopyOf(key), value,
+        (a, b) -> seqNo(a) > seqNo(b) ? a : b);
+    if (previous == value) {
+      // we might also count an entry that replaced an existing one; that's fine, we only overcount
+      versions.recentBytesUsed.addAndGet(BYTES_PER_ENTRY + key.length);
+    }
+  }
+
+  /**
+   * Records an operation that may have added or deleted documents whose keys
+   * are unknown, e.g. a delete by query: the versions of all keys are
+   * ambiguous until a reader that sees this operation is opened.
+   */
+  void putUnkeyedChange(long seqNo) {
+    versions.maxUnkeyedSeqNo.accumulateAndGet(seqNo, Math::max);
+  }
+
+  /**
+   * Returns the version of the last operation on the given key since the last
+   * refresh, or <code>null</code> if the key was not modified since then.
+   */
+  IndexWriter.PrimaryKeyVersion getVersion(BytesRef key) {
+    long value = Long.MIN_VALUE;
+    long maxUnkeyedSeqNo = -1;
+    for (Versions versions = this.versions; versions != null; versions = versions.previous) {
+      value = newer(value, versions.recent.get(key));
+      for (FrozenVersions frozen : versions.frozen) {
+        value = newer(value, frozen.get(key));
+      }
+      maxUnkeyedSeqNo = Math.max(maxUnkeyedSeqNo, versions.maxUnkeyedSeqNo.get());
+    }
+    final long seqNo = value == Long.MIN_VALUE ? -1 : seqNo(value);
+    if (maxUnkeyedSeqNo > seqNo) {
+      return new IndexWriter.PrimaryKeyVersion(maxUnkeyedSeqNo, false, true);
+    } else if (value == Long.MIN_VALUE) {
+      return null;
+    }
+    return new IndexWriter.PrimaryKeyVersion(seqNo, value < 0, false);
+  }
+
+  private static long newer(long value, Long other) {
+    if (other == null || (value != Long.MIN_VALUE && seqNo(value) >= seqNo(other))) {
+      return value;
+    }
+    return other;
+  }
+
+  /**
+   * Called before a near-real-time reader is opened: the operations from now on
+   * might not be visible to it.
+   */
+  synchronized void beforeRefresh() {
+    versions = new Versions(versions);
+  }
+
+  /**
+   * Called after a near-real-time reader was opened: it sees all operations
+   * before {@link #beforeRefresh()}.
+   */
+  synchronized void afterRefresh() {
+    versions = versions.withoutPrevious();
+  }
+
+  /** Drops all versions, e.g. after all documents were deleted. */
+  synchronized void clearVersions() {
+    versions = new Versions(null);
+  }
+
+  /**
+   * Freezes the recent versions into sorted arrays if they use more than the
+   * given number of bytes. The caller must not hold any of the stripe locks.
+   */
+  void maybeFreezeVersions(long maxRecentBytes) {
+    if (versions.recentBytesUsed.get() > maxRecentBytes && freezing.compareAndSet(false, true)) {
+      try {
+        // block operations on any key so that the recent versions don't change while we freeze them
+        for (int i = 0; i < NUM_STRIPES; i++) {
+          stripes[i].lock();
+        }
+        try {
+          freezeVersions();
+        } finally {
+          for (int i = NUM_STRIPES - 1; i >= 0; i--) {
+            stripes[i].unlock();
+          }
+        }
+      } finally {
+        freezing.set(false);
+      }
+    }
+  }
+
+  private synchronized void freezeVersions() {
+    final Versions current = versions;
+    if (current.recent.isEmpty()) {
+      return;
+    }
+    final FrozenVersions[] frozen = new FrozenVersions[current.frozen.length + 1];
+    frozen[0] = FrozenVersions.freeze(current.recent);
+    System.arraycopy(current.frozen, 0, frozen, 1, current.frozen.length);
+    FrozenVersions[] newFrozen = frozen;
+    if (frozen.length > MAX_FROZEN_VERSIONS) {
+      long numBytes = 0;
+      long numValues = 0;
+      for (FrozenVersions f : frozen) {
+        numBytes += f.bytes.length;
+        numValues += f.values.length;
+      }
+      if (numBytes <= ArrayUtil.MAX_ARRAY_LENGTH && numValues < ArrayUtil.MAX_ARRAY_LENGTH) {
+        FrozenVersions merged = frozen[frozen.length - 1];
+        for (int i = frozen.length - 2; i >= 0; i--) {
+          merged = FrozenVersions.merge(frozen[i], merged);
+        }
+        newFrozen = new FrozenVersions[] { merged };
+      }
+    }
+    if (infoStream.isEnabled("IW")) {
+      infoStream.message("IW", "froze " + current.recent.size() + " primary key versions: recentBytesUsed="
+          + current.recentBytesUsed.get() + " frozen=" + newFrozen.length);
+    }
+    versions = new Versions(new ConcurrentHashMap<>(), new AtomicLong(), newFrozen, current.maxUnkeyedSeqNo, current.previous);
+  }
+
+  /**
+   * Returns the memory usage of the recent versions, which is bounded by
+   * freezing them.
+   */
+  long versionsBytesUsed() {
+    long bytes = 0;
+    for (Versions versions = this.versions; versions != null; versions = versions.previous) {
+      bytes += versions.recentBytesUsed.get();
+    }
+    return bytes;
+  }
+
+  /** Returns the memory usage of the frozen versions. */
+  long frozenVersionsBytesUsed() {
+    long bytes = 0;
+    for (Versions versions = this.versions; versions != null; versions = versions.previous) {
+      for (FrozenVersions frozen : versions.frozen) {
+        bytes += frozen.ramBytesUsed();
+      }
+    }
+    return bytes;
+  }
+
+  /** Returns the memory usage of the set of known keys, which is bounded by the maximum number of keys. */
+  long keysBytesUsed() {
+    return hashesBytesUsed.get();
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return versionsBytesUsed() + frozenVersionsBytesUsed() + keysBytesUsed();
+  }
+
+  private static long seqNo(long value) {
+    return value < 0 ? -value - 1 : value;
+  }
+
+  private static long hash(BytesRef key) {
+    final long hash = ((long) StringHelper.murmurhash3_x86_32(key, SEED1) << 32)
+        | (StringHelper.murmurhash3_x86_32(key, SEED2) & 0xFFFFFFFFL);
+    // 0 marks empty slots
+    return hash == 0 ? 1 : hash;
+  }
+
+  /**
+   * Adds a hash to the open addressing set of the given stripe and returns true
+   * if it was not present yet. The caller must hold the stripe's lock.
+   */
+  private boolean addHash(int stripe, long hash) {
+    if (trackingAllKeys == false) {
+      return false;
+    }
+    long[] table = hashes[stripe];
+    if (table == null) {
+      table = hashes[stripe] = new long[INITIAL_HASHES_SIZE];
+      hashesBytesUsed.addAndGet(RamUsageEstimator.sizeOf(table));
+    }
+    final int mask = table.length - 1;
+    int slot = (int) (hash ^ (hash >>> 32)) & mask;
+    while (table[slot] != 0) {
+      if (table[slot] == hash) {
+        return false;
+      }
+      slot = (slot + 1) & mask;
+    }
+    if (numKeys.getAndIncrement() >= maxKeys) {
+      // too many keys to track: fall back to regular updates
+      trackingAllKeys = false;
+      return false;
+    }
+    table[slot] = hash;
+    if (++numHashes[stripe] > (table.length >>> 1) + (table.length >>> 2)) {
+      rehash(stripe);
+    }
+    return true;
+  }
+
+  private void rehash(int stripe) {
+    final long[] oldTable = hashes[stripe];
+    final long[] table = new long[oldTable.length << 1];
+    final int mask = table.length - 1;
+    for (long hash : oldTable) {
+      if (hash != 0) {
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (table[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        table[slot] = hash;
+      }
+    }
+    hashes[stripe] = table;
+    hashesBytesUsed.addAndGet(RamUsageEstimator.sizeOf(table) - RamUsageEstimator.sizeOf(oldTable));
+  }
+
+  /**
+   * The versions of the operations since a refresh started, and those of
+   * previous refreshes that are still in progress.
+   */
+  private static final class Versions {
+    final Map<BytesRef,Long> recent;
+    final AtomicLong recentBytesUsed;
+    final FrozenVersions[] frozen; // newest first
+    // the sequence number of the last operation on unknown keys or -1
+    final AtomicLong maxUnkeyedSeqNo;
+    final Versions previous;
+
+    Versions(Versions previous) {
+      this(new ConcurrentHashMap<>(), new AtomicLong(), new FrozenVersions[0], new AtomicLong(-1), previous);
+    }
+
+    Versions(Map<BytesRef,Long> recent, AtomicLong recentBytesUsed, FrozenVersions[] frozen,
+        AtomicLong maxUnkeyedSeqNo, Versions previous) {
+      this.recent = recent;
+      this.recentBytesUsed = recentBytesUsed;
+      this.frozen = frozen;
+      this.maxUnkeyedSeqNo = maxUnkeyedSeqNo;
+      this.previous = previous;
+    }
+
+    Versions withoutPrevious() {
+      return new Versions(recent, recentBytesUsed, frozen, maxUnkeyedSeqNo, null);
+    }
+  }
+
+  /** Versions sorted by key in flat arrays. */
+  private static final class FrozenVersions implements Accountable {
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(FrozenVersions.class);
+
+    final byte[] bytes;
+    final int[] offsets;
+    final long[] values;
+
+    private FrozenVersions(byte[] bytes, int[] offsets, long[] values) {
+      this.bytes = bytes;
+      this.offsets = offsets;
+      this.values = values;
+    }
+
+    static FrozenVersions freeze(Map<BytesRef,Long> versions) {
+      final BytesRef[] keys = versions.keySet().toArray(new BytesRef[versions.size()]);
+      Arrays.sort(keys);
+      int numBytes = 0;
+      for (BytesRef key : keys) {
+        numBytes += key.length;
+      }
+      final byte[] bytes = new byte[numBytes];
+      final int[] offsets = new int[keys.length + 1];
+      final long[] values = new long[keys.length];
+      for (int i = 0; i < keys.length; i++) {
+        System.arraycopy(keys[i].bytes, keys[i].offset, bytes, offsets[i], keys[i].length);
+        offsets[i + 1] = offsets[i] + keys[i].length;
+        values[i] = versions.get(keys[i]);
+      }
+      return new FrozenVersions(bytes, offsets, values);
+    }
+
+    /** Merges two frozen versions; the one with the higher sequence number wins for keys they share. */
+    static FrozenVersions merge(FrozenVersions a, FrozenVersions b) {
+      final byte[] bytes = new byte[a.bytes.length + b.bytes.length];
+      final int[] offsets = new int[a.values.length + b.values.length + 1];
+      final long[] values = new long[a.values.length + b.values.length];
+      final BytesRef keyA = new BytesRef();
+      final BytesRef keyB = new BytesRef();
+      int i = 0, j = 0, upto = 0;
+      while (i < a.values.length || j < b.values.length) {
+        final int cmp;
+        if (i == a.values.length) {
+          cmp = 1;
+        } else if (j == b.values.length) {
+          cmp = -1;
+        } else {
+          cmp = a.key(i, keyA).compareTo(b.key(j, keyB));
+        }
+        final BytesRef key;
+        final long value;
+        if (cmp < 0) {
+          key = a.key(i, keyA);
+          value = a.values[i++];
+        } else if (cmp > 0) {
+          key = b.key(j, keyB);
+          value = b.values[j++];
+        } else {
+          key = a.key(i, keyA);
+          value = seqNo(a.values[i]) >= seqNo(b.values[j]) ? a.values[i] : b.values[j];
+          i++;
+          j++;
+        }
+        System.arraycopy(key.bytes, key.offset, bytes, offsets[upto], key.length);
+        offsets[upto + 1] = offsets[upto] + key.length;
+        values[upto++] = value;
+      }
+      return new FrozenVersions(Arrays.copyOf(bytes, offsets[upto]), Arrays.copyOf(offsets, upto + 1),
+          Arrays.copyOf(values, upto));
+    }
+
+    private BytesRef key(int index, BytesRef scratch) {
+      scratch.bytes = bytes;
+      scratch.offset = offsets[index];
+      scratch.length = offsets[index + 1] - offsets[index];
+      return scratch;
+    }
+
+    Long get(BytesRef key) {
+      final BytesRef scratch = new BytesRef();
+      int lo = 0;
+      int hi = values.length - 1;
+      while (lo <= hi) {
+        final int mid = (lo + hi) >>> 1;
+        final int cmp = key(mid, scratch).compareTo(key);
+        if (cmp < 0) {
+          lo = mid + 1;
+        } else if (cmp > 0) {
+          hi = mid - 1;
+        } else {
+          return values[mid];
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(bytes) + RamUsageEstimator.sizeOf(offsets)
+          + RamUsageEstimator.sizeOf(values);
+    }
+  }
+}
@@ -29,6 +29,7 @@ import org.apache.lucene.search.SortedNumericSelector;
 import org.apache.lucene.search.SortedNumericSortField;
 import org.apache.lucene.search.SortedSetSelector;
 import org.apache.lucene.search.SortedSetSortField;
+import org.apache.lucene.util.NumericUtils;
 import org.apache.lucene.util.TimSorter;
 import org.apache.lucene.util.packed.PackedInts;
 import org.apache.lucene.util.packed.PackedLongValues;
@@ -94,6 +95,26 @@ final class Sorter {
     public abstract int compare(int docID1, int docID2);
   }
 
+  /**
+   * A {@link DocComparator} whose order is fully described by a per-document
+   * {@code long} key, compared as a signed long. This allows
+   * {@link #sort(int, DocComparator[])} to sort with a radix sort instead of a
+   * comparison-based sort.
+   */
+  static final class KeyedDocComparator extends DocComparator {
+
+    final long[] keys;
+
+    KeyedDocComparator(long[] keys) {
+      this.keys = keys;
+    }
+
+    @Override
+    public int compare(int docID1, int docID2) {
+      return Long.compare(keys[docID1], keys[docID2]);
+    }
+  }
+
   private static final class DocValueSorter extends TimSorter {
     
     private final int[] docs;
@@ -165,6 +186,68 @@ final class Sorter {
     // that case timSort can save a lot of time
     sorter.sort(0, docs.length); // docs is now the newToOld mapping
 
+    return buildDocMap(maxDoc, docs);
+  }
+
+  /**
+   * Computes the old-to-new permutation over the given keys with a stable LSB
+   * radix sort. Keys are sorted from the least significant to the most
+   * significant comparator so that the order is lexicographic, and stability
+   * preserves the doc ID order as a tie-break.
+   */
+  private static Sorter.DocMap radixSort(final int maxDoc, KeyedDocComparator[] comparators) {
+    int[] docs = new int[maxDoc];
+    for (int i = 0; i < maxDoc; i++) {
+      docs[i] = i;
+    }
+    int[] tmp = new int[maxDoc];
+    final int[][] histograms = new int[Long.BYTES][256];
+
+    for (int c = comparators.length - 1; c >= 0; --c) {
+      final long[] keys = comparators[c].keys;
+      for (int[] histogram : histograms) {
+        Arrays.fill(histogram, 0);
+      }
+      // compute the histograms of all bytes in a single pass, flipping the sign
+      // bit so that signed keys sort as unsigned bytes
+      for (int doc = 0; doc < maxDoc; ++doc) {
+        final long key = keys[doc] ^ Long.MIN_VALUE;
+        for (int b = 0; b < Long.BYTES; ++b) {
+          histograms[b][(int) (key >>> (b << 3)) & 0xFF]++;
+        }
+      }
+
+      for (int b = 0; b < Long.BYTES; ++b) {
+        final int[] histogram = histograms[b];
+        final int shift = b << 3;
+        final int firstBucket = (int) ((keys[0] ^ Long.MIN_VALUE) >>> shift) & 0xFF;
+        if (histogram[firstBucket] == maxDoc) {
+          // all keys share the same byte, nothing to do
+          continue;
+        }
+        // histogram -> start offsets
+        int sum = 0;
+        for (int i = 0; i < histogram.length; ++i) {
+          final int count = histogram[i];
+          histogram[i] = sum;
+          sum += count;
+        }
+        for (int i = 0; i < maxDoc; ++i) {
+          final int doc = docs[i];
+          final int bucket = (int) ((keys[doc] ^ Long.MIN_VALUE) >>> shift) & 0xFF;
+          tmp[histogram[bucket]++] = doc;
+        }
+        final int[] swap = docs;
+        docs = tmp;
+        tmp = swap;
+      }
+    }
+
+    return buildDocMap(maxDoc, docs); // docs is the newToOld mapping
+  }
+
+  /** Builds a {@link DocMap} from the given newToOld mapping, which is reused as scratch space. */
+  private static Sorter.DocMap buildDocMap(final int maxDoc, int[] docs) {
     // The reason why we use MonotonicAppendingLongBuffer here is that it
     // wastes very little memory if the index is in random order but can save
     // a lot of memory if the index is already "almost" sorted
@@ -261,7 +344,7 @@ final class Sorter {
                                         SortedDocValuesSupplier sortedProvider,
                                         NumericDocValuesSupplier numericProvider) throws IOException {
 
-    final int reverseMul = sortField.getReverse() ? -1 : 1;
+    final boolean reverse = sortField.getReverse();
     final SortField.Type sortType = getSortFieldType(sortField);
 
     switch(sortType) {
@@ -276,50 +359,40 @@ final class Sorter {
           missingOrd = Integer.MIN_VALUE;
         }
 
-        final int[] ords = new int[maxDoc];
-        Arrays.fill(ords, missingOrd);
+        final long[] keys = new long[maxDoc];
+        Arrays.fill(keys, missingOrd);
         int docID;
         while ((docID = sorted.nextDoc()) != NO_MORE_DOCS) {
-          ords[docID] = sorted.ordValue();
+          keys[docID] = sorted.ordValue();
         }
 
-        return new DocComparator() {
-          @Override
-          public int compare(int docID1, int docID2) {
-            return reverseMul * Integer.compare(ords[docID1], ords[docID2]);
-          }
-        };
+        return newKeyedComparator(keys, reverse);
       }
 
       case LONG:
       {
         final NumericDocValues dvs = numericProvider.get();
-        long[] values = new long[maxDoc];
+        long[] keys = new long[maxDoc];
         if (sortField.getMissingValue() != null) {
-          Arrays.fill(values, (Long) sortField.getMissingValue());
+          Arrays.fill(keys, (Long) sortField.getMissingValue());
         }
         while (true) {
           int docID = dvs.nextDoc();
           if (docID == NO_MORE_DOCS) {
             break;
           }
-          values[docID] = dvs.longValue();
+          keys[docID] = dvs.longValue();
         }
 
-        return new DocComparator() {
-          @Override
-          public int compare(int docID1, int docID2) {
-            return reverseMul * Long.compare(values[docID1], values[docID2]);
-          }
-        };
+        return newKeyedComparator(keys, reverse);
       }
 
       case INT:
       {
         final NumericDocValues dvs = numericProvider.get();
-        int[] values = new int[maxDoc];
+        long[] keys = new long[maxDoc];
         if (sortField.getMissingValue() != null) {
-          Arrays.fill(values, (Integer) sortField.getMissingValue());
+          Arrays.fill(keys, (Integer) sortField.getMissingValue());
         }
 
         while (true) {
@@ -327,61 +400,48 @@ final class Sorter {
           if (docID == NO_MORE_DOCS) {
             break;
           }
-          values[docID] = (int) dvs.longValue();
+          keys[docID] = (int) dvs.longValue();
         }
 
-        return new DocComparator() {
-          @Override
-          public int compare(int docID1, int docID2) {
-            return reverseMul * Integer.compare(values[docID1], values[docID2]);
-          }
-        };
+        return newKeyedComparator(keys, reverse);
       }
 
       case DOUBLE:
       {
         final NumericDocValues dvs = numericProvider.get();
-        double[] values = new double[maxDoc];
+        long[] keys = new long[maxDoc];
         if (sortField.getMissingValue() != null) {
-          Arrays.fill(values, (Double) sortField.getMissingValue());
+          Arrays.fill(keys, NumericUtils.doubleToSortableLong((Double) sortField.getMissingValue()));
         }
         while (true) {
           int docID = dvs.nextDoc();
           if (docID == NO_MORE_DOCS) {
             break;
           }
-          values[docID] = Double.longBitsToDouble(dvs.longValue());
+          // same order as Double.compare
+          keys[docID] = NumericUtils.doubleToSortableLong(Double.longBitsToDouble(dvs.longValue()));
         }
 
-        return new DocComparator() {
-          @Override
-          public int compare(int docID1, int docID2) {
-            return reverseMul * Double.compare(values[docID1], values[docID2]);
-          }
-        };
+        return newKeyedComparator(keys, reverse);
       }
 
       case FLOAT:
       {
         final NumericDocValues dvs = numericProvider.get();
-        float[] values = new float[maxDoc];
+        long[] keys = new long[maxDoc];
         if (sortField.getMissingValue() != null) {
-          Arrays.fill(values, (Float) sortField.getMissingValue());
+          Arrays.fill(keys, NumericUtils.floatToSortableInt((Float) sortField.getMissingValue()));
         }
         while (true) {
           int docID = dvs.nextDoc();
           if (docID == NO_MORE_DOCS) {
             break;
           }
-          values[docID] = Float.intBitsToFloat((int) dvs.longValue());
+          // same order as Float.compare
+          keys[docID] = NumericUtils.floatToSortableInt(Float.intBitsToFloat((int) dvs.longValue()));
         }
 
-        return new DocComparator() {
-          @Override
-          public int compare(int docID1, int docID2) {
-            return reverseMul * Float.compare(values[docID1], values[docID2]);
-          }
-        };
+        return newKeyedComparator(keys, reverse);
       }
 
       default:
@@ -390,6 +450,17 @@ final class Sorter {
   }
 
 
+  /** Returns a comparator over the given keys, flipping all bits of the keys
+   *  to reverse the order if needed. */
+  private static KeyedDocComparator newKeyedComparator(long[] keys, boolean reverse) {
+    if (reverse) {
+      for (int i = 0; i < keys.length; ++i) {
+        keys[i] = ~keys[i];
+      }
+    }
+    return new KeyedDocComparator(keys);
+  }
+
   /**
    * Returns a mapping from the old document ID to its new location in the
    * sorted index. Implementations can use the auxiliary
@@ -427,7 +498,25 @@ final class Sorter {
       }
     };
 
-    return sort(maxDoc, comparator);
+    boolean keyed = maxDoc > 0;
+    for (DocComparator c : comparators) {
+      keyed &= c instanceof KeyedDocComparator;
+    }
+    if (keyed == false) {
+      return sort(maxDoc, comparator);
+    }
+
+    // check if the index is sorted
+    for (int i = 1; i < maxDoc; ++i) {
+      if (comparator.compare(i-1, i) > 0) {
+        final KeyedDocComparator[] keyedComparators = new KeyedDocComparator[comparators.length];
+        for (int j = 0; j < comparators.length; ++j) {
+          keyedComparators[j] = (KeyedDocComparator) comparators[j];
+        }
+        return radixSort(maxDoc, keyedComparators);
+      }
+    }
+    return null;
   }
 
   /**
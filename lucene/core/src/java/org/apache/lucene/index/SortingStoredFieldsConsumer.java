@@ -20,72 +20,223 @@ package org.apache.lucene.index;
 import java.io.IOException;
 import java.io.Reader;
 import java.nio.charset.StandardCharsets;
-import java.util.Map;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.codecs.StoredFieldsReader;
 import org.apache.lucene.codecs.StoredFieldsWriter;
 import org.apache.lucene.document.StoredField;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.GrowableByteArrayDataOutput;
 import org.apache.lucene.store.IOContext;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.ByteBlockPool;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.packed.PackedInts;
+import org.apache.lucene.util.packed.PackedLongValues;
 
+/**
+ * Buffers stored fields in RAM, accounted against the {@link DocumentsWriterPerThread}
+ * RAM usage, so that they can be written directly in the sorted order at flush time
+ * instead of going through a temporary stored fields file that needs to be copied.
+ */
 final class SortingStoredFieldsConsumer extends StoredFieldsConsumer {
-  TrackingTmpOutputDirectoryWrapper tmpDirectory;
+
+  // field types, encoded next to the field number
+  private static final int STRING = 0x00;
+  private static final int BYTE_ARR = 0x01;
+  private static final int NUMERIC_INT = 0x02;
+  private static final int NUMERIC_FLOAT = 0x03;
+  private static final int NUMERIC_LONG = 0x04;
+  private static final int NUMERIC_DOUBLE = 0x05;
+  private static final int TYPE_BITS = 3;
+  private static final int TYPE_MASK = 0x07;
+
+  private final ByteBlockPool pool;
+  private final GrowableByteArrayDataOutput scratch;
+  private PackedLongValues.Builder docStarts;
+  private long docStartsBytesUsed;
+  private long bufferedBytes;
 
   SortingStoredFieldsConsumer(DocumentsWriterPerThread docWriter) {
     super(docWriter);
+    this.pool = new ByteBlockPool(new ByteBlockPool.DirectTrackingAllocator(docWriter.bytesUsed));
+    this.scratch = new GrowableByteArrayDataOutput(1024);
+    this.docStarts = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+    this.docStartsBytesUsed = docStarts.ramBytesUsed();
+    docWriter.bytesUsed.addAndGet(docStartsBytesUsed);
   }
 
   @Override
-  protected void initStoredFieldsWriter() throws IOException {
-    if (writer == null) {
-      this.tmpDirectory = new TrackingTmpOutputDirectoryWrapper(docWriter.directory);
-      this.writer = docWriter.codec.storedFieldsFormat().fieldsWriter(tmpDirectory, docWriter.getSegmentInfo(),
-          IOContext.DEFAULT);
+  void startDocument(int docID) throws IOException {
+    assert lastDoc < docID;
+    while (++lastDoc < docID) {
+      // documents without stored fields
+      addDocStart();
     }
+    addDocStart();
+    scratch.reset();
+  }
+
+  private void addDocStart() {
+    docStarts.add(bufferedBytes);
+    final long newBytesUsed = docStarts.ramBytesUsed();
+    docWriter.bytesUsed.addAndGet(newBytesUsed - docStartsBytesUsed);
+    docStartsBytesUsed = newBytesUsed;
   }
 
   @Override
-  void flush(SegmentWriteState state, Sorter.DocMap sortMap) throws IOException {
-    super.flush(state, sortMap);
-    if (sortMap == null) {
-      // we're lucky the index is already sorted, just rename the temporary file and return
-      for (Map.Entry<String, String> entry : tmpDirectory.getTemporaryFiles().entrySet()) {
-        tmpDirectory.rename(entry.getValue(), entry.getKey());
+  void writeField(FieldInfo info, IndexableField field) throws IOException {
+    int bits;
+    final BytesRef bytes;
+    final String string;
+
+    Number number = field.numericValue();
+    if (number != null) {
+      if (number instanceof Byte || number instanceof Short || number instanceof Integer) {
+        bits = NUMERIC_INT;
+      } else if (number instanceof Long) {
+        bits = NUMERIC_LONG;
+      } else if (number instanceof Float) {
+        bits = NUMERIC_FLOAT;
+      } else if (number instanceof Double) {
+        bits = NUMERIC_DOUBLE;
+      } else {
+        throw new IllegalArgumentException("cannot store numeric type " + number.getClass());
+      }
+      string = null;
+      bytes = null;
+    } else {
+      bytes = field.binaryValue();
+      if (bytes != null) {
+        bits = BYTE_ARR;
+        string = null;
+      } else {
+        bits = STRING;
+        string = field.stringValue();
+        if (string == null) {
+          throw new IllegalArgumentException("field " + field.name() + " is stored but does not have binaryValue, stringValue nor numericValue");
+        }
       }
-      return;
     }
-    StoredFieldsReader reader = docWriter.codec.storedFieldsFormat()
-        .fieldsReader(tmpDirectory, state.segmentInfo, state.fieldInfos, IOContext.DEFAULT);
-    StoredFieldsReader mergeReader = reader.getMergeInstance();
+
+    scratch.writeVLong((((long) info.number) << TYPE_BITS) | bits);
+    switch (bits) {
+      case BYTE_ARR:
+        scratch.writeVInt(bytes.length);
+        scratch.writeBytes(bytes.bytes, bytes.offset, bytes.length);
+        break;
+      case STRING:
+        scratch.writeString(string);
+        break;
+      case NUMERIC_INT:
+        scratch.writeZInt(number.intValue());
+        break;
+      case NUMERIC_LONG:
+        scratch.writeZLong(number.longValue());
+        break;
+      case NUMERIC_FLOAT:
+        scratch.writeInt(Float.floatToIntBits(number.floatValue()));
+        break;
+      case NUMERIC_DOUBLE:
+        scratch.writeLong(Double.doubleToLongBits(number.doubleValue()));
+        break;
+      default:
+        throw new AssertionError();
+    }
+  }
+
+  @Override
+  void finishDocument() throws IOException {
+    final int length = scratch.getPosition();
+    pool.append(new BytesRef(scratch.getBytes(), 0, length));
+    bufferedBytes += length;
+  }
+
+  @Override
+  void finish(int maxDoc) throws IOException {
+    while (lastDoc < maxDoc-1) {
+      startDocument(lastDoc+1);
+      finishDocument();
+    }
+  }
+
+  @Override
+  void flush(SegmentWriteState state, Sorter.DocMap sortMap) throws IOException {
+    final int maxDoc = state.segmentInfo.maxDoc();
+    final PackedLongValues starts = docStarts.build();
+    assert starts.size() == maxDoc : "docs=" + starts.size() + " maxDoc=" + maxDoc;
     StoredFieldsWriter sortWriter = docWriter.codec.storedFieldsFormat()
         .fieldsWriter(state.directory, state.segmentInfo, IOContext.DEFAULT);
     try {
-      reader.checkIntegrity();
       CopyVisitor visitor = new CopyVisitor(sortWriter);
-      for (int docID = 0; docID < state.segmentInfo.maxDoc(); docID++) {
+      ByteArrayDataInput in = new ByteArrayDataInput();
+      byte[] buffer = new byte[0];
+      for (int docID = 0; docID < maxDoc; docID++) {
+        final int oldID = sortMap == null ? docID : sortMap.newToOld(docID);
+        final long start = starts.get(oldID);
+        final long end = oldID + 1 < maxDoc ? starts.get(oldID + 1) : bufferedBytes;
+        final int length = Math.toIntExact(end - start);
+        buffer = ArrayUtil.grow(buffer, length);
+        pool.readBytes(start, buffer, 0, length);
+        in.reset(buffer, 0, length);
         sortWriter.startDocument();
-        mergeReader.visitDocument(sortMap.newToOld(docID), visitor);
+        while (in.eof() == false) {
+          readField(in, buffer, state.fieldInfos, visitor);
+        }
         sortWriter.finishDocument();
       }
-      sortWriter.finish(state.fieldInfos, state.segmentInfo.maxDoc());
+      sortWriter.finish(state.fieldInfos, maxDoc);
     } finally {
-      IOUtils.close(reader, sortWriter);
-      IOUtils.deleteFiles(tmpDirectory,
-          tmpDirectory.getTemporaryFiles().values());
+      IOUtils.close(sortWriter);
+      release();
+    }
+  }
+
+  private static void readField(ByteArrayDataInput in, byte[] bytes, FieldInfos fieldInfos, CopyVisitor visitor) throws IOException {
+    final long infoAndBits = in.readVLong();
+    final FieldInfo info = fieldInfos.fieldInfo((int) (infoAndBits >>> TYPE_BITS));
+    assert info != null;
+    visitor.reset(info);
+    switch ((int) (infoAndBits & TYPE_MASK)) {
+      case BYTE_ARR:
+        final int length = in.readVInt();
+        visitor.binaryValue = new BytesRef(bytes, in.getPosition(), length);
+        in.skipBytes(length);
+        break;
+      case STRING:
+        visitor.stringValue = in.readString();
+        break;
+      case NUMERIC_INT:
+        visitor.numericValue = in.readZInt();
+        break;
+      case NUMERIC_LONG:
+        visitor.numericValue = in.readZLong();
+        break;
+      case NUMERIC_FLOAT:
+        visitor.numericValue = Float.intBitsToFloat(in.readInt());
+        break;
+      case NUMERIC_DOUBLE:
+        visitor.numericValue = Double.longBitsToDouble(in.readLong());
+        break;
+      default:
+        throw new AssertionError("unknown type bits: " + (infoAndBits & TYPE_MASK));
     }
+    visitor.write();
+  }
+
+  /** Returns the buffered bytes to the RAM accounting. */
+  private void release() {
+    pool.reset(false, false);
+    docWriter.bytesUsed.addAndGet(-docStartsBytesUsed);
+    docStartsBytesUsed = 0;
+    docStarts = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+    bufferedBytes = 0;
   }
 
   @Override
   void abort() {
-    try {
-      super.abort();
-    } finally {
-      IOUtils.deleteFilesIgnoringExceptions(tmpDirectory,
-          tmpDirectory.getTemporaryFiles().values());
-    }
+    release();
   }
 
   /**
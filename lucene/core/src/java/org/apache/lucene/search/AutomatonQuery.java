@@ -18,6 +18,7 @@ package org.apache.lucene.search;
 
 
 import java.io.IOException;
+import java.util.function.Supplier;
 
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.Terms;
@@ -25,6 +26,7 @@ import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.util.AttributeSource;
 import org.apache.lucene.util.automaton.Automaton;
 import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.apache.lucene.util.automaton.CompiledAutomatonCache;
 import org.apache.lucene.util.automaton.Operations;
 
 /**
@@ -102,6 +104,36 @@ public class AutomatonQuery extends MultiTermQuery {
     this.compiled = new CompiledAutomaton(automaton, null, true, maxDeterminizedStates, isBinary);
   }
 
+  /**
+   * Expert: create a new AutomatonQuery from an automaton that was
+   * already compiled, typically by a {@link CompiledAutomatonCache}.
+   *
+   * @param term Term containing field and possibly some pattern structure. The
+   *        term text is ignored.
+   * @param entry the automaton to run, and its compiled form.
+   */
+  protected AutomatonQuery(final Term term, CompiledAutomatonCache.Entry entry) {
+    super(term.field());
+    this.term = term;
+    this.automaton = entry.automaton;
+    this.compiled = entry.compiled;
+  }
+
+  /** Compiles the automaton returned by the supplier, or returns the entry
+   *  that the {@link CompiledAutomatonCache#getDefault() default cache}
+   *  holds for the given key.  A null key disables caching. */
+  static CompiledAutomatonCache.Entry compile(Object key, Supplier<Automaton> automaton, int maxDeterminizedStates, boolean isBinary) {
+    final Supplier<CompiledAutomatonCache.Entry> loader = () -> {
+      final Automaton a = automaton.get();
+      return new CompiledAutomatonCache.Entry(a, new CompiledAutomaton(a, null, true, maxDeterminizedStates, isBinary));
+    };
+    final CompiledAutomatonCache cache = CompiledAutomatonCache.getDefault();
+    if (cache == null || key == null) {
+      return loader.get();
+    }
+    return cache.get(key, loader);
+  }
+
   @Override
   protected TermsEnum getTermsEnum(Terms terms, AttributeSource atts) throws IOException {
     return compiled.getTermsEnum(terms);
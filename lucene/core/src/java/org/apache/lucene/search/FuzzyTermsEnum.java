@@ -31,10 +31,12 @@ import org.apache.lucene.util.BytesRefBuilder;
 import org.apache.lucene.util.UnicodeUtil;
 import org.apache.lucene.util.automaton.Automaton;
 import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.apache.lucene.util.automaton.CompiledAutomatonCache;
 import org.apache.lucene.util.automaton.LevenshteinAutomata;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.function.Supplier;
 
 /** Subclass of TermsEnum for enumerating all terms that are similar
  * to the specified filter term.
@@ -132,13 +134,22 @@ public final class FuzzyTermsEnum extends TermsEnum {
     if (prevAutomata == null) {
       prevAutomata = new CompiledAutomaton[maxEdits+1];
 
-      LevenshteinAutomata builder = 
-        new LevenshteinAutomata(UnicodeUtil.newString(termText, realPrefixLength, termText.length - realPrefixLength), transpositions);
+      final String suffix = UnicodeUtil.newString(termText, realPrefixLength, termText.length - realPrefixLength);
+      LevenshteinAutomata builder = new LevenshteinAutomata(suffix, transpositions);
 
       String prefix = UnicodeUtil.newString(termText, 0, realPrefixLength);
+      final CompiledAutomatonCache cache = CompiledAutomatonCache.getDefault();
       for (int i = 0; i <= maxEdits; i++) {
-        Automaton a = builder.toAutomaton(i, prefix);
-        prevAutomata[i] = new CompiledAutomaton(a, true, false);
+        final int editDistance = i;
+        final Supplier<CompiledAutomatonCache.Entry> loader = () -> {
+          Automaton a = builder.toAutomaton(editDistance, prefix);
+          return new CompiledAutomatonCache.Entry(a, new CompiledAutomaton(a, true, false));
+        };
+        if (cache == null) {
+          prevAutomata[i] = loader.get().compiled;
+        } else {
+          prevAutomata[i] = cache.get(Arrays.asList(FuzzyTermsEnum.class, prefix, suffix, editDistance, transpositions), loader).compiled;
+        }
       }
 
       // first segment computes the automata, and we share with subsequent segments via this Attribute:
@@ -17,9 +17,12 @@
 package org.apache.lucene.search;
 
 
+import java.util.Arrays;
+
 import org.apache.lucene.index.Term;
 import org.apache.lucene.util.automaton.Automaton;
 import org.apache.lucene.util.automaton.AutomatonProvider;
+import org.apache.lucene.util.automaton.CompiledAutomatonCache;
 import org.apache.lucene.util.automaton.Operations;
 import org.apache.lucene.util.automaton.RegExp;
 
@@ -104,9 +107,17 @@ public class RegexpQuery extends AutomatonQuery {
    */
   public RegexpQuery(Term term, int flags, AutomatonProvider provider,
       int maxDeterminizedStates) {
-    super(term,
-          new RegExp(term.text(), flags).toAutomaton(
-                       provider, maxDeterminizedStates), maxDeterminizedStates);
+    super(term, compile(term, flags, provider, maxDeterminizedStates));
+  }
+
+  private static CompiledAutomatonCache.Entry compile(Term term, int flags, AutomatonProvider provider,
+      int maxDeterminizedStates) {
+    // named automata of custom providers may change, so only cache with the default provider
+    final Object key = provider == defaultProvider
+        ? Arrays.asList(RegexpQuery.class, term.text(), flags, maxDeterminizedStates)
+        : null;
+    return compile(key, () -> new RegExp(term.text(), flags).toAutomaton(provider, maxDeterminizedStates),
+                   maxDeterminizedStates, false);
   }
 
   /** Returns the regexp of this query wrapped in a Term. */
@@ -18,6 +18,7 @@ package org.apache.lucene.search;
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.lucene.index.Term;
@@ -53,7 +54,7 @@ public class WildcardQuery extends AutomatonQuery {
    * Constructs a query for terms matching <code>term</code>. 
    */
   public WildcardQuery(Term term) {
-    super(term, toAutomaton(term));
+    this(term, Operations.DEFAULT_MAX_DETERMINIZED_STATES);
   }
   
   /**
@@ -64,7 +65,8 @@ public class WildcardQuery extends AutomatonQuery {
    *   space but can process more complex automata.
    */
   public WildcardQuery(Term term, int maxDeterminizedStates) {
-    super(term, toAutomaton(term), maxDeterminizedStates);
+    super(term, compile(Arrays.asList(WildcardQuery.class, term.text(), maxDeterminizedStates),
+                        () -> toAutomaton(term), maxDeterminizedStates, false));
   }
 
   /**
@@ -44,6 +44,9 @@ abstract class ByteBufferIndexInput extends IndexInput implements RandomAccessIn
   protected ByteBuffer curBuf; // redundant for speed: buffers[curBufIndex]
 
   protected boolean isClone = false;
+
+  /** whether {@link #prefetch} hints are passed to the operating system, shared with clones */
+  boolean usePrefetch = false;
   
   public static ByteBufferIndexInput newInstance(String resourceDescription, ByteBuffer[] buffers, long length, int chunkSizePower, ByteBufferGuard guard) {
     if (buffers.length == 1) {
@@ -239,6 +242,37 @@ abstract class ByteBufferIndexInput extends IndexInput implements RandomAccessIn
     }
   }
 
+  @Override
+  public void prefetch(long offset, long length) throws IOException {
+    checkPrefetchBounds(offset, length);
+    if (buffers == null) {
+      throw new AlreadyClosedException("Already closed: " + this);
+    }
+    if (length == 0 || usePrefetch == false || buffers[0].isDirect() == false) {
+      return; // heap buffers are always resident
+    }
+    long pos = offset + bufferOffset();
+    final long end = pos + length;
+    while (pos < end) {
+      final ByteBuffer b = buffers[(int) (pos >> chunkSizePower)];
+      final int start = (int) (pos & chunkSizeMask);
+      final int stop = (int) Math.min(b.limit(), start + (end - pos));
+      if (stop <= start) {
+        break;
+      }
+      // madvise works on the address and capacity of the buffer, so it needs a real slice
+      final ByteBuffer range = b.duplicate();
+      range.position(start).limit(stop);
+      MMapDirectory.prefetch(range.slice());
+      pos += stop - start;
+    }
+  }
+
+  /** Returns the offset of this input in its first buffer. */
+  protected long bufferOffset() {
+    return 0L;
+  }
+
   @Override
   public final long length() {
     return length;
@@ -279,6 +313,7 @@ abstract class ByteBufferIndexInput extends IndexInput implements RandomAccessIn
     
     final ByteBufferIndexInput clone = newCloneInstance(getFullSliceDescription(sliceDescription), newBuffers, ofs, length);
     clone.isClone = true;
+    clone.usePrefetch = usePrefetch;
     
     return clone;
   }
@@ -490,5 +525,10 @@ abstract class ByteBufferIndexInput extends IndexInput implements RandomAccessIn
     protected ByteBufferIndexInput buildSlice(String sliceDescription, long ofs, long length) {
       return super.buildSlice(sliceDescription, this.offset + ofs, length);
     }
+
+    @Override
+    protected long bufferOffset() {
+      return offset;
+    }
   }
 }
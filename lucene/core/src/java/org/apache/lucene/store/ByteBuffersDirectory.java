@@ -0,0 +1,431 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.store;
+
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.Accountables;
+
+/**
+ * A memory-resident {@link Directory} implementation that stores files in
+ * large {@link ByteBuffer} blocks, which may be allocated on or off heap.
+ * Locking implementation is by default the {@link SingleInstanceLockFactory}.
+ * <p>
+ * Unlike {@link RAMDirectory}, files are immutable once their output has
+ * been closed, and they are read through the same lock-free, slicing
+ * {@link IndexInput} implementation as {@link MMapDirectory}, so reading
+ * small cached segments is as fast as reading memory-mapped files. Files
+ * can not be opened for reading while they are still being written.
+ * <p>
+ * Blocks are sized in powers of two up to a configurable maximum: small
+ * files only use a single block of about their size, larger files use
+ * full-size blocks, and the last block of a file is trimmed when its
+ * output is closed. Blocks of deleted files are released to the garbage
+ * collector once all inputs that read them are no longer referenced; they
+ * are not recycled since inputs do not track their clones.
+ *
+ * @lucene.experimental
+ */
+public class ByteBuffersDirectory extends BaseDirectory implements Accountable {
+
+  /** Allocates blocks on the Java heap. */
+  public static final IntFunction<ByteBuffer> HEAP_ALLOCATOR = ByteBuffer::allocate;
+
+  /** Allocates blocks off heap, with {@link ByteBuffer#allocateDirect}. */
+  public static final IntFunction<ByteBuffer> DIRECT_ALLOCATOR = ByteBuffer::allocateDirect;
+
+  /** Default maximum number of bits per block: 1 MB. */
+  public static final int DEFAULT_MAX_BLOCK_BITS = 20;
+
+  /** Size of the first block of a file, unless the maximum block size is smaller. */
+  static final int MIN_BLOCK_SIZE = 1 << 10;
+
+  private final Map<String,FileEntry> files = new ConcurrentHashMap<>();
+  private final AtomicLong sizeInBytes = new AtomicLong();
+  private final IntFunction<ByteBuffer> allocator;
+  private final int maxBlockBits;
+
+  /** Used to generate temp file names in {@link #createTempOutput}. */
+  private final AtomicLong nextTempFileCounter = new AtomicLong();
+
+  /** Constructs an empty {@link Directory} that allocates blocks on heap. */
+  public ByteBuffersDirectory() {
+    this(new SingleInstanceLockFactory());
+  }
+
+  /** Constructs an empty {@link Directory} with the given {@link LockFactory} that allocates blocks on heap. */
+  public ByteBuffersDirectory(LockFactory lockFactory) {
+    this(lockFactory, HEAP_ALLOCATOR, DEFAULT_MAX_BLOCK_BITS);
+  }
+
+  /**
+   * Constructs an empty {@link Directory}.
+   * @param lockFactory the lock factory to use
+   * @param allocator allocates blocks of the given size, e.g. {@link #HEAP_ALLOCATOR}
+   *        or {@link #DIRECT_ALLOCATOR}; buffers must be empty and big-endian
+   * @param maxBlockBits the maximum size of a block is {@code 2^maxBlockBits} bytes
+   * @throws IllegalArgumentException if {@code maxBlockBits} is not in {@code 1..30}
+   */
+  public ByteBuffersDirectory(LockFactory lockFactory, IntFunction<ByteBuffer> allocator, int maxBlockBits) {
+    super(lockFactory);
+    if (maxBlockBits < 1 || maxBlockBits > 30) {
+      throw new IllegalArgumentException("maxBlockBits must be in 1..30, got: " + maxBlockBits);
+    }
+    if (allocator == null) {
+      throw new NullPointerException("allocator must not be null");
+    }
+    this.allocator = allocator;
+    this.maxBlockBits = maxBlockBits;
+  }
+
+  @Override
+  public String[] listAll() {
+    ensureOpen();
+    // the key set of a ConcurrentHashMap is weakly consistent, so this is safe with concurrent changes:
+    List<String> names = new ArrayList<>(files.keySet());
+    String[] namesArray = names.toArray(new String[names.size()]);
+    Arrays.sort(namesArray);
+    return namesArray;
+  }
+
+  /** Returns true if a file with the given name exists, including files that are still being written. */
+  public boolean fileNameExists(String name) {
+    ensureOpen();
+    return files.containsKey(name);
+  }
+
+  /** Returns true if the file exists and its output has been closed, so that it can be opened. */
+  boolean isComplete(String name) {
+    final FileEntry file = files.get(name);
+    return file != null && file.content != null;
+  }
+
+  /** Returns the length in bytes of a file in the directory, or the number
+   *  of bytes written so far if the file is still being written.
+   * @throws IOException if the file does not exist
+   */
+  @Override
+  public long fileLength(String name) throws IOException {
+    ensureOpen();
+    return getFile(name).length();
+  }
+
+  /** Return total size in bytes of all blocks that are used by files of this directory. */
+  @Override
+  public long ramBytesUsed() {
+    return sizeInBytes.get();
+  }
+
+  @Override
+  public Collection<Accountable> getChildResources() {
+    return Accountables.namedAccountables("file", files);
+  }
+
+  @Override
+  public void deleteFile(String name) throws IOException {
+    ensureOpen();
+    FileEntry file = files.remove(name);
+    if (file == null) {
+      throw new FileNotFoundException(name);
+    }
+    file.delete();
+  }
+
+  @Override
+  public IndexOutput createOutput(String name, IOContext context) throws IOException {
+    ensureOpen();
+    FileEntry file = new FileEntry(name);
+    if (files.putIfAbsent(name, file) != null) {
+      throw new FileAlreadyExistsException(name);
+    }
+    return file.createOutput();
+  }
+
+  @Override
+  public IndexOutput createTempOutput(String prefix, String suffix, IOContext context) throws IOException {
+    ensureOpen();
+    while (true) {
+      String name = IndexFileNames.segmentFileName(prefix, suffix + "_" + Long.toString(nextTempFileCounter.getAndIncrement(), Character.MAX_RADIX), "tmp");
+      FileEntry file = new FileEntry(name);
+      if (files.putIfAbsent(name, file) == null) {
+        return file.createOutput();
+      }
+    }
+  }
+
+  @Override
+  public void sync(Collection<String> names) throws IOException {
+  }
+
+  @Override
+  public void rename(String source, String dest) throws IOException {
+    ensureOpen();
+    FileEntry file = getFile(source);
+    if (files.putIfAbsent(dest, file) != null) {
+      throw new FileAlreadyExistsException(dest);
+    }
+    if (!files.remove(source, file)) {
+      throw new IllegalStateException("file was unexpectedly replaced: " + source);
+    }
+  }
+
+  @Override
+  public void syncMetaData() throws IOException {
+    // we are by definition not durable!
+  }
+
+  /** Returns an input reading an existing file.
+   * @throws AccessDeniedException if the file is still being written */
+  @Override
+  public IndexInput openInput(String name, IOContext context) throws IOException {
+    ensureOpen();
+    return getFile(name).openInput(name);
+  }
+
+  /** Closes the store to future operations, releasing associated memory. */
+  @Override
+  public void close() {
+    isOpen = false;
+    for (FileEntry file : files.values()) {
+      file.delete();
+    }
+    files.clear();
+  }
+
+  private FileEntry getFile(String name) throws FileNotFoundException {
+    FileEntry file = files.get(name);
+    if (file == null) {
+      throw new FileNotFoundException(name);
+    }
+    return file;
+  }
+
+  private ByteBuffer allocate(int size) {
+    final ByteBuffer buffer = allocator.apply(size);
+    assert buffer.position() == 0 && buffer.capacity() == size;
+    return buffer;
+  }
+
+  /** A file, which is being written until its content is set. */
+  private final class FileEntry implements Accountable {
+    private final String name;
+    /** read-only blocks, set once the output is closed */
+    private volatile ByteBuffer[] content;
+    private volatile long length;
+    private volatile ByteBuffersIndexOutput output;
+    /** sum of the capacities of the blocks of this file */
+    private final AtomicLong bytesUsed = new AtomicLong();
+    private boolean deleted;
+
+    FileEntry(String name) {
+      this.name = name;
+    }
+
+    IndexOutput createOutput() {
+      assert output == null;
+      output = new ByteBuffersIndexOutput(this);
+      return output;
+    }
+
+    long length() {
+      final ByteBuffersIndexOutput output = this.output;
+      if (output != null) {
+        // still being written
+        return output.getFilePointer();
+      }
+      return length;
+    }
+
+    IndexInput openInput(String resourceName) throws IOException {
+      final ByteBuffer[] content = this.content;
+      if (content == null) {
+        throw new AccessDeniedException("Can't open a file that is still open for writing: " + resourceName);
+      }
+      final ByteBuffer[] buffers = new ByteBuffer[content.length];
+      for (int i = 0; i < buffers.length; i++) {
+        buffers[i] = content[i].duplicate();
+      }
+      final String resourceDescription = "ByteBuffersIndexInput(name=\"" + resourceName + "\")";
+      return ByteBufferIndexInput.newInstance(resourceDescription, buffers, length, maxBlockBits,
+          new ByteBufferGuard(resourceDescription, null));
+    }
+
+    /** Called by the output when a block is allocated or released. */
+    synchronized void accountBlock(long delta) {
+      if (deleted == false) {
+        bytesUsed.addAndGet(delta);
+        sizeInBytes.addAndGet(delta);
+      }
+    }
+
+    synchronized void setContent(ByteBuffer[] content, long length) {
+      this.length = length;
+      this.content = content;
+      this.output = null;
+    }
+
+    synchronized void delete() {
+      if (deleted == false) {
+        deleted = true;
+        sizeInBytes.addAndGet(-bytesUsed.get());
+      }
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return bytesUsed.get();
+    }
+
+  }
+
+  /**
+   * Writes into blocks of growing size: the first block doubles until it
+   * reaches the maximum block size, further blocks are allocated with the
+   * maximum block size. This way all blocks but the last one have the same
+   * size, as required by {@link ByteBufferIndexInput}.
+   */
+  private final class ByteBuffersIndexOutput extends IndexOutput implements Accountable {
+    private final FileEntry file;
+    private final List<ByteBuffer> fullBlocks = new ArrayList<>();
+    private final Checksum crc = new BufferedChecksum(new CRC32());
+    private final int maxBlockSize = 1 << maxBlockBits;
+    private ByteBuffer current;
+    private boolean closed;
+
+    ByteBuffersIndexOutput(FileEntry file) {
+      super("ByteBuffersIndexOutput(name=\"" + file.name + "\")", file.name);
+      this.file = file;
+    }
+
+    private ByteBuffer newBlock(int size) {
+      final ByteBuffer block = allocate(size);
+      file.accountBlock(size);
+      return block;
+    }
+
+    /** Makes room for at least one more byte. */
+    private void nextBlock() {
+      assert current == null || current.hasRemaining() == false;
+      if (current == null) {
+        current = newBlock(Math.min(MIN_BLOCK_SIZE, maxBlockSize));
+      } else if (fullBlocks.isEmpty() && current.capacity() < maxBlockSize) {
+        // grow the first block
+        final ByteBuffer bigger = newBlock(Math.min(maxBlockSize, current.capacity() << 1));
+        current.flip();
+        bigger.put(current);
+        file.accountBlock(-current.capacity());
+        current = bigger;
+      } else {
+        fullBlocks.add(current);
+        current = newBlock(maxBlockSize);
+      }
+    }
+
+    @Override
+    public void writeByte(byte b) throws IOException {
+      if (current == null || current.hasRemaining() == false) {
+        nextBlock();
+      }
+      crc.update(b);
+      current.put(b);
+    }
+
+    @Override
+    public void writeBytes(byte[] b, int offset, int length) throws IOException {
+      assert b != null;
+      crc.update(b, offset, length);
+      while (length > 0) {
+        if (current == null || current.hasRemaining() == false) {
+          nextBlock();
+        }
+        final int chunk = Math.min(length, current.remaining());
+        current.put(b, offset, chunk);
+        offset += chunk;
+        length -= chunk;
+      }
+    }
+
+    @Override
+    public long getFilePointer() {
+      return ((long) fullBlocks.size() << maxBlockBits) + (current == null ? 0 : current.position());
+    }
+
+    @Override
+    public long getChecksum() throws IOException {
+      return crc.getValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      final long length = getFilePointer();
+      final List<ByteBuffer> blocks = new ArrayList<>(fullBlocks);
+      if (current != null && current.position() > 0) {
+        if (current.hasRemaining()) {
+          // trim the last block
+          final ByteBuffer trimmed = newBlock(current.position());
+          current.flip();
+          trimmed.put(current);
+          file.accountBlock(-current.capacity());
+          current = trimmed;
+        }
+        blocks.add(current);
+      } else if (current != null) {
+        file.accountBlock(-current.capacity());
+      }
+      if ((length & (maxBlockSize - 1)) == 0) {
+        // ByteBufferIndexInput needs a trailing empty buffer to seek to the end of the file
+        blocks.add(ByteBuffer.allocate(0));
+      }
+      assert blocks.size() == (int) (length >>> maxBlockBits) + 1;
+      final ByteBuffer[] content = new ByteBuffer[blocks.size()];
+      for (int i = 0; i < content.length; i++) {
+        final ByteBuffer block = blocks.get(i);
+        block.flip();
+        content[i] = block.asReadOnlyBuffer();
+      }
+      fullBlocks.clear();
+      current = null;
+      file.setContent(content, length);
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return file.ramBytesUsed();
+    }
+  }
+}
@@ -33,6 +33,23 @@ public class IOContext {
     MERGE, READ, FLUSH, DEFAULT
   };
 
+  /**
+   * Hint about how a file that is opened for reading is going to be accessed.
+   * {@link Directory} implementations may use it to tune read-ahead and
+   * caching, or ignore it.
+   * @lucene.experimental
+   */
+  public enum ReadAdvice {
+    /** No particular access pattern is expected. */
+    NORMAL,
+    /** The file is going to be read sequentially, e.g. by a merge. */
+    SEQUENTIAL,
+    /** The file is going to be accessed at random offsets, so read-ahead is wasteful. */
+    RANDOM,
+    /** Same as {@link #RANDOM}, and the file should be loaded into memory when it is opened. */
+    RANDOM_PRELOAD
+  }
+
   /**
    * An object of a enumerator Context type
    */
@@ -44,6 +61,12 @@ public class IOContext {
 
   public final boolean readOnce;
 
+  /**
+   * The expected access pattern of files that are opened with this context.
+   * @lucene.experimental
+   */
+  public final ReadAdvice readAdvice;
+
   public static final IOContext DEFAULT = new IOContext(Context.DEFAULT);
 
   public static final IOContext READONCE = new IOContext(true);
@@ -60,6 +83,7 @@ public class IOContext {
     this.mergeInfo = null;
     this.readOnce = false;
     this.flushInfo = flushInfo;
+    this.readAdvice = ReadAdvice.NORMAL;
   }
 
   public IOContext(Context context) {
@@ -71,6 +95,7 @@ public class IOContext {
     this.mergeInfo = null;
     this.readOnce = readOnce;
     this.flushInfo = null;
+    this.readAdvice = readOnce ? ReadAdvice.SEQUENTIAL : ReadAdvice.NORMAL;
   }
 
   public IOContext(MergeInfo mergeInfo) {
@@ -84,6 +109,7 @@ public class IOContext {
     this.readOnce = false;
     this.mergeInfo = mergeInfo;
     this.flushInfo = null;
+    this.readAdvice = context == Context.MERGE ? ReadAdvice.SEQUENTIAL : ReadAdvice.NORMAL;
   }
   
   /**
@@ -92,10 +118,31 @@ public class IOContext {
    * @param readOnce The new {@link IOContext} object will use this value for readOnce. 
    */
   public IOContext(IOContext ctxt, boolean readOnce) {
+    this(ctxt, readOnce, readOnce ? ReadAdvice.SEQUENTIAL : ctxt.readAdvice);
+  }
+
+  private IOContext(IOContext ctxt, boolean readOnce, ReadAdvice readAdvice) {
     this.context = ctxt.context;
     this.mergeInfo = ctxt.mergeInfo;
     this.flushInfo = ctxt.flushInfo;
     this.readOnce = readOnce;
+    this.readAdvice = readAdvice;
+  }
+
+  /**
+   * Returns an {@link IOContext} that is the same as this one but with the
+   * given {@link ReadAdvice}. Merges always read sequentially, so this
+   * returns this instance if this is a {@link Context#MERGE} context.
+   * @lucene.experimental
+   */
+  public IOContext withReadAdvice(ReadAdvice readAdvice) {
+    if (readAdvice == null) {
+      throw new NullPointerException("readAdvice must not be null");
+    }
+    if (context == Context.MERGE || readAdvice == this.readAdvice) {
+      return this;
+    }
+    return new IOContext(this, readOnce, readAdvice);
   }
 
   @Override
@@ -106,6 +153,7 @@ public class IOContext {
     result = prime * result + ((flushInfo == null) ? 0 : flushInfo.hashCode());
     result = prime * result + ((mergeInfo == null) ? 0 : mergeInfo.hashCode());
     result = prime * result + (readOnce ? 1231 : 1237);
+    result = prime * result + readAdvice.hashCode();
     return result;
   }
 
@@ -132,13 +180,15 @@ public class IOContext {
       return false;
     if (readOnce != other.readOnce)
       return false;
+    if (readAdvice != other.readAdvice)
+      return false;
     return true;
   }
 
   @Override
   public String toString() {
     return "IOContext [context=" + context + ", mergeInfo=" + mergeInfo
-        + ", flushInfo=" + flushInfo + ", readOnce=" + readOnce + "]";
+        + ", flushInfo=" + flushInfo + ", readOnce=" + readOnce + ", readAdvice=" + readAdvice + "]";
   }
 
 }
\ No newline at end of file
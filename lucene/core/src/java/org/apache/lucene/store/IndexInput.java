@@ -102,6 +102,28 @@ public abstract class IndexInput extends DataInput implements Cloneable,Closeabl
    */
   public abstract IndexInput slice(String sliceDescription, long offset, long length) throws IOException;
 
+  /**
+   * Optional method: Give a hint to this input that the given range of bytes is
+   * likely to be read in the near future, so that it can be fetched
+   * asynchronously, e.g. from disk into the page cache. This is only a hint:
+   * implementations may ignore it, and it never moves the file pointer.
+   * <p>The default implementation does nothing.
+   *
+   * @param offset start of the range, relative to the start of this input
+   * @param length number of bytes in the range
+   * @throws IllegalArgumentException if the range is out of the bounds of this input
+   * @lucene.experimental
+   */
+  public void prefetch(long offset, long length) throws IOException {
+  }
+
+  /** Checks that a range passed to {@link #prefetch} is within the bounds of this input. */
+  protected final void checkPrefetchBounds(long offset, long length) {
+    if (offset < 0 || length < 0 || offset + length > length()) {
+      throw new IllegalArgumentException("prefetch out of bounds: offset=" + offset + ",length=" + length + ",fileLength=" + length() + ": " + this);
+    }
+  }
+
   /** Subclasses call this to get the String for resourceDescription of a slice of this {@code IndexInput}. */
   protected String getFullSliceDescription(String sliceDescription) {
     if (sliceDescription == null) {
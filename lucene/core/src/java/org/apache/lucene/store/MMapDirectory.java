@@ -88,11 +88,19 @@ import org.apache.lucene.util.SuppressForbidden;
  * {@link Future#cancel(boolean)} you should use the legacy {@code RAFDirectory}
  * from the Lucene {@code misc} module in favor of {@link MMapDirectory}.
  * </p>
+ * <p>The {@link IOContext#readAdvice read advice} of the {@link IOContext}
+ * that files are opened with is passed to the operating system through
+ * {@code madvise} if the native library of the Lucene {@code misc} module
+ * ({@code NativePosixUtil}) is available, see {@link #READ_ADVICE_SUPPORTED}.
+ * Otherwise only {@link IOContext.ReadAdvice#RANDOM_PRELOAD} is honored, by
+ * loading the mapped pages into physical memory.
+ * </p>
  * @see <a href="http://blog.thetaphi.de/2012/07/use-lucenes-mmapdirectory-on-64bit.html">Blog post about MMapDirectory</a>
  */
 public class MMapDirectory extends FSDirectory {
   private boolean useUnmapHack = UNMAP_SUPPORTED;
   private boolean preload;
+  private boolean useReadAdvice = READ_ADVICE_SUPPORTED;
 
   /** 
    * Default max chunk size.
@@ -221,6 +229,31 @@ public class MMapDirectory extends FSDirectory {
     return preload;
   }
   
+  /**
+   * Set to {@code false} to not pass the {@link IOContext#readAdvice read advice}
+   * of opened files, nor {@link IndexInput#prefetch prefetch} hints, to the
+   * operating system. This is enabled by default if
+   * {@link #READ_ADVICE_SUPPORTED} is {@code true}. This only applies to
+   * inputs that are opened after this call.
+   * @throws IllegalArgumentException if {@link #READ_ADVICE_SUPPORTED}
+   * is {@code false} and read advice cannot be enabled.
+   */
+  public void setUseReadAdvice(boolean useReadAdvice) {
+    if (useReadAdvice && !READ_ADVICE_SUPPORTED) {
+      throw new IllegalArgumentException("Read advice is not supported: the NativePosixUtil library of the misc module is not available");
+    }
+    this.useReadAdvice = useReadAdvice;
+  }
+
+  /**
+   * Returns {@code true} if the read advice of opened files is passed to
+   * the operating system.
+   * @see #setUseReadAdvice
+   */
+  public boolean getUseReadAdvice() {
+    return useReadAdvice;
+  }
+
   /**
    * Returns the current mmap chunk size.
    * @see #MMapDirectory(Path, LockFactory, int)
@@ -238,14 +271,16 @@ public class MMapDirectory extends FSDirectory {
     try (FileChannel c = FileChannel.open(path, StandardOpenOption.READ)) {
       final String resourceDescription = "MMapIndexInput(path=\"" + path.toString() + "\")";
       final boolean useUnmap = getUseUnmap();
-      return ByteBufferIndexInput.newInstance(resourceDescription,
-          map(resourceDescription, c, 0, c.size()), 
+      final ByteBufferIndexInput in = ByteBufferIndexInput.newInstance(resourceDescription,
+          map(resourceDescription, c, 0, c.size(), context.readAdvice), 
           c.size(), chunkSizePower, new ByteBufferGuard(resourceDescription, useUnmap ? CLEANER : null));
+      in.usePrefetch = useReadAdvice;
+      return in;
     }
   }
 
   /** Maps a file into a set of buffers */
-  final ByteBuffer[] map(String resourceDescription, FileChannel fc, long offset, long length) throws IOException {
+  final ByteBuffer[] map(String resourceDescription, FileChannel fc, long offset, long length, IOContext.ReadAdvice readAdvice) throws IOException {
     if ((length >>> chunkSizePower) >= Integer.MAX_VALUE)
       throw new IllegalArgumentException("RandomAccessFile too big for chunk size: " + resourceDescription);
     
@@ -268,7 +303,10 @@ public class MMapDirectory extends FSDirectory {
       } catch (IOException ioe) {
         throw convertMapFailedIOException(ioe, resourceDescription, bufSize);
       }
-      if (preload) {
+      if (useReadAdvice) {
+        madvise(buffer, readAdvice);
+      }
+      if (preload || readAdvice == IOContext.ReadAdvice.RANDOM_PRELOAD) {
         buffer.load();
       }
       buffers[bufNr] = buffer;
@@ -278,6 +316,50 @@ public class MMapDirectory extends FSDirectory {
     return buffers;
   }
   
+  /** Passes the given advice to the operating system, this is best-effort. */
+  private static void madvise(ByteBuffer buffer, IOContext.ReadAdvice readAdvice) {
+    final int advice;
+    switch (readAdvice) {
+      case NORMAL:
+        // this is the default for new mappings
+        return;
+      case SEQUENTIAL:
+        advice = 1; // NativePosixUtil.SEQUENTIAL
+        break;
+      case RANDOM:
+      case RANDOM_PRELOAD:
+        advice = 2; // NativePosixUtil.RANDOM
+        break;
+      default:
+        throw new AssertionError("unknown read advice: " + readAdvice);
+    }
+    try {
+      final int ret = (int) MADVISE.invokeExact(buffer, advice);
+      assert ret == 0 || buffer.capacity() == 0 : "madvise returned " + ret;
+    } catch (IOException e) {
+      // ignore, the advice is only a hint
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new AssertionError(t);
+    }
+  }
+
+  /** Asks the operating system to load the given mapped range in the background, this is best-effort. */
+  static void prefetch(ByteBuffer buffer) {
+    assert READ_ADVICE_SUPPORTED;
+    try {
+      final int ret = (int) MADVISE.invokeExact(buffer, 3); // NativePosixUtil.WILLNEED
+      assert ret == 0 : "madvise returned " + ret;
+    } catch (IOException e) {
+      // ignore, this is only a hint
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new AssertionError(t);
+    }
+  }
+
   private IOException convertMapFailedIOException(IOException ioe, String resourceDescription, int bufSize) {
     final String originalMessage;
     final Throwable originalCause;
@@ -321,6 +403,15 @@ public class MMapDirectory extends FSDirectory {
   
   /** Reference to a BufferCleaner that does unmapping; {@code null} if not supported. */
   private static final BufferCleaner CLEANER;
+
+  /**
+   * <code>true</code>, if the native library of the misc module can be used to pass
+   * {@link IOContext#readAdvice read advice} to the operating system.
+   */
+  public static final boolean READ_ADVICE_SUPPORTED;
+
+  /** Handle to {@code NativePosixUtil.madvise(ByteBuffer, int)}; {@code null} if not supported. */
+  private static final MethodHandle MADVISE;
   
   static {
     final Object hack = AccessController.doPrivileged((PrivilegedAction<Object>) MMapDirectory::unmapHackImpl);
@@ -333,6 +424,18 @@ public class MMapDirectory extends FSDirectory {
       UNMAP_SUPPORTED = false;
       UNMAP_NOT_SUPPORTED_REASON = hack.toString();
     }
+    MADVISE = AccessController.doPrivileged((PrivilegedAction<MethodHandle>) MMapDirectory::madviseImpl);
+    READ_ADVICE_SUPPORTED = MADVISE != null;
+  }
+
+  private static MethodHandle madviseImpl() {
+    try {
+      // lives in the misc module, and requires its native library
+      final Class<?> clazz = Class.forName("org.apache.lucene.store.NativePosixUtil");
+      return lookup().findStatic(clazz, "madvise", methodType(int.class, ByteBuffer.class, int.class));
+    } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+      return null;
+    }
   }
   
   @SuppressForbidden(reason = "Needs access to private APIs in DirectBuffer, sun.misc.Cleaner, and sun.misc.Unsafe to enable hack")
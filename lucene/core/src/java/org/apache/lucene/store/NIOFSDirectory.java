@@ -23,7 +23,9 @@ import java.nio.channels.ClosedChannelException; // javadoc @link
 import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future; // javadoc
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * An {@link FSDirectory} implementation that uses java.nio's FileChannel's
@@ -49,9 +51,17 @@ import java.util.concurrent.Future; // javadoc
  * {@link Future#cancel(boolean)} you should use the legacy {@code RAFDirectory}
  * from the Lucene {@code misc} module in favor of {@link NIOFSDirectory}.
  * </p>
+ * <p>
+ * {@link IndexInput#prefetch Prefetch} hints are ignored unless an executor
+ * is configured with {@link #setPrefetchExecutor}, in which case the
+ * prefetched ranges are read in the background by this executor so that
+ * they are in the page cache when they are needed.
+ * </p>
  */
 public class NIOFSDirectory extends FSDirectory {
 
+  private volatile Executor prefetchExecutor;
+
   /** Create a new NIOFSDirectory for the named location.
    *  The directory is created at the named location if it does not yet exist.
    * 
@@ -73,13 +83,32 @@ public class NIOFSDirectory extends FSDirectory {
     this(path, FSLockFactory.getDefault());
   }
 
+  /**
+   * Set the executor that reads {@link IndexInput#prefetch prefetched} ranges
+   * in the background, or {@code null} (the default) to ignore prefetch hints.
+   * This only applies to inputs that are opened after this call.
+   * <p><b>NOTE:</b> the threads of this executor must never be interrupted,
+   * since this would close the underlying file descriptor, see the class
+   * documentation. The executor may reject tasks, e.g. if its queue is full,
+   * in which case the prefetch hint is ignored.
+   */
+  public void setPrefetchExecutor(Executor prefetchExecutor) {
+    this.prefetchExecutor = prefetchExecutor;
+  }
+
+  /** Returns the executor used to prefetch ranges, or {@code null} if prefetch hints are ignored.
+   *  @see #setPrefetchExecutor */
+  public Executor getPrefetchExecutor() {
+    return prefetchExecutor;
+  }
+
   @Override
   public IndexInput openInput(String name, IOContext context) throws IOException {
     ensureOpen();
     ensureCanRead(name);
     Path path = getDirectory().resolve(name);
     FileChannel fc = FileChannel.open(path, StandardOpenOption.READ);
-    return new NIOFSIndexInput("NIOFSIndexInput(path=\"" + path + "\")", fc, context);
+    return new NIOFSIndexInput("NIOFSIndexInput(path=\"" + path + "\")", fc, context, prefetchExecutor);
   }
   
   /**
@@ -100,21 +129,34 @@ public class NIOFSDirectory extends FSDirectory {
     /** end offset (start+length) */
     protected final long end;
     
+    /** reads prefetched ranges in the background, or null */
+    private final Executor prefetchExecutor;
+    
     private ByteBuffer byteBuf; // wraps the buffer for NIO
 
     public NIOFSIndexInput(String resourceDesc, FileChannel fc, IOContext context) throws IOException {
+      this(resourceDesc, fc, context, null);
+    }
+
+    NIOFSIndexInput(String resourceDesc, FileChannel fc, IOContext context, Executor prefetchExecutor) throws IOException {
       super(resourceDesc, context);
       this.channel = fc; 
       this.off = 0L;
       this.end = fc.size();
+      this.prefetchExecutor = prefetchExecutor;
     }
     
     public NIOFSIndexInput(String resourceDesc, FileChannel fc, long off, long length, int bufferSize) {
+      this(resourceDesc, fc, off, length, bufferSize, null);
+    }
+
+    NIOFSIndexInput(String resourceDesc, FileChannel fc, long off, long length, int bufferSize, Executor prefetchExecutor) {
       super(resourceDesc, bufferSize);
       this.channel = fc;
       this.off = off;
       this.end = off + length;
       this.isClone = true;
+      this.prefetchExecutor = prefetchExecutor;
     }
     
     @Override
@@ -136,7 +178,41 @@ public class NIOFSDirectory extends FSDirectory {
       if (offset < 0 || length < 0 || offset + length > this.length()) {
         throw new IllegalArgumentException("slice() " + sliceDescription + " out of bounds: offset=" + offset + ",length=" + length + ",fileLength="  + this.length() + ": "  + this);
       }
-      return new NIOFSIndexInput(getFullSliceDescription(sliceDescription), channel, off + offset, length, getBufferSize());
+      return new NIOFSIndexInput(getFullSliceDescription(sliceDescription), channel, off + offset, length, getBufferSize(), prefetchExecutor);
+    }
+
+    @Override
+    public void prefetch(long offset, long length) throws IOException {
+      checkPrefetchBounds(offset, length);
+      if (prefetchExecutor == null || length == 0) {
+        return;
+      }
+      final long start = off + offset;
+      final long stop = start + length;
+      try {
+        prefetchExecutor.execute(() -> readInBackground(channel, start, stop));
+      } catch (RejectedExecutionException e) {
+        // ignore, this is only a hint
+      }
+    }
+
+    /** Reads the given range so that it gets loaded into the page cache. */
+    private static void readInBackground(FileChannel channel, long start, long stop) {
+      final ByteBuffer bb = ByteBuffer.allocate((int) Math.min(CHUNK_SIZE, stop - start));
+      try {
+        long pos = start;
+        while (pos < stop) {
+          bb.clear();
+          bb.limit((int) Math.min(bb.capacity(), stop - pos));
+          final int i = channel.read(bb, pos);
+          if (i <= 0) {
+            break;
+          }
+          pos += i;
+        }
+      } catch (IOException e) {
+        // ignore, this is only a hint (the input may also have been closed in the meantime)
+      }
     }
 
     @Override
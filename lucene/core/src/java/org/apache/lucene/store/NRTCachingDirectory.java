@@ -23,10 +23,14 @@ import java.nio.file.NoSuchFileException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.apache.lucene.store.RAMDirectory;      // javadocs
 import org.apache.lucene.util.Accountable;
 import org.apache.lucene.util.Accountables;
 import org.apache.lucene.util.IOUtils;
@@ -36,7 +40,7 @@ import org.apache.lucene.util.IOUtils;
 //   - rename to MergeCacheingDir?  NRTCachingDir
 
 /**
- * Wraps a {@link RAMDirectory}
+ * Wraps a {@link ByteBuffersDirectory}
  * around any provided delegate directory, to
  * be used during NRT search.
  *
@@ -64,17 +68,52 @@ import org.apache.lucene.util.IOUtils;
  * cached bytes exceeds 60 MB at which point all writes will
  * not be cached (until the net bytes falls below 60 MB).</p>
  *
+ * <p>Alternatively, the cache can draw from a {@link MemoryPool} that is
+ * shared by several directories, e.g. all indexes of a JVM:
+ *
+ * <pre class="prettyprint">
+ *   NRTCachingDirectory.MemoryPool pool = new NRTCachingDirectory.MemoryPool(256.0);
+ *   NRTCachingDirectory cachedFSDir = new NRTCachingDirectory(fsDir, 5.0, pool, spillExecutor);
+ * </pre>
+ *
+ * <p>In this mode, new files are cached as long as they are not bigger than
+ * the maximum merge size: when the pool is full, the least recently used
+ * cached files of all directories of the pool are spilled to their delegate
+ * directory in the background to make room for them. The pool is a soft
+ * limit: files that are being spilled still use memory until they have
+ * been written to the delegate.</p>
+ *
+ * <p>{@link #getHitCount() Hit}, {@link #getMissCount() miss} and
+ * {@link #getSpillCount() spill} counts can be used to monitor the
+ * efficiency of the cache.</p>
+ *
  * @lucene.experimental
  */
 
 public class NRTCachingDirectory extends FilterDirectory implements Accountable {
 
-  private final RAMDirectory cache = new RAMDirectory();
+  private final ByteBuffersDirectory cache = new ByteBuffersDirectory();
 
 
   private final long maxMergeSizeBytes;
   private final long maxCachedBytes;
 
+  /** shared budget, or null if this cache uses a fixed maximum size */
+  private final MemoryPool pool;
+  private final Executor spillExecutor;
+  /** last access time of cached files, according to the clock of the pool */
+  private final Map<String,Long> lastAccess = new HashMap<>(); // guarded by this
+  /** cached files that are currently being spilled to the delegate */
+  private final Set<String> spilling = new HashSet<>(); // guarded by this
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong cachedWriteCount = new AtomicLong();
+  private final AtomicLong uncachedWriteCount = new AtomicLong();
+  private final AtomicLong spillCount = new AtomicLong();
+  private final AtomicLong spilledBytes = new AtomicLong();
+  private final AtomicLong failedSpillCount = new AtomicLong();
+
   private static final boolean VERBOSE = false;
 
   /**
@@ -86,12 +125,39 @@ public class NRTCachingDirectory extends FilterDirectory implements Accountable
     super(delegate);
     maxMergeSizeBytes = (long) (maxMergeSizeMB*1024*1024);
     maxCachedBytes = (long) (maxCachedMB*1024*1024);
+    pool = null;
+    spillExecutor = null;
   }
 
+  /**
+   *  We will cache a newly created output if it's a flush or a merge and
+   *  the estimated size of the merged segment is {@code <= maxMergeSizeMB}.
+   *  If caching it would exceed the budget of the given pool, the least
+   *  recently used cached files of the directories of the pool are spilled
+   *  to their delegate directory with their spill executor. If not enough
+   *  files can be spilled, e.g. because they are still being written, the
+   *  output is not cached.
+   *  <p><b>NOTE:</b> the spill executor is also used to run tasks of other
+   *  directories of the pool, which write to their own delegate directory. */
+  public NRTCachingDirectory(Directory delegate, double maxMergeSizeMB, MemoryPool pool, Executor spillExecutor) {
+    super(delegate);
+    if (pool == null) {
+      throw new NullPointerException("pool must not be null");
+    }
+    if (spillExecutor == null) {
+      throw new NullPointerException("spillExecutor must not be null");
+    }
+    maxMergeSizeBytes = (long) (maxMergeSizeMB*1024*1024);
+    maxCachedBytes = -1;
+    this.pool = pool;
+    this.spillExecutor = spillExecutor;
+    pool.register(this);
+  }
 
   @Override
   public String toString() {
-    return "NRTCachingDirectory(" + in + "; maxCacheMB=" + (maxCachedBytes/1024/1024.) + " maxMergeSizeMB=" + (maxMergeSizeBytes/1024/1024.) + ")";
+    final String maxCache = pool == null ? "maxCacheMB=" + (maxCachedBytes/1024/1024.) : "pool=" + pool;
+    return "NRTCachingDirectory(" + in + "; " + maxCache + " maxMergeSizeMB=" + (maxMergeSizeBytes/1024/1024.) + ")";
   }
 
   @Override
@@ -115,6 +181,7 @@ public class NRTCachingDirectory extends FilterDirectory implements Accountable
     }
     if (cache.fileNameExists(name)) {
       cache.deleteFile(name);
+      lastAccess.remove(name);
     } else {
       in.deleteFile(name);
     }
@@ -147,13 +214,17 @@ public class NRTCachingDirectory extends FilterDirectory implements Accountable
       } catch (IOException ioe) {
         // This is fine: file may not exist
       }
-      return cache.createOutput(name, context);
+      cachedWriteCount.incrementAndGet();
+      final IndexOutput out = cache.createOutput(name, context);
+      touch(name);
+      return out;
     } else {
       try {
         cache.deleteFile(name);
       } catch (IOException ioe) {
         // This is fine: file may not exist
       }
+      uncachedWriteCount.incrementAndGet();
       return in.createOutput(name, context);
     }
   }
@@ -187,8 +258,11 @@ public class NRTCachingDirectory extends FilterDirectory implements Accountable
       if (VERBOSE) {
         System.out.println("  from cache");
       }
+      hitCount.incrementAndGet();
+      touch(name);
       return cache.openInput(name, context);
     } else {
+      missCount.incrementAndGet();
       return in.openInput(name, context);
     }
   }
@@ -202,6 +276,10 @@ public class NRTCachingDirectory extends FilterDirectory implements Accountable
     // it for defensive reasons... or in case the app is
     // doing something custom (creating outputs directly w/o
     // using IndexWriter):
+    if (pool != null) {
+      // don't let the pool schedule new spills
+      pool.unregister(this);
+    }
     boolean success = false;
     try {
       if (cache.isOpen) {
@@ -220,7 +298,7 @@ public class NRTCachingDirectory extends FilterDirectory implements Accountable
   }
 
   /** Subclass can override this to customize logic; return
-   *  true if this file should be written to the RAMDirectory. */
+   *  true if this file should be written to the in-memory cache. */
   protected boolean doCacheWrite(String name, IOContext context) {
     //System.out.println(Thread.currentThread().getName() + ": CACHE check merge=" + merge + " size=" + (merge==null ? 0 : merge.estimatedMergeBytes));
 
@@ -231,6 +309,9 @@ public class NRTCachingDirectory extends FilterDirectory implements Accountable
       bytes = context.flushInfo.estimatedSegmentSize;
     }
 
+    if (pool != null) {
+      return bytes <= maxMergeSizeBytes && pool.reserve(bytes);
+    }
     return (bytes <= maxMergeSizeBytes) && (bytes + cache.ramBytesUsed()) <= maxCachedBytes;
   }
 
@@ -295,7 +376,8 @@ public class NRTCachingDirectory extends FilterDirectory implements Accountable
 
   private final Object uncacheLock = new Object();
 
-  private void unCache(String fileName) throws IOException {
+  /** Moves the given file from the cache to the delegate, returns false if it is not cached. */
+  private boolean unCache(String fileName) throws IOException {
     // Only let one thread uncache at a time; this only
     // happens during commit() or close():
     synchronized(uncacheLock) {
@@ -304,26 +386,98 @@ public class NRTCachingDirectory extends FilterDirectory implements Accountable
       }
       if (!cache.fileNameExists(fileName)) {
         // Another thread beat us...
-        return;
+        return false;
       }
       assert slowFileExists(in, fileName) == false: "fileName=" + fileName + " exists both in cache and in delegate";
 
       final IOContext context = IOContext.DEFAULT;
       final IndexOutput out = in.createOutput(fileName, context);
-      IndexInput in = null;
+      IndexInput input = null;
+      boolean success = false;
       try {
-        in = cache.openInput(fileName, context);
-        out.copyBytes(in, in.length());
+        input = cache.openInput(fileName, context);
+        out.copyBytes(input, input.length());
+        IOUtils.close(input, out);
+        success = true;
       } finally {
-        IOUtils.close(in, out);
+        if (success == false) {
+          IOUtils.closeWhileHandlingException(input, out);
+          // the file is still cached, don't leave a partial copy in the delegate:
+          IOUtils.deleteFilesIgnoringExceptions(in, fileName);
+        }
       }
 
       // Lock order: uncacheLock -> this
       synchronized(this) {
         // Must sync here because other sync methods have
         // if (cache.fileNameExists(name)) { ... } else { ... }:
-        cache.deleteFile(fileName);
+        if (cache.fileNameExists(fileName)) {
+          cache.deleteFile(fileName);
+          lastAccess.remove(fileName);
+        } else {
+          // the file was deleted while we were copying it
+          in.deleteFile(fileName);
+        }
       }
+      return true;
+    }
+  }
+
+  /** Records an access to a cached file, if the cache uses a pool. */
+  private void touch(String fileName) {
+    if (pool != null) {
+      final long time = pool.clock.incrementAndGet();
+      synchronized(this) {
+        lastAccess.put(fileName, time);
+      }
+    }
+  }
+
+  /** Returns the least recently used cached file that can be spilled, or null. */
+  private synchronized String spillCandidate() {
+    String candidate = null;
+    long candidateTime = Long.MAX_VALUE;
+    for (Map.Entry<String,Long> entry : lastAccess.entrySet()) {
+      final String fileName = entry.getKey();
+      if (entry.getValue() < candidateTime && spilling.contains(fileName) == false && cache.isComplete(fileName)) {
+        candidate = fileName;
+        candidateTime = entry.getValue();
+      }
+    }
+    return candidate;
+  }
+
+  /** Returns the last access time of the given cached file. */
+  private synchronized long lastAccess(String fileName) {
+    final Long time = lastAccess.get(fileName);
+    return time == null ? Long.MAX_VALUE : time;
+  }
+
+  /** Marks the given file as spilling and returns its size, or -1 if it can not be spilled anymore. */
+  private synchronized long startSpill(String fileName) throws IOException {
+    if (cache.isOpen == false || lastAccess.containsKey(fileName) == false || spilling.contains(fileName)) {
+      return -1;
+    }
+    spilling.add(fileName);
+    return cache.fileLength(fileName);
+  }
+
+  private void spill(String fileName, long size) {
+    try {
+      if (unCache(fileName)) {
+        spillCount.incrementAndGet();
+        spilledBytes.addAndGet(size);
+      }
+    } catch (AlreadyClosedException e) {
+      // this directory was closed in the meantime, which flushed the file
+    } catch (IOException | RuntimeException e) {
+      // the file stays in the cache until it is deleted or sync'd
+      failedSpillCount.incrementAndGet();
+    } finally {
+      synchronized(this) {
+        spilling.remove(fileName);
+      }
+      pool.spillDone(size);
     }
   }
 
@@ -331,9 +485,160 @@ public class NRTCachingDirectory extends FilterDirectory implements Accountable
   public long ramBytesUsed() {
     return cache.ramBytesUsed();
   }
+
+  /** Returns the number of inputs that were opened on cached files. */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /** Returns the number of inputs that were opened on files of the delegate directory. */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /** Returns the number of outputs that were created in the cache. */
+  public long getCachedWriteCount() {
+    return cachedWriteCount.get();
+  }
+
+  /** Returns the number of outputs that were created in the delegate directory. */
+  public long getUncachedWriteCount() {
+    return uncachedWriteCount.get();
+  }
+
+  /** Returns the number of cached files that were spilled to the delegate directory to make room for new files. */
+  public long getSpillCount() {
+    return spillCount.get();
+  }
+
+  /** Returns the total size of the files that were spilled to the delegate directory. */
+  public long getSpilledBytes() {
+    return spilledBytes.get();
+  }
+
+  /** Returns the number of spills that failed, e.g. because the delegate directory threw an exception. */
+  public long getFailedSpillCount() {
+    return failedSpillCount.get();
+  }
+
+  /** Returns the pool that this cache draws from, or null if it has a fixed maximum size. */
+  public MemoryPool getMemoryPool() {
+    return pool;
+  }
   
   @Override
   public Collection<Accountable> getChildResources() {
     return Collections.singleton(Accountables.namedAccountable("cache", cache));
   }
+
+  /**
+   * A memory budget that is shared by {@link NRTCachingDirectory} instances,
+   * e.g. by the directories of all indexes of a JVM. When caching a new file
+   * would exceed the budget, the least recently used cached files of all
+   * directories of the pool are spilled to their delegate directory.
+   * @lucene.experimental
+   */
+  public static final class MemoryPool implements Accountable {
+
+    private volatile long maxBytes;
+    /** logical clock used to compare access times across directories */
+    final AtomicLong clock = new AtomicLong();
+    private final Set<NRTCachingDirectory> directories = new HashSet<>(); // guarded by this
+    /** bytes of files that are being spilled, which will be released soon */
+    private long pendingSpillBytes; // guarded by this
+
+    /** Creates a pool with the given budget in MB. */
+    public MemoryPool(double maxMB) {
+      setMaxMB(maxMB);
+    }
+
+    /** Sets the budget of this pool in MB. Lowering it doesn't spill files
+     *  immediately, but only as new files are cached. */
+    public void setMaxMB(double maxMB) {
+      if (maxMB < 0) {
+        throw new IllegalArgumentException("maxMB must be >= 0, got: " + maxMB);
+      }
+      this.maxBytes = (long) (maxMB*1024*1024);
+    }
+
+    /** Returns the budget of this pool in bytes. */
+    public long getMaxBytes() {
+      return maxBytes;
+    }
+
+    synchronized void register(NRTCachingDirectory dir) {
+      directories.add(dir);
+    }
+
+    synchronized void unregister(NRTCachingDirectory dir) {
+      directories.remove(dir);
+    }
+
+    /** Returns true if {@code bytes} can be cached, after spilling the least recently used files if necessary. */
+    synchronized boolean reserve(long bytes) {
+      long available = maxBytes - ramBytesUsed() + pendingSpillBytes;
+      while (available < bytes) {
+        NRTCachingDirectory lruDir = null;
+        String lruFile = null;
+        long lruTime = Long.MAX_VALUE;
+        for (NRTCachingDirectory dir : directories) {
+          final String fileName = dir.spillCandidate();
+          if (fileName != null) {
+            final long time = dir.lastAccess(fileName);
+            if (time < lruTime) {
+              lruDir = dir;
+              lruFile = fileName;
+              lruTime = time;
+            }
+          }
+        }
+        if (lruDir == null) {
+          return false;
+        }
+        final long size;
+        try {
+          size = lruDir.startSpill(lruFile);
+        } catch (IOException e) {
+          return false;
+        }
+        if (size < 0) {
+          continue; // deleted in the meantime, try again
+        }
+        pendingSpillBytes += size;
+        available += size;
+        final NRTCachingDirectory dir = lruDir;
+        final String fileName = lruFile;
+        try {
+          dir.spillExecutor.execute(() -> dir.spill(fileName, size));
+        } catch (RejectedExecutionException e) {
+          synchronized(dir) {
+            dir.spilling.remove(fileName);
+          }
+          pendingSpillBytes -= size;
+          return false;
+        }
+      }
+      return true;
+    }
+
+    synchronized void spillDone(long size) {
+      pendingSpillBytes -= size;
+      assert pendingSpillBytes >= 0;
+    }
+
+    /** Returns the total size of the caches of the directories of this pool. */
+    @Override
+    public synchronized long ramBytesUsed() {
+      long bytes = 0;
+      for (NRTCachingDirectory dir : directories) {
+        bytes += dir.ramBytesUsed();
+      }
+      return bytes;
+    }
+
+    @Override
+    public String toString() {
+      return "MemoryPool(maxMB=" + (maxBytes/1024/1024.) + ")";
+    }
+  }
 }
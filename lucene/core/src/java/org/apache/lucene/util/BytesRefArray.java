@@ -128,6 +128,31 @@ public final class BytesRefArray implements SortableBytesRefArray {
     for (int i = 0; i < orderedEntries.length; i++) {
       orderedEntries[i] = i;
     }
+    if (comp == Comparator.<BytesRef>naturalOrder() || comp instanceof BytesRefComparator) {
+      // the comparator only looks at bytes: radix sort
+      final BytesRefComparator bComp = comp instanceof BytesRefComparator ? (BytesRefComparator) comp : null;
+      new MSBRadixSorter(bComp == null ? Integer.MAX_VALUE : bComp.comparedBytesCount) {
+        @Override
+        protected void swap(int i, int j) {
+          final int o = orderedEntries[i];
+          orderedEntries[i] = orderedEntries[j];
+          orderedEntries[j] = o;
+        }
+
+        @Override
+        protected int byteAt(int i, int k) {
+          setBytesRef(scratch, scratchBytes, orderedEntries[i]);
+          if (bComp != null) {
+            return bComp.byteAt(scratchBytes, k);
+          }
+          return k < scratchBytes.length ? scratchBytes.bytes[scratchBytes.offset + k] & 0xff : -1;
+        }
+
+        private final BytesRef scratchBytes = new BytesRef();
+        private final BytesRefBuilder scratch = new BytesRefBuilder();
+      }.sort(0, size());
+      return orderedEntries;
+    }
     new IntroSorter() {
       @Override
       protected void swap(int i, int j) {
@@ -0,0 +1,367 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.apache.lucene.util.ByteBlockPool.BYTE_BLOCK_MASK;
+import static org.apache.lucene.util.ByteBlockPool.BYTE_BLOCK_SHIFT;
+import static org.apache.lucene.util.ByteBlockPool.BYTE_BLOCK_SIZE;
+
+/**
+ * A variant of {@link ByteBlockPool} whose blocks are {@link ByteBuffer}s
+ * obtained from an {@link Allocator}, typically direct buffers that live
+ * outside of the Java heap. Byte sequences are appended with a 1 or 2 bytes
+ * length prefix, the same way {@link BytesRefHash} stores its values, and
+ * are addressed by their start offset in the pool.
+ * <p>
+ * Blocks are only handed back to the allocator on {@link #reset()}, which
+ * should be called once the pool is not needed anymore, so that the
+ * allocator can reuse them.
+ * <p>
+ * Note: This class is not thread-safe. The internal storage is limited to
+ * 2GB total byte storage.
+ *
+ * @lucene.internal
+ */
+public final class OffHeapByteBlockPool implements Accountable {
+
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(OffHeapByteBlockPool.class);
+
+  /** Abstract class for allocating and freeing {@link ByteBuffer} blocks of {@link ByteBlockPool#BYTE_BLOCK_SIZE} bytes. */
+  public abstract static class Allocator {
+
+    /** Sole constructor. (For invocation by subclass constructors, typically implicit.) */
+    protected Allocator() {
+    }
+
+    /** Returns a block whose position is 0 and whose limit and capacity are {@link ByteBlockPool#BYTE_BLOCK_SIZE}. */
+    public abstract ByteBuffer getByteBlock();
+
+    /** Gives back blocks in {@code [start, end)} that are not used anymore. Blocks are not nulled out. */
+    public abstract void recycleByteBlocks(ByteBuffer[] blocks, int start, int end);
+  }
+
+  /**
+   * An {@link Allocator} that allocates direct buffers and keeps all
+   * recycled blocks for reuse, so that growing or clearing a hash does not
+   * allocate new direct memory while blocks that it gave back are waiting
+   * for the garbage collector. The direct memory of this allocator is thus
+   * bounded by the peak usage of its pools and hashes, and is released once
+   * the allocator is not referenced anymore. Use a {@link RecyclingAllocator}
+   * to bound the number of blocks that are kept, or to share blocks across
+   * pools.
+   */
+  public static final class DirectAllocator extends Allocator {
+    private final RecyclingAllocator recycler = new RecyclingAllocator(Integer.MAX_VALUE, true);
+
+    /** Sole constructor. */
+    public DirectAllocator() {
+    }
+
+    @Override
+    public ByteBuffer getByteBlock() {
+      return recycler.getByteBlock();
+    }
+
+    @Override
+    public void recycleByteBlocks(ByteBuffer[] blocks, int start, int end) {
+      recycler.recycleByteBlocks(blocks, start, end);
+    }
+
+    /** Returns the number of currently buffered blocks. */
+    public int numBufferedBlocks() {
+      return recycler.numBufferedBlocks();
+    }
+  }
+
+  /**
+   * An {@link Allocator} that keeps up to a maximum number of recycled blocks
+   * and reuses them in subsequent calls to {@link #getByteBlock()}. Unlike
+   * {@link RecyclingByteBlockAllocator}, this class is thread-safe so that
+   * it can be shared by many pools, eg. one per request.
+   */
+  public static final class RecyclingAllocator extends Allocator {
+    private final boolean direct;
+    private final int maxBufferedBlocks;
+    private ByteBuffer[] freeBlocks = new ByteBuffer[0];
+    private int numFreeBlocks;
+
+    /**
+     * Creates a new {@link RecyclingAllocator}.
+     *
+     * @param maxBufferedBlocks
+     *          maximum number of recycled blocks to keep
+     * @param direct
+     *          whether to allocate direct buffers, or heap buffers
+     */
+    public RecyclingAllocator(int maxBufferedBlocks, boolean direct) {
+      if (maxBufferedBlocks < 0) {
+        throw new IllegalArgumentException("maxBufferedBlocks must be >= 0, got: " + maxBufferedBlocks);
+      }
+      this.maxBufferedBlocks = maxBufferedBlocks;
+      this.direct = direct;
+    }
+
+    @Override
+    public ByteBuffer getByteBlock() {
+      synchronized (this) {
+        if (numFreeBlocks > 0) {
+          final ByteBuffer block = freeBlocks[--numFreeBlocks];
+          freeBlocks[numFreeBlocks] = null;
+          block.clear();
+          return block;
+        }
+      }
+      return direct ? ByteBuffer.allocateDirect(BYTE_BLOCK_SIZE) : ByteBuffer.allocate(BYTE_BLOCK_SIZE);
+    }
+
+    @Override
+    public synchronized void recycleByteBlocks(ByteBuffer[] blocks, int start, int end) {
+      final int numRecycled = Math.min(maxBufferedBlocks - numFreeBlocks, end - start);
+      if (numFreeBlocks + numRecycled > freeBlocks.length) {
+        freeBlocks = ArrayUtil.grow(freeBlocks, numFreeBlocks + numRecycled);
+      }
+      System.arraycopy(blocks, start, freeBlocks, numFreeBlocks, numRecycled);
+      numFreeBlocks += numRecycled;
+    }
+
+    /** Returns the number of currently buffered blocks. */
+    public synchronized int numBufferedBlocks() {
+      return numFreeBlocks;
+    }
+  }
+
+  private final Allocator allocator;
+  private ByteBuffer[] buffers = new ByteBuffer[10];
+  private int bufferUpto = -1;
+  private ByteBuffer buffer;
+  private int byteUpto = BYTE_BLOCK_SIZE;
+  private int byteOffset = -BYTE_BLOCK_SIZE;
+
+  /** Creates a new pool that gets its blocks from the given allocator. */
+  public OffHeapByteBlockPool(Allocator allocator) {
+    this.allocator = allocator;
+  }
+
+  /** Returns the allocator of this pool. */
+  public Allocator getAllocator() {
+    return allocator;
+  }
+
+  /**
+   * Gives all blocks back to the allocator. The pool may be reused
+   * afterwards, and all previously returned offsets are invalid.
+   */
+  public void reset() {
+    if (bufferUpto != -1) {
+      allocator.recycleByteBlocks(buffers, 0, bufferUpto + 1);
+      Arrays.fill(buffers, 0, bufferUpto + 1, null);
+    }
+    bufferUpto = -1;
+    buffer = null;
+    byteUpto = BYTE_BLOCK_SIZE;
+    byteOffset = -BYTE_BLOCK_SIZE;
+  }
+
+  private void nextBuffer() {
+    if (byteOffset > Integer.MAX_VALUE - 2 * BYTE_BLOCK_SIZE) {
+      throw new IllegalStateException("pool is limited to 2GB total byte storage");
+    }
+    if (1 + bufferUpto == buffers.length) {
+      buffers = ArrayUtil.grow(buffers, buffers.length + 1);
+    }
+    buffer = buffers[1 + bufferUpto] = allocator.getByteBlock();
+    assert buffer.capacity() == BYTE_BLOCK_SIZE;
+    bufferUpto++;
+    byteUpto = 0;
+    byteOffset += BYTE_BLOCK_SIZE;
+  }
+
+  /**
+   * Appends the given bytes with their length, and returns the offset to
+   * pass to {@link #setBytesRef}, {@link #bytesEquals} or {@link #byteAt}
+   * to read them back. Values never cross block boundaries.
+   *
+   * @throws BytesRefHash.MaxBytesLengthExceededException
+   *           if the given bytes are longer than {@link ByteBlockPool#BYTE_BLOCK_SIZE}-2
+   */
+  public int append(BytesRef bytes) {
+    final int length = bytes.length;
+    final int len2 = 2 + length;
+    if (len2 + byteUpto > BYTE_BLOCK_SIZE) {
+      if (len2 > BYTE_BLOCK_SIZE) {
+        throw new BytesRefHash.MaxBytesLengthExceededException("bytes can be at most "
+            + (BYTE_BLOCK_SIZE - 2) + " in length; got " + length);
+      }
+      nextBuffer();
+    }
+    final int textStart = byteOffset + byteUpto;
+    // same encoding as BytesRefHash: 1 or 2 bytes for the length, then the bytes
+    if (length < 128) {
+      buffer.put(byteUpto++, (byte) length);
+    } else {
+      buffer.put(byteUpto++, (byte) (0x80 | (length & 0x7f)));
+      buffer.put(byteUpto++, (byte) ((length >> 7) & 0xff));
+    }
+    buffer.position(byteUpto);
+    buffer.put(bytes.bytes, bytes.offset, length);
+    buffer.position(0);
+    byteUpto += length;
+    return textStart;
+  }
+
+  /** Returns the number of bytes of the value that starts at {@code textStart}. */
+  public int length(int textStart) {
+    final ByteBuffer block = buffers[textStart >> BYTE_BLOCK_SHIFT];
+    final int pos = textStart & BYTE_BLOCK_MASK;
+    final byte b = block.get(pos);
+    if ((b & 0x80) == 0) {
+      return b;
+    }
+    return (b & 0x7f) + ((block.get(pos + 1) & 0xff) << 7);
+  }
+
+  private static int headerLength(int length) {
+    return length < 128 ? 1 : 2;
+  }
+
+  /**
+   * Returns byte {@code k} of the value that starts at {@code textStart},
+   * or {@code -1} if the value has {@code k} bytes or less.
+   */
+  public int byteAt(int textStart, int k) {
+    final int length = length(textStart);
+    if (k >= length) {
+      return -1;
+    }
+    return buffers[textStart >> BYTE_BLOCK_SHIFT].get((textStart & BYTE_BLOCK_MASK) + headerLength(length) + k) & 0xff;
+  }
+
+  /** Returns whether the value that starts at {@code textStart} is equal to the given bytes. */
+  public boolean bytesEquals(int textStart, BytesRef bytes) {
+    final int length = length(textStart);
+    if (length != bytes.length) {
+      return false;
+    }
+    final ByteBuffer block = buffers[textStart >> BYTE_BLOCK_SHIFT];
+    final int pos = (textStart & BYTE_BLOCK_MASK) + headerLength(length);
+    for (int i = 0; i < length; i++) {
+      if (block.get(pos + i) != bytes.bytes[bytes.offset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Copies the value that starts at {@code textStart} into the given
+   * {@link BytesRef}. Its array is replaced with a larger one if necessary,
+   * and its offset is set to 0.
+   */
+  public BytesRef setBytesRef(BytesRef ref, int textStart) {
+    final int length = length(textStart);
+    if (ref.bytes.length < length) {
+      ref.bytes = new byte[ArrayUtil.oversize(length, Byte.BYTES)];
+    }
+    final ByteBuffer block = buffers[textStart >> BYTE_BLOCK_SHIFT].duplicate();
+    block.position((textStart & BYTE_BLOCK_MASK) + headerLength(length));
+    block.get(ref.bytes, 0, length);
+    ref.offset = 0;
+    ref.length = length;
+    return ref;
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return BASE_RAM_BYTES_USED + RamUsageEstimator.shallowSizeOf(buffers) + (long) (bufferUpto + 1) * BYTE_BLOCK_SIZE;
+  }
+
+  /**
+   * Paged storage of ints and longs on top of blocks of an
+   * {@link Allocator}, used by {@link OffHeapBytesRefHash} and
+   * {@link OffHeapLongHash}.
+   */
+  static final class Pages implements Accountable {
+    private final Allocator allocator;
+    private ByteBuffer[] pages = new ByteBuffer[0];
+    private int numPages;
+
+    Pages(Allocator allocator) {
+      this.allocator = allocator;
+    }
+
+    /** Makes sure that at least {@code numBytes} bytes may be addressed. */
+    void ensureCapacity(long numBytes) {
+      final long minPages = (numBytes + BYTE_BLOCK_SIZE - 1) >>> BYTE_BLOCK_SHIFT;
+      if (minPages > numPages) {
+        if (minPages > Integer.MAX_VALUE) {
+          throw new IllegalStateException("Cannot address " + numBytes + " bytes");
+        }
+        pages = ArrayUtil.grow(pages, (int) minPages);
+        while (numPages < minPages) {
+          pages[numPages++] = allocator.getByteBlock().order(ByteOrder.nativeOrder());
+        }
+      }
+    }
+
+    int getInt(long index) {
+      final long address = index << 2;
+      return pages[(int) (address >>> BYTE_BLOCK_SHIFT)].getInt((int) (address & BYTE_BLOCK_MASK));
+    }
+
+    void setInt(long index, int value) {
+      final long address = index << 2;
+      pages[(int) (address >>> BYTE_BLOCK_SHIFT)].putInt((int) (address & BYTE_BLOCK_MASK), value);
+    }
+
+    long getLong(long index) {
+      final long address = index << 3;
+      return pages[(int) (address >>> BYTE_BLOCK_SHIFT)].getLong((int) (address & BYTE_BLOCK_MASK));
+    }
+
+    void setLong(long index, long value) {
+      final long address = index << 3;
+      pages[(int) (address >>> BYTE_BLOCK_SHIFT)].putLong((int) (address & BYTE_BLOCK_MASK), value);
+    }
+
+    /** Sets all bytes of all pages to the given value. */
+    void fill(byte value) {
+      final long v = (value & 0xFFL) * 0x0101010101010101L;
+      for (int i = 0; i < numPages; i++) {
+        final ByteBuffer page = pages[i];
+        for (int j = 0; j < BYTE_BLOCK_SIZE; j += Long.BYTES) {
+          page.putLong(j, v);
+        }
+      }
+    }
+
+    /** Gives all pages back to the allocator. */
+    void release() {
+      allocator.recycleByteBlocks(pages, 0, numPages);
+      Arrays.fill(pages, 0, numPages, null);
+      numPages = 0;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return RamUsageEstimator.shallowSizeOf(pages) + (long) numPages * BYTE_BLOCK_SIZE;
+    }
+  }
+}
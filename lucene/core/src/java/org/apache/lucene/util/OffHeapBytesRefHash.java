@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.util;
+
+import java.io.Closeable;
+
+import static org.apache.lucene.util.ByteBlockPool.BYTE_BLOCK_SIZE;
+
+/**
+ * A variant of {@link BytesRefHash} that keeps its bytes, its hash table and
+ * the start offsets of its values in blocks of an
+ * {@link OffHeapByteBlockPool.Allocator}, typically outside of the Java heap.
+ * This is useful for large, short-lived hashes, eg. to compute facets or
+ * groups on high-cardinality fields, which would otherwise cause large heap
+ * allocations.
+ * <p>
+ * Like {@link BytesRefHash}, ids are assigned in increasing order starting
+ * at 0. Unlike {@link BytesRefHash}, values can't be referenced in place and
+ * are copied by {@link #get(int, BytesRef)}, and {@link #sort()} is not
+ * destructive. {@link #close()} must be called in order to give memory back
+ * to the allocator.
+ * <p>
+ * Note: The maximum length of a {@link BytesRef} instance passed to
+ * {@link #add(BytesRef)} is {@link ByteBlockPool#BYTE_BLOCK_SIZE}-2.
+ * The internal storage is limited to 2GB total byte storage.
+ *
+ * @lucene.internal
+ */
+public final class OffHeapBytesRefHash implements Accountable, Closeable {
+
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(OffHeapBytesRefHash.class);
+
+  private final OffHeapByteBlockPool pool;
+  private final OffHeapByteBlockPool.Pages bytesStart;
+  private final OffHeapHashTable ids;
+  private int count;
+  private boolean closed;
+  private final BytesRef scratch = new BytesRef();
+
+  /**
+   * Creates a new {@link OffHeapBytesRefHash} using a
+   * {@link OffHeapByteBlockPool.DirectAllocator}.
+   */
+  public OffHeapBytesRefHash() {
+    this(new OffHeapByteBlockPool.DirectAllocator());
+  }
+
+  /**
+   * Creates a new {@link OffHeapBytesRefHash} that gets its memory from the
+   * given allocator.
+   */
+  public OffHeapBytesRefHash(OffHeapByteBlockPool.Allocator allocator) {
+    this.pool = new OffHeapByteBlockPool(allocator);
+    this.bytesStart = new OffHeapByteBlockPool.Pages(allocator);
+    this.ids = new OffHeapHashTable(allocator, id -> {
+      pool.setBytesRef(scratch, bytesStart.getInt(id));
+      return doHash(scratch.bytes, scratch.offset, scratch.length);
+    });
+  }
+
+  private void ensureOpen() {
+    if (closed) {
+      throw new IllegalStateException("this OffHeapBytesRefHash is closed");
+    }
+  }
+
+  /** Returns the number of {@link BytesRef} values in this hash. */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Copies the bytes for the given bytesID into the given {@link BytesRef},
+   * whose array is replaced with a larger one if necessary, and returns it.
+   * <p>
+   * Note: the given bytesID must be a positive integer less than the current
+   * size ({@link #size()})
+   */
+  public BytesRef get(int bytesID, BytesRef ref) {
+    ensureOpen();
+    assert bytesID >= 0 && bytesID < count : bytesID;
+    return pool.setBytesRef(ref, bytesStart.getInt(bytesID));
+  }
+
+  /**
+   * Returns the ids, from 0 to {@link #size()} - 1, sorted by the referenced
+   * byte values. The returned array is allocated on the heap.
+   */
+  public int[] sort() {
+    ensureOpen();
+    final int[] sorted = new int[count];
+    for (int i = 0; i < count; i++) {
+      sorted[i] = i;
+    }
+    new MSBRadixSorter(BYTE_BLOCK_SIZE) {
+
+      @Override
+      protected void swap(int i, int j) {
+        int tmp = sorted[i];
+        sorted[i] = sorted[j];
+        sorted[j] = tmp;
+      }
+
+      @Override
+      protected int byteAt(int i, int k) {
+        return pool.byteAt(bytesStart.getInt(sorted[i]), k);
+      }
+
+    }.sort(0, count);
+    return sorted;
+  }
+
+  /**
+   * Adds a new {@link BytesRef}.
+   *
+   * @return the id the given bytes are hashed if there was no mapping for the
+   *         given bytes, otherwise <code>(-(id)-1)</code>. This guarantees
+   *         that the return value will always be &gt;= 0 if the given bytes
+   *         haven't been hashed before.
+   *
+   * @throws BytesRefHash.MaxBytesLengthExceededException
+   *           if the given bytes are {@code > 2 +}
+   *           {@link ByteBlockPool#BYTE_BLOCK_SIZE}
+   */
+  public int add(BytesRef bytes) {
+    ensureOpen();
+    final int slot = findSlot(bytes);
+    int e = ids.get(slot);
+    if (e == -1) {
+      final int textStart = pool.append(bytes);
+      e = count++;
+      bytesStart.ensureCapacity((long) count * Integer.BYTES);
+      bytesStart.setInt(e, textStart);
+      ids.put(slot, e);
+      return e;
+    }
+    return -(e + 1);
+  }
+
+  /**
+   * Returns the id of the given {@link BytesRef}, or {@code -1} if there is
+   * no mapping for the given bytes.
+   */
+  public int find(BytesRef bytes) {
+    ensureOpen();
+    return ids.get(findSlot(bytes));
+  }
+
+  private int findSlot(BytesRef bytes) {
+    int slot = ids.firstSlot(doHash(bytes.bytes, bytes.offset, bytes.length));
+    int e = ids.get(slot);
+    // linear probe to find the value or an open slot
+    while (e != -1 && pool.bytesEquals(bytesStart.getInt(e), bytes) == false) {
+      slot = ids.nextSlot(slot);
+      e = ids.get(slot);
+    }
+    return slot;
+  }
+
+  private int doHash(byte[] bytes, int offset, int length) {
+    return StringHelper.murmurhash3_x86_32(bytes, offset, length, StringHelper.GOOD_FAST_HASH_SEED);
+  }
+
+  /**
+   * Removes all values and gives memory back to the allocator, except for
+   * the block of an empty hash table.
+   */
+  public void clear() {
+    ensureOpen();
+    count = 0;
+    pool.reset();
+    bytesStart.release();
+    ids.clear();
+  }
+
+  /**
+   * Closes this hash and gives all its memory back to the allocator. The
+   * hash may not be used anymore afterwards.
+   */
+  @Override
+  public void close() {
+    if (closed == false) {
+      closed = true;
+      count = 0;
+      pool.reset();
+      bytesStart.release();
+      ids.release();
+    }
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return BASE_RAM_BYTES_USED + pool.ramBytesUsed() + bytesStart.ramBytesUsed() + ids.ramBytesUsed()
+        + RamUsageEstimator.sizeOf(scratch.bytes);
+  }
+}
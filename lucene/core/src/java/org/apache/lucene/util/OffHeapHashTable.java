@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.util;
+
+import static org.apache.lucene.util.ByteBlockPool.BYTE_BLOCK_SIZE;
+
+/**
+ * Open-addressing table of int ids with linear probing, stored in blocks of
+ * an {@link OffHeapByteBlockPool.Allocator}. Empty slots hold {@code -1}.
+ * The table doubles once half of its slots are used. This is the hash table
+ * of {@link OffHeapBytesRefHash} and {@link OffHeapLongHash}, which keep the
+ * values that ids refer to and compare them while probing.
+ */
+final class OffHeapHashTable implements Accountable {
+
+  /** Computes the hash code of the value of an id, in order to rehash it. */
+  @FunctionalInterface
+  interface IdHasher {
+    int hash(int id);
+  }
+
+  // the smallest table that fills a block
+  private static final int MIN_SIZE = BYTE_BLOCK_SIZE / Integer.BYTES;
+
+  private final OffHeapByteBlockPool.Allocator allocator;
+  private final IdHasher hasher;
+  private OffHeapByteBlockPool.Pages ids;
+  private int size;
+  private int mask;
+  private int count;
+
+  OffHeapHashTable(OffHeapByteBlockPool.Allocator allocator, IdHasher hasher) {
+    this.allocator = allocator;
+    this.hasher = hasher;
+    init(MIN_SIZE);
+  }
+
+  private void init(int newSize) {
+    size = newSize;
+    mask = newSize - 1;
+    count = 0;
+    ids = newIds(newSize);
+  }
+
+  private OffHeapByteBlockPool.Pages newIds(int newSize) {
+    final OffHeapByteBlockPool.Pages table = new OffHeapByteBlockPool.Pages(allocator);
+    table.ensureCapacity((long) newSize * Integer.BYTES);
+    table.fill((byte) -1);
+    return table;
+  }
+
+  /** Returns the first slot to probe for a value with the given hash code. */
+  int firstSlot(int code) {
+    return code & mask;
+  }
+
+  /** Returns the slot to probe after the given one. */
+  int nextSlot(int slot) {
+    return (slot + 1) & mask;
+  }
+
+  /** Returns the id in the given slot, or {@code -1} if it is empty. */
+  int get(int slot) {
+    return ids.getInt(slot);
+  }
+
+  /** Puts an id into an empty slot, and grows the table if it is half full. */
+  void put(int slot, int id) {
+    assert ids.getInt(slot) == -1;
+    ids.setInt(slot, id);
+    if (++count == size >> 1) {
+      rehash(2 * size);
+    }
+  }
+
+  private void rehash(int newSize) {
+    final int newMask = newSize - 1;
+    final OffHeapByteBlockPool.Pages newIds = newIds(newSize);
+    for (int i = 0; i < size; i++) {
+      final int id = ids.getInt(i);
+      if (id != -1) {
+        int slot = hasher.hash(id) & newMask;
+        while (newIds.getInt(slot) != -1) {
+          slot = (slot + 1) & newMask;
+        }
+        newIds.setInt(slot, id);
+      }
+    }
+    ids.release();
+    ids = newIds;
+    size = newSize;
+    mask = newMask;
+  }
+
+  /** Removes all ids and gives memory back to the allocator, except for the block of an empty table. */
+  void clear() {
+    ids.release();
+    init(MIN_SIZE);
+  }
+
+  /** Gives all memory back to the allocator, the table may not be used anymore afterwards. */
+  void release() {
+    ids.release();
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return ids.ramBytesUsed();
+  }
+}
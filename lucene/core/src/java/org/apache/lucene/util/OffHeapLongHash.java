@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.util;
+
+import java.io.Closeable;
+
+/**
+ * An open-addressing hash of {@code long} values that assigns increasing ids
+ * starting at 0 to distinct values, like {@link BytesRefHash} does for
+ * {@link BytesRef}s, eg. to count facets or groups on numeric fields. Its
+ * hash table and values are stored in blocks of an
+ * {@link OffHeapByteBlockPool.Allocator}, typically outside of the Java heap.
+ * {@link #close()} must be called in order to give memory back to the
+ * allocator.
+ *
+ * @lucene.internal
+ */
+public final class OffHeapLongHash implements Accountable, Closeable {
+
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(OffHeapLongHash.class);
+
+  private final OffHeapByteBlockPool.Pages values;
+  private final OffHeapHashTable ids;
+  private int count;
+  private boolean closed;
+
+  /**
+   * Creates a new {@link OffHeapLongHash} using a
+   * {@link OffHeapByteBlockPool.DirectAllocator}.
+   */
+  public OffHeapLongHash() {
+    this(new OffHeapByteBlockPool.DirectAllocator());
+  }
+
+  /**
+   * Creates a new {@link OffHeapLongHash} that gets its memory from the
+   * given allocator.
+   */
+  public OffHeapLongHash(OffHeapByteBlockPool.Allocator allocator) {
+    this.values = new OffHeapByteBlockPool.Pages(allocator);
+    this.ids = new OffHeapHashTable(allocator, id -> hash(values.getLong(id)));
+  }
+
+  private void ensureOpen() {
+    if (closed) {
+      throw new IllegalStateException("this OffHeapLongHash is closed");
+    }
+  }
+
+  /** Returns the number of distinct values in this hash. */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Returns the value for the given id, which must be a positive integer
+   * less than the current size ({@link #size()}).
+   */
+  public long get(int id) {
+    ensureOpen();
+    assert id >= 0 && id < count : id;
+    return values.getLong(id);
+  }
+
+  /**
+   * Adds a value.
+   *
+   * @return the id of the value if it was not in the hash yet, otherwise
+   *         <code>(-(id)-1)</code>.
+   */
+  public int add(long value) {
+    ensureOpen();
+    final int slot = findSlot(value);
+    int e = ids.get(slot);
+    if (e == -1) {
+      e = count++;
+      values.ensureCapacity((long) count * Long.BYTES);
+      values.setLong(e, value);
+      ids.put(slot, e);
+      return e;
+    }
+    return -(e + 1);
+  }
+
+  /** Returns the id of the given value, or {@code -1} if it is not in the hash. */
+  public int find(long value) {
+    ensureOpen();
+    return ids.get(findSlot(value));
+  }
+
+  private int findSlot(long value) {
+    int slot = ids.firstSlot(hash(value));
+    int e = ids.get(slot);
+    // linear probe to find the value or an open slot
+    while (e != -1 && values.getLong(e) != value) {
+      slot = ids.nextSlot(slot);
+      e = ids.get(slot);
+    }
+    return slot;
+  }
+
+  private static int hash(long value) {
+    // multiplicative hashing so that values that only differ by their high bits still spread
+    final long h = value * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  /**
+   * Returns the ids, from 0 to {@link #size()} - 1, sorted by value. The
+   * returned array is allocated on the heap.
+   */
+  public int[] sort() {
+    ensureOpen();
+    final int[] sorted = new int[count];
+    for (int i = 0; i < count; i++) {
+      sorted[i] = i;
+    }
+    new IntroSorter() {
+
+      long pivot;
+
+      @Override
+      protected void swap(int i, int j) {
+        int tmp = sorted[i];
+        sorted[i] = sorted[j];
+        sorted[j] = tmp;
+      }
+
+      @Override
+      protected void setPivot(int i) {
+        pivot = values.getLong(sorted[i]);
+      }
+
+      @Override
+      protected int comparePivot(int j) {
+        return Long.compare(pivot, values.getLong(sorted[j]));
+      }
+
+    }.sort(0, count);
+    return sorted;
+  }
+
+  /**
+   * Removes all values and gives memory back to the allocator, except for
+   * the block of an empty hash table.
+   */
+  public void clear() {
+    ensureOpen();
+    count = 0;
+    values.release();
+    ids.clear();
+  }
+
+  /**
+   * Closes this hash and gives all its memory back to the allocator. The
+   * hash may not be used anymore afterwards.
+   */
+  @Override
+  public void close() {
+    if (closed == false) {
+      closed = true;
+      count = 0;
+      values.release();
+      ids.release();
+    }
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return BASE_RAM_BYTES_USED + values.ramBytesUsed() + ids.ramBytesUsed();
+  }
+}
@@ -22,8 +22,15 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
 
 import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.store.ChecksumIndexInput;
@@ -40,6 +47,9 @@ import org.apache.lucene.store.TrackingDirectoryWrapper;
  *   <li>(two bytes) length of the following byte array,
  *   <li>exactly the above count of bytes for the sequence to be sorted.
  * </ul>
+ * <p>
+ * Partitions are sorted and merged by the calling thread, unless an executor is
+ * passed to {@link #OfflineSorter(Directory, String, Comparator, BufferSize, int, int, ExecutorService, int)}.
  * 
  * @see #sort(String)
  * @lucene.experimental
@@ -134,7 +144,11 @@ public class OfflineSorter {
   }
   
   /**
-   * Sort info (debugging mostly).
+   * Sort info (debugging mostly). When partitions are sorted and merged by an
+   * executor, {@link #sortTime} and {@link #mergeTime} add up the time spent
+   * by all threads, and statistics are updated while holding the lock of this
+   * instance, so that another thread may synchronize on it to monitor the
+   * progress of a sort.
    */
   public class SortInfo {
     /** number of temporary files created when merging partitions */
@@ -158,7 +172,7 @@ public class OfflineSorter {
     public SortInfo() {}
     
     @Override
-    public String toString() {
+    public synchronized String toString() {
       return String.format(Locale.ROOT,
           "time=%.2f sec. total (%.2f reading, %.2f sorting, %.2f merging), lines=%d, temp files=%d, merges=%d, soft ram limit=%.2f MB",
           totalTime / 1000.0d, readTime / 1000.0d, sortTime / 1000.0d, mergeTime / 1000.0d,
@@ -170,10 +184,13 @@ public class OfflineSorter {
   private final BufferSize ramBufferSize;
   
   private final Counter bufferBytesUsed = Counter.newCounter();
+  // the buffer that is reused for all partitions, or null if partitions are sorted by an executor:
   private final SortableBytesRefArray buffer;
   SortInfo sortInfo;
   private int maxTempFiles;
   private final Comparator<BytesRef> comparator;
+  private final ExecutorService exec;
+  private final int maxPartitionsInRAM;
   
   /** Default comparator: sorts in binary (codepoint) order */
   public static final Comparator<BytesRef> DEFAULT_COMPARATOR = Comparator.naturalOrder();
@@ -201,6 +218,23 @@ public class OfflineSorter {
    * all values have the specified length.
    */
   public OfflineSorter(Directory dir, String tempFileNamePrefix, Comparator<BytesRef> comparator, BufferSize ramBufferSize, int maxTempfiles, int valueLength) {
+    this(dir, tempFileNamePrefix, comparator, ramBufferSize, maxTempfiles, valueLength, null, 1);
+  }
+
+  /**
+   * All-details constructor, with an executor to sort and merge partitions concurrently.  The calling thread reads
+   * partitions of up to {@code ramBufferSize} bytes and hands them over to {@code exec}, which sorts them, writes them
+   * to temporary files and merges these files, while the calling thread keeps reading the input.  At most
+   * {@code maxPartitionsInRAM} partitions are buffered at the same time, so heap usage is bounded by
+   * {@code maxPartitionsInRAM * ramBufferSize}.  If {@code exec} is null, everything happens in the calling thread.
+   * <p>
+   * Merge tasks wait for the partitions that they merge, which are always submitted before them, so {@code exec}
+   * must run tasks in submission order, like a {@link java.util.concurrent.ThreadPoolExecutor}.  Overrides of
+   * {@link #getWriter} and {@link #getReader} must be thread-safe, and {@link #sortPartition} is only called if
+   * {@code exec} is null, since it sorts the single buffer that is then reused for all partitions.
+   */
+  public OfflineSorter(Directory dir, String tempFileNamePrefix, Comparator<BytesRef> comparator, BufferSize ramBufferSize, int maxTempfiles, int valueLength,
+                       ExecutorService exec, int maxPartitionsInRAM) {
     if (ramBufferSize.bytes < ABSOLUTE_MIN_SORT_BUFFER_SIZE) {
       throw new IllegalArgumentException(MIN_BUFFER_SIZE_MSG + ": " + ramBufferSize.bytes);
     }
@@ -208,13 +242,11 @@ public class OfflineSorter {
     if (maxTempfiles < 2) {
       throw new IllegalArgumentException("maxTempFiles must be >= 2");
     }
-    if (valueLength == -1) {
-      buffer = new BytesRefArray(bufferBytesUsed);
-    } else {
-      if (valueLength == 0 || valueLength > Short.MAX_VALUE) {
-        throw new IllegalArgumentException("valueLength must be 1 .. " + Short.MAX_VALUE + "; got: " + valueLength);
-      }
-      buffer = new FixedLengthBytesRefArray(valueLength);
+    if (valueLength != -1 && (valueLength == 0 || valueLength > Short.MAX_VALUE)) {
+      throw new IllegalArgumentException("valueLength must be 1 .. " + Short.MAX_VALUE + "; got: " + valueLength);
+    }
+    if (maxPartitionsInRAM <= 0) {
+      throw new IllegalArgumentException("maxPartitionsInRAM must be > 0; got: " + maxPartitionsInRAM);
     }
     this.valueLength = valueLength;
     this.ramBufferSize = ramBufferSize;
@@ -222,6 +254,13 @@ public class OfflineSorter {
     this.comparator = comparator;
     this.dir = dir;
     this.tempFileNamePrefix = tempFileNamePrefix;
+    this.exec = exec;
+    this.maxPartitionsInRAM = maxPartitionsInRAM;
+    this.buffer = exec == null ? newBuffer(bufferBytesUsed) : null;
+  }
+
+  private SortableBytesRefArray newBuffer(Counter bytesUsed) {
+    return valueLength == -1 ? new BytesRefArray(bytesUsed) : new FixedLengthBytesRefArray(valueLength);
   }
 
   /** Returns the {@link Directory} we use to create temp files. */
@@ -234,33 +273,62 @@ public class OfflineSorter {
     return tempFileNamePrefix;
   }
 
+  /** Returns statistics about the current or last call to {@link #sort}, or null if {@link #sort} was never called. */
+  public SortInfo getSortInfo() {
+    return sortInfo;
+  }
+
   /** 
    * Sort input to a new temp file, returning its name.
    */
   public String sort(String inputFileName) throws IOException {
     
     sortInfo = new SortInfo();
-    sortInfo.totalTime = System.currentTimeMillis();
+    long startMS = System.currentTimeMillis();
+    if (buffer != null) {
+      // in case the previous sort failed while reading a partition:
+      buffer.clear();
+    }
 
-    List<String> segments = new ArrayList<>();
+    List<Future<Partition>> segments = new ArrayList<>();
     int[] levelCounts = new int[1];
 
+    // All sort and merge tasks, so that we can wait for them before removing temp files on exception:
+    List<Future<Partition>> tasks = new ArrayList<>();
+
     // So we can remove any partially written temp files on exception:
     TrackingDirectoryWrapper trackingDir = new TrackingDirectoryWrapper(dir);
 
+    // Bounds the number of partitions that are buffered in heap:
+    Semaphore partitionsInRAM = new Semaphore(maxPartitionsInRAM);
+
     boolean success = false;
     try (ByteSequencesReader is = getReader(dir.openChecksumInput(inputFileName, IOContext.READONCE), inputFileName)) {
-      int lineCount;
-      while ((lineCount = readPartition(is)) > 0) {
-        segments.add(sortPartition(trackingDir));
-        sortInfo.tempMergeFiles++;
-        sortInfo.lineCount += lineCount;
+      while (true) {
+        try {
+          partitionsInRAM.acquire();
+        } catch (InterruptedException ie) {
+          throw new ThreadInterruptedException(ie);
+        }
+        // Fail fast, rather than once the whole input was read:
+        checkDoneTasks(tasks);
+        SortableBytesRefArray buffer = readPartition(is);
+        int lineCount = buffer.size();
+        if (lineCount == 0) {
+          partitionsInRAM.release();
+          break;
+        }
+        segments.add(submit(new SortPartitionTask(trackingDir, buffer, lineCount, partitionsInRAM), tasks));
+        synchronized (sortInfo) {
+          sortInfo.tempMergeFiles++;
+          sortInfo.lineCount += lineCount;
+        }
         levelCounts[0]++;
 
         // Handle intermediate merges; we need a while loop to "cascade" the merge when necessary:
         int mergeLevel = 0;
         while (levelCounts[mergeLevel] == maxTempFiles) {
-          mergePartitions(trackingDir, segments);
+          mergePartitions(trackingDir, segments, tasks);
           if (mergeLevel+2 > levelCounts.length) {
             levelCounts = ArrayUtil.grow(levelCounts, mergeLevel+2);
           }
@@ -275,7 +343,7 @@ public class OfflineSorter {
 
       // Merge all partitions down to 1 (basically a forceMerge(1)):
       while (segments.size() > 1) {     
-        mergePartitions(trackingDir, segments);
+        mergePartitions(trackingDir, segments, tasks);
       }
 
       String result;
@@ -286,13 +354,16 @@ public class OfflineSorter {
           result = out.getName();
         }
       } else {
-        result = segments.get(0);
+        // The last partition transitively depends on all other tasks, so they are all done once it is:
+        result = getPartition(segments.get(0)).fileName;
       }
 
       // We should be explicitly removing all intermediate files ourselves unless there is an exception:
       assert trackingDir.getCreatedFiles().size() == 1 && trackingDir.getCreatedFiles().contains(result);
 
-      sortInfo.totalTime = System.currentTimeMillis() - sortInfo.totalTime; 
+      synchronized (sortInfo) {
+        sortInfo.totalTime = System.currentTimeMillis() - startMS;
+      }
 
       CodecUtil.checkFooter(is.in);
 
@@ -302,14 +373,105 @@ public class OfflineSorter {
 
     } finally {
       if (success == false) {
+        // Don't let running tasks create files after we removed temp files:
+        for (Future<Partition> task : tasks) {
+          try {
+            task.get();
+          } catch (InterruptedException | ExecutionException e) {
+            // ignore, we are already throwing an exception
+          }
+        }
         IOUtils.deleteFilesIgnoringExceptions(trackingDir, trackingDir.getCreatedFiles());
       }
     }
   }
 
-  /** Sort a single partition in-memory. */
+  /** Runs the given task, with the executor if there is one, and records it in {@code tasks}. */
+  private Future<Partition> submit(Callable<Partition> task, List<Future<Partition>> tasks) throws IOException {
+    if (exec == null) {
+      FutureTask<Partition> future = new FutureTask<>(task);
+      tasks.add(future);
+      future.run();
+      // Fail fast:
+      getPartition(future);
+      return future;
+    } else {
+      Future<Partition> future = exec.submit(task);
+      tasks.add(future);
+      return future;
+    }
+  }
+
+  /** Rethrows the exception of any task that failed, and forgets about tasks that completed. */
+  private static void checkDoneTasks(List<Future<Partition>> tasks) throws IOException {
+    for (Iterator<Future<Partition>> it = tasks.iterator(); it.hasNext(); ) {
+      Future<Partition> task = it.next();
+      if (task.isDone()) {
+        getPartition(task);
+        // no need to wait for it on exception:
+        it.remove();
+      }
+    }
+  }
+
+  /** Waits for the given task to complete, and returns its result or rethrows its exception. */
+  private static Partition getPartition(Future<Partition> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException ie) {
+      throw new ThreadInterruptedException(ie);
+    } catch (ExecutionException ee) {
+      IOUtils.reThrow(ee.getCause());
+      // dead code but javac disagrees:
+      throw new AssertionError(ee);
+    }
+  }
+
+  /** A sorted temp file. */
+  static class Partition {
+    final String fileName;
+    final long count;
+
+    Partition(String fileName, long count) {
+      this.fileName = fileName;
+      this.count = count;
+    }
+  }
+
+  /** Sorts a single partition in-memory and writes it to a temp file. */
+  private class SortPartitionTask implements Callable<Partition> {
+    private final TrackingDirectoryWrapper trackingDir;
+    private final SortableBytesRefArray buffer;
+    private final int lineCount;
+    private final Semaphore partitionsInRAM;
+
+    SortPartitionTask(TrackingDirectoryWrapper trackingDir, SortableBytesRefArray buffer, int lineCount, Semaphore partitionsInRAM) {
+      this.trackingDir = trackingDir;
+      this.buffer = buffer;
+      this.lineCount = lineCount;
+      this.partitionsInRAM = partitionsInRAM;
+    }
+
+    @Override
+    public Partition call() throws IOException {
+      try {
+        final String fileName = buffer == OfflineSorter.this.buffer ? sortPartition(trackingDir) : sortPartition(trackingDir, buffer);
+        return new Partition(fileName, lineCount);
+      } finally {
+        // Let the next partition be read:
+        partitionsInRAM.release();
+      }
+    }
+  }
+
+  /** Sort a single partition in-memory.  This is only called if partitions are sorted by the calling thread, see
+   *  {@link #OfflineSorter(Directory, String, Comparator, BufferSize, int, int, ExecutorService, int)}. */
   protected String sortPartition(TrackingDirectoryWrapper trackingDir) throws IOException {
+    return sortPartition(trackingDir, buffer);
+  }
 
+  /** Sorts the given partition and writes it to a new temp file, and clears it. */
+  private String sortPartition(TrackingDirectoryWrapper trackingDir, SortableBytesRefArray buffer) throws IOException {
     try (IndexOutput tempFile = trackingDir.createTempOutput(tempFileNamePrefix, "sort", IOContext.DEFAULT);
          ByteSequencesWriter out = getWriter(tempFile);) {
       
@@ -317,19 +479,21 @@ public class OfflineSorter {
 
       long start = System.currentTimeMillis();
       BytesRefIterator iter = buffer.iterator(comparator);
-      sortInfo.sortTime += System.currentTimeMillis() - start;
+      synchronized (sortInfo) {
+        sortInfo.sortTime += System.currentTimeMillis() - start;
+      }
 
       while ((spare = iter.next()) != null) {
         assert spare.length <= Short.MAX_VALUE;
         out.write(spare);
       }
-      
-      // Clean up the buffer for the next partition.
-      buffer.clear();
 
       CodecUtil.writeFooter(out.out);
 
       return tempFile.getName();
+    } finally {
+      // Clean up the buffer for the next partition.
+      buffer.clear();
     }
   }
 
@@ -342,87 +506,123 @@ public class OfflineSorter {
   }
 
   /** Merge the most recent {@code maxTempFile} partitions into a new partition. */
-  void mergePartitions(Directory trackingDir, List<String> segments) throws IOException {
-    long start = System.currentTimeMillis();
-
-    List<String> segmentsToMerge;
+  void mergePartitions(Directory trackingDir, List<Future<Partition>> segments, List<Future<Partition>> tasks) throws IOException {
+    List<Future<Partition>> segmentsToMerge;
     if (segments.size() > maxTempFiles) {
       segmentsToMerge = segments.subList(segments.size() - maxTempFiles, segments.size());
     } else {
       segmentsToMerge = segments;
     }
 
-    PriorityQueue<FileAndTop> queue = new PriorityQueue<FileAndTop>(segmentsToMerge.size()) {
-      @Override
-      protected boolean lessThan(FileAndTop a, FileAndTop b) {
-        return comparator.compare(a.current, b.current) < 0;
-      }
-    };
+    Future<Partition> merged = submit(new MergePartitionsTask(trackingDir, new ArrayList<>(segmentsToMerge)), tasks);
 
-    ByteSequencesReader[] streams = new ByteSequencesReader[segmentsToMerge.size()];
+    segmentsToMerge.clear();
+    segments.add(merged);
+  }
 
-    String newSegmentName = null;
+  /** Merges partitions into a new partition, once they are available. */
+  private class MergePartitionsTask implements Callable<Partition> {
+    private final Directory trackingDir;
+    private final List<Future<Partition>> segmentsToMerge;
 
-    try (ByteSequencesWriter writer = getWriter(trackingDir.createTempOutput(tempFileNamePrefix, "sort", IOContext.DEFAULT))) {
+    MergePartitionsTask(Directory trackingDir, List<Future<Partition>> segmentsToMerge) {
+      this.trackingDir = trackingDir;
+      this.segmentsToMerge = segmentsToMerge;
+    }
 
-      newSegmentName = writer.out.getName();
-      
-      // Open streams and read the top for each file
-      for (int i = 0; i < segmentsToMerge.size(); i++) {
-        streams[i] = getReader(dir.openChecksumInput(segmentsToMerge.get(i), IOContext.READONCE), segmentsToMerge.get(i));
-        BytesRef item = null;
-        try {
-          item = streams[i].next();
-        } catch (Throwable t) {
-          verifyChecksum(t, streams[i]);
-        }
-        assert item != null;
-        queue.insertWithOverflow(new FileAndTop(i, item));
+    @Override
+    public Partition call() throws IOException {
+      List<String> fileNames = new ArrayList<>();
+      long count = 0;
+      for (Future<Partition> segment : segmentsToMerge) {
+        Partition partition = getPartition(segment);
+        fileNames.add(partition.fileName);
+        count += partition.count;
       }
-  
-      // Unix utility sort() uses ordered array of files to pick the next line from, updating
-      // it as it reads new lines. The PQ used here is a more elegant solution and has 
-      // a nicer theoretical complexity bound :) The entire sorting process is I/O bound anyway
-      // so it shouldn't make much of a difference (didn't check).
-      FileAndTop top;
-      while ((top = queue.top()) != null) {
-        writer.write(top.current);
-        try {
-          top.current = streams[top.fd].next();
-        } catch (Throwable t) {
-          verifyChecksum(t, streams[top.fd]);
+
+      long start = System.currentTimeMillis();
+
+      PriorityQueue<FileAndTop> queue = new PriorityQueue<FileAndTop>(fileNames.size()) {
+        @Override
+        protected boolean lessThan(FileAndTop a, FileAndTop b) {
+          return comparator.compare(a.current, b.current) < 0;
         }
+      };
 
-        if (top.current != null) {
-          queue.updateTop();
-        } else {
-          queue.pop();
+      ByteSequencesReader[] streams = new ByteSequencesReader[fileNames.size()];
+
+      String newSegmentName = null;
+
+      try (ByteSequencesWriter writer = getWriter(trackingDir.createTempOutput(tempFileNamePrefix, "sort", IOContext.DEFAULT))) {
+
+        newSegmentName = writer.out.getName();
+        
+        // Open streams and read the top for each file
+        for (int i = 0; i < fileNames.size(); i++) {
+          streams[i] = getReader(dir.openChecksumInput(fileNames.get(i), IOContext.READONCE), fileNames.get(i));
+          BytesRef item = null;
+          try {
+            item = streams[i].next();
+          } catch (Throwable t) {
+            verifyChecksum(t, streams[i]);
+          }
+          assert item != null;
+          queue.insertWithOverflow(new FileAndTop(i, item));
+        }
+    
+        // Unix utility sort() uses ordered array of files to pick the next line from, updating
+        // it as it reads new lines. The PQ used here is a more elegant solution and has 
+        // a nicer theoretical complexity bound :) The entire sorting process is I/O bound anyway
+        // so it shouldn't make much of a difference (didn't check).
+        FileAndTop top;
+        while ((top = queue.top()) != null) {
+          writer.write(top.current);
+          try {
+            top.current = streams[top.fd].next();
+          } catch (Throwable t) {
+            verifyChecksum(t, streams[top.fd]);
+          }
+
+          if (top.current != null) {
+            queue.updateTop();
+          } else {
+            queue.pop();
+          }
         }
-      }
 
-      CodecUtil.writeFooter(writer.out);
+        CodecUtil.writeFooter(writer.out);
 
-      for(ByteSequencesReader reader : streams) {
-        CodecUtil.checkFooter(reader.in);
+        for(ByteSequencesReader reader : streams) {
+          CodecUtil.checkFooter(reader.in);
+        }
+      } finally {
+        IOUtils.close(streams);
       }
-  
-      sortInfo.mergeTime += System.currentTimeMillis() - start;
-      sortInfo.mergeRounds++;
-    } finally {
-      IOUtils.close(streams);
-    }
 
-    IOUtils.deleteFiles(trackingDir, segmentsToMerge);
+      IOUtils.deleteFiles(trackingDir, fileNames);
 
-    segmentsToMerge.clear();
-    segments.add(newSegmentName);
+      synchronized (sortInfo) {
+        sortInfo.mergeTime += System.currentTimeMillis() - start;
+        sortInfo.mergeRounds++;
+        sortInfo.tempMergeFiles++;
+      }
 
-    sortInfo.tempMergeFiles++;
+      return new Partition(newSegmentName, count);
+    }
   }
 
-  /** Read in a single partition of data */
-  int readPartition(ByteSequencesReader reader) throws IOException {
+  /** Read in a single partition of data, into the reused buffer unless partitions are sorted by an executor */
+  SortableBytesRefArray readPartition(ByteSequencesReader reader) throws IOException {
     long start = System.currentTimeMillis();
+    final Counter bufferBytesUsed;
+    final SortableBytesRefArray buffer;
+    if (exec == null) {
+      bufferBytesUsed = this.bufferBytesUsed;
+      buffer = this.buffer;
+    } else {
+      bufferBytesUsed = Counter.newCounter();
+      buffer = newBuffer(bufferBytesUsed);
+    }
     if (valueLength != -1) {
       int limit = ramBufferSize.bytes / valueLength;
       for(int i=0;i<limit;i++) {
@@ -456,8 +656,10 @@ public class OfflineSorter {
         }
       }
     }
-    sortInfo.readTime += System.currentTimeMillis() - start;
-    return buffer.size();
+    synchronized (sortInfo) {
+      sortInfo.readTime += System.currentTimeMillis() - start;
+    }
+    return buffer;
   }
 
   static class FileAndTop {
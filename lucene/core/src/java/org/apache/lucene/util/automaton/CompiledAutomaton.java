@@ -24,9 +24,11 @@ import java.util.List;
 import org.apache.lucene.index.SingleTermsEnum;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.Accountable;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.BytesRefBuilder;
 import org.apache.lucene.util.IntsRef;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.lucene.util.StringHelper;
 import org.apache.lucene.util.UnicodeUtil;
 
@@ -37,7 +39,9 @@ import org.apache.lucene.util.UnicodeUtil;
  *
  * @lucene.experimental
  */
-public class CompiledAutomaton {
+public class CompiledAutomaton implements Accountable {
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(CompiledAutomaton.class);
+
   /**
    * Automata are compiled into different internal forms for the
    * most efficient execution depending upon the language they accept.
@@ -253,11 +257,10 @@ public class CompiledAutomaton {
     sinkState = findSinkState(this.automaton);
   }
 
-  private Transition transition = new Transition();
   
   //private static final boolean DEBUG = BlockTreeTermsWriter.DEBUG;
 
-  private BytesRef addTail(int state, BytesRefBuilder term, int idx, int leadLabel) {
+  private BytesRef addTail(int state, BytesRefBuilder term, int idx, int leadLabel, Transition transition) {
     //System.out.println("addTail state=" + state + " term=" + term.utf8ToString() + " idx=" + idx + " leadLabel=" + (char) leadLabel);
     //System.out.println(automaton.toDot());
     // Find biggest transition that's < label
@@ -348,6 +351,8 @@ public class CompiledAutomaton {
    *  (ie, the provided input term is before the first term
    *  accepted by this Automaton). */
   public BytesRef floor(BytesRef input, BytesRefBuilder output) {
+    // not a field, so that instances can be shared across threads:
+    final Transition transition = new Transition();
 
     //if (DEBUG) System.out.println("CA.floor input=" + input.utf8ToString());
 
@@ -424,7 +429,7 @@ public class CompiledAutomaton {
 
         //if (DEBUG) System.out.println("  label=" + (char) label + " idx=" + idx);
 
-        return addTail(state, output, idx, label);
+        return addTail(state, output, idx, label, transition);
         
       } else {
         output.grow(1+idx);
@@ -436,6 +441,25 @@ public class CompiledAutomaton {
     }
   }
 
+  @Override
+  public long ramBytesUsed() {
+    long size = BASE_RAM_BYTES_USED;
+    if (term != null) {
+      size += RamUsageEstimator.sizeOf(term.bytes);
+    }
+    if (runAutomaton != null) {
+      size += runAutomaton.ramBytesUsed();
+    }
+    // the run automaton usually holds a determinized copy of this automaton:
+    if (automaton != null && (runAutomaton == null || runAutomaton.automaton != automaton)) {
+      size += automaton.ramBytesUsed();
+    }
+    if (commonSuffixRef != null) {
+      size += RamUsageEstimator.sizeOf(commonSuffixRef.bytes);
+    }
+    return size;
+  }
+
   @Override
   public int hashCode() {
     final int prime = 31;
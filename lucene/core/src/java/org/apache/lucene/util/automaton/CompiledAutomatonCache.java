@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.util.automaton;
+
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * A bounded, thread-safe cache of compiled automata, evicting the least
+ * recently used entries once it holds more than a given number of entries
+ * or uses more than a given amount of RAM.
+ * <p>
+ * Determinizing and compiling an automaton can take milliseconds for
+ * complex patterns, so queries that are built from the same pattern over
+ * and over, like {@link org.apache.lucene.search.RegexpQuery}, {@link
+ * org.apache.lucene.search.WildcardQuery} and {@link
+ * org.apache.lucene.search.FuzzyQuery}, look up their automata in the
+ * {@link #getDefault() default cache}.  Cached automata are shared by all
+ * queries built from the same key and must not be modified.
+ *
+ * @lucene.experimental
+ */
+public final class CompiledAutomatonCache implements Accountable {
+
+  // same estimate as for the query cache
+  static final long LINKED_HASHTABLE_RAM_BYTES_PER_ENTRY =
+      2 * RamUsageEstimator.NUM_BYTES_OBJECT_REF // key + value
+      * 2 // hash tables need to be oversized to avoid collisions, assume 2x capacity
+      + 2 * RamUsageEstimator.NUM_BYTES_OBJECT_REF; // previous & next references
+
+  /** Default maximum number of cached automata. */
+  public static final int DEFAULT_MAX_SIZE = 256;
+
+  private static volatile CompiledAutomatonCache defaultCache =
+      new CompiledAutomatonCache(DEFAULT_MAX_SIZE, Math.min(1L << 24, Runtime.getRuntime().maxMemory() / 50));
+
+  /** Returns the cache that is used by default, or null if automata
+   *  are not cached by default. */
+  public static CompiledAutomatonCache getDefault() {
+    return defaultCache;
+  }
+
+  /** Sets the cache that is used by default; pass null to disable
+   *  caching. */
+  public static void setDefault(CompiledAutomatonCache cache) {
+    defaultCache = cache;
+  }
+
+  /** An automaton, together with its compiled form. */
+  public static final class Entry implements Accountable {
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(Entry.class);
+
+    /** The automaton, as it was built from the pattern. */
+    public final Automaton automaton;
+    /** The compiled form of {@link #automaton}. */
+    public final CompiledAutomaton compiled;
+
+    /** Sole constructor. */
+    public Entry(Automaton automaton, CompiledAutomaton compiled) {
+      this.automaton = automaton;
+      this.compiled = compiled;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      long size = BASE_RAM_BYTES_USED + compiled.ramBytesUsed();
+      if (automaton != compiled.automaton) {
+        size += automaton.ramBytesUsed();
+      }
+      return size;
+    }
+  }
+
+  private final int maxSize;
+  private final long maxRamBytesUsed;
+  // access-ordered, so that iteration starts from the least recently used entry
+  private final Map<Object,Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+  // these variables are volatile so that we do not need to sync reads
+  // but increments need to be performed under the lock
+  private volatile long ramBytesUsed;
+  private volatile long hitCount;
+  private volatile long missCount;
+  private volatile long evictionCount;
+
+  /**
+   * Create a new instance that will cache at most <code>maxSize</code>
+   * automata with at most <code>maxRamBytesUsed</code> bytes of memory.
+   */
+  public CompiledAutomatonCache(int maxSize, long maxRamBytesUsed) {
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("maxSize must be >= 0, got " + maxSize);
+    }
+    if (maxRamBytesUsed < 0) {
+      throw new IllegalArgumentException("maxRamBytesUsed must be >= 0, got " + maxRamBytesUsed);
+    }
+    this.maxSize = maxSize;
+    this.maxRamBytesUsed = maxRamBytesUsed;
+  }
+
+  /**
+   * Returns the entry that is cached for the given key, or computes it
+   * with the provided loader and caches it.  The key must implement
+   * {@link Object#equals} and {@link Object#hashCode}, and must identify
+   * everything the loaded automaton depends on.  The loader is called
+   * without holding any lock, so concurrent misses on the same key may
+   * both compute the entry; exceptions thrown by the loader, like {@link
+   * TooComplexToDeterminizeException}, are propagated and nothing is
+   * cached.
+   */
+  public Entry get(Object key, Supplier<Entry> loader) {
+    synchronized (this) {
+      final Entry entry = cache.get(key);
+      if (entry != null) {
+        hitCount++;
+        return entry;
+      }
+      missCount++;
+    }
+
+    final Entry entry = loader.get();
+    final long entryRamBytesUsed = LINKED_HASHTABLE_RAM_BYTES_PER_ENTRY + entry.ramBytesUsed();
+    if (entryRamBytesUsed > maxRamBytesUsed) {
+      // would evict everything else
+      return entry;
+    }
+
+    synchronized (this) {
+      final Entry existing = cache.putIfAbsent(key, entry);
+      if (existing != null) {
+        // another thread loaded the same key concurrently
+        return existing;
+      }
+      ramBytesUsed += entryRamBytesUsed;
+      evictIfNecessary();
+    }
+    return entry;
+  }
+
+  private void evictIfNecessary() {
+    assert Thread.holdsLock(this);
+    final Iterator<Entry> iterator = cache.values().iterator();
+    while ((cache.size() > maxSize || ramBytesUsed > maxRamBytesUsed) && iterator.hasNext()) {
+      final Entry entry = iterator.next();
+      iterator.remove();
+      ramBytesUsed -= LINKED_HASHTABLE_RAM_BYTES_PER_ENTRY + entry.ramBytesUsed();
+      evictionCount++;
+    }
+  }
+
+  /** Removes all entries from this cache. */
+  public synchronized void clear() {
+    cache.clear();
+    ramBytesUsed = 0;
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return ramBytesUsed;
+  }
+
+  /** Returns the number of lookups that found a cached automaton. */
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of lookups that had to compile the automaton. */
+  public long getMissCount() {
+    return missCount;
+  }
+
+  /** Returns the number of automata that have been evicted from this cache. */
+  public long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /** Returns the number of automata that are currently cached. */
+  public synchronized int getCacheSize() {
+    return cache.size();
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(maxSize=" + maxSize + ", maxRamBytesUsed=" + maxRamBytesUsed + ")";
+  }
+}
@@ -31,12 +31,17 @@ package org.apache.lucene.util.automaton;
 
 import java.util.Arrays;
 
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+
 /**
  * Finite-state automaton with fast run operation.  The initial state is always 0.
  * 
  * @lucene.experimental
  */
-public abstract class RunAutomaton {
+public abstract class RunAutomaton implements Accountable {
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(RunAutomaton.class);
+
   final Automaton automaton;
   final int alphabetSize;
   final int size;
@@ -95,6 +100,16 @@ public abstract class RunAutomaton {
     }
   }
   
+  @Override
+  public long ramBytesUsed() {
+    return BASE_RAM_BYTES_USED +
+        automaton.ramBytesUsed() +
+        RamUsageEstimator.sizeOf(accept) +
+        RamUsageEstimator.sizeOf(transitions) +
+        RamUsageEstimator.sizeOf(points) +
+        RamUsageEstimator.sizeOf(classmap);
+  }
+
   /**
    * Returns a string representation of this automaton.
    */
@@ -503,6 +503,11 @@ public final class BKDReader extends PointValues implements Accountable {
     final IntersectVisitor visitor;
     public final IndexTree index;
 
+    // end of the range of leaf blocks that are being added, or -1, and
+    // how far this range has been prefetched so far
+    long prefetchEnd = -1;
+    long prefetchedUpTo;
+
     public IntersectState(IndexInput in, int numDims,
                           int packedBytesLength,
                           int maxPointsInLeafNode,
@@ -543,10 +548,20 @@ public final class BKDReader extends PointValues implements Accountable {
       assert grown;
       //System.out.println("ADDALL");
       if (state.index.nodeExists()) {
-        visitDocIDs(state.in, state.index.getLeafBlockFP(), state.visitor);
+        final long fp = state.index.getLeafBlockFP();
+        if (state.prefetchEnd != -1) {
+          prefetchAhead(state, fp);
+        }
+        visitDocIDs(state.in, fp, state.visitor);
       }
       // TODO: we can assert that the first value here in fact matches what the index claimed?
     } else {
+      // we are going to read all leaf blocks under this node, which are contiguous on disk
+      final boolean startPrefetch = state.prefetchEnd == -1;
+      if (startPrefetch) {
+        startPrefetchLeaves(state);
+      }
+
       state.index.pushLeft();
       addAll(state, grown);
       state.index.pop();
@@ -554,6 +569,10 @@ public final class BKDReader extends PointValues implements Accountable {
       state.index.pushRight();
       addAll(state, grown);
       state.index.pop();
+
+      if (startPrefetch) {
+        state.prefetchEnd = -1;
+      }
     }
   }
 
@@ -681,6 +700,62 @@ public final class BKDReader extends PointValues implements Accountable {
     }
   }
 
+  /** Maximum number of bytes of leaf blocks that are hinted ahead of the leaf being read when
+   *  all leaf blocks of a cell are added, so that large cells do not flood the page cache. */
+  static final long PREFETCH_WINDOW_BYTES = 256 * 1024;
+
+  /** Rough upper bound of the on-disk size of a leaf block, used to size prefetch hints. */
+  private long maxLeafBlockBytes() {
+    return (long) maxPointsInLeafNode * (Integer.BYTES + packedBytesLength) + numDims * (bytesPerDim + 5) + 10;
+  }
+
+  /** Starts hinting that all leaf blocks under the current non-leaf node are going to be read;
+   *  only a window of {@link #PREFETCH_WINDOW_BYTES} ahead of the leaf being read is hinted at once. */
+  private void startPrefetchLeaves(IntersectState state) throws IOException {
+    IndexTree index = state.index.clone();
+    while (index.isLeafNode() == false) {
+      index.pushLeft();
+    }
+    final long firstFP = index.getLeafBlockFP();
+    index = state.index.clone();
+    while (index.isLeafNode() == false) {
+      index.pushRight();
+    }
+    final long lastFP = index.getLeafBlockFP();
+    if (lastFP >= firstFP) {
+      state.prefetchEnd = Math.min(state.in.length(), lastFP + maxLeafBlockBytes());
+      state.prefetchedUpTo = firstFP;
+      prefetchAhead(state, firstFP);
+    }
+  }
+
+  /** Slides the prefetch window of the leaf blocks being added so that it covers the bytes that follow
+   *  the leaf block at {@code fp}, up to the end of the range. */
+  private void prefetchAhead(IntersectState state, long fp) throws IOException {
+    final long window = Math.max(PREFETCH_WINDOW_BYTES, maxLeafBlockBytes());
+    final long windowEnd = Math.min(state.prefetchEnd, fp + window);
+    // hint at least half a window at once rather than a few more bytes before every leaf
+    if (windowEnd > state.prefetchedUpTo
+        && (windowEnd == state.prefetchEnd || windowEnd - state.prefetchedUpTo >= window / 2)) {
+      final long start = Math.max(fp, state.prefetchedUpTo);
+      state.in.prefetch(start, windowEnd - start);
+      state.prefetchedUpTo = windowEnd;
+    }
+  }
+
+  /** Hints that the right child of the current node, which must be a leaf, is going to be read. */
+  private void prefetchRightLeaf(IntersectState state) throws IOException {
+    state.index.pushRight();
+    if (state.index.nodeExists()) {
+      final long fp = state.index.getLeafBlockFP();
+      final long length = Math.min(state.in.length() - fp, maxLeafBlockBytes());
+      if (length > 0) {
+        state.in.prefetch(fp, length);
+      }
+    }
+    state.index.pop();
+  }
+
   private void intersect(IntersectState state, byte[] cellMinPacked, byte[] cellMaxPacked) throws IOException {
 
     /*
@@ -727,6 +802,11 @@ public final class BKDReader extends PointValues implements Accountable {
       assert StringHelper.compare(bytesPerDim, cellMinPacked, splitDim*bytesPerDim, splitDimValue.bytes, splitDimValue.offset) <= 0: "bytesPerDim=" + bytesPerDim + " splitDim=" + splitDim + " numDims=" + numDims;
       assert StringHelper.compare(bytesPerDim, cellMaxPacked, splitDim*bytesPerDim, splitDimValue.bytes, splitDimValue.offset) >= 0: "bytesPerDim=" + bytesPerDim + " splitDim=" + splitDim + " numDims=" + numDims;
 
+      if (state.index.getNodeID() * 2 >= leafNodeOffset) {
+        // both children are leaves: hint the right one while we scan the left one
+        prefetchRightLeaf(state);
+      }
+
       // Recurse on left sub-tree:
       System.arraycopy(cellMaxPacked, 0, splitPackedValue, 0, packedBytesLength);
       System.arraycopy(splitDimValue.bytes, splitDimValue.offset, splitPackedValue, splitDim*bytesPerDim, bytesPerDim);
@@ -19,14 +19,12 @@ package org.apache.lucene.util.fst;
 
 import java.io.IOException;
 
+import org.apache.lucene.store.DataOutput;
 import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.IntsRef;
 import org.apache.lucene.util.IntsRefBuilder;
 import org.apache.lucene.util.fst.FST.INPUT_TYPE; // javadoc
 
-// TODO: could we somehow stream an FST to disk while we
-// build it?
-
 /**
  * Builds a minimal FST (maps an IntsRef term to an arbitrary
  * output) from pre-sorted terms with outputs.  The FST
@@ -35,6 +33,12 @@ import org.apache.lucene.util.fst.FST.INPUT_TYPE; // javadoc
  * be saved to / loaded from a Directory or used directly
  * for traversal.  The FST is always finite (no cycles).
  *
+ * <p>To build very large FSTs with bounded heap, the RAM used to
+ * share suffixes can be limited, and the FST bytes can be written
+ * to a {@link DataOutput} as they are produced; see {@link
+ * #Builder(FST.INPUT_TYPE, int, int, boolean, boolean, int, Outputs,
+ * boolean, int, double, DataOutput)}.
+ *
  * <p>NOTE: The algorithm is described at
  * http://citeseerx.ist.psu.edu/viewdoc/summary?doi=10.1.1.24.3698</p>
  *
@@ -49,7 +53,15 @@ import org.apache.lucene.util.fst.FST.INPUT_TYPE; // javadoc
  */
 
 public class Builder<T> {
-  private final NodeHash<T> dedupHash;
+
+  /** RAM budget, in MB, for sharing suffixes when the FST bytes are
+   *  written to a {@link DataOutput} and no budget is given: the hash
+   *  then keeps a copy of the bytes of each node, which would otherwise
+   *  hold as much RAM as the FST itself. */
+  public static final double DEFAULT_SPILL_SUFFIX_RAM_LIMIT_MB = 64;
+
+  // package private for testing
+  final NodeHash<T> dedupHash;
   final FST<T> fst;
   private final T NO_OUTPUT;
 
@@ -149,16 +161,54 @@ public class Builder<T> {
   public Builder(FST.INPUT_TYPE inputType, int minSuffixCount1, int minSuffixCount2, boolean doShareSuffix,
                  boolean doShareNonSingletonNodes, int shareMaxTailLength, Outputs<T> outputs,
                  boolean allowArrayArcs, int bytesPageBits) {
+    this(inputType, minSuffixCount1, minSuffixCount2, doShareSuffix, doShareNonSingletonNodes, shareMaxTailLength,
+         outputs, allowArrayArcs, bytesPageBits, Double.POSITIVE_INFINITY, null);
+  }
+
+  /**
+   * Instantiates an FST/FSA builder that bounds the RAM used while
+   * building.  See {@link #Builder(FST.INPUT_TYPE, int, int, boolean,
+   * boolean, int, Outputs, boolean, int)} for the other parameters.
+   *
+   * @param suffixRAMLimitMB
+   *    Only used if doShareSuffix is true.  Approximate RAM budget, in
+   *    MB, for the hash used to share suffixes.  Once it is exceeded,
+   *    the least recently shared suffixes are forgotten, so the FST may
+   *    be somewhat larger than minimal.  Pass {@link
+   *    Double#POSITIVE_INFINITY} to build a fully minimal FST, unless
+   *    a dataOutput is given, in which case {@link
+   *    #DEFAULT_SPILL_SUFFIX_RAM_LIMIT_MB} is used instead.
+   *
+   * @param dataOutput
+   *    If non-null, the FST bytes are written to this output as they
+   *    are produced, instead of being held in RAM.  The FST returned
+   *    by {@link #finish} then cannot be traversed: save its metadata
+   *    with {@link FST#saveMetadata} and load it back with {@link
+   *    FST#FST(org.apache.lucene.store.DataInput,
+   *    org.apache.lucene.store.IndexInput, Outputs)}.
+   */
+  public Builder(FST.INPUT_TYPE inputType, int minSuffixCount1, int minSuffixCount2, boolean doShareSuffix,
+                 boolean doShareNonSingletonNodes, int shareMaxTailLength, Outputs<T> outputs,
+                 boolean allowArrayArcs, int bytesPageBits, double suffixRAMLimitMB, DataOutput dataOutput) {
+    if (suffixRAMLimitMB <= 0 || Double.isNaN(suffixRAMLimitMB)) {
+      throw new IllegalArgumentException("suffixRAMLimitMB must be > 0; got: " + suffixRAMLimitMB);
+    }
     this.minSuffixCount1 = minSuffixCount1;
     this.minSuffixCount2 = minSuffixCount2;
     this.doShareNonSingletonNodes = doShareNonSingletonNodes;
     this.shareMaxTailLength = shareMaxTailLength;
     this.allowArrayArcs = allowArrayArcs;
-    fst = new FST<>(inputType, outputs, bytesPageBits);
+    fst = new FST<>(inputType, outputs, bytesPageBits, dataOutput);
     bytes = fst.bytes;
     assert bytes != null;
     if (doShareSuffix) {
-      dedupHash = new NodeHash<>(fst, bytes.getReverseReader(false));
+      if (dataOutput != null && suffixRAMLimitMB == Double.POSITIVE_INFINITY) {
+        suffixRAMLimitMB = DEFAULT_SPILL_SUFFIX_RAM_LIMIT_MB;
+      }
+      final long ramLimitBytes = suffixRAMLimitMB == Double.POSITIVE_INFINITY
+          ? Long.MAX_VALUE : Math.max(1, (long) (suffixRAMLimitMB * 1024 * 1024));
+      // spilled nodes can't be read back, so the hash must keep its own copy:
+      dedupHash = new NodeHash<>(fst, bytes.getReverseReader(false), ramLimitBytes, dataOutput != null);
     } else {
       dedupHash = null;
     }
@@ -213,6 +263,10 @@ public class Builder<T> {
 
     nodeIn.clear();
 
+    if (bytes.isSpilling()) {
+      bytes.spill();
+    }
+
     final CompiledNode fn = new CompiledNode();
     fn.node = node;
     return fn;
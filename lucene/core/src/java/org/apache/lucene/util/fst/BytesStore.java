@@ -44,11 +44,24 @@ class BytesStore extends DataOutput implements Accountable {
   private byte[] current;
   private int nextWrite;
 
+  // if non-null, finished blocks are written here and released
+  private final DataOutput spillOut;
+  private int numSpilledBlocks;
+
   public BytesStore(int blockBits) {
+    this(blockBits, null);
+  }
+
+  /** Creates a store that writes its finished blocks to the
+   *  provided {@link DataOutput} on {@link #spill} and {@link
+   *  #finish}, instead of holding all bytes in RAM.  Spilled
+   *  bytes can no longer be read or modified. */
+  public BytesStore(int blockBits, DataOutput spillOut) {
     this.blockBits = blockBits;
     blockSize = 1 << blockBits;
     blockMask = blockSize-1;
     nextWrite = blockSize;
+    this.spillOut = spillOut;
   }
 
   /** Pulls bytes from the provided IndexInput.  */
@@ -73,6 +86,7 @@ class BytesStore extends DataOutput implements Accountable {
 
     // So .getPosition still works
     nextWrite = blocks.get(blocks.size()-1).length;
+    spillOut = null;
   }
 
   /** Absolute write byte; you must ensure dest is &lt; max
@@ -335,7 +349,38 @@ class BytesStore extends DataOutput implements Accountable {
     assert newLen == getPosition();
   }
 
-  public void finish() {
+  /** Returns true if this store writes its bytes to a {@link
+   *  DataOutput} instead of holding them in RAM. */
+  boolean isSpilling() {
+    return spillOut != null;
+  }
+
+  /** Writes all full blocks before the current write position
+   *  to the spill output and releases them.  Bytes before the
+   *  current block must not be accessed after this call. */
+  void spill() throws IOException {
+    assert spillOut != null;
+    final int blockIndex = (int) (getPosition() >> blockBits);
+    while (numSpilledBlocks < blockIndex) {
+      final byte[] block = blocks.get(numSpilledBlocks);
+      spillOut.writeBytes(block, 0, block.length);
+      blocks.set(numSpilledBlocks, null);
+      numSpilledBlocks++;
+    }
+  }
+
+  public void finish() throws IOException {
+    if (spillOut != null) {
+      spill();
+      if (numSpilledBlocks < blocks.size()) {
+        assert numSpilledBlocks == blocks.size()-1;
+        spillOut.writeBytes(current, 0, nextWrite);
+        blocks.set(numSpilledBlocks, null);
+        numSpilledBlocks++;
+      }
+      current = null;
+      return;
+    }
     if (current != null) {
       byte[] lastBuffer = new byte[nextWrite];
       System.arraycopy(current, 0, lastBuffer, 0, nextWrite);
@@ -346,6 +391,9 @@ class BytesStore extends DataOutput implements Accountable {
 
   /** Writes all of our bytes to the target {@link DataOutput}. */
   public void writeTo(DataOutput out) throws IOException {
+    if (spillOut != null) {
+      throw new IllegalStateException("bytes were already written to the spill output");
+    }
     for(byte[] block : blocks) {
       out.writeBytes(block, 0, block.length);
     }
@@ -478,7 +526,9 @@ class BytesStore extends DataOutput implements Accountable {
   public long ramBytesUsed() {
     long size = BASE_RAM_BYTES_USED;
     for (byte[] block : blocks) {
-      size += RamUsageEstimator.sizeOf(block);
+      if (block != null) {
+        size += RamUsageEstimator.sizeOf(block);
+      }
     }
     return size;
   }
@@ -30,6 +30,7 @@ import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.store.ByteArrayDataOutput;
 import org.apache.lucene.store.DataInput;
 import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.InputStreamDataInput;
 import org.apache.lucene.store.OutputStreamDataOutput;
 import org.apache.lucene.store.RAMOutputStream;
@@ -150,6 +151,10 @@ public final class FST<T> implements Accountable {
   /** Used at read time when the FST fits into a single byte[]. */
   final byte[] bytesArray;
 
+  /** Used at read time when the FST bytes are read directly from
+   *  an {@link IndexInput}, instead of being loaded on heap. */
+  private final IndexInput offHeapBytes;
+
   private long startNode = -1;
 
   public final Outputs<T> outputs;
@@ -261,11 +266,18 @@ public final class FST<T> implements Accountable {
   // make a new empty FST, for building; Builder invokes
   // this ctor
   FST(INPUT_TYPE inputType, Outputs<T> outputs, int bytesPageBits) {
+    this(inputType, outputs, bytesPageBits, null);
+  }
+
+  // make a new empty FST, for building; if spillOut is non-null,
+  // the FST bytes are written there instead of being kept in RAM
+  FST(INPUT_TYPE inputType, Outputs<T> outputs, int bytesPageBits, DataOutput spillOut) {
     this.inputType = inputType;
     this.outputs = outputs;
     version = VERSION_CURRENT;
     bytesArray = null;
-    bytes = new BytesStore(bytesPageBits);
+    offHeapBytes = null;
+    bytes = new BytesStore(bytesPageBits, spillOut);
     // pad: ensure no node gets address 0 which is reserved to mean
     // the stop state w/ no arcs
     bytes.writeByte((byte) 0);
@@ -283,6 +295,22 @@ public final class FST<T> implements Accountable {
   /** Load a previously saved FST; maxBlockBits allows you to
    *  control the size of the byte[] pages used to hold the FST bytes. */
   public FST(DataInput in, Outputs<T> outputs, int maxBlockBits) throws IOException {
+    this(in, null, outputs, maxBlockBits);
+  }
+
+  /** Load a previously saved FST, reading its bytes directly from
+   *  the provided {@link IndexInput} instead of copying them on heap.
+   *  The metadata is read from {@code metaIn}, which is either the
+   *  output of {@link #saveMetadata} or, for an FST written with
+   *  {@link #save(DataOutput)}, {@code in} itself.  The bytes are
+   *  expected at the current position of {@code in}, which is moved
+   *  past them.  {@code in} must stay open as long as this FST is in
+   *  use. */
+  public FST(DataInput metaIn, IndexInput in, Outputs<T> outputs) throws IOException {
+    this(metaIn, in, outputs, DEFAULT_MAX_BLOCK_BITS);
+  }
+
+  private FST(DataInput in, IndexInput offHeapIn, Outputs<T> outputs, int maxBlockBits) throws IOException {
     this.outputs = outputs;
 
     if (maxBlockBits < 1 || maxBlockBits > 30) {
@@ -338,15 +366,23 @@ public final class FST<T> implements Accountable {
     }
 
     long numBytes = in.readVLong();
-    if (numBytes > 1 << maxBlockBits) {
+    if (offHeapIn != null) {
+      final long fp = offHeapIn.getFilePointer();
+      offHeapBytes = offHeapIn.slice("fst", fp, numBytes);
+      offHeapIn.seek(fp + numBytes);
+      bytes = null;
+      bytesArray = null;
+    } else if (numBytes > 1 << maxBlockBits) {
       // FST is big: we need multiple pages
       bytes = new BytesStore(in, numBytes, 1<<maxBlockBits);
       bytesArray = null;
+      offHeapBytes = null;
     } else {
       // FST fits into a single block: use ByteArrayBytesStoreReader for less overhead
       bytes = null;
       bytesArray = new byte[(int) numBytes];
       in.readBytes(bytesArray, 0, bytesArray.length);
+      offHeapBytes = null;
     }
     
     cacheRootArcs();
@@ -382,7 +418,7 @@ public final class FST<T> implements Accountable {
     long size = BASE_RAM_BYTES_USED;
     if (bytesArray != null) {
       size += bytesArray.length;
-    } else {
+    } else if (bytes != null) {
       size += bytes.ramBytesUsed();
     }
     size += cachedArcsBytesUsed;
@@ -404,7 +440,9 @@ public final class FST<T> implements Accountable {
     }
     startNode = newStartNode;
     bytes.finish();
-    cacheRootArcs();
+    if (bytes.isSpilling() == false) {
+      cacheRootArcs();
+    }
   }
   
   // Optionally caches first 128 labels
@@ -457,6 +495,26 @@ public final class FST<T> implements Accountable {
   }
 
   public void save(DataOutput out) throws IOException {
+    if (bytes != null && bytes.isSpilling()) {
+      throw new IllegalStateException("FST bytes were written to a DataOutput; use saveMetadata instead");
+    }
+    saveMetadata(out);
+    if (bytes != null) {
+      bytes.writeTo(out);
+    } else if (bytesArray != null) {
+      out.writeBytes(bytesArray, 0, bytesArray.length);
+    } else {
+      final IndexInput in = offHeapBytes.clone();
+      in.seek(0);
+      out.copyBytes(in, in.length());
+    }
+  }
+
+  /** Writes everything {@link #save(DataOutput)} writes except for
+   *  the FST bytes themselves.  This is the only way to save an FST
+   *  whose bytes were written to a {@link DataOutput} by the {@link
+   *  Builder}; load it with {@link #FST(DataInput, IndexInput, Outputs)}. */
+  public void saveMetadata(DataOutput out) throws IOException {
     if (startNode == -1) {
       throw new IllegalStateException("call finish first");
     }
@@ -499,13 +557,11 @@ public final class FST<T> implements Accountable {
     out.writeByte(t);
     out.writeVLong(startNode);
     if (bytes != null) {
-      long numBytes = bytes.getPosition();
-      out.writeVLong(numBytes);
-      bytes.writeTo(out);
-    } else {
-      assert bytesArray != null;
+      out.writeVLong(bytes.getPosition());
+    } else if (bytesArray != null) {
       out.writeVLong(bytesArray.length);
-      out.writeBytes(bytesArray, 0, bytesArray.length);
+    } else {
+      out.writeVLong(offHeapBytes.length());
     }
   }
   
@@ -1206,6 +1262,14 @@ public final class FST<T> implements Accountable {
   public BytesReader getBytesReader() {
     if (bytesArray != null) {
       return new ReverseBytesReader(bytesArray);
+    } else if (offHeapBytes != null) {
+      try {
+        return new ReverseIndexInputReader(offHeapBytes);
+      } catch (IOException ioe) {
+        throw new RuntimeException(ioe);
+      }
+    } else if (bytes.isSpilling()) {
+      throw new IllegalStateException("FST bytes were written to a DataOutput; load the FST to read it");
     } else {
       return bytes.getReverseReader();
     }
@@ -19,27 +19,55 @@ package org.apache.lucene.util.fst;
 
 import java.io.IOException;
 
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.packed.PackedInts;
 import org.apache.lucene.util.packed.PagedGrowableWriter;
 
-// Used to dedup states (lookup already-frozen states)
+// Used to dedup states (lookup already-frozen states).  When a RAM
+// limit is set, nodes are looked up in a primary table and a fallback
+// table: once the primary table uses more than half of the budget, it
+// becomes the fallback table (dropping the previous fallback) and a new
+// primary is started; hits in the fallback table are promoted back to
+// the primary table.  This approximates an LRU cache of the most
+// recently shared suffixes, so the FST may no longer be fully minimal.
+//
+// If the FST bytes are written to disk while building, frozen nodes
+// cannot be read back from the FST anymore, so each table also keeps
+// its own copy of the bytes of the nodes it holds.
 final class NodeHash<T> {
 
-  private PagedGrowableWriter table;
-  private long count;
-  private long mask;
+  private PagedGrowableHash primaryTable;
+  private PagedGrowableHash fallbackTable;
+  // package private for testing
+  final long ramLimitBytes;
+  private final boolean copyNodes;
   private final FST<T> fst;
   private final FST.Arc<T> scratchArc = new FST.Arc<>();
   private final FST.BytesReader in;
+  private byte[] scratchBytes = new byte[16];
 
   public NodeHash(FST<T> fst, FST.BytesReader in) {
-    table = new PagedGrowableWriter(16, 1<<27, 8, PackedInts.COMPACT);
-    mask = 15;
+    this(fst, in, Long.MAX_VALUE, false);
+  }
+
+  /**
+   * @param ramLimitBytes approximate RAM budget for the tables, or
+   *        {@link Long#MAX_VALUE} to share all suffixes
+   * @param copyNodes if true, copy the bytes of each node instead
+   *        of reading them from the FST
+   */
+  NodeHash(FST<T> fst, FST.BytesReader in, long ramLimitBytes, boolean copyNodes) {
+    if (ramLimitBytes <= 0) {
+      throw new IllegalArgumentException("ramLimitBytes must be > 0; got: " + ramLimitBytes);
+    }
     this.fst = fst;
     this.in = in;
+    this.ramLimitBytes = ramLimitBytes;
+    this.copyNodes = copyNodes;
+    primaryTable = new PagedGrowableHash();
   }
 
-  private boolean nodesEqual(Builder.UnCompiledNode<T> node, long address) throws IOException {
+  private boolean nodesEqual(Builder.UnCompiledNode<T> node, long address, FST.BytesReader in) throws IOException {
     fst.readFirstRealTargetArc(address, scratchArc, in);
     if (scratchArc.bytesPerArc != 0 && node.numArcs != scratchArc.numArcs) {
       return false;
@@ -91,7 +119,7 @@ final class NodeHash<T> {
   }
 
   // hash code for a frozen node
-  private long hash(long node) throws IOException {
+  private long hash(long node, FST.BytesReader in) throws IOException {
     final int PRIME = 31;
     //System.out.println("hash frozen node=" + node);
     long h = 0;
@@ -117,57 +145,212 @@ final class NodeHash<T> {
   public long add(Builder<T> builder, Builder.UnCompiledNode<T> nodeIn) throws IOException {
     //System.out.println("hash: add count=" + count + " vs " + table.size() + " mask=" + mask);
     final long h = hash(nodeIn);
-    long pos = h & mask;
-    int c = 0;
-    while(true) {
-      final long v = table.get(pos);
-      if (v == 0) {
-        // freeze & add
-        final long node = fst.addNode(builder, nodeIn);
-        //System.out.println("  now freeze node=" + node);
-        assert hash(node) == h : "frozenHash=" + hash(node) + " vs h=" + h;
-        count++;
-        table.set(pos, node);
-        // Rehash at 2/3 occupancy:
-        if (count > 2*table.size()/3) {
-          rehash();
-        }
-        return node;
-      } else if (nodesEqual(nodeIn, v)) {
-        // same node is already here
-        return v;
+    long slot = primaryTable.find(nodeIn, h);
+    if (slot != -1) {
+      // same node is already here
+      return primaryTable.entries.get(slot);
+    }
+
+    final long node;
+    if (fallbackTable != null && (slot = fallbackTable.find(nodeIn, h)) != -1) {
+      // recently evicted: promote to the primary table
+      node = fallbackTable.entries.get(slot);
+      if (copyNodes) {
+        primaryTable.insert(h, node, fallbackTable.copiedReader.in, fallbackTable.copyEnds.get(slot), (int) fallbackTable.copyLengths.get(slot));
+      } else {
+        primaryTable.insert(h, node, null, 0, 0);
       }
+    } else {
+      // freeze & add
+      final long startAddress = builder.bytes.getPosition();
+      node = fst.addNode(builder, nodeIn);
+      //System.out.println("  now freeze node=" + node);
+      assert hash(node, in) == h : "frozenHash=" + hash(node, in) + " vs h=" + h;
+      primaryTable.insert(h, node, in, node, (int) (node - startAddress + 1));
+    }
 
-      // quadratic probe
-      pos = (pos + (++c)) & mask;
+    if (ramLimitBytes != Long.MAX_VALUE && primaryTable.ramBytesUsed() > ramLimitBytes / 2) {
+      fallbackTable = primaryTable;
+      primaryTable = new PagedGrowableHash();
     }
+    return node;
   }
 
-  // called only by rehash
-  private void addNew(long address) throws IOException {
-    long pos = hash(address) & mask;
-    int c = 0;
-    while(true) {
-      if (table.get(pos) == 0) {
-        table.set(pos, address);
-        break;
+  /** Returns the approximate RAM used by the hash tables. */
+  long ramBytesUsed() {
+    long size = primaryTable.ramBytesUsed();
+    if (fallbackTable != null) {
+      size += fallbackTable.ramBytesUsed();
+    }
+    return size;
+  }
+
+  /** Open addressing table of node addresses, with quadratic probing. */
+  private final class PagedGrowableHash {
+    private PagedGrowableWriter entries;
+    // only used when copying nodes: position of the last byte of each
+    // node's copy in copiedBytes, and its length
+    private PagedGrowableWriter copyEnds;
+    private PagedGrowableWriter copyLengths;
+    private final BytesStore copiedBytes;
+    private final CopiedNodeReader copiedReader;
+    private long count;
+    private long mask;
+
+    PagedGrowableHash() {
+      entries = new PagedGrowableWriter(16, 1<<27, 8, PackedInts.COMPACT);
+      mask = 15;
+      if (copyNodes) {
+        copyEnds = new PagedGrowableWriter(16, 1<<27, 8, PackedInts.COMPACT);
+        copyLengths = new PagedGrowableWriter(16, 1<<27, 8, PackedInts.COMPACT);
+        copiedBytes = new BytesStore(fst.bytes.getBlockBits());
+        // pad, so that reading past the first copied node never
+        // moves before position 0
+        copiedBytes.writeByte((byte) 0);
+        copiedReader = new CopiedNodeReader(copiedBytes.getReverseReader(false));
+      } else {
+        copiedBytes = null;
+        copiedReader = null;
       }
+    }
 
-      // quadratic probe
-      pos = (pos + (++c)) & mask;
+    /** Returns the reader to use for the node in the provided slot. */
+    private FST.BytesReader reader(long slot, long address) {
+      if (copyNodes) {
+        copiedReader.delta = address - copyEnds.get(slot);
+        return copiedReader;
+      }
+      return in;
+    }
+
+    /** Returns the slot holding a node equal to the provided one, or -1. */
+    long find(Builder.UnCompiledNode<T> nodeIn, long h) throws IOException {
+      long pos = h & mask;
+      int c = 0;
+      while(true) {
+        final long v = entries.get(pos);
+        if (v == 0) {
+          return -1;
+        } else if (nodesEqual(nodeIn, v, reader(pos, v))) {
+          return pos;
+        }
+
+        // quadratic probe
+        pos = (pos + (++c)) & mask;
+      }
+    }
+
+    /** Adds a node that is not in this table yet.  If copying nodes,
+     *  its len bytes are read backwards from src, starting at srcEnd. */
+    void insert(long h, long address, FST.BytesReader src, long srcEnd, int len) throws IOException {
+      long copyEnd = 0;
+      if (copyNodes) {
+        scratchBytes = ArrayUtil.grow(scratchBytes, len);
+        src.setPosition(srcEnd);
+        for(int i=len-1;i>=0;i--) {
+          scratchBytes[i] = src.readByte();
+        }
+        copiedBytes.writeBytes(scratchBytes, 0, len);
+        copyEnd = copiedBytes.getPosition()-1;
+      }
+      set(h & mask, address, copyEnd, len);
+      count++;
+      // Rehash at 2/3 occupancy:
+      if (count > 2*entries.size()/3) {
+        rehash();
+      }
     }
-  }
 
-  private void rehash() throws IOException {
-    final PagedGrowableWriter oldTable = table;
+    private void set(long pos, long address, long copyEnd, int len) {
+      int c = 0;
+      while(entries.get(pos) != 0) {
+        // quadratic probe
+        pos = (pos + (++c)) & mask;
+      }
+      entries.set(pos, address);
+      if (copyNodes) {
+        copyEnds.set(pos, copyEnd);
+        copyLengths.set(pos, len);
+      }
+    }
 
-    table = new PagedGrowableWriter(2*oldTable.size(), 1<<30, PackedInts.bitsRequired(count), PackedInts.COMPACT);
-    mask = table.size()-1;
-    for(long idx=0;idx<oldTable.size();idx++) {
-      final long address = oldTable.get(idx);
-      if (address != 0) {
-        addNew(address);
+    private void rehash() throws IOException {
+      final PagedGrowableWriter oldEntries = entries;
+      final PagedGrowableWriter oldCopyEnds = copyEnds;
+      final PagedGrowableWriter oldCopyLengths = copyLengths;
+
+      entries = new PagedGrowableWriter(2*oldEntries.size(), 1<<30, PackedInts.bitsRequired(count), PackedInts.COMPACT);
+      if (copyNodes) {
+        copyEnds = new PagedGrowableWriter(2*oldEntries.size(), 1<<30, PackedInts.bitsRequired(copiedBytes.getPosition()), PackedInts.COMPACT);
+        copyLengths = new PagedGrowableWriter(2*oldEntries.size(), 1<<30, 8, PackedInts.COMPACT);
+      }
+      mask = entries.size()-1;
+      for(long idx=0;idx<oldEntries.size();idx++) {
+        final long address = oldEntries.get(idx);
+        if (address != 0) {
+          final FST.BytesReader reader;
+          long copyEnd = 0;
+          int len = 0;
+          if (copyNodes) {
+            copyEnd = oldCopyEnds.get(idx);
+            len = (int) oldCopyLengths.get(idx);
+            copiedReader.delta = address - copyEnd;
+            reader = copiedReader;
+          } else {
+            reader = in;
+          }
+          set(hash(address, reader) & mask, address, copyEnd, len);
+        }
       }
     }
+
+    long ramBytesUsed() {
+      long size = entries.ramBytesUsed();
+      if (copyNodes) {
+        size += copyEnds.ramBytesUsed() + copyLengths.ramBytesUsed() + copiedBytes.ramBytesUsed();
+      }
+      return size;
+    }
+  }
+
+  /** Reads a copied node as if it were still at its address in the FST. */
+  private static final class CopiedNodeReader extends FST.BytesReader {
+    final FST.BytesReader in;
+    // FST address minus position in the copied bytes
+    long delta;
+
+    CopiedNodeReader(FST.BytesReader in) {
+      this.in = in;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+      return in.readByte();
+    }
+
+    @Override
+    public void readBytes(byte[] b, int offset, int len) throws IOException {
+      in.readBytes(b, offset, len);
+    }
+
+    @Override
+    public void skipBytes(long count) throws IOException {
+      in.skipBytes(count);
+    }
+
+    @Override
+    public long getPosition() {
+      return in.getPosition() + delta;
+    }
+
+    @Override
+    public void setPosition(long pos) {
+      in.setPosition(pos - delta);
+    }
+
+    @Override
+    public boolean reversed() {
+      return true;
+    }
   }
 }
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.analysis;
+
+
+import java.io.Reader;
+import java.io.StringReader;
+
+public class TestCachingAnalyzerWrapper extends BaseTokenStreamTestCase {
+
+  public void testRepeatedValues() throws Exception {
+    CachingAnalyzerWrapper a = new CachingAnalyzerWrapper(new MockAnalyzer(random()), 20, 10);
+    for (int i = 0; i < 5; i++) {
+      assertAnalyzesTo(a, "foo bar", new String[] { "foo", "bar" }, new int[] { 0, 4 }, new int[] { 3, 7 });
+      assertAnalyzesTo(a, "bar baz", new String[] { "bar", "baz" });
+    }
+    assertTrue(a.getHitCount() > 0);
+    assertEquals(2, a.getCacheSize());
+
+    // the same value in another field is cached separately
+    assertTokenStreamContents(a.tokenStream("other", "foo bar"), new String[] { "foo", "bar" });
+    assertTokenStreamContents(a.tokenStream("other", "foo bar"), new String[] { "foo", "bar" });
+    assertEquals(3, a.getCacheSize());
+    a.close();
+  }
+
+  public void testLongValuesNotCached() throws Exception {
+    CachingAnalyzerWrapper a = new CachingAnalyzerWrapper(new MockAnalyzer(random()), 5, 10);
+    for (int i = 0; i < 3; i++) {
+      assertAnalyzesTo(a, "foo bar baz", new String[] { "foo", "bar", "baz" });
+    }
+    assertEquals(0, a.getCacheSize());
+    assertEquals(0, a.getHitCount());
+    a.close();
+  }
+
+  public void testEviction() throws Exception {
+    CachingAnalyzerWrapper a = new CachingAnalyzerWrapper(new MockAnalyzer(random()), 20, 2);
+    for (String value : new String[] { "a", "b", "c", "d", "a", "b" }) {
+      assertAnalyzesTo(a, value, new String[] { value });
+    }
+    assertEquals(2, a.getCacheSize());
+    a.close();
+  }
+
+  public void testReaderIsClosed() throws Exception {
+    CachingAnalyzerWrapper a = new CachingAnalyzerWrapper(new MockAnalyzer(random()), 5, 10);
+    for (String value : new String[] { "foo", "foo", "foo bar baz" }) {
+      final boolean[] closed = new boolean[1];
+      Reader reader = new StringReader(value) {
+        @Override
+        public void close() {
+          closed[0] = true;
+          super.close();
+        }
+      };
+      try (TokenStream ts = a.tokenStream("field", reader)) {
+        ts.reset();
+        while (ts.incrementToken()) {}
+        ts.end();
+      }
+      assertTrue(value, closed[0]);
+    }
+    a.close();
+  }
+
+  public void testCharFilter() throws Exception {
+    Analyzer delegate = new Analyzer() {
+      @Override
+      protected TokenStreamComponents createComponents(String fieldName) {
+        return new TokenStreamComponents(new MockTokenizer(MockTokenizer.WHITESPACE, false));
+      }
+
+      @Override
+      protected Reader initReader(String fieldName, Reader reader) {
+        return new MockCharFilter(reader, 7);
+      }
+    };
+    CachingAnalyzerWrapper a = new CachingAnalyzerWrapper(delegate, 20, 10);
+    for (int i = 0; i < 3; i++) {
+      assertAnalyzesTo(a, "ab cd", new String[] { "aab", "cd" }, new int[] { 0, 3 }, new int[] { 2, 5 });
+    }
+    assertTrue(a.getHitCount() > 0);
+    a.close();
+  }
+
+  public void testIllegalArguments() {
+    expectThrows(IllegalArgumentException.class, () -> {
+      new CachingAnalyzerWrapper(new MockAnalyzer(random()), -1, 10);
+    });
+    expectThrows(IllegalArgumentException.class, () -> {
+      new CachingAnalyzerWrapper(new MockAnalyzer(random()), 10, -1);
+    });
+  }
+
+  public void testRandomStrings() throws Exception {
+    Analyzer a = new CachingAnalyzerWrapper(new MockAnalyzer(random()), 20, 100);
+    checkRandomData(random(), a, 200 * RANDOM_MULTIPLIER);
+    a.close();
+  }
+}
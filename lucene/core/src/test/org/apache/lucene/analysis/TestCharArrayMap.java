@@ -21,6 +21,7 @@ import java.util.*;
 import org.apache.lucene.analysis.CharArrayMap;
 import org.apache.lucene.analysis.CharArraySet;
 import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.TestUtil;
 
 public class TestCharArrayMap extends LuceneTestCase {
   public void doRandom(int iter, boolean ignoreCase) {
@@ -62,6 +63,42 @@ public class TestCharArrayMap extends LuceneTestCase {
     }
   }
 
+  public void testFreeze() {
+    for (boolean ignoreCase : new boolean[] {false, true}) {
+      CharArrayMap<Integer> map = new CharArrayMap<>(1, ignoreCase);
+      int numKeys = atLeast(1000);
+      for (int i = 0; i < numKeys; i++) {
+        map.put(TestUtil.randomUnicodeString(random(), 10), i);
+      }
+      CharArrayMap<Integer> frozen = CharArrayMap.freeze(map);
+      assertSame(frozen, CharArrayMap.freeze(frozen));
+      assertEquals(map.size(), frozen.size());
+      assertEquals(map, frozen);
+      for (int i = 0; i < 1000; i++) {
+        String key = TestUtil.randomUnicodeString(random(), 10);
+        if (random().nextBoolean()) {
+          key = key.toUpperCase(Locale.ROOT);
+        }
+        assertEquals(map.get(key), frozen.get(key));
+        assertEquals(map.containsKey(key), frozen.containsKey(key));
+        char[] buffer = ("ab" + key).toCharArray();
+        assertEquals(map.get(buffer, 2, key.length()), frozen.get(buffer, 2, key.length()));
+      }
+
+      // frozen maps are snapshots
+      map.put("not in the frozen map", -1);
+      assertFalse(frozen.containsKey("not in the frozen map"));
+      expectThrows(UnsupportedOperationException.class, () -> frozen.put("foo", 1));
+
+      // copies are modifiable again
+      CharArrayMap<Integer> copy = CharArrayMap.copy(frozen);
+      assertEquals(frozen, copy);
+      copy.put("foo", 1);
+      assertEquals(1, copy.get("foo").intValue());
+    }
+    assertSame(CharArrayMap.emptyMap(), CharArrayMap.freeze(new CharArrayMap<>(10, false)));
+  }
+
   public void testMethods() {
     CharArrayMap<Integer> cm = new CharArrayMap<>(2, false);
     HashMap<String,Integer> hm = new HashMap<>();
@@ -192,6 +192,23 @@ public class TestCharArraySet extends LuceneTestCase {
     });
   }
   
+  public void testFreeze() {
+    CharArraySet set = new CharArraySet(10, true);
+    set.addAll(Arrays.asList(TEST_STOP_WORDS));
+    CharArraySet frozen = CharArraySet.freeze(set);
+    assertSame(frozen, CharArraySet.freeze(frozen));
+    assertSame(frozen, CharArraySet.unmodifiableSet(frozen));
+    assertEquals(set, frozen);
+    for (String word : TEST_STOP_WORDS) {
+      assertTrue(frozen.contains(word));
+      assertTrue(frozen.contains(word.toUpperCase(Locale.ROOT)));
+      assertTrue(frozen.contains(word.toCharArray(), 0, word.length()));
+    }
+    assertFalse(frozen.contains("foo"));
+    expectThrows(UnsupportedOperationException.class, () -> frozen.add("foo"));
+    assertSame(CharArraySet.EMPTY_SET, CharArraySet.freeze(CharArraySet.EMPTY_SET));
+  }
+
   public void testSupplementaryChars() {
     String missing = "Term %s is missing in the set";
     String falsePos = "Term %s is in the set but shouldn't";
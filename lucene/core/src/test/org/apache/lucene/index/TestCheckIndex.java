@@ -52,6 +52,11 @@ public class TestCheckIndex extends BaseTestCheckIndex {
     testChecksumsOnlyVerbose(directory);
   }
 
+  @Test
+  public void testConcurrent() throws IOException {
+    testConcurrent(directory);
+  }
+
   @Test
   public void testObtainsLock() throws IOException {
     testObtainsLock(directory);
@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.index;
+
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.index.DocumentsWriterPerThreadPool.ThreadState;
+import org.apache.lucene.index.TestFlushByRamOrCountsPolicy.IndexThread;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LineFileDocs;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.TestUtil;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+
+public class TestFlushByRamGrowthPolicy extends LuceneTestCase {
+
+  private static LineFileDocs lineDocFile;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    lineDocFile = new LineFileDocs(random());
+  }
+
+  @AfterClass
+  public static void afterClass() throws Exception {
+    lineDocFile.close();
+    lineDocFile = null;
+  }
+
+  public void testProactiveFlushAndListener() throws IOException, InterruptedException {
+    final int numThreads = 1 + random().nextInt(TEST_NIGHTLY ? 5 : 3);
+    final int numDocumentsToIndex = 10 + atLeast(100);
+    AtomicInteger numDocs = new AtomicInteger(numDocumentsToIndex);
+    Directory dir = newDirectory();
+    MockAnalyzer analyzer = new MockAnalyzer(random());
+    analyzer.setMaxTokenLength(TestUtil.nextInt(random(), 1, IndexWriter.MAX_TERM_LENGTH));
+    final AtomicInteger flushes = new AtomicInteger();
+    final AtomicInteger stalls = new AtomicInteger();
+    final AtomicInteger releasedStalls = new AtomicInteger();
+    IndexWriterConfig iwc = newIndexWriterConfig(analyzer)
+        .setProactiveFlush(true)
+        .setRAMBufferSizeMB(0.5 + random().nextDouble())
+        .setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH)
+        .setMaxBufferedDeleteTerms(IndexWriterConfig.DISABLE_AUTO_FLUSH)
+        .setFlushListener(new IndexWriter.FlushListener() {
+          @Override
+          public void onStall(FlushStats stats) {
+            assertTrue(stats.isStalled());
+            stalls.incrementAndGet();
+          }
+
+          @Override
+          public void onStallReleased(long stallNanos, FlushStats stats) {
+            assertFalse(stats.isStalled());
+            assertTrue(stallNanos >= 0);
+            releasedStalls.incrementAndGet();
+          }
+
+          @Override
+          public void afterFlush(FlushStats stats) {
+            assertTrue(stats.getFlushBytes() >= 0);
+            flushes.incrementAndGet();
+          }
+        });
+    iwc.setIndexerThreadPool(new DocumentsWriterPerThreadPool());
+    IndexWriter writer = new IndexWriter(dir, iwc);
+    assertEquals(FlushByRamGrowthPolicy.class, writer.getConfig().getFlushPolicy().getClass());
+
+    IndexThread[] threads = new IndexThread[numThreads];
+    for (int x = 0; x < threads.length; x++) {
+      threads[x] = new IndexThread(numDocs, numThreads, writer, lineDocFile, false);
+      threads[x].start();
+    }
+    for (int x = 0; x < threads.length; x++) {
+      threads[x].join();
+    }
+
+    assertEquals(numDocumentsToIndex, writer.numDocs());
+    FlushStats stats = writer.getFlushStats();
+    assertFalse(stats.isStalled());
+    assertEquals(0, stats.getFlushBytes());
+    assertEquals(0, stats.getNumFlushingWriters());
+    assertEquals(0, stats.getNumQueuedFlushes());
+    assertEquals(0, stats.getNumBlockedFlushes());
+    assertEquals(stalls.get(), stats.getNumStalls());
+    assertEquals(stalls.get(), releasedStalls.get());
+    assertTrue(flushes.get() > 0);
+    long totalPerThread = 0;
+    for (long bytes : stats.getPerThreadBytes()) {
+      totalPerThread += bytes;
+    }
+    assertEquals(stats.getActiveBytes(), totalPerThread);
+    writer.close();
+    dir.close();
+  }
+
+  public void testListenerIsNotifiedWithoutLocks() throws Exception {
+    final AtomicInteger flushes = new AtomicInteger();
+    final IndexWriter[] writer = new IndexWriter[1];
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(new MockAnalyzer(random()))
+        .setMaxBufferedDocs(2)
+        .setFlushListener(new IndexWriter.FlushListener() {
+          @Override
+          public void afterFlush(FlushStats stats) {
+            assertFalse(Thread.holdsLock(writer[0].getDocsWriter().flushControl));
+            // another thread calling back into the writer must not deadlock
+            Thread thread = new Thread(() -> writer[0].getFlushStats());
+            thread.start();
+            try {
+              thread.join();
+            } catch (InterruptedException e) {
+              throw new RuntimeException(e);
+            }
+            flushes.incrementAndGet();
+          }
+        });
+    writer[0] = new IndexWriter(dir, iwc);
+    for (int i = 0; i < 10; i++) {
+      writer[0].addDocument(lineDocFile.nextDoc());
+    }
+    writer[0].commit();
+    assertTrue(flushes.get() > 0);
+    writer[0].close();
+    dir.close();
+  }
+
+  public void testFlushesBeforeRAMLimit() throws IOException {
+    final long limit = 1024 * 1024;
+    final AtomicInteger earlyFlushes = new AtomicInteger();
+    final AtomicInteger lateFlushes = new AtomicInteger();
+    FlushByRamGrowthPolicy flushPolicy = new FlushByRamGrowthPolicy() {
+      @Override
+      long projectedGrowth(DocumentsWriterFlushControl control, long limit) {
+        // don't depend on timing: always expect half of the buffer to be added while flushing
+        return limit / 2;
+      }
+
+      @Override
+      protected void markLargestWriterPending(DocumentsWriterFlushControl control, ThreadState perThreadState,
+          long currentBytesPerThread) {
+        if (currentBytesPerThread < limit) {
+          earlyFlushes.incrementAndGet();
+        } else {
+          lateFlushes.incrementAndGet();
+        }
+        super.markLargestWriterPending(control, perThreadState, currentBytesPerThread);
+      }
+    };
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(new MockAnalyzer(random()))
+        .setRAMBufferSizeMB(1)
+        .setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH)
+        .setMaxBufferedDeleteTerms(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    iwc.setFlushPolicy(flushPolicy);
+    IndexWriter writer = new IndexWriter(dir, iwc);
+    for (int i = 0; i < 100000 && earlyFlushes.get() < 3; i++) {
+      writer.addDocument(lineDocFile.nextDoc());
+      // a single indexing thread flushes as soon as its DWPT is pending, so the buffer never fills up
+      assertTrue(writer.ramBytesUsed() < limit);
+    }
+    assertEquals(3, earlyFlushes.get());
+    assertEquals(0, lateFlushes.get());
+    writer.close();
+    dir.close();
+  }
+
+  public void testCustomFlushPolicy() {
+    IndexWriterConfig iwc = newIndexWriterConfig(new MockAnalyzer(random()));
+    iwc.setProactiveFlush(true);
+    iwc.setProactiveFlush(false);
+    assertEquals(FlushByRamOrCountsPolicy.class, iwc.getFlushPolicy().getClass());
+    iwc.setFlushPolicy(new FlushByRamOrCountsPolicy() {});
+    expectThrows(IllegalStateException.class, () -> {
+      iwc.setProactiveFlush(true);
+    });
+    expectThrows(IllegalStateException.class, () -> {
+      iwc.setProactiveFlush(false);
+    });
+  }
+
+  public void testStallAccounting() throws InterruptedException {
+    DocumentsWriterStallControl ctrl = new DocumentsWriterStallControl();
+    assertEquals(0, ctrl.getNumStalls());
+    assertEquals(0, ctrl.getStallTimeNanos());
+    ctrl.updateStalled(true);
+    Thread.sleep(1);
+    assertTrue(ctrl.getStallTimeNanos() > 0);
+    ctrl.updateStalled(false);
+    assertEquals(1, ctrl.getNumStalls());
+    assertTrue(ctrl.getLastStallNanos() > 0);
+    assertEquals(ctrl.getLastStallNanos(), ctrl.getStallTimeNanos());
+  }
+}
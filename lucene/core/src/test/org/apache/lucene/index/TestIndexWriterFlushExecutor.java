@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.index;
+
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.NamedThreadFactory;
+import org.apache.lucene.util.TestUtil;
+import org.apache.lucene.util.ThreadInterruptedException;
+
+public class TestIndexWriterFlushExecutor extends LuceneTestCase {
+
+  public void testConcurrentFullFlush() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(TestUtil.nextInt(random(), 1, 4),
+        new NamedThreadFactory("TestIndexWriterFlushExecutor"));
+    try {
+      doTestFullFlush(executor);
+    } finally {
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+    }
+  }
+
+  public void testRejectingExecutor() throws Exception {
+    doTestFullFlush(r -> {
+      throw new RejectedExecutionException();
+    });
+  }
+
+  public void testCallerRunsExecutor() throws Exception {
+    doTestFullFlush(Runnable::run);
+  }
+
+  public void testInterruptWaitsForAllFlushes() throws Exception {
+    final Thread committer = Thread.currentThread();
+    final List<Runnable> submitted = Collections.synchronizedList(new ArrayList<>());
+    // runs flushes on new threads, once the committing thread got interrupted while waiting for them
+    Executor executor = task -> {
+      submitted.add(task);
+      new Thread(() -> {
+        while (isWaitingForFlush(committer) == false) {
+          Thread.yield();
+        }
+        committer.interrupt();
+        // the committing thread must keep on waiting
+        while (committer.isInterrupted()) {
+          Thread.yield();
+        }
+        task.run();
+      }).start();
+    };
+    // RAMDirectory does not fail on interrupts
+    Directory dir = new RAMDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(new MockAnalyzer(random()))
+        .setFlushExecutor(executor)
+        .setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH)
+        .setRAMBufferSizeMB(256)
+        .setMergePolicy(NoMergePolicy.INSTANCE);
+    IndexWriter w = new IndexWriter(dir, iwc);
+
+    // index documents concurrently so that every thread gets its own DWPT
+    final int numThreads = TestUtil.nextInt(random(), 2, 4);
+    final CyclicBarrier barrier = new CyclicBarrier(numThreads);
+    Thread[] threads = new Thread[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      threads[t] = new Thread(() -> {
+        Document doc = new Document();
+        doc.add(new TextField("body", new StringReader("some text") {
+          boolean first = true;
+
+          @Override
+          public int read(char[] cbuf, int off, int len) throws IOException {
+            if (first) {
+              first = false;
+              try {
+                barrier.await();
+              } catch (Exception e) {
+                throw new RuntimeException(e);
+              }
+            }
+            return super.read(cbuf, off, len);
+          }
+        }));
+        try {
+          w.addDocument(doc);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    expectThrows(ThreadInterruptedException.class, () -> {
+      w.commit();
+    });
+    assertTrue(Thread.interrupted());
+    assertEquals(numThreads - 1, submitted.size());
+    // the writer did not give up on flushes that were still running
+    for (Runnable task : submitted) {
+      assertTrue(((Future<?>) task).isDone());
+    }
+
+    w.commit();
+    DirectoryReader r = DirectoryReader.open(dir);
+    assertEquals(numThreads, r.numDocs());
+    r.close();
+    w.close();
+    dir.close();
+  }
+
+  private static boolean isWaitingForFlush(Thread thread) {
+    for (StackTraceElement element : thread.getStackTrace()) {
+      if (element.getClassName().equals(FutureTask.class.getName()) && element.getMethodName().equals("get")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void doTestFullFlush(Executor executor) throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(new MockAnalyzer(random()))
+        .setFlushExecutor(executor)
+        .setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH)
+        .setRAMBufferSizeMB(256)
+        .setMergePolicy(NoMergePolicy.INSTANCE);
+    IndexWriter w = new IndexWriter(dir, iwc);
+    final int numThreads = TestUtil.nextInt(random(), 2, 6);
+    final int docsPerThread = atLeast(20);
+    int expectedDocs = 0;
+    for (int round = 0; round < 3; round++) {
+      final int roundId = round;
+      final CountDownLatch start = new CountDownLatch(1);
+      Thread[] threads = new Thread[numThreads];
+      for (int t = 0; t < numThreads; t++) {
+        final int threadId = t;
+        threads[t] = new Thread() {
+          @Override
+          public void run() {
+            try {
+              start.await();
+              for (int i = 0; i < docsPerThread; i++) {
+                Document doc = new Document();
+                doc.add(new StringField("id", roundId + "_" + threadId + "_" + i, Field.Store.NO));
+                doc.add(new TextField("body", "some text " + i, Field.Store.NO));
+                w.addDocument(doc);
+              }
+            } catch (Exception e) {
+              throw new RuntimeException(e);
+            }
+          }
+        };
+        threads[t].start();
+      }
+      start.countDown();
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      expectedDocs += numThreads * docsPerThread;
+      w.deleteDocuments(new Term("id", roundId + "_0_0"));
+      expectedDocs--;
+
+      if (random().nextBoolean()) {
+        w.commit();
+        DirectoryReader r = DirectoryReader.open(dir);
+        assertEquals(expectedDocs, r.numDocs());
+        r.close();
+      } else {
+        DirectoryReader r = DirectoryReader.open(w);
+        assertEquals(expectedDocs, r.numDocs());
+        r.close();
+      }
+    }
+    assertEquals(0, w.getFlushStats().getFlushBytes());
+    w.close();
+    dir.close();
+  }
+}
@@ -0,0 +1,361 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.index;
+
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.TestUtil;
+
+public class TestIndexWriterPrimaryKey extends LuceneTestCase {
+
+  private static Document newDoc(String id, String value) {
+    Document doc = new Document();
+    doc.add(new StringField("id", id, Field.Store.NO));
+    doc.add(new StringField("value", value, Field.Store.NO));
+    return doc;
+  }
+
+  public void testUpdatesKeepKeysUnique() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(new MockAnalyzer(random())).setPrimaryKeyField("id"));
+    final int numIds = atLeast(50);
+    for (int iter = 0; iter < 3; iter++) {
+      for (int i = 0; i < numIds; i++) {
+        w.updateDocument(new Term("id", "" + i), newDoc("" + i, "v" + iter));
+        if (random().nextInt(20) == 0) {
+          w.commit();
+        }
+      }
+    }
+    DirectoryReader r = DirectoryReader.open(w);
+    assertEquals(numIds, r.numDocs());
+    for (int i = 0; i < numIds; i++) {
+      assertEquals(1, count(r, "id", "" + i));
+    }
+    r.close();
+    w.close();
+    dir.close();
+  }
+
+  private static int count(DirectoryReader r, String field, String value) throws Exception {
+    return new IndexSearcher(r).count(new TermQuery(new Term(field, value)));
+  }
+
+  public void testExistingKeysAreLoaded() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(new MockAnalyzer(random())));
+    w.addDocument(newDoc("a", "1"));
+    w.addDocument(newDoc("b", "1"));
+    w.close();
+
+    w = new IndexWriter(dir, newIndexWriterConfig(new MockAnalyzer(random())).setPrimaryKeyField("id"));
+    w.updateDocument(new Term("id", "a"), newDoc("a", "2"));
+    w.updateDocument(new Term("id", "c"), newDoc("c", "2"));
+    DirectoryReader r = DirectoryReader.open(w);
+    assertEquals(3, r.numDocs());
+    assertEquals(1, count(r, "value", "1"));
+    assertEquals(1, count(r, "id", "a"));
+    r.close();
+    w.close();
+    dir.close();
+  }
+
+  public void testVersions() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(new MockAnalyzer(random())).setPrimaryKeyField("id"));
+    assertNull(w.getPrimaryKeyVersion(new BytesRef("a")));
+    long seqNo = w.addDocument(newDoc("a", "1"));
+    IndexWriter.PrimaryKeyVersion version = w.getPrimaryKeyVersion(new BytesRef("a"));
+    assertNotNull(version);
+    assertEquals(seqNo, version.getSeqNo());
+    assertFalse(version.isDeleted());
+
+    seqNo = w.deleteDocuments(new Term("id", "a"));
+    version = w.getPrimaryKeyVersion(new BytesRef("a"));
+    assertEquals(seqNo, version.getSeqNo());
+    assertTrue(version.isDeleted());
+
+    seqNo = w.updateDocument(new Term("id", "a"), newDoc("a", "2"));
+    version = w.getPrimaryKeyVersion(new BytesRef("a"));
+    assertEquals(seqNo, version.getSeqNo());
+    assertFalse(version.isDeleted());
+    assertTrue(w.ramBytesUsed() > 0);
+
+    // commits and flushes don't make the operations visible to near-real-time readers
+    w.commit();
+    w.flush();
+    assertEquals(seqNo, w.getPrimaryKeyVersion(new BytesRef("a")).getSeqNo());
+    // nor do readers that don't apply deletes
+    DirectoryReader.open(w, false, false).close();
+    assertEquals(seqNo, w.getPrimaryKeyVersion(new BytesRef("a")).getSeqNo());
+
+    // after a refresh the reader is the source of truth
+    DirectoryReader.open(w).close();
+    assertNull(w.getPrimaryKeyVersion(new BytesRef("a")));
+    w.close();
+    dir.close();
+  }
+
+  public void testUnkeyedChangesAreAmbiguous() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(new MockAnalyzer(random())).setPrimaryKeyField("id"));
+    long seqNo = w.addDocument(newDoc("a", "1"));
+    w.addDocument(newDoc("b", "2"));
+    DirectoryReader r = DirectoryReader.open(w);
+    w.addDocument(newDoc("c", "1"));
+
+    long deleteSeqNo;
+    switch (random().nextInt(4)) {
+      case 0:
+        deleteSeqNo = w.deleteDocuments(new TermQuery(new Term("value", "1")));
+        break;
+      case 1:
+        deleteSeqNo = w.deleteDocuments(new Term("value", "1"));
+        break;
+      case 2:
+        deleteSeqNo = w.tryDeleteDocument(r, 0);
+        break;
+      default:
+        deleteSeqNo = w.deleteAll();
+        break;
+    }
+    assertTrue(deleteSeqNo > seqNo);
+    // the reader can't tell that these documents may be gone
+    for (String key : new String[] {"a", "c", "d"}) {
+      IndexWriter.PrimaryKeyVersion version = w.getPrimaryKeyVersion(new BytesRef(key));
+      assertTrue(version.isAmbiguous());
+      assertFalse(version.isDeleted());
+      assertEquals(deleteSeqNo, version.getSeqNo());
+    }
+    // operations on the key after the delete are not ambiguous
+    seqNo = w.updateDocument(new Term("id", "c"), newDoc("c", "3"));
+    IndexWriter.PrimaryKeyVersion version = w.getPrimaryKeyVersion(new BytesRef("c"));
+    assertFalse(version.isAmbiguous());
+    assertEquals(seqNo, version.getSeqNo());
+
+    DirectoryReader r2 = DirectoryReader.openIfChanged(r, w);
+    assertNotNull(r2);
+    assertNull(w.getPrimaryKeyVersion(new BytesRef("a")));
+    assertNull(w.getPrimaryKeyVersion(new BytesRef("c")));
+    r2.close();
+    r.close();
+    w.close();
+    dir.close();
+  }
+
+  public void testDeleteByPrimaryKeyQuery() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(new MockAnalyzer(random())).setPrimaryKeyField("id"));
+    w.addDocument(newDoc("a", "1"));
+    long seqNo = w.deleteDocuments(new TermQuery(new Term("id", "a")));
+    IndexWriter.PrimaryKeyVersion version = w.getPrimaryKeyVersion(new BytesRef("a"));
+    assertTrue(version.isDeleted());
+    assertFalse(version.isAmbiguous());
+    assertEquals(seqNo, version.getSeqNo());
+    w.close();
+    dir.close();
+  }
+
+  public void testNoPrimaryKey() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(new MockAnalyzer(random())));
+    expectThrows(IllegalStateException.class, () -> {
+      w.getPrimaryKeyVersion(new BytesRef("a"));
+    });
+    w.close();
+    dir.close();
+  }
+
+  public void testAddIndexesStopsSkippingDeletes() throws Exception {
+    Directory other = newDirectory();
+    IndexWriter w = new IndexWriter(other, newIndexWriterConfig(new MockAnalyzer(random())));
+    w.addDocument(newDoc("a", "1"));
+    w.close();
+
+    Directory dir = newDirectory();
+    w = new IndexWriter(dir, newIndexWriterConfig(new MockAnalyzer(random())).setPrimaryKeyField("id"));
+    w.addIndexes(other);
+    w.updateDocument(new Term("id", "a"), newDoc("a", "2"));
+    DirectoryReader r = DirectoryReader.open(w);
+    assertEquals(1, r.numDocs());
+    r.close();
+    w.close();
+    dir.close();
+    other.close();
+  }
+
+  public void testTokenizedKey() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(new MockAnalyzer(random())).setPrimaryKeyField("id"));
+    Document doc = new Document();
+    // indexed as "foo"
+    doc.add(new TextField("id", "Foo", Field.Store.NO));
+    w.addDocument(doc);
+    w.updateDocument(new Term("id", "foo"), newDoc("foo", "2"));
+    DirectoryReader r = DirectoryReader.open(w);
+    assertEquals(1, r.numDocs());
+    assertEquals(1, count(r, "value", "2"));
+    r.close();
+    w.close();
+    dir.close();
+  }
+
+  public void testNonIndexedKeyField() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(new MockAnalyzer(random())).setPrimaryKeyField("id"));
+    Document doc = newDoc("a", "1");
+    doc.add(new NumericDocValuesField("id", 42));
+    doc.add(new StoredField("id", "a"));
+    w.addDocument(doc);
+    w.updateDocument(new Term("id", "a"), newDoc("a", "2"));
+    w.updateDocument(new Term("id", "b"), newDoc("b", "2"));
+    DirectoryReader r = DirectoryReader.open(w);
+    assertEquals(2, r.numDocs());
+    assertEquals(0, count(r, "value", "1"));
+    r.close();
+    w.close();
+    dir.close();
+  }
+
+  public void testVersionsAreBounded() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(new MockAnalyzer(random())).setPrimaryKeyField("id");
+    iwc.setRAMBufferSizeMB(0.5);
+    IndexWriter w = new IndexWriter(dir, iwc);
+    final long maxVersionsBytes = (long) (0.5 * 1024 * 1024 / 4);
+    final int numIds = 20000;
+    final long[] seqNos = new long[numIds];
+    for (int iter = 0; iter < 2; iter++) {
+      for (int i = 0; i < numIds; i++) {
+        if (random().nextInt(10) == 0) {
+          seqNos[i] = -w.deleteDocuments(new Term("id", "" + i)) - 1;
+        } else {
+          seqNos[i] = w.updateDocument(new Term("id", "" + i), newDoc("" + i, "1"));
+        }
+        assertTrue(w.getDocsWriter().flushControl.getPrimaryKeyBytesUsed() <= maxVersionsBytes);
+      }
+    }
+    // versions are frozen, not dropped, until a reader sees them
+    final long frozenAndKeysBytes = w.ramBytesUsed() - w.getDocsWriter().ramBytesUsed();
+    for (int i = 0; i < numIds; i++) {
+      IndexWriter.PrimaryKeyVersion version = w.getPrimaryKeyVersion(new BytesRef("" + i));
+      assertEquals(seqNos[i] < 0, version.isDeleted());
+      assertEquals(seqNos[i] < 0 ? -seqNos[i] - 1 : seqNos[i], version.getSeqNo());
+      assertFalse(version.isAmbiguous());
+    }
+    DirectoryReader r = DirectoryReader.open(w);
+    assertNull(w.getPrimaryKeyVersion(new BytesRef("0")));
+    assertTrue(w.ramBytesUsed() - w.getDocsWriter().ramBytesUsed() < frozenAndKeysBytes);
+    int numLive = 0;
+    for (long seqNo : seqNos) {
+      if (seqNo >= 0) {
+        numLive++;
+      }
+    }
+    assertEquals(numLive, r.numDocs());
+    r.close();
+    w.close();
+    dir.close();
+  }
+
+  public void testMaxPrimaryKeys() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(new MockAnalyzer(random()))
+        .setPrimaryKeyField("id").setMaxPrimaryKeys(10));
+    for (int iter = 0; iter < 2; iter++) {
+      for (int i = 0; i < 20; i++) {
+        w.updateDocument(new Term("id", "" + i), newDoc("" + i, "" + iter));
+      }
+    }
+    DirectoryReader r = DirectoryReader.open(w);
+    assertEquals(20, r.numDocs());
+    assertEquals(0, count(r, "value", "0"));
+    r.close();
+    w.close();
+
+    // too many existing keys to load
+    w = new IndexWriter(dir, newIndexWriterConfig(new MockAnalyzer(random()))
+        .setPrimaryKeyField("id").setMaxPrimaryKeys(10));
+    for (int i = 0; i < 20; i++) {
+      w.updateDocument(new Term("id", "" + i), newDoc("" + i, "2"));
+    }
+    r = DirectoryReader.open(w);
+    assertEquals(20, r.numDocs());
+    assertEquals(20, count(r, "value", "2"));
+    r.close();
+    w.close();
+    dir.close();
+
+    expectThrows(IllegalArgumentException.class, () -> {
+      new IndexWriterConfig(new MockAnalyzer(random())).setMaxPrimaryKeys(-1);
+    });
+  }
+
+  public void testConcurrentUpdatesOfSameKeys() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(new MockAnalyzer(random())).setPrimaryKeyField("id"));
+    final int numIds = TestUtil.nextInt(random(), 5, 50);
+    final int numThreads = TestUtil.nextInt(random(), 2, 5);
+    final int opsPerThread = atLeast(100);
+    final CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      final long seed = random().nextLong();
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          Random random = new Random(seed);
+          try {
+            start.await();
+            for (int i = 0; i < opsPerThread; i++) {
+              String id = "" + random.nextInt(numIds);
+              w.updateDocument(new Term("id", id), newDoc(id, "x"));
+            }
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    DirectoryReader r = DirectoryReader.open(w);
+    for (int i = 0; i < numIds; i++) {
+      assertTrue(count(r, "id", "" + i) <= 1);
+    }
+    r.close();
+    w.close();
+    dir.close();
+  }
+}
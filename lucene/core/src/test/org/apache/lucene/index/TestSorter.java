@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.index;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.TestUtil;
+
+public class TestSorter extends LuceneTestCase {
+
+  private static Sorter.DocComparator wrap(Sorter.DocComparator in) {
+    // hides the keys so that the comparison-based sort is used
+    return new Sorter.DocComparator() {
+      @Override
+      public int compare(int docID1, int docID2) {
+        return in.compare(docID1, docID2);
+      }
+    };
+  }
+
+  private static void assertSameDocMap(int maxDoc, Sorter.DocMap expected, Sorter.DocMap actual) {
+    if (expected == null) {
+      assertNull(actual);
+      return;
+    }
+    assertNotNull(actual);
+    assertEquals(maxDoc, actual.size());
+    assertTrue(Sorter.isConsistent(actual));
+    for (int i = 0; i < maxDoc; ++i) {
+      assertEquals(expected.newToOld(i), actual.newToOld(i));
+      assertEquals(expected.oldToNew(i), actual.oldToNew(i));
+    }
+  }
+
+  public void testRadixSortMatchesComparatorSort() throws IOException {
+    for (int iter = 0; iter < 20; ++iter) {
+      final int maxDoc = TestUtil.nextInt(random(), 1, 5000);
+      final int numFields = TestUtil.nextInt(random(), 1, 3);
+      final Sorter.DocComparator[] keyed = new Sorter.DocComparator[numFields];
+      final Sorter.DocComparator[] wrapped = new Sorter.DocComparator[numFields];
+      for (int f = 0; f < numFields; ++f) {
+        final long[] keys = new long[maxDoc];
+        final int bits = TestUtil.nextInt(random(), 1, 64);
+        for (int i = 0; i < maxDoc; ++i) {
+          keys[i] = bits == 64 ? random().nextLong() : random().nextLong() >> (64 - bits);
+        }
+        if (random().nextInt(5) == 0) {
+          Arrays.sort(keys);
+        }
+        keyed[f] = new Sorter.KeyedDocComparator(keys);
+        wrapped[f] = wrap(keyed[f]);
+      }
+      final Sorter sorter = new Sorter(new Sort(new SortField("foo", SortField.Type.LONG)));
+      assertSameDocMap(maxDoc, sorter.sort(maxDoc, wrapped), sorter.sort(maxDoc, keyed));
+    }
+  }
+
+  public void testFloatingPointKeysMatchComparatorOrder() throws IOException {
+    final double[] doubles = new double[] {
+        Double.NaN, Double.POSITIVE_INFINITY, 1d, 0d, -0d, -1d, Double.NEGATIVE_INFINITY, Double.MIN_VALUE, -Double.MAX_VALUE
+    };
+    final int maxDoc = doubles.length;
+    for (boolean reverse : new boolean[] { false, true }) {
+      SortField sortField = new SortField("foo", SortField.Type.DOUBLE, reverse);
+      Sorter.DocComparator comparator = Sorter.getDocComparator(maxDoc, sortField, () -> null,
+          () -> new NumericDocValues() {
+            int doc = -1;
+            @Override
+            public long longValue() {
+              return Double.doubleToRawLongBits(doubles[doc]);
+            }
+            @Override
+            public boolean advanceExact(int target) {
+              doc = target;
+              return true;
+            }
+            @Override
+            public int docID() {
+              return doc;
+            }
+            @Override
+            public int nextDoc() {
+              return advance(doc + 1);
+            }
+            @Override
+            public int advance(int target) {
+              return doc = target < maxDoc ? target : NO_MORE_DOCS;
+            }
+            @Override
+            public long cost() {
+              return maxDoc;
+            }
+          });
+      assertTrue(comparator instanceof Sorter.KeyedDocComparator);
+      for (int i = 0; i < maxDoc; ++i) {
+        for (int j = 0; j < maxDoc; ++j) {
+          final int expected = (reverse ? -1 : 1) * Double.compare(doubles[i], doubles[j]);
+          assertEquals(Integer.signum(expected), Integer.signum(comparator.compare(i, j)));
+        }
+      }
+    }
+  }
+
+  public void testSortedStoredFields() throws IOException {
+    Directory dir = newDirectory();
+    final int numDocs = atLeast(100);
+    IndexWriterConfig iwc = new IndexWriterConfig(new MockAnalyzer(random()));
+    iwc.setMaxBufferedDocs(numDocs + 1);
+    iwc.setIndexSort(new Sort(new SortField("sort", SortField.Type.LONG)));
+    IndexWriter w = new IndexWriter(dir, iwc);
+    for (int i = 0; i < numDocs; ++i) {
+      Document doc = new Document();
+      doc.add(new NumericDocValuesField("sort", numDocs - i));
+      if (i % 7 != 0) {
+        doc.add(new StoredField("int", i));
+        doc.add(new StoredField("long", (long) i << 33));
+        doc.add(new StoredField("float", i / 3f));
+        doc.add(new StoredField("double", i / 7d));
+        doc.add(new StoredField("string", "value_" + i));
+        doc.add(new StoredField("bytes", new BytesRef(Integer.toString(i))));
+      }
+      w.addDocument(doc);
+    }
+    DirectoryReader reader = DirectoryReader.open(w);
+    w.close();
+    assertEquals(1, reader.leaves().size());
+    for (int docID = 0; docID < numDocs; ++docID) {
+      final int i = numDocs - 1 - docID;
+      Document doc = reader.document(docID);
+      if (i % 7 == 0) {
+        assertEquals(0, doc.getFields().size());
+      } else {
+        assertEquals(i, doc.getField("int").numericValue());
+        assertEquals((long) i << 33, doc.getField("long").numericValue());
+        assertEquals(i / 3f, doc.getField("float").numericValue());
+        assertEquals(i / 7d, doc.getField("double").numericValue());
+        assertEquals("value_" + i, doc.get("string"));
+        assertEquals(new BytesRef(Integer.toString(i)), doc.getBinaryValue("bytes"));
+      }
+    }
+    reader.close();
+    dir.close();
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.store;
+
+
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Path;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.util.English;
+import org.apache.lucene.util.TestUtil;
+
+public class TestByteBuffersDirectory extends BaseDirectoryTestCase {
+
+  @Override
+  protected Directory getDirectory(Path path) throws IOException {
+    return new ByteBuffersDirectory(new SingleInstanceLockFactory(),
+        random().nextBoolean() ? ByteBuffersDirectory.HEAP_ALLOCATOR : ByteBuffersDirectory.DIRECT_ALLOCATOR,
+        TestUtil.nextInt(random(), 1, ByteBuffersDirectory.DEFAULT_MAX_BLOCK_BITS));
+  }
+
+  public void testIllegalBlockBits() {
+    expectThrows(IllegalArgumentException.class, () -> new ByteBuffersDirectory(new SingleInstanceLockFactory(), ByteBuffersDirectory.HEAP_ALLOCATOR, 0));
+    expectThrows(IllegalArgumentException.class, () -> new ByteBuffersDirectory(new SingleInstanceLockFactory(), ByteBuffersDirectory.HEAP_ALLOCATOR, 31));
+  }
+
+  public void testBlockBoundaries() throws IOException {
+    final int blockBits = TestUtil.nextInt(random(), 1, 12);
+    try (ByteBuffersDirectory dir = new ByteBuffersDirectory(new SingleInstanceLockFactory(), ByteBuffersDirectory.HEAP_ALLOCATOR, blockBits)) {
+      for (int length : new int[] { 0, 1, (1 << blockBits) - 1, 1 << blockBits, (1 << blockBits) + 1, 3 << blockBits, TestUtil.nextInt(random(), 0, 1 << 16) }) {
+        final byte[] bytes = new byte[length];
+        random().nextBytes(bytes);
+        final String name = "file" + length;
+        if (dir.fileNameExists(name)) {
+          continue;
+        }
+        try (IndexOutput out = dir.createOutput(name, IOContext.DEFAULT)) {
+          if (random().nextBoolean()) {
+            out.writeBytes(bytes, bytes.length);
+          } else {
+            for (byte b : bytes) {
+              out.writeByte(b);
+            }
+          }
+        }
+        assertEquals(length, dir.fileLength(name));
+        try (IndexInput in = dir.openInput(name, IOContext.DEFAULT)) {
+          assertEquals(length, in.length());
+          final byte[] read = new byte[length];
+          in.readBytes(read, 0, length);
+          assertArrayEquals(bytes, read);
+          assertEquals(length, in.getFilePointer());
+          in.seek(length);
+          if (length > 0) {
+            final int pos = random().nextInt(length);
+            in.seek(pos);
+            assertEquals(bytes[pos], in.readByte());
+          }
+        }
+      }
+    }
+  }
+
+  public void testFileStillOpenForWriting() throws IOException {
+    try (ByteBuffersDirectory dir = new ByteBuffersDirectory()) {
+      IndexOutput out = dir.createOutput("foo", IOContext.DEFAULT);
+      out.writeInt(42);
+      assertTrue(dir.fileNameExists("foo"));
+      assertEquals(4, dir.fileLength("foo"));
+      expectThrows(AccessDeniedException.class, () -> dir.openInput("foo", IOContext.DEFAULT));
+      out.close();
+      try (IndexInput in = dir.openInput("foo", IOContext.DEFAULT)) {
+        assertEquals(42, in.readInt());
+      }
+    }
+  }
+
+  public void testRamBytesUsed() throws IOException {
+    try (ByteBuffersDirectory dir = new ByteBuffersDirectory(new SingleInstanceLockFactory(), ByteBuffersDirectory.HEAP_ALLOCATOR, 10)) {
+      assertEquals(0, dir.ramBytesUsed());
+      IndexOutput out = dir.createOutput("foo", IOContext.DEFAULT);
+      final int length = TestUtil.nextInt(random(), 1, 10000);
+      for (int i = 0; i < length; i++) {
+        out.writeByte((byte) i);
+      }
+      assertTrue(dir.ramBytesUsed() >= length);
+      out.close();
+      // the last block is trimmed on close
+      assertEquals(length, dir.ramBytesUsed());
+      try (IndexOutput out2 = dir.createOutput("bar", IOContext.DEFAULT)) {
+        out2.writeLong(42);
+      }
+      assertEquals(length + 8, dir.ramBytesUsed());
+      dir.rename("bar", "baz");
+      assertEquals(length + 8, dir.ramBytesUsed());
+      dir.deleteFile("foo");
+      assertEquals(8, dir.ramBytesUsed());
+      IndexInput in = dir.openInput("baz", IOContext.DEFAULT);
+      dir.deleteFile("baz");
+      assertEquals(0, dir.ramBytesUsed());
+      // open inputs can still read deleted files
+      assertEquals(42, in.readLong());
+      in.close();
+    }
+  }
+
+  public void testIndexing() throws IOException {
+    try (Directory dir = getDirectory(null)) {
+      IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(new MockAnalyzer(random())));
+      final int numDocs = atLeast(200);
+      for (int i = 0; i < numDocs; i++) {
+        Document doc = new Document();
+        doc.add(newStringField("content", English.intToEnglish(i).trim(), Field.Store.YES));
+        writer.addDocument(doc);
+        if (rarely()) {
+          writer.commit();
+        }
+      }
+      writer.close();
+      try (DirectoryReader reader = DirectoryReader.open(dir)) {
+        assertEquals(numDocs, reader.numDocs());
+        for (int i = 0; i < numDocs; i++) {
+          assertNotNull(reader.document(i).get("content"));
+        }
+      }
+      TestUtil.checkIndex(dir);
+    }
+  }
+}
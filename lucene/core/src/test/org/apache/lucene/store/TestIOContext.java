@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.store;
+
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestIOContext extends LuceneTestCase {
+
+  public void testDefaultReadAdvice() {
+    assertEquals(IOContext.ReadAdvice.NORMAL, IOContext.DEFAULT.readAdvice);
+    assertEquals(IOContext.ReadAdvice.NORMAL, IOContext.READ.readAdvice);
+    assertEquals(IOContext.ReadAdvice.SEQUENTIAL, IOContext.READONCE.readAdvice);
+    assertEquals(IOContext.ReadAdvice.NORMAL, new IOContext(new FlushInfo(10, 100)).readAdvice);
+    assertEquals(IOContext.ReadAdvice.SEQUENTIAL, new IOContext(new MergeInfo(10, 100, false, 1)).readAdvice);
+    assertEquals(IOContext.ReadAdvice.SEQUENTIAL, new IOContext(IOContext.READ, true).readAdvice);
+  }
+
+  public void testWithReadAdvice() {
+    IOContext random = IOContext.READ.withReadAdvice(IOContext.ReadAdvice.RANDOM);
+    assertEquals(IOContext.ReadAdvice.RANDOM, random.readAdvice);
+    assertEquals(IOContext.Context.READ, random.context);
+    assertFalse(random.readOnce);
+    assertFalse(random.equals(IOContext.READ));
+    assertEquals(random, IOContext.READ.withReadAdvice(IOContext.ReadAdvice.RANDOM));
+    assertEquals(random.hashCode(), IOContext.READ.withReadAdvice(IOContext.ReadAdvice.RANDOM).hashCode());
+    assertSame(random, random.withReadAdvice(IOContext.ReadAdvice.RANDOM));
+    assertEquals(IOContext.READ, random.withReadAdvice(IOContext.ReadAdvice.NORMAL));
+
+    // the advice is preserved when changing readOnce to false
+    assertEquals(IOContext.ReadAdvice.RANDOM, new IOContext(random, false).readAdvice);
+
+    expectThrows(NullPointerException.class, () -> IOContext.READ.withReadAdvice(null));
+  }
+
+  public void testMergesReadSequentially() {
+    IOContext merge = new IOContext(new MergeInfo(10, 100, false, 1));
+    for (IOContext.ReadAdvice advice : IOContext.ReadAdvice.values()) {
+      assertSame(merge, merge.withReadAdvice(advice));
+    }
+  }
+}
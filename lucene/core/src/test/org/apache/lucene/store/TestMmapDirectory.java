@@ -22,6 +22,7 @@ import java.nio.file.Path;
 import java.util.Random;
 import java.util.concurrent.CountDownLatch;
 
+import org.apache.lucene.util.TestUtil;
 import org.junit.Ignore;
 
 /**
@@ -33,6 +34,9 @@ public class TestMmapDirectory extends BaseDirectoryTestCase {
   protected Directory getDirectory(Path path) throws IOException {
     MMapDirectory m = new MMapDirectory(path);
     m.setPreload(random().nextBoolean());
+    if (MMapDirectory.READ_ADVICE_SUPPORTED) {
+      m.setUseReadAdvice(random().nextBoolean());
+    }
     return m;
   }
   
@@ -42,6 +46,70 @@ public class TestMmapDirectory extends BaseDirectoryTestCase {
     assumeTrue(MMapDirectory.UNMAP_NOT_SUPPORTED_REASON, MMapDirectory.UNMAP_SUPPORTED);
   }
   
+  public void testReadAdvice() throws Exception {
+    try (MMapDirectory dir = new MMapDirectory(createTempDir("testReadAdvice"), TestUtil.nextInt(random(), 10, 20))) {
+      assertEquals(MMapDirectory.READ_ADVICE_SUPPORTED, dir.getUseReadAdvice());
+      if (MMapDirectory.READ_ADVICE_SUPPORTED == false) {
+        expectThrows(IllegalArgumentException.class, () -> dir.setUseReadAdvice(true));
+      }
+      final byte[] bytes = new byte[TestUtil.nextInt(random(), 1, 1 << 16)];
+      random().nextBytes(bytes);
+      try (IndexOutput out = dir.createOutput("test", IOContext.DEFAULT)) {
+        out.writeBytes(bytes, bytes.length);
+      }
+      for (IOContext.ReadAdvice advice : IOContext.ReadAdvice.values()) {
+        try (IndexInput in = dir.openInput("test", IOContext.READ.withReadAdvice(advice))) {
+          final byte[] read = new byte[bytes.length];
+          in.readBytes(read, 0, read.length);
+          assertArrayEquals(bytes, read);
+        }
+      }
+    }
+  }
+
+  public void testPrefetchAcrossChunks() throws Exception {
+    try (MMapDirectory dir = new MMapDirectory(createTempDir("testPrefetch"), TestUtil.nextInt(random(), 10, 14))) {
+      final byte[] bytes = new byte[TestUtil.nextInt(random(), 1 << 14, 1 << 16)];
+      random().nextBytes(bytes);
+      try (IndexOutput out = dir.createOutput("test", IOContext.DEFAULT)) {
+        out.writeBytes(bytes, bytes.length);
+      }
+      IndexInput in = dir.openInput("test", IOContext.DEFAULT);
+      for (int iter = 0; iter < 100; ++iter) {
+        final int offset = random().nextInt(bytes.length);
+        final int length = random().nextInt(bytes.length - offset + 1);
+        IndexInput slice = in.slice("slice", offset, length);
+        final int prefetchOffset = random().nextInt(length + 1);
+        slice.prefetch(prefetchOffset, random().nextInt(length - prefetchOffset + 1));
+        expectThrows(IllegalArgumentException.class, () -> slice.prefetch(prefetchOffset, length - prefetchOffset + 1));
+        if (length > 0) {
+          assertEquals(bytes[offset], slice.readByte());
+        }
+      }
+      expectThrows(IllegalArgumentException.class, () -> in.prefetch(-1, 1));
+      in.close();
+      expectThrows(AlreadyClosedException.class, () -> in.prefetch(0, 1));
+    }
+  }
+
+  public void testPrefetchFollowsReadAdvice() throws Exception {
+    try (MMapDirectory dir = new MMapDirectory(createTempDir("testPrefetchFollowsReadAdvice"))) {
+      try (IndexOutput out = dir.createOutput("test", IOContext.DEFAULT)) {
+        out.writeBytes(new byte[1024], 1024);
+      }
+      try (IndexInput in = dir.openInput("test", IOContext.DEFAULT)) {
+        assertEquals(MMapDirectory.READ_ADVICE_SUPPORTED, ((ByteBufferIndexInput) in).usePrefetch);
+        assertEquals(MMapDirectory.READ_ADVICE_SUPPORTED, ((ByteBufferIndexInput) in.slice("slice", 10, 100)).usePrefetch);
+      }
+      dir.setUseReadAdvice(false);
+      try (IndexInput in = dir.openInput("test", IOContext.DEFAULT)) {
+        assertFalse(((ByteBufferIndexInput) in).usePrefetch);
+        assertFalse(((ByteBufferIndexInput) in.clone()).usePrefetch);
+        in.prefetch(0, in.length());
+      }
+    }
+  }
+
   @Ignore("This test is for JVM testing purposes. There are no guarantees that it may not fail with SIGSEGV!")
   public void testAceWithThreads() throws Exception {
     for (int iter = 0; iter < 10; iter++) {
@@ -19,6 +19,13 @@ package org.apache.lucene.store;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.util.NamedThreadFactory;
 
 /**
  * Tests NIOFSDirectory
@@ -27,6 +34,73 @@ public class TestNIOFSDirectory extends BaseDirectoryTestCase {
 
   @Override
   protected Directory getDirectory(Path path) throws IOException {
-    return new NIOFSDirectory(path);
+    NIOFSDirectory dir = new NIOFSDirectory(path);
+    if (random().nextBoolean()) {
+      dir.setPrefetchExecutor(Runnable::run);
+    }
+    return dir;
+  }
+
+  public void testPrefetchExecutor() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor(new NamedThreadFactory("TestNIOFSDirectory"));
+    try (NIOFSDirectory dir = new NIOFSDirectory(createTempDir())) {
+      assertNull(dir.getPrefetchExecutor());
+      try (IndexOutput out = dir.createOutput("a", IOContext.DEFAULT)) {
+        for (int i = 0; i < 100000; ++i) {
+          out.writeByte((byte) i);
+        }
+      }
+
+      final AtomicInteger tasks = new AtomicInteger();
+      try (IndexInput in = dir.openInput("a", IOContext.DEFAULT)) {
+        // no executor: prefetch is a no-op
+        in.prefetch(0, in.length());
+        dir.setPrefetchExecutor(command -> {
+          tasks.incrementAndGet();
+          executor.execute(command);
+        });
+        in.prefetch(0, in.length());
+        assertEquals(0, tasks.get());
+      }
+
+      try (IndexInput in = dir.openInput("a", IOContext.DEFAULT)) {
+        in.prefetch(0, in.length());
+        assertEquals(1, tasks.get());
+        in.prefetch(in.length(), 0);
+        assertEquals(1, tasks.get());
+        IndexInput slice = in.slice("slice", 1000, 5000);
+        slice.prefetch(10, 4000);
+        assertEquals(2, tasks.get());
+        in.clone().prefetch(42, 1);
+        assertEquals(3, tasks.get());
+
+        expectThrows(IllegalArgumentException.class, () -> in.prefetch(-1, 10));
+        expectThrows(IllegalArgumentException.class, () -> in.prefetch(10, -1));
+        expectThrows(IllegalArgumentException.class, () -> in.prefetch(0, in.length() + 1));
+        expectThrows(IllegalArgumentException.class, () -> slice.prefetch(4000, 1001));
+
+        in.seek(12345);
+        assertEquals((byte) 12345, in.readByte());
+      }
+    } finally {
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+  }
+
+  public void testPrefetchRejected() throws Exception {
+    try (NIOFSDirectory dir = new NIOFSDirectory(createTempDir())) {
+      dir.setPrefetchExecutor(command -> {
+        throw new RejectedExecutionException();
+      });
+      try (IndexOutput out = dir.createOutput("a", IOContext.DEFAULT)) {
+        out.writeInt(42);
+      }
+      try (IndexInput in = dir.openInput("a", IOContext.DEFAULT)) {
+        // the hint is silently dropped
+        in.prefetch(0, 4);
+        assertEquals(42, in.readInt());
+      }
+    }
   }
 }
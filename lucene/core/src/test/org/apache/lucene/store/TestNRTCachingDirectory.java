@@ -20,7 +20,11 @@ package org.apache.lucene.store;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.MockAnalyzer;
@@ -35,6 +39,7 @@ import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.LineFileDocs;
+import org.apache.lucene.util.NamedThreadFactory;
 import org.apache.lucene.util.TestUtil;
 
 public class TestNRTCachingDirectory extends BaseDirectoryTestCase {
@@ -44,6 +49,12 @@ public class TestNRTCachingDirectory extends BaseDirectoryTestCase {
   // would be good to investigate further...
   @Override
   protected Directory getDirectory(Path path) throws IOException {
+    if (random().nextBoolean()) {
+      return new NRTCachingDirectory(new RAMDirectory(),
+                                     .1 + 2.0*random().nextDouble(),
+                                     new NRTCachingDirectory.MemoryPool(.1 + 5.0*random().nextDouble()),
+                                     Runnable::run);
+    }
     return new NRTCachingDirectory(new RAMDirectory(),
                                    .1 + 2.0*random().nextDouble(),
                                    .1 + 5.0*random().nextDouble());
@@ -136,4 +147,127 @@ public class TestNRTCachingDirectory extends BaseDirectoryTestCase {
     nrtDir.close();
     fsDir.close();
   }
+
+  private static byte[] writeFile(Directory dir, String name, int length, IOContext context) throws IOException {
+    final byte[] bytes = new byte[length];
+    random().nextBytes(bytes);
+    try (IndexOutput out = dir.createOutput(name, context)) {
+      out.writeBytes(bytes, bytes.length);
+    }
+    return bytes;
+  }
+
+  private static void assertFileEquals(Directory dir, String name, byte[] expected) throws IOException {
+    try (IndexInput in = dir.openInput(name, IOContext.DEFAULT)) {
+      final byte[] actual = new byte[(int) in.length()];
+      in.readBytes(actual, 0, actual.length);
+      assertArrayEquals(expected, actual);
+    }
+  }
+
+  public void testSpillLeastRecentlyUsed() throws Exception {
+    final NRTCachingDirectory.MemoryPool pool = new NRTCachingDirectory.MemoryPool(0.01); // 10485 bytes
+    final Directory delegate1 = new RAMDirectory();
+    final Directory delegate2 = new RAMDirectory();
+    final NRTCachingDirectory dir1 = new NRTCachingDirectory(delegate1, 1.0, pool, Runnable::run);
+    final NRTCachingDirectory dir2 = new NRTCachingDirectory(delegate2, 1.0, pool, Runnable::run);
+    final IOContext context = new IOContext(new FlushInfo(1, 4000));
+
+    final byte[] a = writeFile(dir1, "a", 4000, context);
+    final byte[] b = writeFile(dir1, "b", 4000, context);
+    assertEquals(8000, pool.ramBytesUsed());
+    assertEquals(2, dir1.getCachedWriteCount());
+    // a is now more recently used than b
+    assertFileEquals(dir1, "a", a);
+    assertEquals(1, dir1.getHitCount());
+
+    // no room for c: b is spilled
+    final byte[] c = writeFile(dir2, "c", 4000, context);
+    assertEquals(1, dir1.getSpillCount());
+    assertEquals(4000, dir1.getSpilledBytes());
+    assertEquals(0, dir2.getSpillCount());
+    assertEquals(Arrays.asList("a"), Arrays.asList(dir1.listCachedFiles()));
+    assertEquals(Arrays.asList("c"), Arrays.asList(dir2.listCachedFiles()));
+    assertEquals(Arrays.asList("b"), Arrays.asList(delegate1.listAll()));
+    assertEquals(Arrays.asList("a", "b"), Arrays.asList(dir1.listAll()));
+    assertEquals(8000, pool.ramBytesUsed());
+
+    assertFileEquals(dir1, "b", b);
+    assertEquals(1, dir1.getMissCount());
+
+    // files that are bigger than the max merge size are never cached
+    writeFile(dir2, "d", 10, new IOContext(new FlushInfo(1, 2 * 1024 * 1024)));
+    assertEquals(1, dir2.getUncachedWriteCount());
+    assertEquals(Arrays.asList("d"), Arrays.asList(delegate2.listAll()));
+
+    // no room for e: a is now the least recently used file
+    IndexOutput e = dir1.createOutput("e", context);
+    assertEquals(2, dir1.getSpillCount());
+    e.writeBytes(new byte[4000], 4000);
+    assertFileEquals(dir2, "c", c);
+
+    // e is the least recently used file, but it can't be spilled while it is being written
+    writeFile(dir2, "f", 4000, context);
+    assertEquals(2, dir1.getSpillCount());
+    assertEquals(1, dir2.getSpillCount());
+    assertEquals(Arrays.asList("e"), Arrays.asList(dir1.listCachedFiles()));
+    assertEquals(Arrays.asList("f"), Arrays.asList(dir2.listCachedFiles()));
+    e.close();
+    assertEquals(0, dir1.getFailedSpillCount() + dir2.getFailedSpillCount());
+
+    assertEquals(Arrays.asList("a", "b"), Arrays.asList(delegate1.listAll()));
+    assertEquals(Arrays.asList("a", "b", "e"), Arrays.asList(dir1.listAll()));
+    assertEquals(Arrays.asList("c", "d"), Arrays.asList(delegate2.listAll()));
+    assertEquals(Arrays.asList("c", "d", "f"), Arrays.asList(dir2.listAll()));
+
+    dir1.close();
+    dir2.close();
+    assertEquals(0, pool.ramBytesUsed());
+  }
+
+  public void testFullPool() throws Exception {
+    final NRTCachingDirectory.MemoryPool pool = new NRTCachingDirectory.MemoryPool(0);
+    final Directory delegate = new RAMDirectory();
+    final NRTCachingDirectory dir = new NRTCachingDirectory(delegate, 1.0, pool, Runnable::run);
+    writeFile(dir, "a", 10, new IOContext(new FlushInfo(1, 10)));
+    assertEquals(0, dir.getCachedWriteCount());
+    assertEquals(1, dir.getUncachedWriteCount());
+    assertEquals(0, dir.listCachedFiles().length);
+    expectThrows(IllegalArgumentException.class, () -> pool.setMaxMB(-1));
+    dir.close();
+  }
+
+  public void testNRTWithMemoryPool() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(2, new NamedThreadFactory("TestNRTCachingDirectory"));
+    Directory dir = newDirectory();
+    NRTCachingDirectory.MemoryPool pool = new NRTCachingDirectory.MemoryPool(0.05 + random().nextDouble());
+    NRTCachingDirectory cachedDir = new NRTCachingDirectory(dir, 2.0, pool, executor);
+    RandomIndexWriter w = new RandomIndexWriter(random(), cachedDir, newIndexWriterConfig(new MockAnalyzer(random())));
+    final LineFileDocs docs = new LineFileDocs(random());
+    final int numDocs = TestUtil.nextInt(random(), 100, 400);
+    final List<BytesRef> ids = new ArrayList<>();
+    for(int docCount=0;docCount<numDocs;docCount++) {
+      final Document doc = docs.nextDoc();
+      ids.add(new BytesRef(doc.get("docid")));
+      w.addDocument(doc);
+      if (random().nextInt(20) == 17) {
+        try (DirectoryReader r = w.getReader()) {
+          assertEquals(1+docCount, r.numDocs());
+        }
+      }
+    }
+    w.close();
+    assertEquals(0, cachedDir.listCachedFiles().length);
+    assertEquals(0, cachedDir.getFailedSpillCount());
+
+    try (DirectoryReader r = DirectoryReader.open(dir)) {
+      for(BytesRef id : ids) {
+        assertEquals(1, r.docFreq(new Term("docid", id)));
+      }
+    }
+    cachedDir.close();
+    docs.close();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+  }
 }
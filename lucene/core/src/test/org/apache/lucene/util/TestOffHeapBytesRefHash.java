@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.util.BytesRefHash.MaxBytesLengthExceededException;
+
+public class TestOffHeapBytesRefHash extends LuceneTestCase {
+
+  private static OffHeapByteBlockPool.Allocator newAllocator() {
+    switch (random().nextInt(3)) {
+      case 0:
+        return new OffHeapByteBlockPool.DirectAllocator();
+      default:
+        return new OffHeapByteBlockPool.RecyclingAllocator(random().nextInt(25), random().nextBoolean());
+    }
+  }
+
+  public void testAddFindGet() {
+    try (OffHeapBytesRefHash hash = new OffHeapBytesRefHash(newAllocator())) {
+      final int iters = atLeast(2);
+      for (int iter = 0; iter < iters; iter++) {
+        final Map<String,Integer> expected = new HashMap<>();
+        final BytesRefBuilder ref = new BytesRefBuilder();
+        final int numValues = atLeast(5000);
+        for (int i = 0; i < numValues; i++) {
+          final String str = TestUtil.randomRealisticUnicodeString(random(), random().nextInt(random().nextBoolean() ? 10 : 300));
+          ref.copyChars(str);
+          final int size = hash.size();
+          final int key = hash.add(ref.get());
+          if (expected.containsKey(str)) {
+            assertEquals(-1 - expected.get(str), key);
+            assertEquals(size, hash.size());
+          } else {
+            assertEquals(size, key);
+            assertEquals(size + 1, hash.size());
+            expected.put(str, key);
+          }
+        }
+        final BytesRef scratch = new BytesRef();
+        for (Map.Entry<String,Integer> entry : expected.entrySet()) {
+          ref.copyChars(entry.getKey());
+          assertEquals(entry.getValue().intValue(), hash.find(ref.get()));
+          assertEquals(ref.get(), hash.get(entry.getValue(), scratch));
+        }
+        ref.copyChars("missing" + random().nextInt());
+        if (expected.containsKey(ref.get().utf8ToString()) == false) {
+          assertEquals(-1, hash.find(ref.get()));
+        }
+        assertTrue(hash.ramBytesUsed() > 0);
+        hash.clear();
+        assertEquals(0, hash.size());
+      }
+    }
+  }
+
+  public void testSort() {
+    try (OffHeapBytesRefHash hash = new OffHeapBytesRefHash(newAllocator())) {
+      final List<BytesRef> values = new ArrayList<>();
+      final int numValues = atLeast(1000);
+      for (int i = 0; i < numValues; i++) {
+        final BytesRef value = new BytesRef(TestUtil.randomUnicodeString(random(), 20));
+        if (hash.add(value) >= 0) {
+          values.add(value);
+        }
+      }
+      values.sort(null);
+      final int[] sorted = hash.sort();
+      assertEquals(values.size(), sorted.length);
+      final BytesRef scratch = new BytesRef();
+      for (int i = 0; i < sorted.length; i++) {
+        assertEquals(values.get(i), hash.get(sorted[i], scratch));
+      }
+      // sorting is not destructive
+      for (BytesRef value : values) {
+        assertTrue(hash.find(value) >= 0);
+      }
+    }
+  }
+
+  public void testLargeValue() {
+    try (OffHeapBytesRefHash hash = new OffHeapBytesRefHash(newAllocator())) {
+      final BytesRef max = new BytesRef(new byte[ByteBlockPool.BYTE_BLOCK_SIZE - 2]);
+      assertEquals(0, hash.add(max));
+      assertEquals(0, hash.find(max));
+      assertEquals(max, hash.get(0, new BytesRef()));
+      expectThrows(MaxBytesLengthExceededException.class, () -> hash.add(new BytesRef(new byte[ByteBlockPool.BYTE_BLOCK_SIZE - 1])));
+    }
+  }
+
+  public void testRecycling() {
+    final OffHeapByteBlockPool.RecyclingAllocator allocator = new OffHeapByteBlockPool.RecyclingAllocator(1000, random().nextBoolean());
+    final OffHeapBytesRefHash hash = new OffHeapBytesRefHash(allocator);
+    final BytesRefBuilder ref = new BytesRefBuilder();
+    for (int i = 0; i < 20000; i++) {
+      ref.copyChars(Integer.toString(i));
+      hash.add(ref.get());
+    }
+    // hash tables that were replaced on rehash have been recycled already
+    final int numBufferedBlocks = allocator.numBufferedBlocks();
+    final int numBlocks = (int) (hash.ramBytesUsed() / ByteBlockPool.BYTE_BLOCK_SIZE);
+    hash.close();
+    assertEquals(numBufferedBlocks + numBlocks, allocator.numBufferedBlocks());
+    expectThrows(IllegalStateException.class, () -> hash.find(new BytesRef("foo")));
+
+    // a new hash reuses the recycled blocks
+    try (OffHeapBytesRefHash other = new OffHeapBytesRefHash(allocator)) {
+      assertEquals(numBufferedBlocks + numBlocks - 1, allocator.numBufferedBlocks());
+      other.add(new BytesRef("foo"));
+    }
+    assertEquals(numBufferedBlocks + numBlocks, allocator.numBufferedBlocks());
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class TestOffHeapLongHash extends LuceneTestCase {
+
+  public void testAddFindGet() {
+    final OffHeapByteBlockPool.Allocator allocator = random().nextBoolean()
+        ? new OffHeapByteBlockPool.DirectAllocator()
+        : new OffHeapByteBlockPool.RecyclingAllocator(random().nextInt(25), random().nextBoolean());
+    try (OffHeapLongHash hash = new OffHeapLongHash(allocator)) {
+      final int iters = atLeast(2);
+      for (int iter = 0; iter < iters; iter++) {
+        final Map<Long,Integer> expected = new HashMap<>();
+        final int numValues = atLeast(20000);
+        final int bits = TestUtil.nextInt(random(), 1, 64);
+        for (int i = 0; i < numValues; i++) {
+          long value = random().nextLong();
+          if (bits < 64) {
+            // force collisions in low or high bits
+            value = random().nextBoolean() ? value >>> (64 - bits) : value & (-1L << (64 - bits));
+          }
+          final int size = hash.size();
+          final int key = hash.add(value);
+          if (expected.containsKey(value)) {
+            assertEquals(-1 - expected.get(value), key);
+            assertEquals(size, hash.size());
+          } else {
+            assertEquals(size, key);
+            assertEquals(size + 1, hash.size());
+            expected.put(value, key);
+          }
+        }
+        for (Map.Entry<Long,Integer> entry : expected.entrySet()) {
+          assertEquals(entry.getValue().intValue(), hash.find(entry.getKey()));
+          assertEquals(entry.getKey().longValue(), hash.get(entry.getValue()));
+        }
+
+        final long[] values = new long[hash.size()];
+        for (int i = 0; i < values.length; i++) {
+          values[i] = hash.get(i);
+        }
+        Arrays.sort(values);
+        final int[] sorted = hash.sort();
+        assertEquals(values.length, sorted.length);
+        for (int i = 0; i < sorted.length; i++) {
+          assertEquals(values[i], hash.get(sorted[i]));
+        }
+
+        hash.clear();
+        assertEquals(0, hash.size());
+        assertEquals(-1, hash.find(values[0]));
+      }
+    }
+  }
+
+  public void testClose() {
+    final OffHeapByteBlockPool.RecyclingAllocator allocator = new OffHeapByteBlockPool.RecyclingAllocator(1000, true);
+    final OffHeapLongHash hash = new OffHeapLongHash(allocator);
+    for (long i = 0; i < 10000; i++) {
+      assertEquals(i, hash.add(i * 31));
+    }
+    final int numBufferedBlocks = allocator.numBufferedBlocks();
+    final int numBlocks = (int) (hash.ramBytesUsed() / ByteBlockPool.BYTE_BLOCK_SIZE);
+    hash.close();
+    assertEquals(numBufferedBlocks + numBlocks, allocator.numBufferedBlocks());
+    expectThrows(IllegalStateException.class, () -> hash.add(1));
+  }
+
+  public void testDirectAllocatorReusesBlocks() {
+    final OffHeapByteBlockPool.DirectAllocator allocator = new OffHeapByteBlockPool.DirectAllocator();
+    final OffHeapLongHash hash = new OffHeapLongHash(allocator);
+    for (long i = 0; i < 100000; i++) {
+      hash.add(i);
+    }
+    // the blocks of outgrown hash tables are kept for reuse
+    assertTrue(allocator.numBufferedBlocks() > 0);
+    final int numBlocks = (int) (hash.ramBytesUsed() / ByteBlockPool.BYTE_BLOCK_SIZE) + allocator.numBufferedBlocks();
+
+    // filling the hash again does not need more blocks
+    hash.clear();
+    for (long i = 0; i < 100000; i++) {
+      hash.add(i);
+    }
+    assertEquals(numBlocks, (int) (hash.ramBytesUsed() / ByteBlockPool.BYTE_BLOCK_SIZE) + allocator.numBufferedBlocks());
+    hash.close();
+    assertEquals(numBlocks, allocator.numBufferedBlocks());
+  }
+}
@@ -24,17 +24,24 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.store.ChecksumIndexInput;
 import org.apache.lucene.store.CorruptingIndexOutput;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FilterDirectory;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.TrackingDirectoryWrapper;
 import org.apache.lucene.util.OfflineSorter.BufferSize;
+import org.apache.lucene.util.OfflineSorter.ByteSequencesReader;
 import org.apache.lucene.util.OfflineSorter.ByteSequencesWriter;
 import org.apache.lucene.util.OfflineSorter.SortInfo;
 
@@ -90,6 +97,103 @@ public class TestOfflineSorter extends LuceneTestCase {
     }
   }
 
+  public void testConcurrentPartitions() throws Exception {
+    ExecutorService exec = Executors.newFixedThreadPool(TestUtil.nextInt(random(), 2, 4), new NamedThreadFactory("TestOfflineSorter"));
+    try (Directory dir = newDirectory()) {
+      // Sort 20 mb worth of data with 1mb buffer, using a custom comparator half of the time to not use radix sort:
+      Comparator<BytesRef> comparator = random().nextBoolean() ? OfflineSorter.DEFAULT_COMPARATOR : (a, b) -> a.compareTo(b);
+      OfflineSorter sorter = new OfflineSorter(dir, "foo", comparator, BufferSize.megabytes(1), TestUtil.nextInt(random(), 2, 10), -1,
+                                               exec, TestUtil.nextInt(random(), 1, 4));
+      SortInfo sortInfo = checkSort(dir, sorter, generateRandom((int)OfflineSorter.MB * 20));
+      assertTrue(sortInfo.mergeRounds > 0);
+      assertSame(sortInfo, sorter.getSortInfo());
+    } finally {
+      exec.shutdown();
+      assertTrue(exec.awaitTermination(1, TimeUnit.MINUTES));
+    }
+  }
+
+  public void testExceptionWithExecutor() throws Exception {
+    ExecutorService exec = Executors.newFixedThreadPool(TestUtil.nextInt(random(), 2, 4), new NamedThreadFactory("TestOfflineSorter"));
+    try (Directory dir = newDirectory()) {
+      IndexOutput unsorted = dir.createTempOutput("unsorted", "tmp", IOContext.DEFAULT);
+      writeAll(unsorted, generateRandom((int)OfflineSorter.MB * 5));
+
+      // Fails while sorting one of the later partitions:
+      AtomicInteger compareCount = new AtomicInteger();
+      int failAt = TestUtil.nextInt(random(), 10000, 100000);
+      Comparator<BytesRef> comparator = (a, b) -> {
+        if (compareCount.incrementAndGet() == failAt) {
+          throw new IllegalStateException("boom");
+        }
+        return a.compareTo(b);
+      };
+      OfflineSorter sorter = new OfflineSorter(dir, "foo", comparator, BufferSize.megabytes(1), 2, -1, exec, 2);
+      IllegalStateException e = expectThrows(IllegalStateException.class, () -> sorter.sort(unsorted.getName()));
+      assertEquals("boom", e.getMessage());
+
+      // All temp files were removed:
+      for (String file : dir.listAll()) {
+        assertFalse(file, file.startsWith("foo"));
+      }
+    } finally {
+      exec.shutdown();
+      assertTrue(exec.awaitTermination(1, TimeUnit.MINUTES));
+    }
+  }
+
+  public void testExceptionWithExecutorStopsReading() throws Exception {
+    ExecutorService exec = Executors.newFixedThreadPool(TestUtil.nextInt(random(), 2, 4), new NamedThreadFactory("TestOfflineSorter"));
+    try (Directory dir = newDirectory()) {
+      IndexOutput unsorted = dir.createTempOutput("unsorted", "tmp", IOContext.DEFAULT);
+      byte[][] data = generateRandom((int)OfflineSorter.MB * 20);
+      writeAll(unsorted, data);
+
+      // Every partition fails to sort:
+      Comparator<BytesRef> comparator = (a, b) -> {
+        throw new IllegalStateException("boom");
+      };
+      AtomicInteger readCount = new AtomicInteger();
+      OfflineSorter sorter = new OfflineSorter(dir, "foo", comparator, BufferSize.megabytes(1), 2, -1, exec, 1) {
+        @Override
+        protected ByteSequencesReader getReader(ChecksumIndexInput in, String name) throws IOException {
+          if (name.equals(unsorted.getName()) == false) {
+            return super.getReader(in, name);
+          }
+          return new ByteSequencesReader(in, name) {
+            @Override
+            public BytesRef next() throws IOException {
+              readCount.incrementAndGet();
+              return super.next();
+            }
+          };
+        }
+      };
+      IllegalStateException e = expectThrows(IllegalStateException.class, () -> sorter.sort(unsorted.getName()));
+      assertEquals("boom", e.getMessage());
+      // The failure surfaced after a few partitions, not once the whole input was read:
+      assertTrue(readCount.get() < data.length / 2);
+    } finally {
+      exec.shutdown();
+      assertTrue(exec.awaitTermination(1, TimeUnit.MINUTES));
+    }
+  }
+
+  public void testSortPartitionOverride() throws Exception {
+    try (Directory dir = newDirectory()) {
+      AtomicInteger partitionCount = new AtomicInteger();
+      OfflineSorter sorter = new OfflineSorter(dir, "foo", OfflineSorter.DEFAULT_COMPARATOR, BufferSize.megabytes(1), 2, -1) {
+        @Override
+        protected String sortPartition(TrackingDirectoryWrapper trackingDir) throws IOException {
+          partitionCount.incrementAndGet();
+          return super.sortPartition(trackingDir);
+        }
+      };
+      checkSort(dir, sorter, generateRandom((int)OfflineSorter.MB * 5));
+      assertTrue(partitionCount.get() > 1);
+    }
+  }
+
   @Nightly
   public void testLargerRandom() throws Exception {
     // Sort 100MB worth of data with 15mb buffer.
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.util.automaton;
+
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.RegexpQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestCompiledAutomatonCache extends LuceneTestCase {
+
+  private CompiledAutomatonCache defaultCache;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    defaultCache = CompiledAutomatonCache.getDefault();
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    CompiledAutomatonCache.setDefault(defaultCache);
+    super.tearDown();
+  }
+
+  private static CompiledAutomatonCache.Entry entry(String regexp) {
+    final Automaton a = new RegExp(regexp).toAutomaton();
+    return new CompiledAutomatonCache.Entry(a, new CompiledAutomaton(a));
+  }
+
+  public void testHitsAndMisses() {
+    final CompiledAutomatonCache cache = new CompiledAutomatonCache(10, Long.MAX_VALUE);
+    final CompiledAutomatonCache.Entry e1 = cache.get("a", () -> entry("a.*b"));
+    assertEquals(0, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+    assertSame(e1, cache.get("a", () -> { throw new AssertionError(); }));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getCacheSize());
+    assertTrue(cache.ramBytesUsed() >= e1.ramBytesUsed());
+
+    cache.clear();
+    assertEquals(0, cache.getCacheSize());
+    assertEquals(0, cache.ramBytesUsed());
+    assertNotSame(e1, cache.get("a", () -> entry("a.*b")));
+  }
+
+  public void testEvictions() {
+    final CompiledAutomatonCache cache = new CompiledAutomatonCache(2, Long.MAX_VALUE);
+    final CompiledAutomatonCache.Entry e1 = cache.get(1, () -> entry("a+"));
+    cache.get(2, () -> entry("b+"));
+    // make 2 the least recently used entry
+    assertSame(e1, cache.get(1, () -> entry("a+")));
+    cache.get(3, () -> entry("c+"));
+    assertEquals(2, cache.getCacheSize());
+    assertEquals(1, cache.getEvictionCount());
+    assertSame(e1, cache.get(1, () -> entry("a+")));
+    final long misses = cache.getMissCount();
+    cache.get(2, () -> entry("b+"));
+    assertEquals(misses + 1, cache.getMissCount());
+
+    // entries that are too large are not cached
+    final CompiledAutomatonCache small = new CompiledAutomatonCache(100, 1);
+    small.get(1, () -> entry("a+"));
+    assertEquals(0, small.getCacheSize());
+    assertEquals(0, small.ramBytesUsed());
+
+    // failures are not cached
+    expectThrows(TooComplexToDeterminizeException.class, () -> {
+      cache.get(4, () -> { throw new TooComplexToDeterminizeException(new Automaton(), 1); });
+    });
+    assertEquals(2, cache.getCacheSize());
+  }
+
+  public void testQueriesShareAutomata() {
+    final CompiledAutomatonCache cache = new CompiledAutomatonCache(100, Long.MAX_VALUE);
+    CompiledAutomatonCache.setDefault(cache);
+
+    final RegexpQuery r1 = new RegexpQuery(new Term("f", "[a-c]+d?"));
+    final RegexpQuery r2 = new RegexpQuery(new Term("g", "[a-c]+d?"));
+    assertSame(r1.getAutomaton(), r2.getAutomaton());
+    assertEquals(1, cache.getHitCount());
+    // different flags
+    new RegexpQuery(new Term("f", "[a-c]+d?"), RegExp.NONE);
+    assertEquals(2, cache.getMissCount());
+    // custom providers are never cached
+    final RegexpQuery r3 = new RegexpQuery(new Term("f", "<foo>"), RegExp.ALL, name -> Automata.makeString(name),
+                                           Operations.DEFAULT_MAX_DETERMINIZED_STATES);
+    assertEquals(2, cache.getCacheSize());
+    assertEquals(new RegexpQuery(new Term("f", "<foo>"), RegExp.ALL, name -> Automata.makeString(name),
+                                 Operations.DEFAULT_MAX_DETERMINIZED_STATES), r3);
+
+    final WildcardQuery w1 = new WildcardQuery(new Term("f", "a*b?"));
+    final WildcardQuery w2 = new WildcardQuery(new Term("f", "a*b?"));
+    assertSame(w1.getAutomaton(), w2.getAutomaton());
+    assertEquals(w1, w2);
+    // same text, but a different syntax
+    assertNotSame(w1.getAutomaton(), new RegexpQuery(new Term("f", "a*b?")).getAutomaton());
+
+    CompiledAutomatonCache.setDefault(null);
+    final WildcardQuery w3 = new WildcardQuery(new Term("f", "a*b?"));
+    assertNotSame(w1.getAutomaton(), w3.getAutomaton());
+    assertEquals(w1, w3);
+  }
+
+  public void testFuzzyQuery() throws Exception {
+    final CompiledAutomatonCache cache = new CompiledAutomatonCache(100, Long.MAX_VALUE);
+    CompiledAutomatonCache.setDefault(cache);
+
+    Directory dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+    Document doc = new Document();
+    doc.add(newStringField("f", "foobar", Field.Store.NO));
+    w.addDocument(doc);
+    IndexReader r = w.getReader();
+    w.close();
+    IndexSearcher s = newSearcher(r);
+
+    assertEquals(1, s.count(new FuzzyQuery(new Term("f", "fobar"))));
+    final int numAutomata = cache.getCacheSize();
+    assertTrue(numAutomata > 0);
+    final long hits = cache.getHitCount();
+    assertEquals(1, s.count(new FuzzyQuery(new Term("f", "fobar"))));
+    assertEquals(numAutomata, cache.getCacheSize());
+    assertTrue(cache.getHitCount() > hits);
+
+    r.close();
+    dir.close();
+  }
+}
@@ -1197,4 +1197,116 @@ public class TestBKD extends LuceneTestCase {
     pointsIn.close();
     dir.close();
   }
+
+  public void testPrefetchWindowWhenAddingAll() throws Exception {
+    try (Directory dir = newDirectory()) {
+      int numDocs = 100000;
+      BKDWriter w = new BKDWriter(numDocs, dir, "tmp", 1, Integer.BYTES, 64, 1.0f, numDocs, true);
+      byte[] scratch = new byte[Integer.BYTES];
+      for(int docID=0;docID<numDocs;docID++) {
+        random().nextBytes(scratch);
+        w.add(scratch, docID);
+      }
+
+      long indexFP;
+      try (IndexOutput out = dir.createOutput("bkd", IOContext.DEFAULT)) {
+        indexFP = w.finish(out);
+      }
+      // the leaf blocks take more than a prefetch window
+      assertTrue(indexFP > 2 * BKDReader.PREFETCH_WINDOW_BYTES);
+
+      try (IndexInput in = dir.openInput("bkd", IOContext.DEFAULT)) {
+        List<long[]> prefetches = new ArrayList<>();
+        IndexInput recordingIn = new PrefetchRecordingIndexInput(in, prefetches);
+        recordingIn.seek(indexFP);
+        BKDReader r = new BKDReader(recordingIn);
+        final BitSet hits = new BitSet();
+        r.intersect(new IntersectVisitor() {
+            @Override
+            public void visit(int docID) {
+              hits.set(docID);
+            }
+
+            @Override
+            public void visit(int docID, byte[] packedValue) {
+              throw new AssertionError();
+            }
+
+            @Override
+            public Relation compare(byte[] minPacked, byte[] maxPacked) {
+              return Relation.CELL_INSIDE_QUERY;
+            }
+          });
+        assertEquals(numDocs, hits.cardinality());
+
+        // the leaf blocks are hinted in bounded, contiguous windows as they are read
+        assertTrue(prefetches.size() > 1);
+        long end = prefetches.get(0)[0];
+        for (long[] prefetch : prefetches) {
+          assertEquals(end, prefetch[0]);
+          assertTrue(prefetch[1] <= BKDReader.PREFETCH_WINDOW_BYTES);
+          end = prefetch[0] + prefetch[1];
+        }
+        assertTrue(end >= indexFP);
+      }
+    }
+  }
+
+  /** Records the prefetch hints of an input and of its clones. */
+  private static class PrefetchRecordingIndexInput extends IndexInput {
+    private final IndexInput in;
+    private final List<long[]> prefetches;
+
+    PrefetchRecordingIndexInput(IndexInput in, List<long[]> prefetches) {
+      super("PrefetchRecordingIndexInput(" + in + ")");
+      this.in = in;
+      this.prefetches = prefetches;
+    }
+
+    @Override
+    public void prefetch(long offset, long length) throws IOException {
+      prefetches.add(new long[] {offset, length});
+      in.prefetch(offset, length);
+    }
+
+    @Override
+    public PrefetchRecordingIndexInput clone() {
+      return new PrefetchRecordingIndexInput(in.clone(), prefetches);
+    }
+
+    @Override
+    public IndexInput slice(String sliceDescription, long offset, long length) throws IOException {
+      return new PrefetchRecordingIndexInput(in.slice(sliceDescription, offset, length), prefetches);
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+
+    @Override
+    public long getFilePointer() {
+      return in.getFilePointer();
+    }
+
+    @Override
+    public void seek(long pos) throws IOException {
+      in.seek(pos);
+    }
+
+    @Override
+    public long length() {
+      return in.length();
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+      return in.readByte();
+    }
+
+    @Override
+    public void readBytes(byte[] b, int offset, int len) throws IOException {
+      in.readBytes(b, offset, len);
+    }
+  }
 }
@@ -53,12 +53,15 @@ import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.ByteArrayDataOutput;
+import org.apache.lucene.store.DataOutput;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.store.MockDirectoryWrapper;
+import org.apache.lucene.store.RAMOutputStream;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.BytesRefBuilder;
 import org.apache.lucene.util.IntsRef;
@@ -1635,4 +1638,135 @@ public class TestFSTs extends LuceneTestCase {
       // expected
     }
   }
+
+  private static List<BytesRef> randomSortedTerms() {
+    final Set<BytesRef> terms = new HashSet<>();
+    final int numTerms = atLeast(2000);
+    while (terms.size() < numTerms) {
+      // small alphabet so that there are many suffixes to share
+      terms.add(new BytesRef(TestUtil.randomSimpleStringRange(random(), 'a', 'e', 12)));
+    }
+    final List<BytesRef> sorted = new ArrayList<>(terms);
+    Collections.sort(sorted);
+    return sorted;
+  }
+
+  private static FST<Long> buildFST(List<BytesRef> terms, double suffixRAMLimitMB, DataOutput dataOutput) throws IOException {
+    final PositiveIntOutputs outputs = PositiveIntOutputs.getSingleton();
+    final Builder<Long> builder = new Builder<>(FST.INPUT_TYPE.BYTE1, 0, 0, true, true, Integer.MAX_VALUE, outputs,
+                                                true, TestUtil.nextInt(random(), 4, 15), suffixRAMLimitMB, dataOutput);
+    final IntsRefBuilder scratch = new IntsRefBuilder();
+    for (int i = 0; i < terms.size(); i++) {
+      builder.add(Util.toIntsRef(terms.get(i), scratch), (long) i);
+    }
+    return builder.finish();
+  }
+
+  private static void assertFSTContains(FST<Long> fst, List<BytesRef> terms) throws IOException {
+    for (int i = 0; i < terms.size(); i++) {
+      assertEquals(Long.valueOf(i), Util.get(fst, terms.get(i)));
+    }
+    final BytesRefFSTEnum<Long> fstEnum = new BytesRefFSTEnum<>(fst);
+    for (int i = 0; i < terms.size(); i++) {
+      final InputOutput<Long> io = fstEnum.next();
+      assertNotNull(io);
+      assertEquals(terms.get(i), io.input);
+      assertEquals(Long.valueOf(i), io.output);
+    }
+    assertNull(fstEnum.next());
+  }
+
+  public void testBoundedSuffixRAM() throws Exception {
+    final List<BytesRef> terms = randomSortedTerms();
+    final FST<Long> minimal = buildFST(terms, Double.POSITIVE_INFINITY, null);
+    final FST<Long> bounded = buildFST(terms, 0.001 + random().nextDouble() / 100, null);
+    assertFSTContains(bounded, terms);
+    // forgetting suffixes can only make the FST larger
+    final RAMOutputStream minimalOut = new RAMOutputStream();
+    minimal.save(minimalOut);
+    final RAMOutputStream boundedOut = new RAMOutputStream();
+    bounded.save(boundedOut);
+    assertTrue(boundedOut.getFilePointer() >= minimalOut.getFilePointer());
+
+    expectThrows(IllegalArgumentException.class, () -> {
+      new Builder<>(FST.INPUT_TYPE.BYTE1, 0, 0, true, true, Integer.MAX_VALUE, PositiveIntOutputs.getSingleton(),
+                    true, 15, 0, null);
+    });
+  }
+
+  public void testSpillBytesAndLoadOffHeap() throws Exception {
+    final List<BytesRef> terms = randomSortedTerms();
+    final double suffixRAMLimitMB = random().nextBoolean() ? Double.POSITIVE_INFINITY : 0.001 + random().nextDouble() / 100;
+
+    final FST<Long> spilled;
+    try (IndexOutput bytesOut = dir.createOutput("fst.bytes", IOContext.DEFAULT)) {
+      spilled = buildFST(terms, suffixRAMLimitMB, bytesOut);
+    }
+    // the bytes are on disk only
+    expectThrows(IllegalStateException.class, () -> {
+      spilled.getBytesReader();
+    });
+    expectThrows(IllegalStateException.class, () -> {
+      spilled.save(new ByteArrayDataOutput(new byte[1 << 20]));
+    });
+    try (IndexOutput metaOut = dir.createOutput("fst.meta", IOContext.DEFAULT)) {
+      spilled.saveMetadata(metaOut);
+    }
+
+    try (IndexInput metaIn = dir.openInput("fst.meta", IOContext.DEFAULT);
+         IndexInput bytesIn = dir.openInput("fst.bytes", IOContext.DEFAULT)) {
+      final FST<Long> offHeap = new FST<>(metaIn, bytesIn, PositiveIntOutputs.getSingleton());
+      assertEquals(bytesIn.length(), bytesIn.getFilePointer());
+      assertFSTContains(offHeap, terms);
+      assertTrue(offHeap.ramBytesUsed() < bytesIn.length());
+
+      if (suffixRAMLimitMB == Double.POSITIVE_INFINITY) {
+        // spilling must not change the FST, as long as its nodes fit
+        // in the default suffix RAM budget
+        final FST<Long> onHeap = buildFST(terms, Double.POSITIVE_INFINITY, null);
+        try (IndexOutput out = dir.createOutput("onheap", IOContext.DEFAULT)) {
+          onHeap.save(out);
+        }
+        try (IndexOutput out = dir.createOutput("offheap", IOContext.DEFAULT)) {
+          offHeap.save(out);
+        }
+        try (IndexInput in1 = dir.openInput("onheap", IOContext.DEFAULT);
+             IndexInput in2 = dir.openInput("offheap", IOContext.DEFAULT)) {
+          assertEquals(in1.length(), in2.length());
+          for (long i = 0; i < in1.length(); i++) {
+            assertEquals(in1.readByte(), in2.readByte());
+          }
+        }
+      }
+    }
+  }
+
+  public void testSpillingBoundsSuffixRAM() throws Exception {
+    final PositiveIntOutputs outputs = PositiveIntOutputs.getSingleton();
+    Builder<Long> builder = new Builder<>(FST.INPUT_TYPE.BYTE1, 0, 0, true, true, Integer.MAX_VALUE, outputs,
+                                          true, 15, Double.POSITIVE_INFINITY, new RAMOutputStream());
+    assertEquals((long) (Builder.DEFAULT_SPILL_SUFFIX_RAM_LIMIT_MB * 1024 * 1024), builder.dedupHash.ramLimitBytes);
+    builder = new Builder<>(FST.INPUT_TYPE.BYTE1, 0, 0, true, true, Integer.MAX_VALUE, outputs,
+                            true, 15, 1, new RAMOutputStream());
+    assertEquals(1024 * 1024, builder.dedupHash.ramLimitBytes);
+    builder = new Builder<>(FST.INPUT_TYPE.BYTE1, 0, 0, true, true, Integer.MAX_VALUE, outputs,
+                            true, 15, Double.POSITIVE_INFINITY, null);
+    assertEquals(Long.MAX_VALUE, builder.dedupHash.ramLimitBytes);
+  }
+
+  public void testLoadSavedFSTOffHeap() throws Exception {
+    final List<BytesRef> terms = randomSortedTerms();
+    final FST<Long> fst = buildFST(terms, Double.POSITIVE_INFINITY, null);
+    try (IndexOutput out = dir.createOutput("fst", IOContext.DEFAULT)) {
+      out.writeVInt(42);
+      fst.save(out);
+      out.writeVInt(43);
+    }
+    try (IndexInput in = dir.openInput("fst", IOContext.DEFAULT)) {
+      assertEquals(42, in.readVInt());
+      final FST<Long> offHeap = new FST<>(in, in, PositiveIntOutputs.getSingleton());
+      assertEquals(43, in.readVInt());
+      assertFSTContains(offHeap, terms);
+    }
+  }
 }
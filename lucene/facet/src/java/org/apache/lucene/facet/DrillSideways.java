@@ -32,11 +32,15 @@ import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetField;
 import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
 import org.apache.lucene.facet.taxonomy.FastTaxonomyFacetCounts;
 import org.apache.lucene.facet.taxonomy.TaxonomyReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.BulkScorer;
+import org.apache.lucene.search.CollectionTerminatedException;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.CollectorManager;
 import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.FilterCollector;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LeafCollector;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.MultiCollector;
 import org.apache.lucene.search.MultiCollectorManager;
@@ -47,6 +51,7 @@ import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopFieldCollector;
 import org.apache.lucene.search.TopFieldDocs;
 import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.Weight;
 import org.apache.lucene.util.ThreadInterruptedException;
 
 /**
@@ -329,6 +334,21 @@ public class DrillSideways {
     return false;
   }
 
+  /**
+   * Override this and return true to make {@link
+   * #search(DrillDownQuery, CollectorManager)} compute the
+   * hits and the drill down and sideways counts of all
+   * dimensions in a single pass, scoring segments
+   * concurrently with the executor, instead of running one
+   * search per drill-down dimension plus one.  This saves
+   * the duplicated base query work when there are many
+   * drill-down dimensions, but only parallelizes across
+   * segments.  Default is false.
+   */
+  protected boolean scoreSegmentsConcurrently() {
+    return false;
+  }
+
   /**
    * Result of a drill sideways search, including the
    * {@link Facets} and {@link TopDocs}.
@@ -399,6 +419,10 @@ public class DrillSideways {
           final CollectorManager<?, R> hitCollectorManager) throws IOException {
 
     final Map<String, Integer> drillDownDims = query.getDims();
+    if (scoreSegmentsConcurrently() && drillDownDims.isEmpty() == false) {
+      return searchSegmentsConcurrently(query, hitCollectorManager);
+    }
+
     final List<CallableCollector> callableCollectors = new ArrayList<>(drillDownDims.size() + 1);
 
     // Add the main DrillDownQuery
@@ -442,6 +466,72 @@ public class DrillSideways {
             drillDownDims.keySet().toArray(new String[drillDownDims.size()])), null, collectorResult);
   }
 
+  /** Scores the {@link DrillSidewaysQuery} one segment per
+   *  task, each segment collecting hits, drill down and
+   *  sideways counts into its own collectors. */
+  private <R> ConcurrentDrillSidewaysResult<R> searchSegmentsConcurrently(final DrillDownQuery query,
+          final CollectorManager<?, R> hitCollectorManager) throws IOException {
+
+    final Map<String, Integer> drillDownDims = query.getDims();
+
+    Query baseQuery = query.getBaseQuery();
+    if (baseQuery == null) {
+      baseQuery = new MatchAllDocsQuery();
+    }
+
+    final FacetsCollectorManager[] drillSidewaysCollectorManagers = new FacetsCollectorManager[drillDownDims.size()];
+    for (int i = 0; i < drillSidewaysCollectorManagers.length; i++) {
+      drillSidewaysCollectorManagers[i] = new FacetsCollectorManager();
+    }
+
+    final DrillSidewaysQuery dsq =
+            new DrillSidewaysQuery(baseQuery, new FacetsCollectorManager(), drillSidewaysCollectorManagers,
+                    query.getDrillDownQueries(), scoreSubDocsAtOnce());
+    // scores are always requested, so that the DrillSidewaysQuery does not get cached:
+    final Weight weight = searcher.createNormalizedWeight(dsq, true);
+    final R collectorResult = searchSegmentsConcurrently(weight, hitCollectorManager);
+
+    return new ConcurrentDrillSidewaysResult<>(buildFacetsResult(dsq.reduceDrillDown(), dsq.reduceDrillSideways(),
+            drillDownDims.keySet().toArray(new String[drillDownDims.size()])), null, collectorResult);
+  }
+
+  private <C extends Collector, R> R searchSegmentsConcurrently(final Weight weight,
+          final CollectorManager<C, R> hitCollectorManager) throws IOException {
+    final List<Callable<C>> tasks = new ArrayList<>();
+    for (LeafReaderContext context : searcher.getTopReaderContext().leaves()) {
+      tasks.add(() -> {
+        final C collector = hitCollectorManager.newCollector();
+        final LeafCollector leafCollector;
+        try {
+          leafCollector = collector.getLeafCollector(context);
+        } catch (CollectionTerminatedException e) {
+          return collector;
+        }
+        BulkScorer scorer = weight.bulkScorer(context);
+        if (scorer != null) {
+          try {
+            scorer.score(leafCollector, context.reader().getLiveDocs());
+          } catch (CollectionTerminatedException e) {
+            // collection was terminated prematurely
+          }
+        }
+        return collector;
+      });
+    }
+
+    final List<C> collectors = new ArrayList<>(tasks.size());
+    try {
+      for (Future<C> future : executor.invokeAll(tasks)) {
+        collectors.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      throw new ThreadInterruptedException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e);
+    }
+    return hitCollectorManager.reduce(collectors);
+  }
+
   /**
    * Result of a concurrent drill sideways search, including the
    * {@link Facets} and {@link TopDocs}.
@@ -17,8 +17,11 @@
 package org.apache.lucene.facet;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 
@@ -48,12 +51,74 @@ class DrillSidewaysQuery extends Query {
   final Query[] drillDownQueries;
   final boolean scoreSubDocsAtOnce;
 
+  // If set, each segment collects into its own drill-down and
+  // drill-sideways collectors so that segments can be scored
+  // concurrently:
+  final FacetsCollectorManager drillDownCollectorManager;
+  final FacetsCollectorManager[] drillSidewaysCollectorManagers;
+  final List<FacetsCollector> managedDrillDownCollectors;
+  final List<List<FacetsCollector>> managedDrillSidewaysCollectors;
+
   DrillSidewaysQuery(Query baseQuery, Collector drillDownCollector, Collector[] drillSidewaysCollectors, Query[] drillDownQueries, boolean scoreSubDocsAtOnce) {
     this.baseQuery = Objects.requireNonNull(baseQuery);
     this.drillDownCollector = drillDownCollector;
     this.drillSidewaysCollectors = drillSidewaysCollectors;
     this.drillDownQueries = drillDownQueries;
     this.scoreSubDocsAtOnce = scoreSubDocsAtOnce;
+    this.drillDownCollectorManager = null;
+    this.drillSidewaysCollectorManagers = null;
+    this.managedDrillDownCollectors = null;
+    this.managedDrillSidewaysCollectors = null;
+  }
+
+  /** Creates a query whose segments may be scored
+   *  concurrently: each segment gets its own collectors
+   *  from the provided managers, which are then merged by
+   *  {@link #reduceDrillDown} and {@link #reduceDrillSideways}. */
+  DrillSidewaysQuery(Query baseQuery, FacetsCollectorManager drillDownCollectorManager,
+                     FacetsCollectorManager[] drillSidewaysCollectorManagers, Query[] drillDownQueries,
+                     boolean scoreSubDocsAtOnce) {
+    this(baseQuery, drillDownCollectorManager, drillSidewaysCollectorManagers,
+         Collections.synchronizedList(new ArrayList<>()), newManagedDrillSidewaysCollectors(drillSidewaysCollectorManagers.length),
+         drillDownQueries, scoreSubDocsAtOnce);
+  }
+
+  private DrillSidewaysQuery(Query baseQuery, FacetsCollectorManager drillDownCollectorManager,
+                             FacetsCollectorManager[] drillSidewaysCollectorManagers,
+                             List<FacetsCollector> managedDrillDownCollectors,
+                             List<List<FacetsCollector>> managedDrillSidewaysCollectors,
+                             Query[] drillDownQueries, boolean scoreSubDocsAtOnce) {
+    this.baseQuery = Objects.requireNonNull(baseQuery);
+    this.drillDownCollector = null;
+    this.drillSidewaysCollectors = null;
+    this.drillDownQueries = drillDownQueries;
+    this.scoreSubDocsAtOnce = scoreSubDocsAtOnce;
+    this.drillDownCollectorManager = drillDownCollectorManager;
+    this.drillSidewaysCollectorManagers = drillSidewaysCollectorManagers;
+    this.managedDrillDownCollectors = managedDrillDownCollectors;
+    this.managedDrillSidewaysCollectors = managedDrillSidewaysCollectors;
+  }
+
+  private static List<List<FacetsCollector>> newManagedDrillSidewaysCollectors(int numDims) {
+    List<List<FacetsCollector>> collectors = new ArrayList<>(numDims);
+    for (int dim = 0; dim < numDims; dim++) {
+      collectors.add(Collections.synchronizedList(new ArrayList<>()));
+    }
+    return collectors;
+  }
+
+  /** Merges the drill-down collectors of all scored segments. */
+  FacetsCollector reduceDrillDown() throws IOException {
+    return drillDownCollectorManager.reduce(managedDrillDownCollectors);
+  }
+
+  /** Merges the drill-sideways collectors of all scored segments, per dimension. */
+  FacetsCollector[] reduceDrillSideways() throws IOException {
+    FacetsCollector[] collectors = new FacetsCollector[drillSidewaysCollectorManagers.length];
+    for (int dim = 0; dim < collectors.length; dim++) {
+      collectors[dim] = drillSidewaysCollectorManagers[dim].reduce(managedDrillSidewaysCollectors.get(dim));
+    }
+    return collectors;
   }
 
   @Override
@@ -73,6 +138,10 @@ class DrillSidewaysQuery extends Query {
     }
     if (newQuery == baseQuery) {
       return super.rewrite(reader);
+    } else if (drillDownCollectorManager != null) {
+      return new DrillSidewaysQuery(newQuery, drillDownCollectorManager, drillSidewaysCollectorManagers,
+                                    managedDrillDownCollectors, managedDrillSidewaysCollectors,
+                                    drillDownQueries, scoreSubDocsAtOnce);
     } else {
       return new DrillSidewaysQuery(newQuery, drillDownCollector, drillSidewaysCollectors, drillDownQueries, scoreSubDocsAtOnce);
     }
@@ -105,6 +174,23 @@ class DrillSidewaysQuery extends Query {
       public BulkScorer bulkScorer(LeafReaderContext context) throws IOException {
         Scorer baseScorer = baseWeight.scorer(context);
 
+        final Collector drillDownCollector;
+        final Collector[] drillSidewaysCollectors;
+        if (drillDownCollectorManager != null) {
+          FacetsCollector collector = drillDownCollectorManager.newCollector();
+          managedDrillDownCollectors.add(collector);
+          drillDownCollector = collector;
+          drillSidewaysCollectors = new Collector[drillSidewaysCollectorManagers.length];
+          for (int dim = 0; dim < drillSidewaysCollectors.length; dim++) {
+            collector = drillSidewaysCollectorManagers[dim].newCollector();
+            managedDrillSidewaysCollectors.get(dim).add(collector);
+            drillSidewaysCollectors[dim] = collector;
+          }
+        } else {
+          drillDownCollector = DrillSidewaysQuery.this.drillDownCollector;
+          drillSidewaysCollectors = DrillSidewaysQuery.this.drillSidewaysCollectors;
+        }
+
         DrillSidewaysScorer.DocsAndCost[] dims = new DrillSidewaysScorer.DocsAndCost[drillDowns.length];
         int nullCount = 0;
         for(int dim=0;dim<dims.length;dim++) {
@@ -156,6 +242,8 @@ class DrillSidewaysQuery extends Query {
     result = prime * result + Objects.hashCode(drillDownCollector);
     result = prime * result + Arrays.hashCode(drillDownQueries);
     result = prime * result + Arrays.hashCode(drillSidewaysCollectors);
+    result = prime * result + Objects.hashCode(drillDownCollectorManager);
+    result = prime * result + Arrays.hashCode(drillSidewaysCollectorManagers);
     return result;
   }
 
@@ -169,6 +257,8 @@ class DrillSidewaysQuery extends Query {
     return Objects.equals(baseQuery, other.baseQuery) &&
            Objects.equals(drillDownCollector, other.drillDownCollector) &&
            Arrays.equals(drillDownQueries, other.drillDownQueries) &&
-           Arrays.equals(drillSidewaysCollectors, other.drillSidewaysCollectors);
+           Arrays.equals(drillSidewaysCollectors, other.drillSidewaysCollectors) &&
+           Objects.equals(drillDownCollectorManager, other.drillDownCollectorManager) &&
+           Arrays.equals(drillSidewaysCollectorManagers, other.drillSidewaysCollectorManagers);
   }
 }
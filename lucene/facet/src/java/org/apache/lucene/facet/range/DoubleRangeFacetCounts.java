@@ -19,7 +19,9 @@ package org.apache.lucene.facet.range;
 import java.io.IOException;
 import java.util.List;
 
+import org.apache.lucene.document.DoublePoint;
 import org.apache.lucene.document.FloatDocValuesField;
+import org.apache.lucene.document.SortedNumericDocValuesField;
 import org.apache.lucene.facet.Facets;
 import org.apache.lucene.facet.FacetsCollector;
 import org.apache.lucene.facet.FacetsCollector.MatchingDocs;
@@ -52,11 +54,28 @@ public class DoubleRangeFacetCounts extends RangeFacetCounts {
   /**
    * Create {@code RangeFacetCounts}, using {@link DoubleValues} from the specified field.
    *
-   * N.B This assumes that the field was indexed with {@link org.apache.lucene.document.DoubleDocValuesField}.
+   * N.B This assumes that the field was indexed with {@link org.apache.lucene.document.DoubleDocValuesField},
+   * or, if documents have several values, with {@link SortedNumericDocValuesField} holding
+   * {@link NumericUtils#doubleToSortableLong sortable longs}, in which case each document
+   * is counted at most once per range.
    * For float-valued fields, use {@link #DoubleRangeFacetCounts(String, DoubleValuesSource, FacetsCollector, DoubleRange...)}
    */
   public DoubleRangeFacetCounts(String field, FacetsCollector hits, DoubleRange... ranges) throws IOException {
-    this(field, DoubleValuesSource.fromDoubleField(field), hits, ranges);
+    super(field, ranges, null);
+    count(null, hits.getMatchingDocs());
+  }
+
+  /**
+   * Create {@code RangeFacetCounts}, using {@link DoubleValues} from the specified field like
+   * {@link #DoubleRangeFacetCounts(String, FacetsCollector, DoubleRange...)}, but counting segments
+   * where all documents are hits from the BKD tree of {@code pointsField} instead of doc values.
+   * {@code pointsField} must be indexed as a {@link DoublePoint} with the same single value as
+   * {@code field} for every document; segments where it has several values per document are
+   * counted from doc values.
+   */
+  public DoubleRangeFacetCounts(String field, String pointsField, FacetsCollector hits, DoubleRange... ranges) throws IOException {
+    super(field, pointsField, ranges, null);
+    count(null, hits.getMatchingDocs());
   }
 
   /**
@@ -93,9 +112,18 @@ public class DoubleRangeFacetCounts extends RangeFacetCounts {
 
     int missingCount = 0;
     for (MatchingDocs hits : matchingDocs) {
-      DoubleValues fv = valueSource.getValues(hits.context, null);
-      
       totCount += hits.totalHits;
+
+      if (valueSource == null) {
+        int fieldMissingCount = countFromField(counter, hits);
+        if (fieldMissingCount != -1) {
+          missingCount += fieldMissingCount;
+          continue;
+        }
+      }
+
+      DoubleValues fv = (valueSource == null ? DoubleValuesSource.fromDoubleField(field) : valueSource).getValues(hits.context, null);
+
       final DocIdSetIterator fastMatchDocs;
       if (fastMatchQuery != null) {
         final IndexReaderContext topLevelContext = ReaderUtil.getTopLevelContext(hits.context);
@@ -16,12 +16,18 @@
  */
 package org.apache.lucene.facet.range;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.lucene.index.PointValues;
+import org.apache.lucene.index.PointValues.IntersectVisitor;
+import org.apache.lucene.index.PointValues.Relation;
+import org.apache.lucene.util.NumericUtils;
+
 /** Counts how many times each range was seen;
  *  per-hit it's just a binary search ({@link #add})
  *  against the elementary intervals, and in the end we
@@ -33,6 +39,16 @@ final class LongRangeCounter {
   final long[] boundaries;
   final int[] leafCounts;
 
+  // For each elementary interval, the ranges that include
+  // it; used to count multi-valued documents at most once
+  // per range:
+  private final int[][] leafRanges;
+  private final int[] multiValuedCounts;
+  private final int[] multiValuedDocUpto;
+  private int docUpto;
+  private int lastLeaf;
+  private boolean docMatched;
+
   // Used during rollup
   private int leafUpto;
   private int missingCount;
@@ -125,6 +141,11 @@ final class LongRangeCounter {
 
     leafCounts = new int[boundaries.length];
 
+    leafRanges = new int[boundaries.length][];
+    collectLeafRanges(root, new ArrayList<>());
+    multiValuedCounts = new int[ranges.length];
+    multiValuedDocUpto = new int[ranges.length];
+
     //System.out.println("ranges: " + Arrays.toString(ranges));
     //System.out.println("intervals: " + elementaryIntervals);
     //System.out.println("boundaries: " + Arrays.toString(boundaries));
@@ -132,8 +153,11 @@ final class LongRangeCounter {
   }
 
   public void add(long v) {
-    //System.out.println("add v=" + v);
+    leafCounts[findLeaf(v)]++;
+  }
 
+  /** Returns the index of the elementary interval containing {@code v}. */
+  int findLeaf(long v) {
     // NOTE: this works too, but it's ~6% slower on a simple
     // test with a high-freq TermQuery w/ range faceting on
     // wikimediumall:
@@ -142,7 +166,7 @@ final class LongRangeCounter {
     if (index < 0) {
       index = -index-1;
     }
-    leafCounts[index]++;
+    return index;
     */
 
     // Binary search to find matched elementary range; we
@@ -156,21 +180,84 @@ final class LongRangeCounter {
       //System.out.println("  cycle lo=" + lo + " hi=" + hi + " mid=" + mid + " boundary=" + boundaries[mid] + " to " + boundaries[mid+1]);
       if (v <= boundaries[mid]) {
         if (mid == 0) {
-          leafCounts[0]++;
-          return;
+          return 0;
         } else {
           hi = mid - 1;
         }
       } else if (v > boundaries[mid+1]) {
         lo = mid + 1;
       } else {
-        leafCounts[mid+1]++;
-        //System.out.println("  incr @ " + (mid+1) + "; now " + leafCounts[mid+1]);
-        return;
+        return mid+1;
       }
     }
   }
 
+  /** Starts a new multi-valued document: the values passed
+   *  to {@link #addMultiValued} until the next call to
+   *  {@link #endMultiValuedDoc} count at most once per
+   *  range. */
+  public void startMultiValuedDoc() {
+    docUpto++;
+    lastLeaf = -1;
+    docMatched = false;
+  }
+
+  /** Adds one value of the current multi-valued document. */
+  public void addMultiValued(long v) {
+    int leaf = findLeaf(v);
+    if (leaf == lastLeaf) {
+      // values are typically sorted, so duplicates and
+      // close values often hit the same interval:
+      return;
+    }
+    lastLeaf = leaf;
+    for (int range : leafRanges[leaf]) {
+      if (multiValuedDocUpto[range] != docUpto) {
+        multiValuedDocUpto[range] = docUpto;
+        multiValuedCounts[range]++;
+        docMatched = true;
+      }
+    }
+  }
+
+  /** Ends the current multi-valued document, returning
+   *  true if any of its values matched a range. */
+  public boolean endMultiValuedDoc() {
+    return docMatched;
+  }
+
+  /** Adds all values of a one-dimensional, single-valued
+   *  points field whose values are encoded with {@link
+   *  NumericUtils#longToSortableBytes}.  BKD cells that fall
+   *  entirely into one elementary interval are counted from
+   *  their doc IDs alone, without decoding values. */
+  public void addPoints(PointValues points) throws IOException {
+    points.intersect(new IntersectVisitor() {
+        int cellLeaf = -1;
+
+        @Override
+        public void visit(int docID) {
+          leafCounts[cellLeaf]++;
+        }
+
+        @Override
+        public void visit(int docID, byte[] packedValue) {
+          add(NumericUtils.sortableBytesToLong(packedValue, 0));
+        }
+
+        @Override
+        public Relation compare(byte[] minPackedValue, byte[] maxPackedValue) {
+          int minLeaf = findLeaf(NumericUtils.sortableBytesToLong(minPackedValue, 0));
+          int maxLeaf = findLeaf(NumericUtils.sortableBytesToLong(maxPackedValue, 0));
+          if (minLeaf == maxLeaf) {
+            cellLeaf = minLeaf;
+            return Relation.CELL_INSIDE_QUERY;
+          }
+          return Relation.CELL_CROSSES_QUERY;
+        }
+      });
+  }
+
   /** Fills counts corresponding to the original input
    *  ranges, returning the missing count (how many hits
    *  didn't match any ranges). */
@@ -179,9 +266,30 @@ final class LongRangeCounter {
     missingCount = 0;
     leafUpto = 0;
     rollup(root, counts, false);
+    for(int i=0;i<counts.length;i++) {
+      counts[i] += multiValuedCounts[i];
+    }
     return missingCount;
   }
 
+  private void collectLeafRanges(LongRangeNode node, List<Integer> ranges) {
+    int size = ranges.size();
+    if (node.outputs != null) {
+      ranges.addAll(node.outputs);
+    }
+    if (node.left != null) {
+      collectLeafRanges(node.left, ranges);
+      collectLeafRanges(node.right, ranges);
+    } else {
+      int[] leaf = new int[ranges.size()];
+      for(int i=0;i<leaf.length;i++) {
+        leaf[i] = ranges.get(i);
+      }
+      leafRanges[node.leafIndex] = leaf;
+    }
+    ranges.subList(size, ranges.size()).clear();
+  }
+
   private int rollup(LongRangeNode node, int[] counts, boolean sawOutputs) {
     int count;
     sawOutputs |= node.outputs != null;
@@ -19,6 +19,9 @@ package org.apache.lucene.facet.range;
 import java.io.IOException;
 import java.util.List;
 
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedNumericDocValuesField;
 import org.apache.lucene.facet.Facets;
 import org.apache.lucene.facet.FacetsCollector;
 import org.apache.lucene.facet.FacetsCollector.MatchingDocs;
@@ -30,6 +33,7 @@ import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.LongValues;
 import org.apache.lucene.search.LongValuesSource;
+import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Weight;
@@ -45,10 +49,31 @@ import org.apache.lucene.search.Weight;
  *  @lucene.experimental */
 public class LongRangeFacetCounts extends RangeFacetCounts {
 
-  /** Create {@code LongRangeFacetCounts}, using {@link
-   *  LongValuesSource} from the specified field. */
+  /** Create {@code LongRangeFacetCounts}, using the values
+   *  of the specified field.  The field may be indexed as
+   *  {@link NumericDocValuesField} or, if documents have
+   *  several values, as {@link SortedNumericDocValuesField},
+   *  in which case each document is counted at most once per
+   *  range. */
   public LongRangeFacetCounts(String field, FacetsCollector hits, LongRange... ranges) throws IOException {
-    this(field, LongValuesSource.fromLongField(field), hits, ranges);
+    super(field, ranges, null);
+    count(null, hits.getMatchingDocs());
+  }
+
+  /** Create {@code LongRangeFacetCounts}, using the values
+   *  of the specified field like {@link
+   *  #LongRangeFacetCounts(String, FacetsCollector,
+   *  LongRange...)}, but counting segments where all
+   *  documents are hits (e.g. {@link MatchAllDocsQuery}
+   *  without deletions) from the BKD tree of {@code
+   *  pointsField} instead of doc values.  {@code pointsField}
+   *  must be indexed as a {@link LongPoint} with the same
+   *  single value as {@code field} for every document;
+   *  segments where it has several values per document are
+   *  counted from doc values. */
+  public LongRangeFacetCounts(String field, String pointsField, FacetsCollector hits, LongRange... ranges) throws IOException {
+    super(field, pointsField, ranges, null);
+    count(null, hits.getMatchingDocs());
   }
 
   /** Create {@code RangeFacetCounts}, using the provided
@@ -75,9 +100,18 @@ public class LongRangeFacetCounts extends RangeFacetCounts {
 
     int missingCount = 0;
     for (MatchingDocs hits : matchingDocs) {
-      LongValues fv = valueSource.getValues(hits.context, null);
-      
       totCount += hits.totalHits;
+
+      if (valueSource == null) {
+        int fieldMissingCount = countFromField(counter, hits);
+        if (fieldMissingCount != -1) {
+          missingCount += fieldMissingCount;
+          continue;
+        }
+      }
+
+      LongValues fv = (valueSource == null ? LongValuesSource.fromLongField(field) : valueSource).getValues(hits.context, null);
+
       final DocIdSetIterator fastMatchDocs;
       if (fastMatchQuery != null) {
         final IndexReaderContext topLevelContext = ReaderUtil.getTopLevelContext(hits.context);
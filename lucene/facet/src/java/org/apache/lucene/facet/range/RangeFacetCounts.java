@@ -17,13 +17,28 @@
 package org.apache.lucene.facet.range;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
 import org.apache.lucene.facet.FacetResult;
 import org.apache.lucene.facet.Facets;
+import org.apache.lucene.facet.FacetsCollector.MatchingDocs;
 import org.apache.lucene.facet.LabelAndValue;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReaderContext;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.PointValues;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.search.ConjunctionDISI;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
 
 /** Base class for range faceting.
  *
@@ -44,17 +59,98 @@ abstract class RangeFacetCounts extends Facets {
   /** Our field name. */
   protected final String field;
 
+  /** Optional: if specified, the name of a one-dimensional
+   *  points field that holds the same single value as {@link
+   *  #field} for every document, which is used to count
+   *  segments where every document is a hit.  If this is
+   *  null, points are never used. */
+  final String pointsField;
+
   /** Total number of hits. */
   protected int totCount;
 
   /** Create {@code RangeFacetCounts} */
   protected RangeFacetCounts(String field, Range[] ranges, Query fastMatchQuery) throws IOException {
+    this(field, null, ranges, fastMatchQuery);
+  }
+
+  RangeFacetCounts(String field, String pointsField, Range[] ranges, Query fastMatchQuery) throws IOException {
     this.field = field;
+    this.pointsField = pointsField;
     this.ranges = ranges;
     this.fastMatchQuery = fastMatchQuery;
     counts = new int[ranges.length];
   }
 
+  /** Counts the hits of one segment directly from {@link
+   *  #field}, without going through a values source, if
+   *  possible: from the points of {@link #pointsField} if
+   *  set, when every document of the segment is a hit and
+   *  the points are one-dimensional, 8 bytes per dimension
+   *  and single-valued, or from the {@link
+   *  SortedNumericDocValues} if it is multi-valued, in which
+   *  case each document counts at most once per range.
+   *  Returns the number of hits without a value, or -1 if
+   *  the segment must be counted from per-document values. */
+  int countFromField(LongRangeCounter counter, MatchingDocs hits) throws IOException {
+    LeafReader reader = hits.context.reader();
+
+    if (pointsField != null && fastMatchQuery == null && hits.totalHits == reader.maxDoc() && reader.hasDeletions() == false) {
+      PointValues points = reader.getPointValues(pointsField);
+      if (points != null && points.getNumDimensions() == 1 && points.getBytesPerDimension() == Long.BYTES
+          && points.size() == points.getDocCount()) {
+        counter.addPoints(points);
+        return hits.totalHits - points.getDocCount();
+      }
+    }
+
+    FieldInfo fieldInfo = reader.getFieldInfos().fieldInfo(field);
+    if (fieldInfo == null || fieldInfo.getDocValuesType() != DocValuesType.SORTED_NUMERIC) {
+      return -1;
+    }
+
+    SortedNumericDocValues values = DocValues.getSortedNumeric(reader, field);
+    DocIdSetIterator docs = hits.bits.iterator();
+    DocIdSetIterator fastMatchDocs = fastMatchIterator(hits);
+    if (fastMatchDocs != null) {
+      docs = ConjunctionDISI.intersectIterators(Arrays.asList(docs, fastMatchDocs));
+    } else if (fastMatchQuery != null) {
+      return 0;
+    }
+
+    int missingCount = 0;
+    for (int doc = docs.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = docs.nextDoc()) {
+      if (values.advanceExact(doc)) {
+        counter.startMultiValuedDoc();
+        for (int i = 0; i < values.docValueCount(); i++) {
+          counter.addMultiValued(values.nextValue());
+        }
+        if (counter.endMultiValuedDoc() == false) {
+          missingCount++;
+        }
+      } else {
+        missingCount++;
+      }
+    }
+    return missingCount;
+  }
+
+  /** Returns the documents of the given segment matching
+   *  {@link #fastMatchQuery}, or null if there is no
+   *  fast-match query or no document of the segment
+   *  matches it. */
+  DocIdSetIterator fastMatchIterator(MatchingDocs hits) throws IOException {
+    if (fastMatchQuery == null) {
+      return null;
+    }
+    final IndexReaderContext topLevelContext = ReaderUtil.getTopLevelContext(hits.context);
+    final IndexSearcher searcher = new IndexSearcher(topLevelContext);
+    searcher.setQueryCache(null);
+    final Weight fastMatchWeight = searcher.createNormalizedWeight(fastMatchQuery, false);
+    Scorer s = fastMatchWeight.scorer(hits.context);
+    return s == null ? null : s.iterator();
+  }
+
   @Override
   public FacetResult getTopChildren(int topN, String dim, String... path) {
     if (dim.equals(field) == false) {
@@ -19,6 +19,7 @@ package org.apache.lucene.facet.sortedset;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.lucene.facet.FacetsConfig;
@@ -60,9 +61,45 @@ public class DefaultSortedSetDocValuesReaderState extends SortedSetDocValuesRead
   /** Creates this, pulling doc values from the specified
    *  field. */
   public DefaultSortedSetDocValuesReaderState(IndexReader reader, String field) throws IOException {
+    this(reader, field, null);
+  }
+
+  /** Creates this, pulling doc values from the specified
+   *  field, and reusing the global ordinals of the state of
+   *  a previous reader if both readers have exactly the same
+   *  segment cores in the same order, ie. when only deletions
+   *  or doc values updates changed since the previous reader
+   *  was opened.  This avoids building a new {@link
+   *  OrdinalMap}, which is costly on large indices.
+   *  <p>
+   *  Reuse is all or nothing: as soon as a segment was added,
+   *  merged away or dropped because all its documents were
+   *  deleted, the {@link OrdinalMap} is rebuilt from the terms
+   *  of all segments, like with {@link
+   *  #DefaultSortedSetDocValuesReaderState(IndexReader, String)}.
+   *  Global ordinals are sorted, so the terms of any new segment
+   *  may shift the global ordinals of every other segment, and
+   *  the mappings of unchanged segments can't be kept.
+   *  <p>
+   *  The previous state may be null. */
+  public DefaultSortedSetDocValuesReaderState(IndexReader reader, String field, DefaultSortedSetDocValuesReaderState previous) throws IOException {
     this.field = field;
     this.origReader = reader;
 
+    if (previous != null && field.equals(previous.field) && sameSegments(previous.origReader, reader)) {
+      // doc values are per segment core, so the global ords
+      // did not change:
+      synchronized (previous.cachedOrdMaps) {
+        OrdinalMap map = previous.cachedOrdMaps.get(field);
+        if (map != null) {
+          cachedOrdMaps.put(field, map);
+        }
+      }
+      valueCount = previous.valueCount;
+      prefixToOrdRange.putAll(previous.prefixToOrdRange);
+      return;
+    }
+
     // We need this to create thread-safe MultiSortedSetDV
     // per collector:
     SortedSetDocValues dv = getDocValues();
@@ -104,6 +141,23 @@ public class DefaultSortedSetDocValuesReaderState extends SortedSetDocValuesRead
     }
   }
 
+  /** Returns true if both readers have the same segment cores, in the same order. */
+  private static boolean sameSegments(IndexReader r1, IndexReader r2) {
+    final List<LeafReaderContext> leaves1 = r1.leaves();
+    final List<LeafReaderContext> leaves2 = r2.leaves();
+    if (leaves1.size() != leaves2.size()) {
+      return false;
+    }
+    for (int i = 0; i < leaves1.size(); i++) {
+      final IndexReader.CacheHelper cacheHelper1 = leaves1.get(i).reader().getCoreCacheHelper();
+      final IndexReader.CacheHelper cacheHelper2 = leaves2.get(i).reader().getCoreCacheHelper();
+      if (cacheHelper1 == null || cacheHelper2 == null || cacheHelper1.getKey() != cacheHelper2.getKey()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /** Return top-level doc values. */
   @Override
   public SortedSetDocValues getDocValues() throws IOException {
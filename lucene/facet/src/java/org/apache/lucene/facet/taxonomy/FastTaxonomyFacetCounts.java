@@ -19,6 +19,7 @@ package org.apache.lucene.facet.taxonomy;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.lucene.facet.FacetsCollector.MatchingDocs;
 import org.apache.lucene.facet.FacetsCollector;
@@ -64,34 +65,40 @@ public class FastTaxonomyFacetCounts extends IntTaxonomyFacets {
     countAll(reader);
   }
 
+  /** Create {@code FastTaxonomyFacetCounts}, using the
+   *  specified {@code indexFieldName} for ordinals, counting
+   *  the segments of the provided hits concurrently with at
+   *  most {@code maxTasks} tasks on the provided {@link
+   *  ExecutorService}, typically its number of threads.  Each
+   *  task counts into its own array, and the arrays are summed
+   *  once all tasks are done. */
+  public FastTaxonomyFacetCounts(String indexFieldName, TaxonomyReader taxoReader, FacetsConfig config, FacetsCollector fc,
+                                 ExecutorService exec, int maxTasks) throws IOException, InterruptedException {
+    super(indexFieldName, taxoReader, config);
+    checkMaxTasks(maxTasks);
+    final List<MatchingDocs> matchingDocs = fc.getMatchingDocs();
+    countConcurrently(matchingDocs.size(), exec, maxTasks, i -> {
+        MatchingDocs hits = matchingDocs.get(i);
+        return new SegmentHits(hits.context, hits.bits.iterator());
+      });
+  }
+
+  /** Create {@code FastTaxonomyFacetCounts}, using the
+   *  specified {@code indexFieldName} for ordinals, and
+   *  counting all non-deleted documents in the index, one
+   *  segment at a time with at most {@code maxTasks} tasks on
+   *  the provided {@link ExecutorService}. */
+  public FastTaxonomyFacetCounts(String indexFieldName, IndexReader reader, TaxonomyReader taxoReader, FacetsConfig config,
+                                 ExecutorService exec, int maxTasks) throws IOException, InterruptedException {
+    super(indexFieldName, taxoReader, config);
+    checkMaxTasks(maxTasks);
+    final List<LeafReaderContext> leaves = reader.leaves();
+    countConcurrently(leaves.size(), exec, maxTasks, i -> new SegmentHits(leaves.get(i), null));
+  }
+
   private final void count(List<MatchingDocs> matchingDocs) throws IOException {
     for(MatchingDocs hits : matchingDocs) {
-      BinaryDocValues dv = hits.context.reader().getBinaryDocValues(indexFieldName);
-      if (dv == null) { // this reader does not have DocValues for the requested category list
-        continue;
-      }
-
-      DocIdSetIterator it = ConjunctionDISI.intersectIterators(Arrays.asList(
-          hits.bits.iterator(), dv));
-      
-      for (int doc = it.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
-        final BytesRef bytesRef = dv.binaryValue();
-        byte[] bytes = bytesRef.bytes;
-        int end = bytesRef.offset + bytesRef.length;
-        int ord = 0;
-        int offset = bytesRef.offset;
-        int prev = 0;
-        while (offset < end) {
-          byte b = bytes[offset++];
-          if (b >= 0) {
-            prev = ord = ((ord << 7) | b) + prev;
-            ++values[ord];
-            ord = 0;
-          } else {
-            ord = (ord << 7) | (b & 0x7F);
-          }
-        }
-      }
+      count(values, hits.context, hits.bits.iterator());
     }
 
     rollup();
@@ -99,32 +106,100 @@ public class FastTaxonomyFacetCounts extends IntTaxonomyFacets {
 
   private final void countAll(IndexReader reader) throws IOException {
     for(LeafReaderContext context : reader.leaves()) {
-      BinaryDocValues dv = context.reader().getBinaryDocValues(indexFieldName);
-      if (dv == null) { // this reader does not have DocValues for the requested category list
+      count(values, context, null);
+    }
+
+    rollup();
+  }
+
+  /** Counts one segment into {@code counts}: all live
+   *  documents if {@code hits} is null. */
+  private void count(int[] counts, LeafReaderContext context, DocIdSetIterator hits) throws IOException {
+    BinaryDocValues dv = context.reader().getBinaryDocValues(indexFieldName);
+    if (dv == null) { // this reader does not have DocValues for the requested category list
+      return;
+    }
+
+    final DocIdSetIterator it;
+    final Bits liveDocs;
+    if (hits == null) {
+      it = dv;
+      liveDocs = context.reader().getLiveDocs();
+    } else {
+      it = ConjunctionDISI.intersectIterators(Arrays.asList(hits, dv));
+      liveDocs = null;
+    }
+
+    for (int doc = it.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+      if (liveDocs != null && liveDocs.get(doc) == false) {
         continue;
       }
+      final BytesRef bytesRef = dv.binaryValue();
+      byte[] bytes = bytesRef.bytes;
+      int end = bytesRef.offset + bytesRef.length;
+      int ord = 0;
+      int offset = bytesRef.offset;
+      int prev = 0;
+      while (offset < end) {
+        byte b = bytes[offset++];
+        if (b >= 0) {
+          prev = ord = ((ord << 7) | b) + prev;
+          ++counts[ord];
+          ord = 0;
+        } else {
+          ord = (ord << 7) | (b & 0x7F);
+        }
+      }
+    }
+  }
 
-      Bits liveDocs = context.reader().getLiveDocs();
+  /** The hits of one segment to count, or all its live
+   *  documents if {@code hits} is null. */
+  private static final class SegmentHits {
+    final LeafReaderContext context;
+    final DocIdSetIterator hits;
 
-      for (int doc = dv.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = dv.nextDoc()) {
-        if (liveDocs != null && liveDocs.get(doc) == false) {
-          continue;
-        }
-        final BytesRef bytesRef = dv.binaryValue();
-        byte[] bytes = bytesRef.bytes;
-        int end = bytesRef.offset + bytesRef.length;
-        int ord = 0;
-        int offset = bytesRef.offset;
-        int prev = 0;
-        while (offset < end) {
-          byte b = bytes[offset++];
-          if (b >= 0) {
-            prev = ord = ((ord << 7) | b) + prev;
-            ++values[ord];
-            ord = 0;
-          } else {
-            ord = (ord << 7) | (b & 0x7F);
-          }
+    SegmentHits(LeafReaderContext context, DocIdSetIterator hits) {
+      this.context = context;
+      this.hits = hits;
+    }
+  }
+
+  @FunctionalInterface
+  private interface SegmentSource {
+    SegmentHits get(int segment) throws IOException;
+  }
+
+  /** Counts the segments handed out to one task into its own array. */
+  private final class SegmentCounter implements SegmentAggregator {
+    final int[] counts = new int[values.length];
+    final SegmentSource segments;
+
+    SegmentCounter(SegmentSource segments) {
+      this.segments = segments;
+    }
+
+    @Override
+    public void aggregate(int segment) throws IOException {
+      SegmentHits hits = segments.get(segment);
+      count(counts, hits.context, hits.hits);
+    }
+  }
+
+  /** Counts {@code numSegments} segments with up to {@code
+   *  maxTasks} tasks, each counting into its own array, and
+   *  sums those arrays into {@link #values}. */
+  private void countConcurrently(int numSegments, ExecutorService exec, int maxTasks, SegmentSource segments) throws IOException, InterruptedException {
+    if (Math.min(numSegments, maxTasks) <= 1) {
+      for (int i = 0; i < numSegments; i++) {
+        SegmentHits hits = segments.get(i);
+        count(values, hits.context, hits.hits);
+      }
+    } else {
+      final List<SegmentCounter> counters = aggregateConcurrently(numSegments, maxTasks, exec, () -> new SegmentCounter(segments));
+      for (SegmentCounter counter : counters) {
+        for (int ord = 0; ord < values.length; ord++) {
+          values[ord] += counter.counts[ord];
         }
       }
     }
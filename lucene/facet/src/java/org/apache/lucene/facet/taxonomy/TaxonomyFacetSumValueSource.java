@@ -18,6 +18,7 @@ package org.apache.lucene.facet.taxonomy;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.lucene.facet.FacetsCollector;
 import org.apache.lucene.facet.FacetsCollector.MatchingDocs;
@@ -58,6 +59,60 @@ public class TaxonomyFacetSumValueSource extends FloatTaxonomyFacets {
     sumValues(fc.getMatchingDocs(), fc.getKeepScores(), vs);
   }
 
+  /**
+   * Aggreggates float facet values from the provided
+   *  {@link DoubleValuesSource}, and pulls ordinals from the
+   *  provided {@link OrdinalsReader}, summing the segments of
+   *  the provided hits concurrently with at most {@code
+   *  maxTasks} tasks on the provided {@link ExecutorService},
+   *  typically its number of threads.  Each task sums into its
+   *  own array, and the arrays are added once all tasks are
+   *  done.
+   */
+  public TaxonomyFacetSumValueSource(OrdinalsReader ordinalsReader, TaxonomyReader taxoReader,
+                                     FacetsConfig config, FacetsCollector fc, DoubleValuesSource vs,
+                                     ExecutorService exec, int maxTasks) throws IOException, InterruptedException {
+    super(ordinalsReader.getIndexFieldName(), taxoReader, config);
+    checkMaxTasks(maxTasks);
+    this.ordinalsReader = ordinalsReader;
+    final List<MatchingDocs> matchingDocs = fc.getMatchingDocs();
+    final boolean keepScores = fc.getKeepScores();
+    if (Math.min(matchingDocs.size(), maxTasks) <= 1) {
+      sumValues(matchingDocs, keepScores, vs);
+      return;
+    }
+
+    final List<SegmentSummer> summers = aggregateConcurrently(matchingDocs.size(), maxTasks, exec,
+        () -> new SegmentSummer(matchingDocs, keepScores, vs));
+    for (SegmentSummer summer : summers) {
+      for (int ord = 0; ord < summer.sums.length; ord++) {
+        values[ord] += summer.sums[ord];
+      }
+    }
+
+    rollup();
+  }
+
+  /** Sums the segments handed out to one task into its own array. */
+  private final class SegmentSummer implements SegmentAggregator {
+    final float[] sums = new float[values.length];
+    final IntsRef scratch = new IntsRef();
+    final List<MatchingDocs> matchingDocs;
+    final boolean keepScores;
+    final DoubleValuesSource valueSource;
+
+    SegmentSummer(List<MatchingDocs> matchingDocs, boolean keepScores, DoubleValuesSource valueSource) {
+      this.matchingDocs = matchingDocs;
+      this.keepScores = keepScores;
+      this.valueSource = valueSource;
+    }
+
+    @Override
+    public void aggregate(int segment) throws IOException {
+      sumValues(sums, matchingDocs.get(segment), keepScores, valueSource, scratch);
+    }
+  }
+
   private static DoubleValues scores(MatchingDocs hits) {
     return new DoubleValues() {
 
@@ -80,24 +135,28 @@ public class TaxonomyFacetSumValueSource extends FloatTaxonomyFacets {
 
     IntsRef scratch = new IntsRef();
     for(MatchingDocs hits : matchingDocs) {
-      OrdinalsReader.OrdinalsSegmentReader ords = ordinalsReader.getReader(hits.context);
-      DoubleValues scores = keepScores ? scores(hits) : null;
-      DoubleValues functionValues = valueSource.getValues(hits.context, scores);
-      DocIdSetIterator docs = hits.bits.iterator();
-      
-      int doc;
-      while ((doc = docs.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
-        ords.get(doc, scratch);
-        if (functionValues.advanceExact(doc)) {
-          float value = (float) functionValues.doubleValue();
-          for (int i = 0; i < scratch.length; i++) {
-            values[scratch.ints[i]] += value;
-          }
-        }
-      }
+      sumValues(values, hits, keepScores, valueSource, scratch);
     }
 
     rollup();
   }
+
+  private void sumValues(float[] sums, MatchingDocs hits, boolean keepScores, DoubleValuesSource valueSource, IntsRef scratch) throws IOException {
+    OrdinalsReader.OrdinalsSegmentReader ords = ordinalsReader.getReader(hits.context);
+    DoubleValues scores = keepScores ? scores(hits) : null;
+    DoubleValues functionValues = valueSource.getValues(hits.context, scores);
+    DocIdSetIterator docs = hits.bits.iterator();
+
+    int doc;
+    while ((doc = docs.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+      ords.get(doc, scratch);
+      if (functionValues.advanceExact(doc)) {
+        float value = (float) functionValues.doubleValue();
+        for (int i = 0; i < scratch.length; i++) {
+          sums[scratch.ints[i]] += value;
+        }
+      }
+    }
+  }
   
 }
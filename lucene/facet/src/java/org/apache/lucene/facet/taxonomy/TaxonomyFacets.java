@@ -21,11 +21,17 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import org.apache.lucene.facet.FacetResult;
 import org.apache.lucene.facet.Facets;
 import org.apache.lucene.facet.FacetsConfig.DimConfig; // javadocs
 import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.util.IOUtils;
 
 /** Base class for all taxonomy-based facets impls. */
 public abstract class TaxonomyFacets extends Facets {
@@ -101,5 +107,52 @@ public abstract class TaxonomyFacets extends Facets {
     Collections.sort(results, BY_VALUE_THEN_DIM);
     return results;
   }
-  
+
+  /** Aggregates the segments handed out to one task of
+   *  {@link #aggregateConcurrently}. */
+  @FunctionalInterface
+  interface SegmentAggregator {
+    void aggregate(int segment) throws IOException;
+  }
+
+  /** Aggregates segments {@code 0} to {@code numSegments-1}
+   *  with {@code min(numSegments, maxTasks)} tasks submitted to
+   *  {@code exec}.  Each task gets its own aggregator from
+   *  {@code newAggregator}, created on the calling thread, and
+   *  pulls segments off a shared counter.  Returns the
+   *  aggregators once all tasks are done. */
+  static <A extends SegmentAggregator> List<A> aggregateConcurrently(int numSegments, int maxTasks, ExecutorService exec,
+                                                                      Supplier<A> newAggregator) throws IOException, InterruptedException {
+    final int numTasks = Math.min(numSegments, maxTasks);
+    final AtomicInteger nextSegment = new AtomicInteger();
+    final List<A> aggregators = new ArrayList<>(numTasks);
+    final List<Future<?>> results = new ArrayList<>(numTasks);
+    for (int i = 0; i < numTasks; i++) {
+      final A aggregator = newAggregator.get();
+      aggregators.add(aggregator);
+      results.add(exec.submit(() -> {
+          for (int segment = nextSegment.getAndIncrement(); segment < numSegments; segment = nextSegment.getAndIncrement()) {
+            aggregator.aggregate(segment);
+          }
+          return null;
+        }));
+    }
+    for (Future<?> result : results) {
+      try {
+        result.get();
+      } catch (ExecutionException ee) {
+        IOUtils.reThrow(ee.getCause() != null ? ee.getCause() : ee);
+        throw new AssertionError(); // unreachable
+      }
+    }
+    return aggregators;
+  }
+
+  /** Throws {@code IllegalArgumentException} if {@code maxTasks}
+   *  is not positive. */
+  static void checkMaxTasks(int maxTasks) {
+    if (maxTasks < 1) {
+      throw new IllegalArgumentException("maxTasks must be >= 1, got " + maxTasks);
+    }
+  }
 }
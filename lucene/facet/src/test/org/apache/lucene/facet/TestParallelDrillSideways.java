@@ -32,10 +32,12 @@ import org.junit.BeforeClass;
 public class TestParallelDrillSideways extends TestDrillSideways {
 
   private static ExecutorService executor;
+  private static boolean scoreSegmentsConcurrently;
 
   @BeforeClass
   public static void prepareExecutor() {
     executor = Executors.newCachedThreadPool(new NamedThreadFactory("TestParallelDrillSideways"));
+    scoreSegmentsConcurrently = random().nextBoolean();
   }
 
   @AfterClass
@@ -46,16 +48,16 @@ public class TestParallelDrillSideways extends TestDrillSideways {
 
   protected DrillSideways getNewDrillSideways(IndexSearcher searcher, FacetsConfig config,
           SortedSetDocValuesReaderState state) {
-    return new DrillSideways(searcher, config, null, state, executor);
+    return new ParallelDrillSideways(searcher, config, null, state);
   }
 
   protected DrillSideways getNewDrillSideways(IndexSearcher searcher, FacetsConfig config, TaxonomyReader taxoReader) {
-    return new DrillSideways(searcher, config, taxoReader, null, executor);
+    return new ParallelDrillSideways(searcher, config, taxoReader, null);
   }
 
   protected DrillSideways getNewDrillSidewaysScoreSubdocsAtOnce(IndexSearcher searcher, FacetsConfig config,
           TaxonomyReader taxoReader) {
-    return new DrillSideways(searcher, config, taxoReader, null, executor) {
+    return new ParallelDrillSideways(searcher, config, taxoReader, null) {
       @Override
       protected boolean scoreSubDocsAtOnce() {
         return true;
@@ -65,7 +67,7 @@ public class TestParallelDrillSideways extends TestDrillSideways {
 
   protected DrillSideways getNewDrillSidewaysBuildFacetsResult(IndexSearcher searcher, FacetsConfig config,
           TaxonomyReader taxoReader) {
-    return new DrillSideways(searcher, config, taxoReader, null, executor) {
+    return new ParallelDrillSideways(searcher, config, taxoReader, null) {
       @Override
       protected Facets buildFacetsResult(FacetsCollector drillDowns, FacetsCollector[] drillSideways,
               String[] drillSidewaysDims) throws IOException {
@@ -87,4 +89,17 @@ public class TestParallelDrillSideways extends TestDrillSideways {
     };
   }
 
+  private static class ParallelDrillSideways extends DrillSideways {
+
+    ParallelDrillSideways(IndexSearcher searcher, FacetsConfig config, TaxonomyReader taxoReader,
+            SortedSetDocValuesReaderState state) {
+      super(searcher, config, taxoReader, state, executor);
+    }
+
+    @Override
+    protected boolean scoreSegmentsConcurrently() {
+      return scoreSegmentsConcurrently;
+    }
+  }
+
 }
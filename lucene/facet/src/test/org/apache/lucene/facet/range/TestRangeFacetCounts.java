@@ -27,6 +27,7 @@ import org.apache.lucene.document.DoubleDocValuesField;
 import org.apache.lucene.document.DoublePoint;
 import org.apache.lucene.document.LongPoint;
 import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedNumericDocValuesField;
 import org.apache.lucene.facet.DrillDownQuery;
 import org.apache.lucene.facet.DrillSideways;
 import org.apache.lucene.facet.DrillSideways.DrillSidewaysResult;
@@ -436,7 +437,13 @@ public class TestRangeFacetCounts extends FacetTestCase {
         fastMatchQuery = null;
       }
       LongValuesSource vs = LongValuesSource.fromLongField("field");
-      Facets facets = new LongRangeFacetCounts("field", vs, sfc, fastMatchQuery, ranges);
+      Facets facets;
+      if (fastMatchQuery == null && random().nextBoolean()) {
+        // counts from the points, since all docs match:
+        facets = new LongRangeFacetCounts("field", "field", sfc, ranges);
+      } else {
+        facets = new LongRangeFacetCounts("field", vs, sfc, fastMatchQuery, ranges);
+      }
       FacetResult result = facets.getTopChildren(10, "field");
       assertEquals(numRange, result.labelValues.length);
       for(int rangeID=0;rangeID<numRange;rangeID++) {
@@ -579,7 +586,13 @@ public class TestRangeFacetCounts extends FacetTestCase {
         fastMatchFilter = null;
       }
       DoubleValuesSource vs = DoubleValuesSource.fromDoubleField("field");
-      Facets facets = new DoubleRangeFacetCounts("field", vs, sfc, fastMatchFilter, ranges);
+      Facets facets;
+      if (fastMatchFilter == null && random().nextBoolean()) {
+        // counts from the points, since all docs match:
+        facets = new DoubleRangeFacetCounts("field", "field", sfc, ranges);
+      } else {
+        facets = new DoubleRangeFacetCounts("field", vs, sfc, fastMatchFilter, ranges);
+      }
       FacetResult result = facets.getTopChildren(10, "field");
       assertEquals(numRange, result.labelValues.length);
       for(int rangeID=0;rangeID<numRange;rangeID++) {
@@ -608,6 +621,140 @@ public class TestRangeFacetCounts extends FacetTestCase {
     IOUtils.close(r, dir);
   }
 
+  public void testMultiValuedLong() throws Exception {
+    Directory d = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), d);
+    LongRange[] ranges = new LongRange[] {
+        new LongRange("less than 10", 0L, true, 10L, false),
+        new LongRange("less than or equal to 10", 0L, true, 10L, true),
+        new LongRange("over 90", 90L, false, 100L, false),
+        new LongRange("90 or above", 90L, true, 100L, false),
+        new LongRange("over 1000", 1000L, false, Long.MAX_VALUE, true)};
+    int numDocs = atLeast(200);
+    int[] expectedCounts = new int[ranges.length];
+    int expectedTotCount = 0;
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      int numValues = random().nextInt(4);
+      long[] values = new long[numValues];
+      for (int j = 0; j < numValues; j++) {
+        values[j] = random().nextInt(10) == 0 ? Long.MAX_VALUE : random().nextInt(110);
+        doc.add(new SortedNumericDocValuesField("field", values[j]));
+      }
+      w.addDocument(doc);
+
+      boolean matched = false;
+      for (int rangeID = 0; rangeID < ranges.length; rangeID++) {
+        for (long value : values) {
+          if (ranges[rangeID].accept(value)) {
+            // each document counts at most once per range:
+            expectedCounts[rangeID]++;
+            matched = true;
+            break;
+          }
+        }
+      }
+      if (matched) {
+        expectedTotCount++;
+      }
+    }
+
+    IndexReader r = w.getReader();
+    w.close();
+
+    FacetsCollector fc = new FacetsCollector();
+    IndexSearcher s = newSearcher(r);
+    s.search(new MatchAllDocsQuery(), fc);
+
+    Facets facets = new LongRangeFacetCounts("field", fc, ranges);
+    FacetResult result = facets.getTopChildren(10, "field");
+    assertEquals(expectedTotCount, result.value.intValue());
+    for (int rangeID = 0; rangeID < ranges.length; rangeID++) {
+      assertEquals(ranges[rangeID].label, result.labelValues[rangeID].label);
+      assertEquals(expectedCounts[rangeID], result.labelValues[rangeID].value.intValue());
+    }
+
+    IOUtils.close(r, d);
+  }
+
+  public void testMultiValuedDouble() throws Exception {
+    Directory d = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), d);
+    DoubleRange[] ranges = new DoubleRange[] {
+        new DoubleRange("< 1", 0.0, true, 1.0, false),
+        new DoubleRange("< 2", 0.0, true, 2.0, false),
+        new DoubleRange("1 to 5", 1.0, true, 5.0, true),
+        new DoubleRange("> 5", 5.0, false, Double.POSITIVE_INFINITY, true)};
+    int numDocs = atLeast(200);
+    int[] expectedCounts = new int[ranges.length];
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      int numValues = random().nextInt(4);
+      double[] values = new double[numValues];
+      for (int j = 0; j < numValues; j++) {
+        values[j] = random().nextDouble() * 10;
+        doc.add(new SortedNumericDocValuesField("field", NumericUtils.doubleToSortableLong(values[j])));
+      }
+      w.addDocument(doc);
+
+      for (int rangeID = 0; rangeID < ranges.length; rangeID++) {
+        for (double value : values) {
+          if (ranges[rangeID].accept(value)) {
+            expectedCounts[rangeID]++;
+            break;
+          }
+        }
+      }
+    }
+
+    IndexReader r = w.getReader();
+    w.close();
+
+    FacetsCollector fc = new FacetsCollector();
+    IndexSearcher s = newSearcher(r);
+    s.search(new MatchAllDocsQuery(), fc);
+
+    Facets facets = new DoubleRangeFacetCounts("field", fc, ranges);
+    FacetResult result = facets.getTopChildren(10, "field");
+    for (int rangeID = 0; rangeID < ranges.length; rangeID++) {
+      assertEquals(expectedCounts[rangeID], result.labelValues[rangeID].value.intValue());
+    }
+
+    IOUtils.close(r, d);
+  }
+
+  public void testPointsAreOptIn() throws Exception {
+    Directory d = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), d);
+    int numDocs = atLeast(20);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      // points that disagree with the doc values, to tell which ones are counted:
+      doc.add(new NumericDocValuesField("field", 5L));
+      doc.add(new LongPoint("field", 95L));
+      w.addDocument(doc);
+    }
+    IndexReader r = w.getReader();
+    w.close();
+
+    FacetsCollector fc = new FacetsCollector();
+    IndexSearcher s = newSearcher(r);
+    s.search(new MatchAllDocsQuery(), fc);
+    LongRange[] ranges = new LongRange[] {
+        new LongRange("less than 10", 0L, true, 10L, false),
+        new LongRange("90 or above", 90L, true, 100L, false)};
+
+    FacetResult result = new LongRangeFacetCounts("field", fc, ranges).getTopChildren(10, "field");
+    assertEquals(numDocs, result.labelValues[0].value.intValue());
+    assertEquals(0, result.labelValues[1].value.intValue());
+
+    result = new LongRangeFacetCounts("field", "field", fc, ranges).getTopChildren(10, "field");
+    assertEquals(0, result.labelValues[0].value.intValue());
+    assertEquals(numDocs, result.labelValues[1].value.intValue());
+
+    IOUtils.close(r, d);
+  }
+
   // LUCENE-5178
   public void testMissingValues() throws Exception {
     Directory d = newDirectory();
@@ -21,6 +21,10 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
@@ -31,7 +35,11 @@ import org.apache.lucene.facet.Facets;
 import org.apache.lucene.facet.FacetsCollector;
 import org.apache.lucene.facet.FacetsConfig;
 import org.apache.lucene.facet.LabelAndValue;
+import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.MultiDocValues.MultiSortedSetDocValues;
+import org.apache.lucene.index.NoMergePolicy;
 import org.apache.lucene.index.RandomIndexWriter;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.IndexSearcher;
@@ -40,6 +48,7 @@ import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.NamedThreadFactory;
 import org.apache.lucene.util.TestUtil;
 
 public class TestSortedSetDocValuesFacets extends FacetTestCase {
@@ -47,6 +56,31 @@ public class TestSortedSetDocValuesFacets extends FacetTestCase {
   // NOTE: TestDrillSideways.testRandom also sometimes
   // randomly uses SortedSetDV
 
+  // if non-null, facets are counted with ConcurrentSortedSetDocValuesFacetCounts
+  private ExecutorService exec;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    if (random().nextBoolean()) {
+      int numThreads = TestUtil.nextInt(random(), 2, 6);
+      exec = new ThreadPoolExecutor(numThreads, numThreads,
+                                    Long.MAX_VALUE, TimeUnit.MILLISECONDS,
+                                    new LinkedBlockingQueue<Runnable>(),
+                                    new NamedThreadFactory("TestSortedSetDocValuesFacets"));
+    }
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    if (exec != null) {
+      exec.shutdownNow();
+      exec.awaitTermination(1, TimeUnit.MINUTES);
+      exec = null;
+    }
+    super.tearDown();
+  }
+
   public void testBasic() throws Exception {
     Directory dir = newDirectory();
 
@@ -74,7 +108,7 @@ public class TestSortedSetDocValuesFacets extends FacetTestCase {
     // Per-top-reader state:
     SortedSetDocValuesReaderState state = new DefaultSortedSetDocValuesReaderState(searcher.getIndexReader());
 
-    SortedSetDocValuesFacetCounts facets = getAllFacets(searcher, state);
+    Facets facets = getAllFacets(searcher, state);
 
     assertEquals("dim=a path=[] value=4 childCount=3\n  foo (2)\n  bar (1)\n  zoo (1)\n", facets.getTopChildren(10, "a").toString());
     assertEquals("dim=b path=[] value=1 childCount=1\n  baz (1)\n", facets.getTopChildren(10, "b").toString());
@@ -123,6 +157,11 @@ public class TestSortedSetDocValuesFacets extends FacetTestCase {
     expectThrows(IllegalStateException.class, () -> {
       new SortedSetDocValuesFacetCounts(state, c);
     });
+    if (exec != null) {
+      expectThrows(IllegalStateException.class, () -> {
+        new ConcurrentSortedSetDocValuesFacetCounts(state, c, exec);
+      });
+    }
 
     r.close();
     writer.close();
@@ -168,7 +207,7 @@ public class TestSortedSetDocValuesFacets extends FacetTestCase {
     // Per-top-reader state:
     SortedSetDocValuesReaderState state = new DefaultSortedSetDocValuesReaderState(searcher.getIndexReader());
 
-    SortedSetDocValuesFacetCounts facets = getAllFacets(searcher, state);
+    Facets facets = getAllFacets(searcher, state);
 
     // Ask for top 10 labels for any dims that have counts:
     List<FacetResult> results = facets.getAllDims(10);
@@ -210,7 +249,7 @@ public class TestSortedSetDocValuesFacets extends FacetTestCase {
     // Per-top-reader state:
     SortedSetDocValuesReaderState state = new DefaultSortedSetDocValuesReaderState(searcher.getIndexReader());
 
-    SortedSetDocValuesFacetCounts facets = getAllFacets(searcher, state);
+    Facets facets = getAllFacets(searcher, state);
 
     // Ask for top 10 labels for any dims that have counts:
     assertEquals("dim=a path=[] value=2 childCount=2\n  foo1 (1)\n  foo2 (1)\n", facets.getTopChildren(10, "a").toString());
@@ -254,7 +293,12 @@ public class TestSortedSetDocValuesFacets extends FacetTestCase {
       }
       FacetsCollector fc = new FacetsCollector();
       FacetsCollector.search(searcher, new TermQuery(new Term("content", searchToken)), 10, fc);
-      Facets facets = new SortedSetDocValuesFacetCounts(state, fc);
+      Facets facets;
+      if (exec != null) {
+        facets = new ConcurrentSortedSetDocValuesFacetCounts(state, fc, exec);
+      } else {
+        facets = new SortedSetDocValuesFacetCounts(state, fc);
+      }
 
       // Slow, yet hopefully bug-free, faceting:
       @SuppressWarnings({"rawtypes","unchecked"}) Map<String,Integer>[] expectedCounts = new HashMap[numDims];
@@ -306,11 +350,65 @@ public class TestSortedSetDocValuesFacets extends FacetTestCase {
     IOUtils.close(searcher.getIndexReader(), indexDir, taxoDir);
   }
 
-  private static SortedSetDocValuesFacetCounts getAllFacets(IndexSearcher searcher, SortedSetDocValuesReaderState state) throws IOException {
+  public void testReuseStateOfPreviousReader() throws Exception {
+    Directory dir = newDirectory();
+
+    FacetsConfig config = new FacetsConfig();
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE));
+    for (int i = 0; i < 3; i++) {
+      Document doc = new Document();
+      doc.add(newStringField("id", "" + i, Field.Store.NO));
+      doc.add(new SortedSetDocValuesFacetField("a", "foo" + i));
+      doc.add(new SortedSetDocValuesFacetField("b", "bar"));
+      writer.addDocument(config.build(doc));
+      // so that deleting the other doc doesn't drop the segment:
+      doc = new Document();
+      doc.add(new SortedSetDocValuesFacetField("b", "bar"));
+      writer.addDocument(config.build(doc));
+      writer.commit();
+    }
+
+    IndexReader r1 = DirectoryReader.open(writer);
+    DefaultSortedSetDocValuesReaderState state1 = new DefaultSortedSetDocValuesReaderState(r1, FacetsConfig.DEFAULT_INDEX_FIELD_NAME, null);
+
+    // only deletions: same segments
+    writer.deleteDocuments(new Term("id", "1"));
+    IndexReader r2 = DirectoryReader.open(writer);
+    DefaultSortedSetDocValuesReaderState state2 = new DefaultSortedSetDocValuesReaderState(r2, FacetsConfig.DEFAULT_INDEX_FIELD_NAME, state1);
+    assertEquals(3, r2.leaves().size());
+    assertSame(((MultiSortedSetDocValues) state1.getDocValues()).mapping,
+               ((MultiSortedSetDocValues) state2.getDocValues()).mapping);
+    Facets facets = getAllFacets(newSearcher(r2), state2);
+    assertEquals("dim=a path=[] value=2 childCount=2\n  foo0 (1)\n  foo2 (1)\n", facets.getTopChildren(10, "a").toString());
+    assertEquals("dim=b path=[] value=5 childCount=1\n  bar (5)\n", facets.getTopChildren(10, "b").toString());
+
+    // new segment: global ords must be rebuilt
+    Document doc = new Document();
+    doc.add(new SortedSetDocValuesFacetField("a", "baz"));
+    writer.addDocument(config.build(doc));
+    IndexReader r3 = DirectoryReader.open(writer);
+    DefaultSortedSetDocValuesReaderState state3 = new DefaultSortedSetDocValuesReaderState(r3, FacetsConfig.DEFAULT_INDEX_FIELD_NAME, state2);
+    assertEquals(state2.getSize() + 1, state3.getSize());
+    assertNotSame(((MultiSortedSetDocValues) state2.getDocValues()).mapping,
+                  ((MultiSortedSetDocValues) state3.getDocValues()).mapping);
+    facets = getAllFacets(newSearcher(r3), state3);
+    assertEquals("dim=a path=[] value=3 childCount=3\n  baz (1)\n  foo0 (1)\n  foo2 (1)\n", facets.getTopChildren(10, "a").toString());
+
+    writer.close();
+    IOUtils.close(r1, r2, r3, dir);
+  }
+
+  private Facets getAllFacets(IndexSearcher searcher, SortedSetDocValuesReaderState state) throws IOException, InterruptedException {
     if (random().nextBoolean()) {
       FacetsCollector c = new FacetsCollector();
       searcher.search(new MatchAllDocsQuery(), c);    
-      return new SortedSetDocValuesFacetCounts(state, c);
+      if (exec != null) {
+        return new ConcurrentSortedSetDocValuesFacetCounts(state, c, exec);
+      } else {
+        return new SortedSetDocValuesFacetCounts(state, c);
+      }
+    } else if (exec != null) {
+      return new ConcurrentSortedSetDocValuesFacetCounts(state, exec);
     } else {
       return new SortedSetDocValuesFacetCounts(state);
     }
@@ -25,6 +25,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.lucene.analysis.MockAnalyzer;
 import org.apache.lucene.document.Document;
@@ -55,6 +59,7 @@ import org.apache.lucene.search.similarities.PerFieldSimilarityWrapper;
 import org.apache.lucene.search.similarities.Similarity;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.NamedThreadFactory;
 import org.apache.lucene.util.TestUtil;
 
 public class TestTaxonomyFacetCounts extends FacetTestCase {
@@ -718,6 +723,58 @@ public class TestTaxonomyFacetCounts extends FacetTestCase {
     IOUtils.close(tw, searcher.getIndexReader(), tr, indexDir, taxoDir);
   }
 
+  public void testConcurrentCounting() throws Exception {
+    Directory indexDir = newDirectory();
+    Directory taxoDir = newDirectory();
+
+    IndexWriter w = new IndexWriter(indexDir, newIndexWriterConfig(new MockAnalyzer(random()))
+        .setMergePolicy(NoMergePolicy.INSTANCE));
+    DirectoryTaxonomyWriter tw = new DirectoryTaxonomyWriter(taxoDir);
+    FacetsConfig config = new FacetsConfig();
+    config.setHierarchical("dim1", true);
+    int numDocs = atLeast(1000);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      doc.add(newStringField("content", random().nextBoolean() ? "a" : "b", Field.Store.NO));
+      doc.add(new FacetField("dim0", "v" + random().nextInt(20)));
+      doc.add(new FacetField("dim1", "v" + random().nextInt(5), "w" + random().nextInt(5)));
+      w.addDocument(config.build(tw, doc));
+      if (random().nextInt(50) == 0) {
+        w.commit();
+      }
+    }
+
+    IndexSearcher searcher = newSearcher(DirectoryReader.open(w));
+    TaxonomyReader tr = new DirectoryTaxonomyReader(tw);
+    int numThreads = TestUtil.nextInt(random(), 2, 6);
+    ExecutorService exec = new ThreadPoolExecutor(numThreads, numThreads, Long.MAX_VALUE, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("TestTaxonomyFacetCounts"));
+    try {
+      FacetsCollector fc = new FacetsCollector();
+      searcher.search(new TermQuery(new Term("content", "a")), fc);
+      Facets expected = new FastTaxonomyFacetCounts(tr, config, fc);
+      Facets actual = new FastTaxonomyFacetCounts(FacetsConfig.DEFAULT_INDEX_FIELD_NAME, tr, config, fc, exec, numThreads);
+      assertEquals(expected.getAllDims(10), actual.getAllDims(10));
+      assertEquals(expected.getTopChildren(10, "dim1", "v0"), actual.getTopChildren(10, "dim1", "v0"));
+
+      expected = new FastTaxonomyFacetCounts(FacetsConfig.DEFAULT_INDEX_FIELD_NAME, searcher.getIndexReader(), tr, config);
+      actual = new FastTaxonomyFacetCounts(FacetsConfig.DEFAULT_INDEX_FIELD_NAME, searcher.getIndexReader(), tr, config,
+          exec, TestUtil.nextInt(random(), 1, 2 * numThreads));
+      assertEquals(expected.getAllDims(10), actual.getAllDims(10));
+      assertEquals(numDocs, actual.getSpecificValue("dim1"));
+
+      expectThrows(IllegalArgumentException.class, () -> {
+        new FastTaxonomyFacetCounts(FacetsConfig.DEFAULT_INDEX_FIELD_NAME, tr, config, fc, exec, 0);
+      });
+    } finally {
+      exec.shutdownNow();
+      exec.awaitTermination(1, TimeUnit.SECONDS);
+    }
+
+    w.close();
+    IOUtils.close(tw, searcher.getIndexReader(), tr, indexDir, taxoDir);
+  }
+
   private static Facets getAllFacets(String indexFieldName, IndexSearcher searcher, TaxonomyReader taxoReader, FacetsConfig config) throws IOException {
     if (random().nextBoolean()) {
       // Aggregate the facet counts:
@@ -20,6 +20,10 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.lucene.analysis.MockAnalyzer;
 import org.apache.lucene.document.Document;
@@ -39,6 +43,7 @@ import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyWriter;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
 import org.apache.lucene.index.RandomIndexWriter;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queries.function.FunctionQuery;
@@ -53,6 +58,7 @@ import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.NamedThreadFactory;
 import org.apache.lucene.util.TestUtil;
 
 public class TestTaxonomyFacetSumValueSource extends FacetTestCase {
@@ -386,6 +392,53 @@ public class TestTaxonomyFacetSumValueSource extends FacetTestCase {
     IOUtils.close(taxoWriter, taxoReader, taxoDir, r, indexDir);
   }
 
+  public void testConcurrentSum() throws Exception {
+    Directory indexDir = newDirectory();
+    Directory taxoDir = newDirectory();
+
+    IndexWriter w = new IndexWriter(indexDir, newIndexWriterConfig(new MockAnalyzer(random()))
+        .setMergePolicy(NoMergePolicy.INSTANCE));
+    DirectoryTaxonomyWriter tw = new DirectoryTaxonomyWriter(taxoDir);
+    FacetsConfig config = new FacetsConfig();
+    int numDocs = atLeast(1000);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      doc.add(newStringField("content", random().nextBoolean() ? "a" : "b", Field.Store.NO));
+      doc.add(new FloatDocValuesField("value", random().nextFloat()));
+      doc.add(new FacetField("dim0", "v" + random().nextInt(20)));
+      doc.add(new FacetField("dim1", "v" + random().nextInt(5)));
+      w.addDocument(config.build(tw, doc));
+      if (random().nextInt(50) == 0) {
+        w.commit();
+      }
+    }
+
+    IndexSearcher searcher = newSearcher(DirectoryReader.open(w));
+    TaxonomyReader tr = new DirectoryTaxonomyReader(tw);
+    int numThreads = TestUtil.nextInt(random(), 2, 6);
+    ExecutorService exec = new ThreadPoolExecutor(numThreads, numThreads, Long.MAX_VALUE, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("TestTaxonomyFacetSumValueSource"));
+    try {
+      FacetsCollector fc = new FacetsCollector(true);
+      searcher.search(new TermQuery(new Term("content", "a")), fc);
+      OrdinalsReader ordsReader = new DocValuesOrdinalsReader(FacetsConfig.DEFAULT_INDEX_FIELD_NAME);
+      DoubleValuesSource valueSource = random().nextBoolean() ? DoubleValuesSource.SCORES : DoubleValuesSource.fromFloatField("value");
+      Facets expected = new TaxonomyFacetSumValueSource(ordsReader, tr, config, fc, valueSource);
+      Facets actual = new TaxonomyFacetSumValueSource(ordsReader, tr, config, fc, valueSource, exec, numThreads);
+      assertFloatValuesEquals(expected.getAllDims(10), actual.getAllDims(10));
+
+      expectThrows(IllegalArgumentException.class, () -> {
+        new TaxonomyFacetSumValueSource(ordsReader, tr, config, fc, valueSource, exec, 0);
+      });
+    } finally {
+      exec.shutdownNow();
+      exec.awaitTermination(1, TimeUnit.SECONDS);
+    }
+
+    w.close();
+    IOUtils.close(tw, searcher.getIndexReader(), tr, indexDir, taxoDir);
+  }
+
   public void testRandom() throws Exception {
     String[] tokens = getRandomTokens(10);
     Directory indexDir = newDirectory();
@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.search.join;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexReaderContext;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BitSet;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * A cache of the {@link BitSet}s matched by queries per segment, that is
+ * shared by all the {@link BitSetProducer}s it creates, typically the parent
+ * filters of block join queries.
+ * <p>
+ * Unlike {@link QueryBitSetProducer}, which keeps the bit sets of a single
+ * query for as long as their segments are open, this cache holds the bit sets
+ * of any number of queries, evicts the least recently used ones once their
+ * memory usage exceeds a maximum, and reports its memory usage and hit and miss
+ * counts. Bit sets are keyed on {@link IndexReader#getCoreCacheHelper()} and
+ * are dropped when their segment is closed; segments that don't expose a core
+ * cache helper are never cached.
+ *
+ * @lucene.experimental
+ */
+public final class BitSetCache implements Accountable {
+
+  // rough estimate of the memory usage of a cache entry besides its bit set
+  static final long ENTRY_RAM_BYTES_USED =
+      RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + 2 * RamUsageEstimator.NUM_BYTES_OBJECT_REF // key
+      + 6 * RamUsageEstimator.NUM_BYTES_OBJECT_REF; // linked hash table entry
+
+  // marker for segments where the query doesn't match any document
+  private static final BitSet EMPTY = new FixedBitSet(0);
+
+  private final long maxRamBytesUsed;
+  private final Map<Key, BitSet> cache = new LinkedHashMap<>(16, 0.75f, true);
+  private final Set<IndexReader.CacheKey> registeredCoreKeys = new HashSet<>();
+  private long ramBytesUsed;
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
+
+  /**
+   * Creates a new cache.
+   *
+   * @param maxRamBytesUsed the maximum memory usage of the cached bit sets
+   */
+  public BitSetCache(long maxRamBytesUsed) {
+    if (maxRamBytesUsed < 0) {
+      throw new IllegalArgumentException("maxRamBytesUsed must be >= 0, got " + maxRamBytesUsed);
+    }
+    this.maxRamBytesUsed = maxRamBytesUsed;
+  }
+
+  /** Returns a {@link BitSetProducer} for the given query that is backed by this cache. */
+  public BitSetProducer getBitSetProducer(Query query) {
+    return new CachingBitSetProducer(query);
+  }
+
+  private BitSet getBitSet(Query query, LeafReaderContext context) throws IOException {
+    final IndexReader.CacheHelper cacheHelper = context.reader().getCoreCacheHelper();
+    final Key key = cacheHelper == null ? null : new Key(query, cacheHelper.getKey());
+    if (key != null) {
+      synchronized (this) {
+        final BitSet bitSet = cache.get(key);
+        if (bitSet != null) {
+          hitCount++;
+          return bitSet == EMPTY ? null : bitSet;
+        }
+        missCount++;
+      }
+    }
+
+    final IndexReaderContext topLevelContext = ReaderUtil.getTopLevelContext(context);
+    final IndexSearcher searcher = new IndexSearcher(topLevelContext);
+    searcher.setQueryCache(null);
+    final Weight weight = searcher.createNormalizedWeight(query, false);
+    final Scorer s = weight.scorer(context);
+    final BitSet bitSet = s == null ? null : BitSet.of(s.iterator(), context.reader().maxDoc());
+
+    if (key != null) {
+      synchronized (this) {
+        if (registeredCoreKeys.add(key.coreKey)) {
+          cacheHelper.addClosedListener(this::clearCoreCacheKey);
+        }
+        final BitSet value = bitSet == null ? EMPTY : bitSet;
+        final BitSet previous = cache.put(key, value);
+        if (previous != null) {
+          ramBytesUsed -= ramBytesUsed(previous);
+        }
+        ramBytesUsed += ramBytesUsed(value);
+        evictIfNecessary();
+      }
+    }
+    return bitSet;
+  }
+
+  private static long ramBytesUsed(BitSet bitSet) {
+    return ENTRY_RAM_BYTES_USED + (bitSet == EMPTY ? 0 : bitSet.ramBytesUsed());
+  }
+
+  private void evictIfNecessary() {
+    assert Thread.holdsLock(this);
+    for (Iterator<BitSet> it = cache.values().iterator(); ramBytesUsed > maxRamBytesUsed && it.hasNext(); ) {
+      ramBytesUsed -= ramBytesUsed(it.next());
+      it.remove();
+      evictionCount++;
+    }
+  }
+
+  private synchronized void clearCoreCacheKey(IndexReader.CacheKey coreKey) {
+    registeredCoreKeys.remove(coreKey);
+    for (Iterator<Map.Entry<Key, BitSet>> it = cache.entrySet().iterator(); it.hasNext(); ) {
+      final Map.Entry<Key, BitSet> entry = it.next();
+      if (entry.getKey().coreKey == coreKey) {
+        ramBytesUsed -= ramBytesUsed(entry.getValue());
+        it.remove();
+      }
+    }
+  }
+
+  /** Removes all entries from this cache. */
+  public synchronized void clear() {
+    cache.clear();
+    ramBytesUsed = 0;
+  }
+
+  @Override
+  public synchronized long ramBytesUsed() {
+    return ramBytesUsed;
+  }
+
+  /** Returns the number of cached bit sets. */
+  public synchronized int getCacheSize() {
+    return cache.size();
+  }
+
+  /** Returns the number of times a bit set was found in the cache. */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of times a bit set had to be computed. */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /** Returns the number of bit sets that were evicted to stay under the maximum memory usage. */
+  public synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(maxRamBytesUsed=" + maxRamBytesUsed + ")";
+  }
+
+  private static final class Key {
+    final Query query;
+    final IndexReader.CacheKey coreKey;
+
+    Key(Query query, IndexReader.CacheKey coreKey) {
+      this.query = query;
+      this.coreKey = coreKey;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj instanceof Key == false) {
+        return false;
+      }
+      final Key other = (Key) obj;
+      return query.equals(other.query) && coreKey == other.coreKey;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * query.hashCode() + coreKey.hashCode();
+    }
+  }
+
+  private final class CachingBitSetProducer implements BitSetProducer {
+    private final Query query;
+
+    CachingBitSetProducer(Query query) {
+      this.query = query;
+    }
+
+    private BitSetCache cache() {
+      return BitSetCache.this;
+    }
+
+    @Override
+    public BitSet getBitSet(LeafReaderContext context) throws IOException {
+      return BitSetCache.this.getBitSet(query, context);
+    }
+
+    @Override
+    public String toString() {
+      return getClass().getSimpleName() + "(" + query.toString() + ")";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      final CachingBitSetProducer other = (CachingBitSetProducer) o;
+      return cache() == other.cache() && query.equals(other.query);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(cache()) + query.hashCode();
+    }
+  }
+}
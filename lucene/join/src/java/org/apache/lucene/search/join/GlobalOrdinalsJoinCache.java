@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.search.join;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.LongBitSet;
+import org.apache.lucene.util.packed.PackedInts;
+
+/**
+ * Caches what global ordinal joins compute per index reader, so that joins
+ * that run on every search, such as access control filters, don't redo it.
+ * <p>
+ * For every top-level reader, this cache keeps the
+ * {@link MultiDocValues.OrdinalMap} of the join fields, and for
+ * {@link ScoreMode#None} joins without min and max filtering, the set of join
+ * values matched by the most recently used "from" queries. Entries are keyed
+ * on {@link IndexReader#getReaderCacheHelper()}, so a reopened reader gets new
+ * ones, and they are dropped when their reader is closed. Readers that don't
+ * expose a cache helper are never cached.
+ * <p>
+ * The same restrictions as for
+ * {@link JoinUtil#createJoinQuery(String, Query, Query, IndexSearcher, ScoreMode, MultiDocValues.OrdinalMap, int, int)}
+ * apply. "From" queries are cached by their rewritten form, so they should
+ * implement equals and hashCode.
+ *
+ * @lucene.experimental
+ */
+public final class GlobalOrdinalsJoinCache {
+
+  private final int maxCachedQueries;
+  private final Map<IndexReader.CacheKey, ReaderCache> cache = new HashMap<>();
+
+  /**
+   * Creates a new cache.
+   *
+   * @param maxCachedQueries the maximum number of "from" queries to cache the
+   *                         matching join values of per reader
+   */
+  public GlobalOrdinalsJoinCache(int maxCachedQueries) {
+    if (maxCachedQueries < 0) {
+      throw new IllegalArgumentException("maxCachedQueries must be >= 0, got " + maxCachedQueries);
+    }
+    this.maxCachedQueries = maxCachedQueries;
+  }
+
+  /**
+   * Returns the ordinal map over the {@link SortedDocValues} join field of the
+   * given reader, building it on first use. Returns null if the reader has no
+   * more than one segment, since no ordinal map is needed then.
+   */
+  public MultiDocValues.OrdinalMap getOrdinalMap(IndexReader reader, String joinField) throws IOException {
+    final List<LeafReaderContext> leaves = reader.leaves();
+    if (leaves.size() <= 1) {
+      return null;
+    }
+    final ReaderCache readerCache = getReaderCache(reader);
+    if (readerCache != null) {
+      synchronized (readerCache) {
+        final MultiDocValues.OrdinalMap ordinalMap = readerCache.ordinalMaps.get(joinField);
+        if (ordinalMap != null) {
+          return ordinalMap;
+        }
+      }
+    }
+
+    final SortedDocValues[] values = new SortedDocValues[leaves.size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = DocValues.getSorted(leaves.get(i).reader(), joinField);
+    }
+    final IndexReader.CacheKey owner = readerCache == null ? null : reader.getReaderCacheHelper().getKey();
+    final MultiDocValues.OrdinalMap ordinalMap = MultiDocValues.OrdinalMap.build(owner, values, PackedInts.DEFAULT);
+    if (readerCache == null) {
+      return ordinalMap;
+    }
+    synchronized (readerCache) {
+      // another thread may have built the same map concurrently: keep the first one
+      final MultiDocValues.OrdinalMap existing = readerCache.ordinalMaps.putIfAbsent(joinField, ordinalMap);
+      return existing == null ? ordinalMap : existing;
+    }
+  }
+
+  /**
+   * Same as {@link JoinUtil#createJoinQuery(String, Query, Query, IndexSearcher, ScoreMode, MultiDocValues.OrdinalMap)},
+   * but with the ordinal map taken from this cache, and for {@link ScoreMode#None},
+   * the join values matched by the "from" query as well.
+   */
+  public Query createJoinQuery(String joinField,
+                               Query fromQuery,
+                               Query toQuery,
+                               IndexSearcher searcher,
+                               ScoreMode scoreMode) throws IOException {
+    return createJoinQuery(joinField, fromQuery, toQuery, searcher, scoreMode, 0, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Same as {@link JoinUtil#createJoinQuery(String, Query, Query, IndexSearcher, ScoreMode, MultiDocValues.OrdinalMap, int, int)},
+   * but with the ordinal map taken from this cache, and for {@link ScoreMode#None}
+   * without min and max filtering, the join values matched by the "from" query
+   * as well.
+   */
+  public Query createJoinQuery(String joinField,
+                               Query fromQuery,
+                               Query toQuery,
+                               IndexSearcher searcher,
+                               ScoreMode scoreMode,
+                               int min,
+                               int max) throws IOException {
+    final IndexReader reader = searcher.getIndexReader();
+    final MultiDocValues.OrdinalMap ordinalMap = getOrdinalMap(reader, joinField);
+    final ReaderCache readerCache = getReaderCache(reader);
+    if (scoreMode != ScoreMode.None || min > 0 || max != Integer.MAX_VALUE
+        || readerCache == null || maxCachedQueries == 0 || reader.leaves().isEmpty()) {
+      return JoinUtil.createJoinQuery(joinField, fromQuery, toQuery, searcher, scoreMode, ordinalMap, min, max);
+    }
+
+    final long valueCount;
+    if (ordinalMap != null) {
+      valueCount = ordinalMap.getValueCount();
+    } else {
+      final SortedDocValues values = reader.leaves().get(0).reader().getSortedDocValues(joinField);
+      if (values == null) {
+        return new MatchNoDocsQuery("GlobalOrdinalsJoinCache.createJoinQuery: no join values");
+      }
+      valueCount = values.getValueCount();
+    }
+
+    final Query rewrittenFromQuery = searcher.rewrite(fromQuery);
+    final Query rewrittenToQuery = searcher.rewrite(toQuery);
+    final FromKey key = new FromKey(joinField, rewrittenFromQuery);
+    LongBitSet foundOrds;
+    synchronized (readerCache) {
+      foundOrds = readerCache.foundOrds.get(key);
+    }
+    if (foundOrds == null) {
+      final GlobalOrdinalsCollector collector = new GlobalOrdinalsCollector(joinField, ordinalMap, valueCount);
+      searcher.search(rewrittenFromQuery, collector);
+      foundOrds = collector.getCollectorOrdinals();
+      synchronized (readerCache) {
+        readerCache.foundOrds.put(key, foundOrds);
+      }
+    }
+    return new GlobalOrdinalsQuery(foundOrds, joinField, ordinalMap, rewrittenToQuery, rewrittenFromQuery, searcher.getTopReaderContext());
+  }
+
+  /** Returns the number of readers that have cached entries. */
+  int getCachedReaderCount() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  private ReaderCache getReaderCache(IndexReader reader) {
+    final IndexReader.CacheHelper cacheHelper = reader.getReaderCacheHelper();
+    if (cacheHelper == null) {
+      return null;
+    }
+    final IndexReader.CacheKey key = cacheHelper.getKey();
+    synchronized (cache) {
+      ReaderCache readerCache = cache.get(key);
+      if (readerCache == null) {
+        readerCache = new ReaderCache(maxCachedQueries);
+        cache.put(key, readerCache);
+        cacheHelper.addClosedListener(this::clearReaderCacheKey);
+      }
+      return readerCache;
+    }
+  }
+
+  private void clearReaderCacheKey(IndexReader.CacheKey key) {
+    synchronized (cache) {
+      cache.remove(key);
+    }
+  }
+
+  private static final class ReaderCache {
+    final Map<String, MultiDocValues.OrdinalMap> ordinalMaps = new HashMap<>();
+    final Map<FromKey, LongBitSet> foundOrds;
+
+    ReaderCache(int maxCachedQueries) {
+      foundOrds = new LinkedHashMap<FromKey, LongBitSet>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<FromKey, LongBitSet> eldest) {
+          return size() > maxCachedQueries;
+        }
+      };
+    }
+  }
+
+  private static final class FromKey {
+    final String joinField;
+    final Query fromQuery;
+
+    FromKey(String joinField, Query fromQuery) {
+      this.joinField = joinField;
+      this.fromQuery = fromQuery;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj instanceof FromKey == false) {
+        return false;
+      }
+      final FromKey other = (FromKey) obj;
+      return joinField.equals(other.joinField) && fromQuery.equals(other.fromQuery);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * joinField.hashCode() + fromQuery.hashCode();
+    }
+  }
+}
@@ -437,7 +437,8 @@ public final class JoinUtil {
    *    that identifies the "from" and "to" side and then the fromQuery and toQuery must take the this into account.
    * 3) There must be a single sorted doc values join field used by both the "from" and "to" documents. This join field
    *    should store the join values as UTF-8 strings.
-   * 4) An ordinal map must be provided that is created on top of the join field.
+   * 4) An ordinal map must be provided that is created on top of the join field. {@link GlobalOrdinalsJoinCache}
+   *    can build and cache it per index reader.
    *
    * Note: min and max filtering and the avg score mode will require this join to keep track of the number of times
    * a document matches per join value. This will increase the per join cost in terms of execution time and memory.
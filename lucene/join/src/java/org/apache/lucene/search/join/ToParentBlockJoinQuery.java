@@ -54,6 +54,9 @@ import org.apache.lucene.util.BitSet;
  * <p>See {@link ToChildBlockJoinQuery} if you need to join
  * in the reverse order.
  *
+ * <p>Use a {@link BitSetCache} to share the parent filters
+ * of many queries in a bounded amount of memory.
+ *
  * <p>The child documents must be orthogonal to the parent
  * documents: the wrapped child query must never
  * return a parent document.</p>
@@ -283,6 +286,10 @@ public class ToParentBlockJoinQuery extends Query {
 
     @Override
     public float score() throws IOException {
+      if (scoreMode == ScoreMode.None) {
+        // the score doesn't depend on the other children of the block: don't visit them
+        return 0;
+      }
       setScoreAndFreq();
       return score;
     }
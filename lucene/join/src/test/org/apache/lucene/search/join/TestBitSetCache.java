@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.search.join;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestBitSetCache extends LuceneTestCase {
+
+  private static void addBlocks(IndexWriter w, int numBlocks) throws Exception {
+    for (int i = 0; i < numBlocks; i++) {
+      List<Document> block = new ArrayList<>();
+      for (int j = 0; j < 1 + i % 5; j++) {
+        Document child = new Document();
+        child.add(new StringField("type", "item", Field.Store.NO));
+        child.add(new StringField("color", j % 2 == 0 ? "red" : "blue", Field.Store.NO));
+        block.add(child);
+      }
+      Document parent = new Document();
+      parent.add(new StringField("type", "order", Field.Store.NO));
+      parent.add(new StringField("status", i % 2 == 0 ? "open" : "closed", Field.Store.NO));
+      block.add(parent);
+      w.addDocuments(block);
+      if (random().nextInt(10) == 0) {
+        w.commit();
+      }
+    }
+    w.commit();
+  }
+
+  public void testSameResultsAsQueryBitSetProducer() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter w = new IndexWriter(dir, newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE));
+    addBlocks(w, 100);
+    DirectoryReader reader = DirectoryReader.open(w);
+    IndexSearcher searcher = new IndexSearcher(reader);
+    searcher.setQueryCache(null);
+    BitSetCache cache = new BitSetCache(Long.MAX_VALUE);
+
+    Query parentQuery = new TermQuery(new Term("type", "order"));
+    Query childQuery = new TermQuery(new Term("color", "blue"));
+    for (ScoreMode scoreMode : ScoreMode.values()) {
+      TopDocs expected = searcher.search(
+          new ToParentBlockJoinQuery(childQuery, new QueryBitSetProducer(parentQuery), scoreMode), reader.maxDoc());
+      TopDocs actual = searcher.search(
+          new ToParentBlockJoinQuery(childQuery, cache.getBitSetProducer(parentQuery), scoreMode), reader.maxDoc());
+      assertEquals(expected.totalHits, actual.totalHits);
+      for (int i = 0; i < expected.scoreDocs.length; i++) {
+        assertEquals(expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+        assertEquals(expected.scoreDocs[i].score, actual.scoreDocs[i].score, 0f);
+      }
+    }
+    // parent bit sets are computed once per segment and then shared by all queries
+    assertTrue(cache.getMissCount() > 0);
+    assertEquals(cache.getMissCount(), cache.getCacheSize());
+    assertEquals(cache.getMissCount() * (ScoreMode.values().length - 1), cache.getHitCount());
+    assertTrue(cache.ramBytesUsed() > 0);
+
+    // entries are dropped once their segments are closed
+    reader.close();
+    w.close();
+    assertEquals(0, cache.getCacheSize());
+    assertEquals(0, cache.ramBytesUsed());
+    dir.close();
+  }
+
+  public void testScoreModeNone() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter w = new IndexWriter(dir, newIndexWriterConfig());
+    addBlocks(w, 20);
+    DirectoryReader reader = DirectoryReader.open(w);
+    IndexSearcher searcher = new IndexSearcher(reader);
+    BitSetCache cache = new BitSetCache(Long.MAX_VALUE);
+    Query query = new ToParentBlockJoinQuery(new TermQuery(new Term("color", "red")),
+        cache.getBitSetProducer(new TermQuery(new Term("type", "order"))), ScoreMode.None);
+    TopDocs topDocs = searcher.search(query, reader.maxDoc());
+    assertEquals(20, topDocs.totalHits);
+    for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+      assertEquals(0f, scoreDoc.score, 0f);
+    }
+    reader.close();
+    w.close();
+    dir.close();
+  }
+
+  public void testEviction() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter w = new IndexWriter(dir, newIndexWriterConfig());
+    addBlocks(w, 50);
+    w.forceMerge(1);
+    DirectoryReader reader = DirectoryReader.open(w);
+    BitSetCache cache = new BitSetCache(0);
+    BitSetProducer producer = cache.getBitSetProducer(new TermQuery(new Term("type", "order")));
+    assertNotNull(producer.getBitSet(reader.leaves().get(0)));
+    assertNotNull(producer.getBitSet(reader.leaves().get(0)));
+    assertEquals(0, cache.getHitCount());
+    assertEquals(2, cache.getMissCount());
+    assertEquals(2, cache.getEvictionCount());
+    assertEquals(0, cache.getCacheSize());
+    assertEquals(0, cache.ramBytesUsed());
+    reader.close();
+    w.close();
+    dir.close();
+  }
+
+  public void testEquals() {
+    BitSetCache cache = new BitSetCache(1024);
+    Query query = new TermQuery(new Term("type", "order"));
+    assertEquals(cache.getBitSetProducer(query), cache.getBitSetProducer(new TermQuery(new Term("type", "order"))));
+    assertEquals(cache.getBitSetProducer(query).hashCode(), cache.getBitSetProducer(query).hashCode());
+    assertFalse(cache.getBitSetProducer(query).equals(new BitSetCache(1024).getBitSetProducer(query)));
+    assertFalse(cache.getBitSetProducer(query).equals(new QueryBitSetProducer(query)));
+  }
+
+  public void testIllegalArguments() {
+    expectThrows(IllegalArgumentException.class, () -> {
+      new BitSetCache(-1);
+    });
+  }
+}
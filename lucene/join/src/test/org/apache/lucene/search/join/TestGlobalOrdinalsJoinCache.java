@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.search.join;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestGlobalOrdinalsJoinCache extends LuceneTestCase {
+
+  private static void addDocuments(IndexWriter w, int from, int to) throws Exception {
+    for (int i = from; i < to; i++) {
+      String id = Integer.toString(i);
+      Document product = new Document();
+      product.add(new StringField("type", "product", Field.Store.NO));
+      product.add(new StringField("group", Integer.toString(i % 3), Field.Store.NO));
+      product.add(new SortedDocValuesField("join", new BytesRef(id)));
+      w.addDocument(product);
+
+      Document price = new Document();
+      price.add(new StringField("type", "price", Field.Store.NO));
+      price.add(new SortedDocValuesField("join", new BytesRef(id)));
+      w.addDocument(price);
+      if (random().nextInt(5) == 0) {
+        w.commit();
+      }
+    }
+    w.commit();
+  }
+
+  private static void assertSameMatches(TopDocs expected, TopDocs actual) {
+    assertEquals(expected.totalHits, actual.totalHits);
+    for (int i = 0; i < expected.scoreDocs.length; i++) {
+      assertEquals(expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+    }
+  }
+
+  public void testSameResultsAsJoinUtil() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter w = new IndexWriter(dir, newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE));
+    addDocuments(w, 0, 50);
+    DirectoryReader reader = DirectoryReader.open(w);
+    IndexSearcher searcher = new IndexSearcher(reader);
+    GlobalOrdinalsJoinCache cache = new GlobalOrdinalsJoinCache(10);
+
+    MultiDocValues.OrdinalMap ordinalMap = cache.getOrdinalMap(reader, "join");
+    if (reader.leaves().size() > 1) {
+      assertNotNull(ordinalMap);
+      assertSame(ordinalMap, cache.getOrdinalMap(reader, "join"));
+    } else {
+      assertNull(ordinalMap);
+    }
+
+    Query toQuery = new TermQuery(new Term("type", "price"));
+    for (ScoreMode scoreMode : ScoreMode.values()) {
+      for (int iter = 0; iter < 2; iter++) {
+        for (int group = 0; group < 3; group++) {
+          Query fromQuery = new TermQuery(new Term("group", Integer.toString(group)));
+          TopDocs expected = searcher.search(
+              JoinUtil.createJoinQuery("join", fromQuery, toQuery, searcher, scoreMode, ordinalMap), reader.maxDoc());
+          TopDocs actual = searcher.search(
+              cache.createJoinQuery("join", fromQuery, toQuery, searcher, scoreMode), reader.maxDoc());
+          assertSameMatches(expected, actual);
+        }
+      }
+    }
+
+    reader.close();
+    w.close();
+    dir.close();
+  }
+
+  public void testReopenAndClose() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter w = new IndexWriter(dir, newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE));
+    addDocuments(w, 0, 10);
+    addDocuments(w, 10, 20);
+    DirectoryReader reader = DirectoryReader.open(w);
+    GlobalOrdinalsJoinCache cache = new GlobalOrdinalsJoinCache(10);
+    MultiDocValues.OrdinalMap ordinalMap = cache.getOrdinalMap(reader, "join");
+    assertNotNull(ordinalMap);
+    assertEquals(1, cache.getCachedReaderCount());
+
+    Query fromQuery = new TermQuery(new Term("group", "1"));
+    Query toQuery = new TermQuery(new Term("type", "price"));
+    IndexSearcher searcher = new IndexSearcher(reader);
+    assertEquals(7, searcher.count(cache.createJoinQuery("join", fromQuery, toQuery, searcher, ScoreMode.None)));
+
+    // new join values are visible after a reopen
+    addDocuments(w, 20, 30);
+    DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
+    assertNotNull(newReader);
+    assertNotSame(ordinalMap, cache.getOrdinalMap(newReader, "join"));
+    searcher = new IndexSearcher(newReader);
+    assertEquals(10, searcher.count(cache.createJoinQuery("join", fromQuery, toQuery, searcher, ScoreMode.None)));
+    assertEquals(2, cache.getCachedReaderCount());
+
+    reader.close();
+    assertEquals(1, cache.getCachedReaderCount());
+    newReader.close();
+    assertEquals(0, cache.getCachedReaderCount());
+    w.close();
+    dir.close();
+  }
+
+  public void testIllegalArguments() {
+    expectThrows(IllegalArgumentException.class, () -> {
+      new GlobalOrdinalsJoinCache(-1);
+    });
+  }
+}
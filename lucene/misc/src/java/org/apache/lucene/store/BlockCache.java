@@ -0,0 +1,334 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.store;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * A cache of fixed-size, aligned blocks of files, which can be shared by
+ * several {@link BlockCacheDirectory} instances. All memory is allocated
+ * upfront, in slabs that live either on or off heap.
+ * <p>
+ * The cache is split into stripes that are locked independently, and
+ * blocks are assigned to stripes based on the hash of their file and
+ * position. Each stripe evicts blocks with the clock algorithm, an
+ * approximation of LRU that doesn't need any bookkeeping on cache hits
+ * besides setting a bit.
+ *
+ * @lucene.experimental
+ */
+public final class BlockCache implements Accountable {
+
+  /** Default size of a block: 8 KB. */
+  public static final int DEFAULT_BLOCK_SIZE = 8192;
+
+  /** Maximum size of the slab of a stripe. */
+  private static final long MAX_STRIPE_BYTES = 1L << 30;
+
+  private final int blockSize;
+  private final int blockShift;
+  private final Stripe[] stripes;
+  private final boolean direct;
+  private final AtomicLong nextFileId = new AtomicLong();
+
+  /**
+   * Create a cache of {@code maxBytes} with off-heap blocks of {@link #DEFAULT_BLOCK_SIZE} bytes.
+   */
+  public BlockCache(long maxBytes) {
+    this(maxBytes, DEFAULT_BLOCK_SIZE, defaultNumStripes(maxBytes), true);
+  }
+
+  /**
+   * Create a cache.
+   * @param maxBytes the size of the cache, rounded down to a multiple of {@code blockSize * numStripes}
+   * @param blockSize the size of a block, a power of two between 512 bytes and 1 MB
+   * @param numStripes the number of stripes, a power of two; more stripes reduce contention
+   * @param direct whether to allocate blocks off heap
+   */
+  public BlockCache(long maxBytes, int blockSize, int numStripes, boolean direct) {
+    if (blockSize < 512 || blockSize > (1 << 20) || Integer.bitCount(blockSize) != 1) {
+      throw new IllegalArgumentException("blockSize must be a power of two between 512 and 1048576, got: " + blockSize);
+    }
+    if (numStripes < 1 || Integer.bitCount(numStripes) != 1) {
+      throw new IllegalArgumentException("numStripes must be a power of two, got: " + numStripes);
+    }
+    final long blocksPerStripe = maxBytes / blockSize / numStripes;
+    if (blocksPerStripe < 1) {
+      throw new IllegalArgumentException("maxBytes=" + maxBytes + " is too small for " + numStripes + " stripes of blocks of " + blockSize + " bytes");
+    }
+    if (blocksPerStripe * blockSize > MAX_STRIPE_BYTES) {
+      throw new IllegalArgumentException("maxBytes=" + maxBytes + " requires more than " + numStripes + " stripes");
+    }
+    this.blockSize = blockSize;
+    this.blockShift = Integer.numberOfTrailingZeros(blockSize);
+    this.direct = direct;
+    this.stripes = new Stripe[numStripes];
+    for (int i = 0; i < numStripes; i++) {
+      stripes[i] = new Stripe((int) blocksPerStripe, blockSize, direct);
+    }
+  }
+
+  private static int defaultNumStripes(long maxBytes) {
+    int numStripes = 16;
+    while (maxBytes / numStripes > MAX_STRIPE_BYTES) {
+      numStripes <<= 1;
+    }
+    return numStripes;
+  }
+
+  /** Returns the size of a block. */
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  /** Returns the number of blocks this cache can hold. */
+  public long getMaxBlocks() {
+    return (long) stripes[0].slotFile.length * stripes.length;
+  }
+
+  /** Returns the number of blocks that are currently cached. */
+  public long getBlockCount() {
+    long count = 0;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        count += stripe.index.size();
+      }
+    }
+    return count;
+  }
+
+  /** Returns the number of block lookups that found the block in the cache. */
+  public long getHitCount() {
+    long count = 0;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        count += stripe.hitCount;
+      }
+    }
+    return count;
+  }
+
+  /** Returns the number of block lookups that did not find the block in the cache. */
+  public long getMissCount() {
+    long count = 0;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        count += stripe.missCount;
+      }
+    }
+    return count;
+  }
+
+  /** Returns the number of blocks that were evicted to make room for other blocks. */
+  public long getEvictionCount() {
+    long count = 0;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        count += stripe.evictionCount;
+      }
+    }
+    return count;
+  }
+
+  /** Returns whether blocks are allocated off heap. */
+  public boolean isDirect() {
+    return direct;
+  }
+
+  /** Returns the memory that is used by this cache, including its blocks even if they are off heap. */
+  @Override
+  public long ramBytesUsed() {
+    long bytes = RamUsageEstimator.shallowSizeOf(stripes);
+    for (Stripe stripe : stripes) {
+      bytes += stripe.ramBytesUsed();
+    }
+    return bytes;
+  }
+
+  @Override
+  public String toString() {
+    return "BlockCache(maxBlocks=" + getMaxBlocks() + ",blockSize=" + blockSize + ",stripes=" + stripes.length + ",direct=" + direct + ")";
+  }
+
+  int getBlockShift() {
+    return blockShift;
+  }
+
+  /** Returns a new identifier for a file, which must be unique among all files that use this cache. */
+  long newFileId() {
+    return nextFileId.getAndIncrement();
+  }
+
+  private Stripe stripe(long fileId, long block) {
+    long h = fileId * 0x9E3779B97F4A7C15L + block;
+    h ^= h >>> 29;
+    h *= 0xBF58476D1CE4E5B9L;
+    h ^= h >>> 32;
+    return stripes[(int) h & (stripes.length - 1)];
+  }
+
+  /**
+   * Copy {@code length} bytes at {@code offset} in the given block of a file
+   * into {@code dest}, and return true, or return false if the block is not
+   * cached.
+   */
+  boolean get(long fileId, long block, int offset, byte[] dest, int destOffset, int length) {
+    return stripe(fileId, block).get(new BlockKey(fileId, block), offset, dest, destOffset, length);
+  }
+
+  /** Cache the given block of a file, which has the given length. */
+  void put(long fileId, long block, byte[] src, int length) {
+    assert length > 0 && length <= blockSize;
+    stripe(fileId, block).put(new BlockKey(fileId, block), src, length);
+  }
+
+  /** Evict all blocks of the given file. */
+  void invalidate(long fileId) {
+    for (Stripe stripe : stripes) {
+      stripe.invalidate(fileId);
+    }
+  }
+
+  private static final class BlockKey {
+    final long fileId;
+    final long block;
+
+    BlockKey(long fileId, long block) {
+      this.fileId = fileId;
+      this.block = block;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj instanceof BlockKey == false) {
+        return false;
+      }
+      final BlockKey that = (BlockKey) obj;
+      return fileId == that.fileId && block == that.block;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(fileId * 31 + block);
+    }
+  }
+
+  /** A part of the cache, all methods are synchronized on the stripe. */
+  private static final class Stripe {
+    private final ByteBuffer slab;
+    private final int blockSize;
+    private final Map<BlockKey,Integer> index = new HashMap<>();
+    /** file of the block in each slot, or -1 if the slot is free */
+    private final long[] slotFile;
+    private final long[] slotBlock;
+    private final int[] slotLength;
+    private final boolean[] referenced;
+    private final int[] freeSlots;
+    private int numFreeSlots;
+    private int hand;
+    private long hitCount, missCount, evictionCount;
+
+    Stripe(int numSlots, int blockSize, boolean direct) {
+      this.blockSize = blockSize;
+      this.slab = direct ? ByteBuffer.allocateDirect(numSlots * blockSize) : ByteBuffer.allocate(numSlots * blockSize);
+      slotFile = new long[numSlots];
+      slotBlock = new long[numSlots];
+      slotLength = new int[numSlots];
+      referenced = new boolean[numSlots];
+      freeSlots = new int[numSlots];
+      for (int i = 0; i < numSlots; i++) {
+        slotFile[i] = -1;
+        freeSlots[i] = numSlots - 1 - i;
+      }
+      numFreeSlots = numSlots;
+    }
+
+    synchronized boolean get(BlockKey key, int offset, byte[] dest, int destOffset, int length) {
+      final Integer slot = index.get(key);
+      if (slot == null) {
+        missCount++;
+        return false;
+      }
+      assert offset + length <= slotLength[slot];
+      hitCount++;
+      referenced[slot] = true;
+      slab.position(slot * blockSize + offset);
+      slab.get(dest, destOffset, length);
+      return true;
+    }
+
+    synchronized void put(BlockKey key, byte[] src, int length) {
+      if (index.containsKey(key)) {
+        return; // another thread loaded it concurrently
+      }
+      final int slot = freeSlot();
+      slotFile[slot] = key.fileId;
+      slotBlock[slot] = key.block;
+      slotLength[slot] = length;
+      referenced[slot] = false;
+      slab.position(slot * blockSize);
+      slab.put(src, 0, length);
+      index.put(key, slot);
+    }
+
+    private int freeSlot() {
+      if (numFreeSlots > 0) {
+        return freeSlots[--numFreeSlots];
+      }
+      // clock: give a second chance to blocks that were referenced since the hand last passed
+      while (true) {
+        final int slot = hand;
+        hand = hand + 1 == slotFile.length ? 0 : hand + 1;
+        if (referenced[slot]) {
+          referenced[slot] = false;
+        } else {
+          index.remove(new BlockKey(slotFile[slot], slotBlock[slot]));
+          evictionCount++;
+          return slot;
+        }
+      }
+    }
+
+    synchronized void invalidate(long fileId) {
+      for (int slot = 0; slot < slotFile.length; slot++) {
+        if (slotFile[slot] == fileId) {
+          index.remove(new BlockKey(fileId, slotBlock[slot]));
+          slotFile[slot] = -1;
+          referenced[slot] = false;
+          freeSlots[numFreeSlots++] = slot;
+        }
+      }
+    }
+
+    synchronized long ramBytesUsed() {
+      return slab.capacity()
+          + RamUsageEstimator.sizeOf(slotFile)
+          + RamUsageEstimator.sizeOf(slotBlock)
+          + RamUsageEstimator.sizeOf(slotLength)
+          + RamUsageEstimator.sizeOf(referenced)
+          + RamUsageEstimator.sizeOf(freeSlots)
+          // HashMap entry, key and boxed slot per cached block
+          + (long) index.size() * (4 * RamUsageEstimator.NUM_BYTES_OBJECT_REF + 3 * RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + 24);
+    }
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.store;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link Directory} wrapper that caches blocks of the files that it reads
+ * in a {@link BlockCache}, which may be shared with other directories. This
+ * is useful on top of an {@link FSDirectory} that can't use {@link MMapDirectory},
+ * e.g. because of address space or map count limits, so that hot blocks are
+ * not read again and again from the operating system by every thread.
+ * <p>
+ * Inputs that are opened with a {@link IOContext.Context#MERGE merge} or
+ * {@link IOContext#READONCE read-once} context bypass the cache, so that
+ * sequential reads don't evict hot blocks. Files are write-once, so cached
+ * blocks only need to be invalidated when a file is deleted or renamed.
+ *
+ * @lucene.experimental
+ */
+public class BlockCacheDirectory extends FilterDirectory {
+
+  private final BlockCache cache;
+  /** identifiers of the files that have been opened, in the cache */
+  private final Map<String,Long> fileIds = new ConcurrentHashMap<>();
+
+  /** Sole constructor. */
+  public BlockCacheDirectory(Directory in, BlockCache cache) {
+    super(in);
+    if (cache == null) {
+      throw new NullPointerException("cache must not be null");
+    }
+    this.cache = cache;
+  }
+
+  /** Returns the cache that this directory uses. */
+  public BlockCache getBlockCache() {
+    return cache;
+  }
+
+  @Override
+  public IndexInput openInput(String name, IOContext context) throws IOException {
+    final IndexInput input = in.openInput(name, context);
+    if (context.context == IOContext.Context.MERGE || context.readOnce) {
+      return input;
+    }
+    final long fileId = fileIds.computeIfAbsent(name, n -> cache.newFileId());
+    return new CachingIndexInput("BlockCacheIndexInput(" + input + ")", input, fileId, 0L, input.length(), cache);
+  }
+
+  @Override
+  public IndexOutput createOutput(String name, IOContext context) throws IOException {
+    // in case a file of the same name was cached before
+    invalidate(name);
+    return in.createOutput(name, context);
+  }
+
+  @Override
+  public void deleteFile(String name) throws IOException {
+    in.deleteFile(name);
+    invalidate(name);
+  }
+
+  @Override
+  public void rename(String source, String dest) throws IOException {
+    in.rename(source, dest);
+    invalidate(source);
+    invalidate(dest);
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      for (String name : fileIds.keySet()) {
+        invalidate(name);
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  private void invalidate(String name) {
+    final Long fileId = fileIds.remove(name);
+    if (fileId != null) {
+      cache.invalidate(fileId);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "BlockCacheDirectory(" + in + "; " + cache + ")";
+  }
+
+  /** Reads aligned blocks through the cache, and loads missing blocks from the delegate input. */
+  static final class CachingIndexInput extends IndexInput {
+    private final BlockCache cache;
+    private final long fileId;
+    /** offset of this slice in the file */
+    private final long offset;
+    private final long length;
+    /** reads the whole file */
+    private IndexInput in;
+    /** the current block, and its absolute bounds in the file */
+    private byte[] block;
+    private long blockStart;
+    private long blockEnd;
+    /** absolute position in the file */
+    private long pos;
+    private boolean isClone;
+
+    CachingIndexInput(String resourceDesc, IndexInput in, long fileId, long offset, long length, BlockCache cache) {
+      super(resourceDesc);
+      this.in = in;
+      this.fileId = fileId;
+      this.offset = offset;
+      this.length = length;
+      this.cache = cache;
+      this.block = new byte[cache.getBlockSize()];
+      this.pos = offset;
+    }
+
+    /** Makes the block that contains {@code pos} the current block. */
+    private void loadBlock() throws IOException {
+      final long blockIndex = pos >>> cache.getBlockShift();
+      final long start = blockIndex << cache.getBlockShift();
+      final int blockLength = (int) Math.min(cache.getBlockSize(), in.length() - start);
+      if (cache.get(fileId, blockIndex, 0, block, 0, blockLength) == false) {
+        in.seek(start);
+        in.readBytes(block, 0, blockLength);
+        cache.put(fileId, blockIndex, block, blockLength);
+      }
+      blockStart = start;
+      blockEnd = start + blockLength;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+      if (pos >= offset + length) {
+        throw new EOFException("read past EOF: " + this);
+      }
+      if (pos < blockStart || pos >= blockEnd) {
+        loadBlock();
+      }
+      return block[(int) (pos++ - blockStart)];
+    }
+
+    @Override
+    public void readBytes(byte[] b, int off, int len) throws IOException {
+      if (pos + len > offset + length) {
+        throw new EOFException("read past EOF: " + this);
+      }
+      while (len > 0) {
+        if (pos < blockStart || pos >= blockEnd) {
+          loadBlock();
+        }
+        final int chunk = (int) Math.min(len, blockEnd - pos);
+        System.arraycopy(block, (int) (pos - blockStart), b, off, chunk);
+        pos += chunk;
+        off += chunk;
+        len -= chunk;
+      }
+    }
+
+    @Override
+    public long getFilePointer() {
+      return pos - offset;
+    }
+
+    @Override
+    public void seek(long pos) throws IOException {
+      if (pos < 0 || pos > length) {
+        throw new EOFException("seek past EOF: pos=" + pos + " vs length=" + length + ": " + this);
+      }
+      this.pos = offset + pos;
+    }
+
+    @Override
+    public long length() {
+      return length;
+    }
+
+    @Override
+    public CachingIndexInput clone() {
+      final CachingIndexInput clone = (CachingIndexInput) super.clone();
+      clone.in = in.clone();
+      clone.block = block.clone();
+      clone.isClone = true;
+      return clone;
+    }
+
+    @Override
+    public IndexInput slice(String sliceDescription, long offset, long length) throws IOException {
+      if (offset < 0 || length < 0 || offset + length > this.length) {
+        throw new IllegalArgumentException("slice() " + sliceDescription + " out of bounds: offset=" + offset + ",length=" + length + ",fileLength=" + this.length + ": " + this);
+      }
+      final CachingIndexInput slice = new CachingIndexInput(getFullSliceDescription(sliceDescription), in.clone(), fileId, this.offset + offset, length, cache);
+      slice.isClone = true;
+      return slice;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (isClone == false) {
+        in.close();
+      }
+    }
+  }
+}
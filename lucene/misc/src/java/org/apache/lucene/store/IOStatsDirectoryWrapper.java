@@ -0,0 +1,621 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.store;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.lucene.index.IndexFileNames;
+
+/**
+ * A {@link Directory} wrapper that records I/O statistics per file
+ * extension and per {@link IOContext.Context}: numbers of read and write
+ * operations, numbers of bytes, and histograms of the latency of read and
+ * write operations. This helps tell whether slow queries are waiting on
+ * reads of e.g. postings or doc values.
+ * <p>
+ * Reads of the sub-files of a compound file are recorded under the
+ * extension of the sub-file rather than {@code cfs}.
+ * <p>
+ * To keep the overhead low, only one operation out of {@code sampleInterval}
+ * is timed. Inputs, their clones and slices, and outputs also count
+ * operations locally and only publish their counts to shared, striped
+ * counters when they time an operation, have read or written more than
+ * 1 MB since they last published, or are closed. Their counts hence lag
+ * by up to {@code sampleInterval} operations, and since clones and slices
+ * are never closed, the last operations of a clone or slice that is no
+ * longer used may never be counted. Latencies are those of individual read
+ * and write calls, which may have been served from a buffer.
+ * <p>
+ * A {@link Reporter} can be registered to receive every sampled latency,
+ * e.g. to feed an external metrics library.
+ *
+ * @lucene.experimental
+ */
+public final class IOStatsDirectoryWrapper extends FilterDirectory {
+
+  /** Default number of operations per timed operation. */
+  public static final int DEFAULT_SAMPLE_INTERVAL = 64;
+
+  /** Receives sampled operations. */
+  @FunctionalInterface
+  public interface Reporter {
+    /**
+     * Called for every timed operation, by the thread that performed it.
+     * This must be fast and must not throw exceptions.
+     * @param extension the extension of the file, see {@link Stats#getExtension()}
+     * @param context the context that the file was opened with
+     * @param write whether this was a write operation
+     * @param bytes the number of bytes of the operation
+     * @param nanos the duration of the operation in nanoseconds
+     */
+    void report(String extension, IOContext.Context context, boolean write, int bytes, long nanos);
+  }
+
+  private final int sampleInterval;
+  private final Reporter reporter;
+  private final Map<Key,Accumulator> accumulators = new ConcurrentHashMap<>();
+
+  /** Create a wrapper that times one operation out of {@link #DEFAULT_SAMPLE_INTERVAL}. */
+  public IOStatsDirectoryWrapper(Directory in) {
+    this(in, DEFAULT_SAMPLE_INTERVAL, null);
+  }
+
+  /**
+   * Create a wrapper.
+   * @param in the directory to wrap
+   * @param sampleInterval time one operation out of {@code sampleInterval}, 1 times all operations
+   * @param reporter receives sampled operations, or null
+   */
+  public IOStatsDirectoryWrapper(Directory in, int sampleInterval, Reporter reporter) {
+    super(in);
+    if (sampleInterval < 1) {
+      throw new IllegalArgumentException("sampleInterval must be >= 1, got: " + sampleInterval);
+    }
+    this.sampleInterval = sampleInterval;
+    this.reporter = reporter;
+  }
+
+  @Override
+  public IndexOutput createOutput(String name, IOContext context) throws IOException {
+    return new StatsIndexOutput(in.createOutput(name, context), accumulator(name, context.context));
+  }
+
+  @Override
+  public IndexOutput createTempOutput(String prefix, String suffix, IOContext context) throws IOException {
+    final IndexOutput out = in.createTempOutput(prefix, suffix, context);
+    return new StatsIndexOutput(out, accumulator(out.getName(), context.context));
+  }
+
+  @Override
+  public IndexInput openInput(String name, IOContext context) throws IOException {
+    return new StatsIndexInput(in.openInput(name, context), accumulator(name, context.context));
+  }
+
+  /** Returns a snapshot of the statistics of all file extensions and contexts that have been used so far. */
+  public List<Stats> getStats() {
+    final List<Stats> stats = new ArrayList<>();
+    for (Accumulator accumulator : accumulators.values()) {
+      stats.add(accumulator.snapshot());
+    }
+    Collections.sort(stats, Comparator.comparing(Stats::getExtension).thenComparing(Stats::getContext));
+    return stats;
+  }
+
+  private static final String COMPOUND_FILE_EXTENSION = "cfs";
+
+  /** Returns the extension that statistics of the given file are recorded under. */
+  static String extension(String fileName) {
+    final String extension = IndexFileNames.getExtension(fileName);
+    if (extension != null) {
+      return extension;
+    }
+    return fileName.startsWith(IndexFileNames.SEGMENTS) ? IndexFileNames.SEGMENTS : "";
+  }
+
+  private Accumulator accumulator(String fileName, IOContext.Context context) {
+    final Key key = new Key(extension(fileName), context);
+    return accumulators.computeIfAbsent(key, Accumulator::new);
+  }
+
+  /** Returns the accumulator of a slice of an input: sub-files of compound files get their own. */
+  private Accumulator sliceAccumulator(Accumulator accumulator, String sliceDescription) {
+    if (sliceDescription != null
+        && accumulator.key.extension.equals(COMPOUND_FILE_EXTENSION)
+        && extension(sliceDescription).isEmpty() == false) {
+      return accumulator(sliceDescription, accumulator.key.context);
+    }
+    return accumulator;
+  }
+
+  @Override
+  public String toString() {
+    return "IOStatsDirectoryWrapper(" + in + ")";
+  }
+
+  /** Statistics of the files of an extension that were opened with a context. */
+  public static final class Stats {
+    private final String extension;
+    private final IOContext.Context context;
+    private final long readOps, readBytes, writeOps, writeBytes;
+    private final Histogram readLatency, writeLatency;
+
+    Stats(String extension, IOContext.Context context, long readOps, long readBytes, long writeOps, long writeBytes,
+        Histogram readLatency, Histogram writeLatency) {
+      this.extension = extension;
+      this.context = context;
+      this.readOps = readOps;
+      this.readBytes = readBytes;
+      this.writeOps = writeOps;
+      this.writeBytes = writeBytes;
+      this.readLatency = readLatency;
+      this.writeLatency = writeLatency;
+    }
+
+    /** Returns the file extension, {@code segments} for segments files, or the empty string if files have no extension. */
+    public String getExtension() {
+      return extension;
+    }
+
+    /** Returns the context that files were opened with. */
+    public IOContext.Context getContext() {
+      return context;
+    }
+
+    /** Returns the number of read operations. */
+    public long getReadOps() {
+      return readOps;
+    }
+
+    /** Returns the number of bytes that were read. */
+    public long getReadBytes() {
+      return readBytes;
+    }
+
+    /** Returns the number of write operations. */
+    public long getWriteOps() {
+      return writeOps;
+    }
+
+    /** Returns the number of bytes that were written. */
+    public long getWriteBytes() {
+      return writeBytes;
+    }
+
+    /** Returns the histogram of sampled read latencies. */
+    public Histogram getReadLatency() {
+      return readLatency;
+    }
+
+    /** Returns the histogram of sampled write latencies. */
+    public Histogram getWriteLatency() {
+      return writeLatency;
+    }
+
+    @Override
+    public String toString() {
+      return "Stats(ext=" + extension + ",context=" + context + ",readOps=" + readOps + ",readBytes=" + readBytes
+          + ",writeOps=" + writeOps + ",writeBytes=" + writeBytes + ",readLatency=" + readLatency + ",writeLatency=" + writeLatency + ")";
+    }
+  }
+
+  /**
+   * A histogram of latencies with power-of-two buckets: bucket {@code i}
+   * counts latencies in {@code [2^i, 2^(i+1))} nanoseconds, bucket 0 also
+   * counts latencies of 0.
+   */
+  public static final class Histogram {
+    private final long[] counts;
+
+    Histogram(long[] counts) {
+      this.counts = counts;
+    }
+
+    /** Returns the number of sampled latencies. */
+    public long getCount() {
+      long count = 0;
+      for (long c : counts) {
+        count += c;
+      }
+      return count;
+    }
+
+    /** Returns the number of latencies in bucket {@code i}. */
+    public long getBucketCount(int i) {
+      return counts[i];
+    }
+
+    /** Returns the number of buckets. */
+    public int getNumBuckets() {
+      return counts.length;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile of latencies, in
+     * nanoseconds, or 0 if there are no latencies.
+     * @param percentile a number in {@code [0, 100]}
+     */
+    public long getPercentile(double percentile) {
+      if (percentile < 0 || percentile > 100) {
+        throw new IllegalArgumentException("percentile must be in [0, 100], got: " + percentile);
+      }
+      final long count = getCount();
+      if (count == 0) {
+        return 0;
+      }
+      final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return i == counts.length - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+        }
+      }
+      throw new AssertionError();
+    }
+
+    @Override
+    public String toString() {
+      return "Histogram(count=" + getCount() + ",p50=" + getPercentile(50) + "ns,p99=" + getPercentile(99) + "ns)";
+    }
+  }
+
+  private static final class Key {
+    final String extension;
+    final IOContext.Context context;
+
+    Key(String extension, IOContext.Context context) {
+      this.extension = extension;
+      this.context = context;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj instanceof Key == false) {
+        return false;
+      }
+      final Key that = (Key) obj;
+      return extension.equals(that.extension) && context == that.context;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(extension, context);
+    }
+  }
+
+  private static final int NUM_BUCKETS = 64;
+
+  private final class Accumulator {
+    final Key key;
+    final LongAdder readOps = new LongAdder();
+    final LongAdder readBytes = new LongAdder();
+    final LongAdder writeOps = new LongAdder();
+    final LongAdder writeBytes = new LongAdder();
+    final LongAdder[] readLatency = newBuckets();
+    final LongAdder[] writeLatency = newBuckets();
+
+    Accumulator(Key key) {
+      this.key = key;
+    }
+
+    private LongAdder[] newBuckets() {
+      final LongAdder[] buckets = new LongAdder[NUM_BUCKETS];
+      for (int i = 0; i < buckets.length; i++) {
+        buckets[i] = new LongAdder();
+      }
+      return buckets;
+    }
+
+    void add(boolean write, long ops, long bytes) {
+      (write ? writeOps : readOps).add(ops);
+      (write ? writeBytes : readBytes).add(bytes);
+    }
+
+    void sample(boolean write, int bytes, long nanos) {
+      final int bucket = nanos <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+      (write ? writeLatency : readLatency)[bucket].increment();
+      if (reporter != null) {
+        reporter.report(key.extension, key.context, write, bytes, nanos);
+      }
+    }
+
+    Stats snapshot() {
+      return new Stats(key.extension, key.context, readOps.sum(), readBytes.sum(), writeOps.sum(), writeBytes.sum(),
+          histogram(readLatency), histogram(writeLatency));
+    }
+
+    private Histogram histogram(LongAdder[] buckets) {
+      return new Histogram(Arrays.stream(buckets).mapToLong(LongAdder::sum).toArray());
+    }
+  }
+
+  /** Number of bytes after which pending counts are published even if no operation was timed. */
+  private static final long MAX_PENDING_BYTES = 1 << 20;
+
+  /**
+   * Counts operations and times one out of {@code sampleInterval}. Counts
+   * are kept locally until the next timed operation, until more than
+   * {@link #MAX_PENDING_BYTES} are pending, or until {@link #flush()}.
+   */
+  private final class OpCounter {
+    private final Accumulator accumulator;
+    private final boolean write;
+    private int opsSinceSample;
+    private long pendingOps, pendingBytes;
+
+    OpCounter(Accumulator accumulator, boolean write) {
+      this.accumulator = accumulator;
+      this.write = write;
+    }
+
+    /** Counts an operation and returns true if it should be timed. */
+    boolean count(int bytes) {
+      pendingOps++;
+      pendingBytes += bytes;
+      if (pendingBytes >= MAX_PENDING_BYTES) {
+        flush();
+      }
+      return ++opsSinceSample >= sampleInterval;
+    }
+
+    /** Records the duration of a timed operation, and publishes pending counts. */
+    void sample(int bytes, long nanos) {
+      accumulator.sample(write, bytes, nanos);
+      opsSinceSample = 0;
+      flush();
+    }
+
+    void flush() {
+      if (pendingOps > 0) {
+        accumulator.add(write, pendingOps, pendingBytes);
+        pendingOps = pendingBytes = 0;
+      }
+    }
+  }
+
+  private final class StatsIndexInput extends IndexInput {
+    private final IndexInput in;
+    private final Accumulator accumulator;
+    private final OpCounter counter;
+
+    StatsIndexInput(IndexInput in, Accumulator accumulator) {
+      super("IOStatsIndexInput(" + in + ")");
+      this.in = in;
+      this.accumulator = accumulator;
+      this.counter = new OpCounter(accumulator, false);
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+      if (counter.count(Byte.BYTES)) {
+        final long start = System.nanoTime();
+        final byte b = in.readByte();
+        counter.sample(Byte.BYTES, System.nanoTime() - start);
+        return b;
+      }
+      return in.readByte();
+    }
+
+    @Override
+    public void readBytes(byte[] b, int offset, int len) throws IOException {
+      if (counter.count(len)) {
+        final long start = System.nanoTime();
+        in.readBytes(b, offset, len);
+        counter.sample(len, System.nanoTime() - start);
+      } else {
+        in.readBytes(b, offset, len);
+      }
+    }
+
+    @Override
+    public void readBytes(byte[] b, int offset, int len, boolean useBuffer) throws IOException {
+      if (counter.count(len)) {
+        final long start = System.nanoTime();
+        in.readBytes(b, offset, len, useBuffer);
+        counter.sample(len, System.nanoTime() - start);
+      } else {
+        in.readBytes(b, offset, len, useBuffer);
+      }
+    }
+
+    @Override
+    public short readShort() throws IOException {
+      if (counter.count(Short.BYTES)) {
+        final long start = System.nanoTime();
+        final short s = in.readShort();
+        counter.sample(Short.BYTES, System.nanoTime() - start);
+        return s;
+      }
+      return in.readShort();
+    }
+
+    @Override
+    public int readInt() throws IOException {
+      if (counter.count(Integer.BYTES)) {
+        final long start = System.nanoTime();
+        final int i = in.readInt();
+        counter.sample(Integer.BYTES, System.nanoTime() - start);
+        return i;
+      }
+      return in.readInt();
+    }
+
+    @Override
+    public long readLong() throws IOException {
+      if (counter.count(Long.BYTES)) {
+        final long start = System.nanoTime();
+        final long l = in.readLong();
+        counter.sample(Long.BYTES, System.nanoTime() - start);
+        return l;
+      }
+      return in.readLong();
+    }
+
+    @Override
+    public long getFilePointer() {
+      return in.getFilePointer();
+    }
+
+    @Override
+    public void seek(long pos) throws IOException {
+      in.seek(pos);
+    }
+
+    @Override
+    public long length() {
+      return in.length();
+    }
+
+    @Override
+    public void prefetch(long offset, long length) throws IOException {
+      in.prefetch(offset, length);
+    }
+
+    @Override
+    public StatsIndexInput clone() {
+      return new StatsIndexInput(in.clone(), accumulator);
+    }
+
+    @Override
+    public IndexInput slice(String sliceDescription, long offset, long length) throws IOException {
+      return new StatsIndexInput(in.slice(sliceDescription, offset, length), sliceAccumulator(accumulator, sliceDescription));
+    }
+
+    @Override
+    public RandomAccessInput randomAccessSlice(long offset, long length) throws IOException {
+      return new StatsRandomAccessInput(in.randomAccessSlice(offset, length), accumulator);
+    }
+
+    @Override
+    public void close() throws IOException {
+      counter.flush();
+      in.close();
+    }
+  }
+
+  private final class StatsRandomAccessInput implements RandomAccessInput {
+    private final RandomAccessInput in;
+    private final OpCounter counter;
+
+    StatsRandomAccessInput(RandomAccessInput in, Accumulator accumulator) {
+      this.in = in;
+      this.counter = new OpCounter(accumulator, false);
+    }
+
+    @Override
+    public byte readByte(long pos) throws IOException {
+      if (counter.count(Byte.BYTES)) {
+        final long start = System.nanoTime();
+        final byte b = in.readByte(pos);
+        counter.sample(Byte.BYTES, System.nanoTime() - start);
+        return b;
+      }
+      return in.readByte(pos);
+    }
+
+    @Override
+    public short readShort(long pos) throws IOException {
+      if (counter.count(Short.BYTES)) {
+        final long start = System.nanoTime();
+        final short s = in.readShort(pos);
+        counter.sample(Short.BYTES, System.nanoTime() - start);
+        return s;
+      }
+      return in.readShort(pos);
+    }
+
+    @Override
+    public int readInt(long pos) throws IOException {
+      if (counter.count(Integer.BYTES)) {
+        final long start = System.nanoTime();
+        final int i = in.readInt(pos);
+        counter.sample(Integer.BYTES, System.nanoTime() - start);
+        return i;
+      }
+      return in.readInt(pos);
+    }
+
+    @Override
+    public long readLong(long pos) throws IOException {
+      if (counter.count(Long.BYTES)) {
+        final long start = System.nanoTime();
+        final long l = in.readLong(pos);
+        counter.sample(Long.BYTES, System.nanoTime() - start);
+        return l;
+      }
+      return in.readLong(pos);
+    }
+  }
+
+  private final class StatsIndexOutput extends IndexOutput {
+    private final IndexOutput out;
+    private final OpCounter counter;
+
+    StatsIndexOutput(IndexOutput out, Accumulator accumulator) {
+      super("IOStatsIndexOutput(" + out + ")", out.getName());
+      this.out = out;
+      this.counter = new OpCounter(accumulator, true);
+    }
+
+    @Override
+    public void writeByte(byte b) throws IOException {
+      if (counter.count(Byte.BYTES)) {
+        final long start = System.nanoTime();
+        out.writeByte(b);
+        counter.sample(Byte.BYTES, System.nanoTime() - start);
+      } else {
+        out.writeByte(b);
+      }
+    }
+
+    @Override
+    public void writeBytes(byte[] b, int offset, int length) throws IOException {
+      if (counter.count(length)) {
+        final long start = System.nanoTime();
+        out.writeBytes(b, offset, length);
+        counter.sample(length, System.nanoTime() - start);
+      } else {
+        out.writeBytes(b, offset, length);
+      }
+    }
+
+    @Override
+    public long getFilePointer() {
+      return out.getFilePointer();
+    }
+
+    @Override
+    public long getChecksum() throws IOException {
+      return out.getChecksum();
+    }
+
+    @Override
+    public void close() throws IOException {
+      counter.flush();
+      out.close();
+    }
+  }
+}
@@ -22,7 +22,9 @@ import java.nio.ByteBuffer;
 
 /**
  * Provides JNI access to native methods such as madvise() for
- * {@link NativeUnixDirectory}
+ * {@link NativeUnixDirectory}. {@link MMapDirectory} also uses it, when
+ * available, to pass the {@link IOContext#readAdvice read advice} of opened
+ * files to the operating system.
  */
 public final class NativePosixUtil {
   public final static int NORMAL = 0;
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.store;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.apache.lucene.util.TestUtil;
+
+/**
+ * Tests BlockCacheDirectory
+ */
+public class TestBlockCacheDirectory extends BaseDirectoryTestCase {
+
+  @Override
+  protected Directory getDirectory(Path path) throws IOException {
+    return new BlockCacheDirectory(new NIOFSDirectory(path), newBlockCache());
+  }
+
+  private static BlockCache newBlockCache() {
+    final int blockSize = 512 << random().nextInt(6);
+    final int numStripes = 1 << random().nextInt(4);
+    return new BlockCache((long) blockSize * numStripes * TestUtil.nextInt(random(), 1, 20), blockSize, numStripes, random().nextBoolean());
+  }
+
+  public void testIllegalArguments() {
+    expectThrows(IllegalArgumentException.class, () -> new BlockCache(1 << 20, 1000, 1, false));
+    expectThrows(IllegalArgumentException.class, () -> new BlockCache(1 << 20, 256, 1, false));
+    expectThrows(IllegalArgumentException.class, () -> new BlockCache(1 << 20, 1024, 3, false));
+    expectThrows(IllegalArgumentException.class, () -> new BlockCache(1024, 1024, 2, false));
+  }
+
+  public void testHitsAndEvictions() throws IOException {
+    final BlockCache cache = new BlockCache(4 * 1024, 1024, 1, random().nextBoolean());
+    assertEquals(4, cache.getMaxBlocks());
+    try (Directory dir = new BlockCacheDirectory(new NIOFSDirectory(createTempDir()), cache)) {
+      final byte[] bytes = new byte[8 * 1024];
+      random().nextBytes(bytes);
+      try (IndexOutput out = dir.createOutput("foo", IOContext.DEFAULT)) {
+        out.writeBytes(bytes, bytes.length);
+      }
+      try (IndexInput in = dir.openInput("foo", IOContext.DEFAULT)) {
+        in.seek(100);
+        assertEquals(bytes[100], in.readByte());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getBlockCount());
+
+        // other inputs on the same file share its blocks
+        try (IndexInput other = dir.openInput("foo", IOContext.DEFAULT)) {
+          other.seek(200);
+          assertEquals(bytes[200], other.readByte());
+        }
+        assertEquals(1, cache.getHitCount());
+
+        // read the whole file through a cache that can only hold half of it
+        final byte[] read = new byte[bytes.length];
+        in.seek(0);
+        in.readBytes(read, 0, read.length);
+        assertArrayEquals(bytes, read);
+        assertEquals(4, cache.getBlockCount());
+        assertEquals(4, cache.getEvictionCount());
+      }
+
+      // merges bypass the cache
+      final long misses = cache.getMissCount();
+      try (IndexInput in = dir.openInput("foo", new IOContext(new MergeInfo(1, bytes.length, false, 1)))) {
+        in.seek(5000);
+        assertEquals(bytes[5000], in.readByte());
+      }
+      assertEquals(misses, cache.getMissCount());
+    }
+  }
+
+  public void testInvalidateOnDelete() throws IOException {
+    final BlockCache cache = newBlockCache();
+    try (Directory dir = new BlockCacheDirectory(new NIOFSDirectory(createTempDir()), cache)) {
+      for (int iter = 0; iter < 5; iter++) {
+        final byte[] bytes = new byte[TestUtil.nextInt(random(), 1, 10000)];
+        random().nextBytes(bytes);
+        try (IndexOutput out = dir.createOutput("foo", IOContext.DEFAULT)) {
+          out.writeBytes(bytes, bytes.length);
+        }
+        try (IndexInput in = dir.openInput("foo", IOContext.DEFAULT)) {
+          final byte[] read = new byte[bytes.length];
+          in.readBytes(read, 0, read.length);
+          assertArrayEquals(bytes, read);
+        }
+        assertTrue(cache.getBlockCount() > 0);
+        dir.deleteFile("foo");
+        assertEquals(0, cache.getBlockCount());
+      }
+    }
+  }
+}
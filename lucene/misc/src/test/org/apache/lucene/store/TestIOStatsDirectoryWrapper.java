@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.store;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.store.IOStatsDirectoryWrapper.Histogram;
+import org.apache.lucene.store.IOStatsDirectoryWrapper.Stats;
+
+/**
+ * Tests IOStatsDirectoryWrapper
+ */
+public class TestIOStatsDirectoryWrapper extends BaseDirectoryTestCase {
+
+  @Override
+  protected Directory getDirectory(Path path) throws IOException {
+    return new IOStatsDirectoryWrapper(new NIOFSDirectory(path), 1 << random().nextInt(8), null);
+  }
+
+  public void testIllegalArguments() throws IOException {
+    try (Directory dir = new NIOFSDirectory(createTempDir())) {
+      expectThrows(IllegalArgumentException.class, () -> new IOStatsDirectoryWrapper(dir, 0, null));
+    }
+  }
+
+  public void testExtension() {
+    assertEquals("doc", IOStatsDirectoryWrapper.extension("_0_Lucene50_0.doc"));
+    assertEquals("si", IOStatsDirectoryWrapper.extension("_0.si"));
+    assertEquals("segments", IOStatsDirectoryWrapper.extension("segments_5"));
+    assertEquals("lock", IOStatsDirectoryWrapper.extension("write.lock"));
+    assertEquals("", IOStatsDirectoryWrapper.extension("foo"));
+  }
+
+  public void testCounts() throws IOException {
+    final AtomicLong reportedReads = new AtomicLong();
+    final AtomicLong reportedWrites = new AtomicLong();
+    final IOStatsDirectoryWrapper.Reporter reporter = (extension, context, write, bytes, nanos) -> {
+      assertEquals("tim", extension);
+      assertTrue(nanos >= 0);
+      (write ? reportedWrites : reportedReads).incrementAndGet();
+    };
+    try (IOStatsDirectoryWrapper dir = new IOStatsDirectoryWrapper(new NIOFSDirectory(createTempDir()), 4, reporter)) {
+      try (IndexOutput out = dir.createOutput("_0.tim", IOContext.DEFAULT)) {
+        for (int i = 0; i < 10; i++) {
+          out.writeByte((byte) i);
+        }
+        out.writeBytes(new byte[100], 100);
+      }
+      try (IndexInput in = dir.openInput("_0.tim", IOContext.READ)) {
+        for (int i = 0; i < 10; i++) {
+          assertEquals(i, in.readByte());
+        }
+        in.readBytes(new byte[100], 0, 100);
+        RandomAccessInput slice = in.randomAccessSlice(0, 10);
+        for (int i = 0; i < 8; i++) {
+          assertEquals(i, slice.readByte(i));
+        }
+      }
+
+      List<Stats> stats = dir.getStats();
+      assertEquals(2, stats.size());
+
+      // sorted by extension, then context
+      Stats write = stats.get(1);
+      assertEquals("tim", write.getExtension());
+      assertEquals(IOContext.Context.DEFAULT, write.getContext());
+      assertEquals(11, write.getWriteOps());
+      assertEquals(110, write.getWriteBytes());
+      assertEquals(0, write.getReadOps());
+      assertEquals(2, write.getWriteLatency().getCount());
+      assertEquals(2, reportedWrites.get());
+
+      // the random-access slice was not closed, but it published its counts when it timed its 8th read
+      Stats read = stats.get(0);
+      assertEquals(IOContext.Context.READ, read.getContext());
+      assertEquals(11 + 8, read.getReadOps());
+      assertEquals(110 + 8, read.getReadBytes());
+      assertEquals(0, read.getWriteOps());
+      assertEquals(2 + 2, read.getReadLatency().getCount());
+      assertEquals(4, reportedReads.get());
+    }
+  }
+
+  public void testClonesAreCounted() throws IOException {
+    try (IOStatsDirectoryWrapper dir = new IOStatsDirectoryWrapper(new NIOFSDirectory(createTempDir()), 4, null)) {
+      try (IndexOutput out = dir.createOutput("_0.doc", IOContext.DEFAULT)) {
+        out.writeBytes(new byte[100], 100);
+      }
+      try (IndexInput in = dir.openInput("_0.doc", IOContext.READ)) {
+        IndexInput clone = in.clone();
+        clone.readBytes(new byte[10], 0, 10);
+        IndexInput slice = in.slice("slice", 10, 20);
+        slice.readByte();
+        slice.readByte();
+        RandomAccessInput randomAccessSlice = in.randomAccessSlice(0, 100);
+        randomAccessSlice.readInt(4);
+
+        // clones and slices keep their counts until they time an operation
+        Stats read = dir.getStats().get(0);
+        assertEquals(IOContext.Context.READ, read.getContext());
+        assertEquals(0, read.getReadOps());
+        slice.readByte();
+        slice.readByte();
+        read = dir.getStats().get(0);
+        assertEquals(4, read.getReadOps());
+        assertEquals(4, read.getReadBytes());
+        assertEquals(1, read.getReadLatency().getCount());
+
+        // the input itself publishes its counts when it is closed
+        in.readByte();
+        assertEquals(4, dir.getStats().get(0).getReadOps());
+      }
+      assertEquals(5, dir.getStats().get(0).getReadOps());
+    }
+  }
+
+  public void testLargeReadsArePublished() throws IOException {
+    try (IOStatsDirectoryWrapper dir = new IOStatsDirectoryWrapper(new NIOFSDirectory(createTempDir()), 64, null)) {
+      final int length = 1 << 20;
+      try (IndexOutput out = dir.createOutput("_0.fdt", IOContext.DEFAULT)) {
+        out.writeBytes(new byte[length], length);
+      }
+      try (IndexInput in = dir.openInput("_0.fdt", IOContext.READ)) {
+        IndexInput clone = in.clone();
+        clone.readBytes(new byte[10], 0, 10);
+        assertEquals(0, dir.getStats().get(0).getReadOps());
+        clone.readBytes(new byte[length - 10], 0, length - 10);
+
+        // no operation was timed, but more than 1 MB was read
+        Stats read = dir.getStats().get(0);
+        assertEquals(IOContext.Context.READ, read.getContext());
+        assertEquals(2, read.getReadOps());
+        assertEquals(length, read.getReadBytes());
+        assertEquals(0, read.getReadLatency().getCount());
+      }
+    }
+  }
+
+  public void testCompoundFileSlices() throws IOException {
+    try (IOStatsDirectoryWrapper dir = new IOStatsDirectoryWrapper(new NIOFSDirectory(createTempDir()), 1, null)) {
+      try (IndexOutput out = dir.createOutput("_0.cfs", IOContext.DEFAULT)) {
+        out.writeBytes(new byte[100], 100);
+      }
+      try (IndexInput in = dir.openInput("_0.cfs", IOContext.READ)) {
+        in.readByte();
+        IndexInput doc = in.slice("_0_Lucene50_0.doc", 10, 20);
+        doc.readBytes(new byte[5], 0, 5);
+        // nested slices of sub-files stay with the sub-file
+        doc.slice("fst", 0, 10).readByte();
+        IndexInput tim = in.slice("_0_Lucene50_0.tim", 30, 20);
+        tim.readByte();
+        in.slice("unknown", 50, 10).readByte();
+      }
+
+      List<Stats> stats = dir.getStats();
+      assertEquals(4, stats.size());
+      // sorted by extension, then context
+      Stats cfs = stats.get(0);
+      assertEquals("cfs", cfs.getExtension());
+      assertEquals(IOContext.Context.READ, cfs.getContext());
+      assertEquals(2, cfs.getReadOps());
+      Stats doc = stats.get(2);
+      assertEquals("doc", doc.getExtension());
+      assertEquals(IOContext.Context.READ, doc.getContext());
+      assertEquals(2, doc.getReadOps());
+      assertEquals(6, doc.getReadBytes());
+      Stats tim = stats.get(3);
+      assertEquals("tim", tim.getExtension());
+      assertEquals(1, tim.getReadOps());
+      // the write of the compound file
+      assertEquals("cfs", stats.get(1).getExtension());
+      assertEquals(IOContext.Context.DEFAULT, stats.get(1).getContext());
+    }
+  }
+
+  public void testHistogram() {
+    final long[] counts = new long[64];
+    counts[3] = 90;
+    counts[10] = 10;
+    final Histogram histogram = new Histogram(counts);
+    assertEquals(100, histogram.getCount());
+    assertEquals(15, histogram.getPercentile(50));
+    assertEquals(15, histogram.getPercentile(90));
+    assertEquals(2047, histogram.getPercentile(91));
+    assertEquals(2047, histogram.getPercentile(100));
+    assertEquals(0, new Histogram(new long[64]).getPercentile(50));
+    expectThrows(IllegalArgumentException.class, () -> histogram.getPercentile(101));
+  }
+}
@@ -148,6 +148,49 @@ public class BaseTestCheckIndex extends LuceneTestCase {
     analyzer.close();
   }
   
+  public void testConcurrent(Directory dir) throws IOException {
+    LineFileDocs lf = new LineFileDocs(random());
+    IndexWriterConfig iwc = newIndexWriterConfig(new MockAnalyzer(random()));
+    iwc.setMaxBufferedDocs(TestUtil.nextInt(random(), 10, 30));
+    iwc.setMergePolicy(NoMergePolicy.INSTANCE);
+    IndexWriter iw = new IndexWriter(dir, iwc);
+    for (int i = 0; i < 200; i++) {
+      iw.addDocument(lf.nextDoc());
+    }
+    iw.commit();
+    iw.close();
+    lf.close();
+
+    String[] outputs = new String[2];
+    CheckIndex.Status[] statuses = new CheckIndex.Status[2];
+    for (int i = 0; i < 2; ++i) {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream(1024);
+      CheckIndex checker = new CheckIndex(dir);
+      checker.setThreadCount(i == 0 ? 1 : TestUtil.nextInt(random(), 2, 8));
+      checker.setInfoStream(new PrintStream(bos, true, IOUtils.UTF_8), random().nextBoolean());
+      statuses[i] = checker.checkIndex();
+      checker.close();
+      // timings and identity hash codes differ across runs
+      outputs[i] = bos.toString(IOUtils.UTF_8)
+          .replaceAll("(?i)took [0-9.]+ sec", "took X sec")
+          .replaceAll("@[0-9a-f]+", "@");
+    }
+
+    assertTrue(statuses[0].clean);
+    assertTrue(statuses[1].clean);
+    assertEquals(statuses[0].segmentInfos.size(), statuses[1].segmentInfos.size());
+    for (int i = 0; i < statuses[0].segmentInfos.size(); ++i) {
+      CheckIndex.Status.SegmentInfoStatus expected = statuses[0].segmentInfos.get(i);
+      CheckIndex.Status.SegmentInfoStatus actual = statuses[1].segmentInfos.get(i);
+      assertEquals(expected.name, actual.name);
+      assertEquals(expected.termIndexStatus.termCount, actual.termIndexStatus.termCount);
+      assertEquals(expected.storedFieldStatus.totFields, actual.storedFieldStatus.totFields);
+      assertEquals(expected.docValuesStatus.totalValueFields, actual.docValuesStatus.totalValueFields);
+    }
+    // the buffered output of concurrent checks is written in order
+    assertEquals(outputs[0], outputs[1]);
+  }
+
   public void testObtainsLock(Directory dir) throws IOException {
     IndexWriter iw = new IndexWriter(dir, newIndexWriterConfig(null));
     iw.addDocument(new Document());
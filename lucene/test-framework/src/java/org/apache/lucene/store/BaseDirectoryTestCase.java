@@ -1206,4 +1206,34 @@ public abstract class BaseDirectoryTestCase extends LuceneTestCase {
       assertEquals(expected, actual);
     }
   }
+
+  public void testPrefetch() throws IOException {
+    try (Directory dir = getDirectory(createTempDir())) {
+      final int len = atLeast(1 << 14);
+      final byte[] bytes = new byte[len];
+      random().nextBytes(bytes);
+      try (IndexOutput out = dir.createOutput("a", newIOContext(random()))) {
+        out.writeBytes(bytes, bytes.length);
+      }
+      try (IndexInput in = dir.openInput("a", newIOContext(random()))) {
+        final int offset = random().nextInt(len);
+        in.seek(offset);
+        in.prefetch(0, len);
+        in.prefetch(len, 0);
+        final int prefetchOffset = random().nextInt(len);
+        in.prefetch(prefetchOffset, random().nextInt(len - prefetchOffset + 1));
+        // prefetching must not move the file pointer
+        assertEquals(offset, in.getFilePointer());
+        assertEquals(bytes[offset], in.readByte());
+
+        final int sliceOffset = random().nextInt(len);
+        final int sliceLength = random().nextInt(len - sliceOffset + 1);
+        IndexInput slice = in.slice("slice", sliceOffset, sliceLength);
+        slice.prefetch(0, sliceLength);
+        if (sliceLength > 0) {
+          assertEquals(bytes[sliceOffset], slice.readByte());
+        }
+      }
+    }
+  }
 }